@@ -3,11 +3,18 @@ package com.codealot.url2text.cli;
 import static java.util.Arrays.asList;
 import static com.codealot.url2text.Constants.*;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -58,10 +65,15 @@ public class Application
     public static final String NO_COOKIES = "no-cookies";
     public static final String INCLUDE_HEADERS = "include-headers";
     public static final String INCLUDE_METADATA = "include-metadata";
+    public static final String INCLUDE_STRUCTURE = "include-structure";
     public static final String HTTP_TIMEOUT = "http-timeout";
     public static final String MAX_LENGTH = "max-length";
     public static final String OUTPUT_FORMAT = "output-format";
     public static final String OUTPUT_FILE = "output-file";
+    public static final String BATCH = "batch";
+    public static final String PROGRESS_LOG = "progress-log";
+    public static final String RETRY_FAILED = "retry-failed";
+    public static final String THREADS = "threads";
     public static final String VERSION = "version";
     public static final String HELP = "help";
 
@@ -76,17 +88,20 @@ public class Application
      * 
      * <pre>
      * java [JVM options] -jar Url2Text.jar [options] url
+     * java [JVM options] -jar Url2Text.jar [options] --batch urls.txt --output-file out
      * 
      * The following command line options are available:
      * 
      *  Option                                  Description                        
      *  ------                                  -----------                        
      *  -?, -h, --help                          show help                          
+     *  --batch <File: path>                    File listing URLs, one per line
      *  --css                                   Enable CSS support                 
      *  --do-not-track                          Enable Do Not Track support        
      *  --http-timeout <Integer: seconds>       HTTP transaction timeout
      *  --include-headers                       Include HTTP response headers      
      *  --include-metadata                      Include content metadata           
+     *  --include-structure                     Include HTML links, headings, etc. 
      *  --insecure-ssl                          Ignore server certificates         
      *  --javascript                            Enable Javascript
      *  --javascript-timeout <Integer: seconds> Javascript execution timeout               
@@ -94,7 +109,12 @@ public class Application
      *  --no-cookies                            Disable cookie support             
      *  --no-redirect                           Disable redirection                
      *  --output-file <File: file>              File to receive output         
-     *  --output-format                         One of PLAIN, JSON                     
+     *  --output-format                         One of PLAIN, JSON, JSONL              
+     *  --progress-log <File: path>             Batch progress log (default
+     *                                            output-file.progress)
+     *  --retry-failed                          Retry URLs which failed in an
+     *                                            earlier batch run
+     *  --threads <Integer>                     Concurrent batch fetches
      *  --version                               Print version to stdout
      * </pre>
      * 
@@ -124,22 +144,27 @@ public class Application
             System.exit(2);
         }
 
-        // make sure url is a URL
+        // make sure url is a URL, or a batch has somewhere to go
         final List<?> nonopts = options.nonOptionArguments();
-        if (nonopts.size() != 1)
+        final boolean batch = options.has(BATCH);
+        if (batch ? !nonopts.isEmpty() || !options.has(OUTPUT_FILE) : nonopts
+                .size() != 1)
         {
             LOG.error("Command line incomplete or ambiguous");
             System.exit(1);
         }
         URL url = null;
-        try
-        {
-            url = new URL(nonopts.get(0).toString());
-        }
-        catch (MalformedURLException e)
+        if (!batch)
         {
-            LOG.error(nonopts.get(0).toString() + " not a valid URL.", e);
-            System.exit(5);
+            try
+            {
+                url = new URL(nonopts.get(0).toString());
+            }
+            catch (MalformedURLException e)
+            {
+                LOG.error(nonopts.get(0).toString() + " not a valid URL.", e);
+                System.exit(5);
+            }
         }
 
         // create operational object
@@ -187,6 +212,10 @@ public class Application
         {
             fetcher.setIncludeMetadata(true);
         }
+        if (options.has(INCLUDE_STRUCTURE))
+        {
+            fetcher.setIncludeStructure(true);
+        }
         if (options.has(HTTP_TIMEOUT))
         {
             final Integer timeout = (Integer) options.valueOf(HTTP_TIMEOUT);
@@ -211,24 +240,30 @@ public class Application
             outputFormat = (OutputFormat) options.valueOf(OUTPUT_FORMAT);
         }
 
-        // issue fetch command
-        try
+        if (batch)
         {
-            final Response response = fetcher.contentAsText(url, null);
+            runBatch(fetcher, outputFormat, options);
+            return;
+        }
 
+        // issue fetch command
+        try (final Response response = fetcher.contentAsText(url, null))
+        {
+            // stream the output, so the text is never held in full
             if (options.has(OUTPUT_FILE))
             {
                 // output to output-file
                 try (PrintWriter out = new PrintWriter(
                         (File) options.valueOf(OUTPUT_FILE)))
                 {
-
-                    out.print(response.asFormat(outputFormat));
+                    response.asFormat(outputFormat, out);
                 }
             }
             else
             {
-                System.out.print(response.asFormat(outputFormat));
+                final Writer out = new BufferedWriter(new OutputStreamWriter(
+                        System.out));
+                response.asFormat(outputFormat, out);
             }
         }
         catch (Exception e)
@@ -238,6 +273,41 @@ public class Application
         }
     }
 
+    /**
+     * Fetch each URL listed in the batch file to the output file, resuming
+     * from the progress log if there is one.
+     * 
+     * @param fetcher
+     * @param outputFormat
+     * @param options
+     */
+    private static void runBatch(final Url2Text fetcher,
+            final OutputFormat outputFormat, final OptionSet options)
+    {
+        final Path output = ((File) options.valueOf(OUTPUT_FILE)).toPath();
+        final BatchRunner runner = options.has(PROGRESS_LOG) ? new BatchRunner(
+                fetcher, outputFormat, output,
+                ((File) options.valueOf(PROGRESS_LOG)).toPath())
+                : new BatchRunner(fetcher, outputFormat, output);
+        if (options.has(THREADS))
+        {
+            runner.setThreads((Integer) options.valueOf(THREADS));
+        }
+        runner.setRetryFailed(options.has(RETRY_FAILED));
+
+        try (final Reader urls = Files.newBufferedReader(
+                ((File) options.valueOf(BATCH)).toPath(),
+                StandardCharsets.UTF_8))
+        {
+            runner.run(urls);
+        }
+        catch (Exception e)
+        {
+            LOG.error("Error running batch.", e);
+            System.exit(8);
+        }
+    }
+
     /**
      * Method to simplify testing of the CLI parser.
      * 
@@ -260,7 +330,9 @@ public class Application
                     accepts(NO_COOKIES, "Disable cookie support");
                     accepts(INCLUDE_HEADERS, "Include HTTP response headers");
                     accepts(INCLUDE_METADATA, "Include content metadata");
-                    accepts(OUTPUT_FORMAT, "One of PLAIN, JSON")
+                    accepts(INCLUDE_STRUCTURE,
+                            "Include HTML links, headings, etc.");
+                    accepts(OUTPUT_FORMAT, "One of PLAIN, JSON, JSONL")
                             .withRequiredArg().ofType(OutputFormat.class);
                     accepts(OUTPUT_FILE, "File to receive output")
                             .withRequiredArg().ofType(File.class)
@@ -273,6 +345,17 @@ public class Application
                             .describedAs("seconds");
                     accepts(MAX_LENGTH, "Maximum Content-Length")
                             .withRequiredArg().ofType(Long.class);
+                    accepts(BATCH, "File listing URLs, one per line")
+                            .withRequiredArg().ofType(File.class)
+                            .describedAs("path");
+                    accepts(PROGRESS_LOG,
+                            "Batch progress log (default output-file.progress)")
+                            .withRequiredArg().ofType(File.class)
+                            .describedAs("path");
+                    accepts(RETRY_FAILED,
+                            "Retry URLs which failed in an earlier batch run");
+                    accepts(THREADS, "Concurrent batch fetches")
+                            .withRequiredArg().ofType(Integer.class);
 
                     // following are non-operational options
                     acceptsAll(asList("h", "?", "help"), "show help").forHelp();
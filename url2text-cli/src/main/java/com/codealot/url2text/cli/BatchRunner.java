@@ -0,0 +1,420 @@
+package com.codealot.url2text.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codealot.url2text.AliasIndex;
+import com.codealot.url2text.Constants.OutputFormat;
+import com.codealot.url2text.Response;
+import com.codealot.url2text.Url2Text;
+import com.codealot.url2text.Url2TextException;
+
+/**
+ * Fetches a list of URLs, one per line, to a single output file, keeping a
+ * {@link ProgressLog} so that an interrupted batch resumes where it stopped.
+ * <p>
+ * URLs are fetched concurrently, but their results are written in the order
+ * of the list, each one flushed before it is logged as done. On restart, the
+ * output is cut back to the end of the last result logged as done, and URLs
+ * already done (or failed, unless retried) are skipped without a fetch.
+ * <p>
+ * URLs are keyed by an {@link AliasIndex}, kept beside the progress log, so
+ * another spelling of a URL already fetched, or a URL known to redirect to
+ * one, is skipped as a duplicate. Blank lines and lines starting with '#' are
+ * ignored.
+ * <p>
+ * Not thread safe; one batch at a time.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class BatchRunner
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(BatchRunner.class);
+
+    /**
+     * Results held waiting for an earlier one, per thread.
+     */
+    public static final int WINDOW_PER_THREAD = 4;
+
+    private final Url2Text fetcher;
+    private final OutputFormat format;
+    private final Path output;
+    private final Path progressFile;
+    private int threads = 1;
+    private boolean retryFailed = false;
+
+    // state of the last run
+    private long doneCount = 0L;
+    private long failedCount = 0L;
+    private long skippedCount = 0L;
+    private long duplicateCount = 0L;
+
+    /**
+     * Constructor, keeping the progress log beside the output, with the
+     * suffix ".progress".
+     *
+     * @param fetcher
+     *            copied, so not altered
+     * @param format
+     * @param output
+     */
+    public BatchRunner(final Url2Text fetcher, final OutputFormat format,
+            final Path output)
+    {
+        this(fetcher, format, output, Paths.get(output + ".progress"));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fetcher
+     *            copied, so not altered
+     * @param format
+     * @param output
+     *            receives the results, in list order
+     * @param progressFile
+     *            the progress log; the alias index is kept beside it, with
+     *            the suffix ".aliases"
+     */
+    public BatchRunner(final Url2Text fetcher, final OutputFormat format,
+            final Path output, final Path progressFile)
+    {
+        this.fetcher = Objects.requireNonNull(fetcher, "No Url2Text supplied.")
+                .clone();
+        this.format = Objects.requireNonNull(format, "No format supplied.");
+        this.output = Objects.requireNonNull(output, "No output supplied.");
+        this.progressFile = Objects.requireNonNull(progressFile,
+                "No progress log supplied.");
+    }
+
+    /**
+     * Fetch the URLs listed, skipping those done by an earlier run.
+     *
+     * @param urls
+     *            one URL per line; not closed
+     * @return the number of URLs done by this run
+     * @throws Url2TextException
+     *             if the output or progress log cannot be written
+     */
+    public long run(final Reader urls) throws Url2TextException
+    {
+        this.doneCount = 0L;
+        this.failedCount = 0L;
+        this.skippedCount = 0L;
+        this.duplicateCount = 0L;
+
+        final ExecutorService executor = Executors
+                .newFixedThreadPool(this.threads);
+        try (final AliasIndex aliases = new AliasIndex(Paths
+                .get(this.progressFile + ".aliases"));
+                final ProgressLog log = new ProgressLog(this.progressFile);
+                final FileChannel channel = FileChannel.open(this.output,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            this.fetcher.setAliasIndex(aliases);
+            if (!log.getInFlight().isEmpty())
+            {
+                LOG.info("Resuming batch; {} done, {} to fetch again.", log
+                        .getDone().size(), log.getInFlight().size());
+            }
+
+            long offset = log.getOutputOffset();
+            if (channel.size() < offset)
+            {
+                LOG.warn("Output {} is shorter than logged; appending.",
+                        this.output);
+                offset = channel.size();
+            }
+            channel.truncate(offset);
+            channel.position(offset);
+            final Writer out = new BufferedWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+
+            // keys seen, and whether by an earlier run
+            final Map<String, Boolean> seen = new HashMap<>();
+            for (final String key : log.getDone())
+            {
+                seen.put(key, Boolean.TRUE);
+                seen.put(resolve(aliases, key), Boolean.TRUE);
+            }
+            if (!this.retryFailed)
+            {
+                for (final String key : log.getFailed())
+                {
+                    seen.put(key, Boolean.TRUE);
+                }
+            }
+
+            final Deque<Pending> pending = new ArrayDeque<>();
+            final int window = this.threads * WINDOW_PER_THREAD;
+            final BufferedReader reader = new BufferedReader(urls);
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                final URL url;
+                try
+                {
+                    url = new URL(line);
+                }
+                catch (MalformedURLException e)
+                {
+                    LOG.warn("Not a valid URL: {}", line);
+                    if (seen.put(line, Boolean.FALSE) == null)
+                    {
+                        log.failed(line, "Not a valid URL.");
+                        this.failedCount++;
+                    }
+                    continue;
+                }
+
+                final String key = aliases.resolve(url);
+                final Boolean earlier = seen.get(key);
+                if (earlier != null)
+                {
+                    if (earlier.booleanValue())
+                    {
+                        this.skippedCount++;
+                    }
+                    else
+                    {
+                        this.duplicateCount++;
+                    }
+                    continue;
+                }
+                seen.put(key, Boolean.FALSE);
+
+                log.started(key);
+                pending.add(new Pending(key, url, executor.submit(fetch(url))));
+                while (pending.size() >= window)
+                {
+                    write(pending.poll(), out, channel, log, aliases, seen);
+                }
+            }
+            while (!pending.isEmpty())
+            {
+                write(pending.poll(), out, channel, log, aliases, seen);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Batch failed.", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        LOG.info("Batch done: {} fetched, {} failed, {} skipped, "
+                + "{} duplicates.", this.doneCount, this.failedCount,
+                this.skippedCount, this.duplicateCount);
+        return this.doneCount;
+    }
+
+    private Callable<Response> fetch(final URL url)
+    {
+        // a copy per fetch, so fetches share no state
+        final Url2Text copy = this.fetcher.clone();
+        return new Callable<Response>()
+            {
+                @Override
+                public Response call() throws Url2TextException
+                {
+                    return copy.contentAsText(url, null);
+                }
+            };
+    }
+
+    /**
+     * Wait for the result, write it, and log it as done (or failed).
+     */
+    private void write(final Pending next, final Writer out,
+            final FileChannel channel, final ProgressLog log,
+            final AliasIndex aliases, final Map<String, Boolean> seen)
+            throws IOException, Url2TextException
+    {
+        final Response response;
+        try
+        {
+            response = next.result.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Url2TextException("Batch interrupted.", e);
+        }
+        catch (ExecutionException e)
+        {
+            LOG.warn("Failed to fetch {}", next.url, e.getCause());
+            log.failed(next.key, e.getCause().getMessage());
+            this.failedCount++;
+            return;
+        }
+
+        final long start = channel.position();
+        try (final Response result = response)
+        {
+            result.asFormat(this.format, out);
+        }
+        catch (Url2TextException e)
+        {
+            // conversion failed part way; drop the partial result
+            out.flush();
+            channel.truncate(start);
+            channel.position(start);
+            LOG.warn("Failed to convert {}", next.url, e);
+            log.failed(next.key, e.getMessage());
+            this.failedCount++;
+            return;
+        }
+        out.flush();
+        log.done(next.key, channel.position());
+        this.doneCount++;
+
+        // later spellings of the landing page are duplicates
+        final String landing = aliases.resolve(next.url);
+        if (!seen.containsKey(landing))
+        {
+            seen.put(landing, Boolean.FALSE);
+        }
+    }
+
+    private static String resolve(final AliasIndex aliases, final String key)
+    {
+        try
+        {
+            return aliases.resolve(key);
+        }
+        catch (MalformedURLException e)
+        {
+            return key;
+        }
+    }
+
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * @param threads
+     *            number of concurrent fetches, at least 1 (the default)
+     */
+    public void setThreads(final int threads)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("At least one thread needed.");
+        }
+        this.threads = threads;
+    }
+
+    public boolean hasRetryFailed()
+    {
+        return this.retryFailed;
+    }
+
+    /**
+     * @param retryFailed
+     *            if true, URLs which failed in an earlier run are fetched
+     *            again; by default they are skipped
+     */
+    public void setRetryFailed(final boolean retryFailed)
+    {
+        this.retryFailed = retryFailed;
+    }
+
+    public Path getOutput()
+    {
+        return this.output;
+    }
+
+    public Path getProgressFile()
+    {
+        return this.progressFile;
+    }
+
+    public long getDoneCount()
+    {
+        return this.doneCount;
+    }
+
+    public long getFailedCount()
+    {
+        return this.failedCount;
+    }
+
+    /**
+     * @return URLs skipped as done, or failed, by an earlier run
+     */
+    public long getSkippedCount()
+    {
+        return this.skippedCount;
+    }
+
+    /**
+     * @return URLs skipped as another spelling of one seen in this run
+     */
+    public long getDuplicateCount()
+    {
+        return this.duplicateCount;
+    }
+
+    private static class Pending
+    {
+        final String key;
+        final URL url;
+        final Future<Response> result;
+
+        Pending(final String key, final URL url, final Future<Response> result)
+        {
+            this.key = key;
+            this.url = url;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.codealot.url2text.cli;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only record of the progress of a batch, so that an interrupted batch
+ * can be resumed.
+ * <p>
+ * Each line is a tab-separated event for a URL key:
+ * <ul>
+ * <li>S key - fetch started</li>
+ * <li>D key offset - done, with its output flushed up to the offset</li>
+ * <li>F key message - failed</li>
+ * </ul>
+ * Opening an existing log reads it once, so a restart costs time in
+ * proportion to the work already done, and never reads the earlier output. A
+ * line left incomplete by a crash is discarded. Keys started but neither done
+ * nor failed were in flight when the batch stopped, and are fetched again.
+ * <p>
+ * Every line is flushed as it is written. Not thread safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class ProgressLog implements Closeable
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ProgressLog.class);
+
+    static final char STARTED = 'S';
+    static final char DONE = 'D';
+    static final char FAILED = 'F';
+
+    private final Path file;
+    private final Set<String> done = new HashSet<>();
+    private final Set<String> failed = new HashSet<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private long outputOffset = 0L;
+    private final Writer writer;
+
+    /**
+     * Open the log, reading it if it exists.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public ProgressLog(final Path file) throws IOException
+    {
+        this.file = file;
+        if (Files.exists(file))
+        {
+            dropIncompleteLine(file);
+            load(file);
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public Path getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return keys done by earlier runs, or recorded done since
+     */
+    public Set<String> getDone()
+    {
+        return Collections.unmodifiableSet(this.done);
+    }
+
+    /**
+     * @return keys which failed, and were not done since
+     */
+    public Set<String> getFailed()
+    {
+        return Collections.unmodifiableSet(this.failed);
+    }
+
+    /**
+     * @return keys started, but neither done nor failed
+     */
+    public Set<String> getInFlight()
+    {
+        return Collections.unmodifiableSet(this.inFlight);
+    }
+
+    /**
+     * @return the output offset of the last key done, i.e. how much of the
+     *         output is complete
+     */
+    public long getOutputOffset()
+    {
+        return this.outputOffset;
+    }
+
+    public void started(final String key) throws IOException
+    {
+        this.inFlight.add(key);
+        append(STARTED, key, null);
+    }
+
+    /**
+     * Record the key as done.
+     *
+     * @param key
+     * @param offset
+     *            the output offset, once its output is flushed
+     * @throws IOException
+     */
+    public void done(final String key, final long offset) throws IOException
+    {
+        this.inFlight.remove(key);
+        this.failed.remove(key);
+        this.done.add(key);
+        this.outputOffset = offset;
+        append(DONE, key, Long.toString(offset));
+    }
+
+    public void failed(final String key, final String message)
+            throws IOException
+    {
+        this.inFlight.remove(key);
+        this.failed.add(key);
+        append(FAILED, key, (message == null) ? "" : message.replaceAll(
+                "\\s+", " "));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.writer.close();
+    }
+
+    private void append(final char event, final String key,
+            final String detail) throws IOException
+    {
+        this.writer.write(event);
+        this.writer.write('\t');
+        this.writer.write(key);
+        if (detail != null)
+        {
+            this.writer.write('\t');
+            this.writer.write(detail);
+        }
+        this.writer.write('\n');
+        this.writer.flush();
+    }
+
+    private void load(final Path source) throws IOException
+    {
+        try (final BufferedReader reader = Files.newBufferedReader(source,
+                StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                final String[] fields = line.split("\t", 3);
+                if (fields.length < 2 || fields[0].length() != 1)
+                {
+                    LOG.warn("Ignoring bad line in progress log {}: {}",
+                            source, line);
+                    continue;
+                }
+                final String key = fields[1];
+                switch (fields[0].charAt(0))
+                {
+                case STARTED:
+                    this.inFlight.add(key);
+                    break;
+                case DONE:
+                    this.inFlight.remove(key);
+                    this.failed.remove(key);
+                    this.done.add(key);
+                    if (fields.length == 3)
+                    {
+                        this.outputOffset = Long.parseLong(fields[2]);
+                    }
+                    break;
+                case FAILED:
+                    this.inFlight.remove(key);
+                    this.failed.add(key);
+                    break;
+                default:
+                    LOG.warn("Ignoring bad line in progress log {}: {}",
+                            source, line);
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Corrupt progress log " + source, e);
+        }
+        LOG.debug("Progress log {}: {} done, {} failed, {} in flight",
+                source, this.done.size(), this.failed.size(),
+                this.inFlight.size());
+    }
+
+    /**
+     * Truncate the file after its last newline.
+     */
+    private static void dropIncompleteLine(final Path source)
+            throws IOException
+    {
+        try (final FileChannel channel = FileChannel.open(source,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final ByteBuffer buffer = ByteBuffer.allocate(4_096);
+            long end = channel.size();
+            while (end > 0L)
+            {
+                final long start = Math.max(0L, end - buffer.capacity());
+                buffer.clear();
+                buffer.limit((int) (end - start));
+                channel.read(buffer, start);
+                for (int i = buffer.position() - 1; i >= 0; i--)
+                {
+                    if (buffer.get(i) == '\n')
+                    {
+                        truncate(channel, source, start + i + 1);
+                        return;
+                    }
+                }
+                end = start;
+            }
+            truncate(channel, source, 0L);
+        }
+    }
+
+    private static void truncate(final FileChannel channel, final Path source,
+            final long size) throws IOException
+    {
+        if (size < channel.size())
+        {
+            LOG.warn("Dropping incomplete line at end of progress log {}",
+                    source);
+            channel.truncate(size);
+        }
+    }
+}
@@ -25,6 +25,7 @@ public class ApplicationTest
         assertEquals(false, options.has(Application.DO_NOT_TRACK));
         assertEquals(false, options.has(Application.INCLUDE_HEADERS));
         assertEquals(false, options.has(Application.INCLUDE_METADATA));
+        assertEquals(false, options.has(Application.INCLUDE_STRUCTURE));
         assertEquals(false, options.has(Application.INSECURE_SSL));
         assertEquals(false, options.has(Application.JAVASCRIPT));
         assertEquals(false, options.has(Application.NO_COOKIES));
@@ -33,19 +34,25 @@ public class ApplicationTest
         assertEquals(false, options.has(Application.OUTPUT_FORMAT));
         assertEquals(false, options.has(Application.HTTP_TIMEOUT));
         assertEquals(false, options.has(Application.MAX_LENGTH));
+        assertEquals(false, options.has(Application.BATCH));
+        assertEquals(false, options.has(Application.PROGRESS_LOG));
+        assertEquals(false, options.has(Application.RETRY_FAILED));
+        assertEquals(false, options.has(Application.THREADS));
     }
 
     @Test
     public void testParseArgsBooleanOpts() throws IOException
     {
         String[] args = { "--css", "--do-not-track", "--include-headers",
-                "--include-metadata", "--insecure-ssl", "--javascript",
+                "--include-metadata", "--include-structure",
+                "--insecure-ssl", "--javascript",
                 "--no-cookies", "--no-redirect" };
         OptionSet options = Application.parseArgs(args);
         assertEquals(true, options.has(Application.CSS));
         assertEquals(true, options.has(Application.DO_NOT_TRACK));
         assertEquals(true, options.has(Application.INCLUDE_HEADERS));
         assertEquals(true, options.has(Application.INCLUDE_METADATA));
+        assertEquals(true, options.has(Application.INCLUDE_STRUCTURE));
         assertEquals(true, options.has(Application.INSECURE_SSL));
         assertEquals(true, options.has(Application.JAVASCRIPT));
         assertEquals(true, options.has(Application.NO_COOKIES));
@@ -71,6 +78,11 @@ public class ApplicationTest
                 OutputFormat.JSON.toString() });
         assertEquals(OutputFormat.JSON,
                 options.valueOf(Application.OUTPUT_FORMAT));
+
+        options = Application.parseArgs(new String[] { "--output-format",
+                OutputFormat.JSONL.toString() });
+        assertEquals(OutputFormat.JSONL,
+                options.valueOf(Application.OUTPUT_FORMAT));
     }
 
     @Test(expected = OptionException.class)
@@ -159,6 +171,28 @@ public class ApplicationTest
         assertEquals(50L, val);
     }
 
+    @Test
+    public void testParseArgsBatch() throws IOException
+    {
+        String[] args = { "--batch", "urls.txt", "--progress-log",
+                "run.progress", "--retry-failed", "--threads", "8" };
+        OptionSet options = Application.parseArgs(args);
+        assertEquals("urls.txt",
+                ((File) options.valueOf(Application.BATCH)).getName());
+        assertEquals("run.progress",
+                ((File) options.valueOf(Application.PROGRESS_LOG)).getName());
+        assertEquals(true, options.has(Application.RETRY_FAILED));
+        assertEquals(8, options.valueOf(Application.THREADS));
+    }
+
+    @Test(expected = OptionException.class)
+    public void testParseArgsThreadsNotInt() throws IOException
+    {
+        String[] args = { "--threads", "bananas" };
+        OptionSet options = Application.parseArgs(args);
+        options.valueOf(Application.THREADS);
+    }
+
     /**
      * Was present in earlier versions but has been removed.
      * 
@@ -0,0 +1,195 @@
+package com.codealot.url2text.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codealot.url2text.Constants.OutputFormat;
+import com.codealot.url2text.Url2Text;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class BatchRunnerTest
+{
+    private static HttpServer server;
+    private static String localHost;
+
+    // requests reaching the server
+    private static final AtomicInteger REQUESTS = new AtomicInteger();
+
+    private Path directory;
+    private Path output;
+    private Url2Text fetcher;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+            {
+                @Override
+                public void handle(final HttpExchange exchange)
+                        throws IOException
+                {
+                    REQUESTS.incrementAndGet();
+                    final String path = exchange.getRequestURI().getPath();
+                    if ("/old.txt".equals(path))
+                    {
+                        exchange.getResponseHeaders().add("Location",
+                                "/a.txt");
+                        exchange.sendResponseHeaders(301, -1);
+                        exchange.close();
+                        return;
+                    }
+                    final byte[] body = path.getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type",
+                            "text/plain");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = exchange.getResponseBody())
+                    {
+                        os.write(body);
+                    }
+                }
+            });
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = Files.createTempDirectory("batch-test");
+        this.output = this.directory.resolve("out.jsonl");
+        this.fetcher = new Url2Text();
+        this.fetcher.setNetworkTimeout(5);
+        REQUESTS.set(0);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for (final String name : new String[] { "out.jsonl",
+                "out.jsonl.progress", "out.jsonl.progress.aliases" })
+        {
+            Files.deleteIfExists(this.directory.resolve(name));
+        }
+        Files.delete(this.directory);
+    }
+
+    @Test
+    public void testInOrder() throws Exception
+    {
+        final BatchRunner runner = new BatchRunner(this.fetcher,
+                OutputFormat.JSONL, this.output);
+        runner.setThreads(4);
+        assertEquals(4L, run(runner, "a.txt", "b.txt", "# comment", "",
+                "c.txt", "a.txt?utm_source=feed", "old.txt", "bad:url",
+                "http://localhost:1/"));
+
+        final List<String> lines = Files.readAllLines(this.output,
+                StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).contains(localHost + "a.txt"));
+        assertTrue(lines.get(1).contains(localHost + "b.txt"));
+        assertTrue(lines.get(2).contains(localHost + "c.txt"));
+        assertTrue(lines.get(3).contains(localHost + "old.txt"));
+        assertEquals(2L, runner.getFailedCount());
+        assertEquals(1L, runner.getDuplicateCount());
+        assertEquals(0L, runner.getSkippedCount());
+        assertEquals(this.output + ".progress", runner.getProgressFile()
+                .toString());
+    }
+
+    @Test
+    public void testResume() throws Exception
+    {
+        BatchRunner runner = new BatchRunner(this.fetcher,
+                OutputFormat.JSONL, this.output);
+        assertEquals(2L, run(runner, "a.txt", "old.txt"));
+        final long size = Files.size(this.output);
+
+        // as if the process died while writing the next result
+        Files.write(this.output, "{\"partial".getBytes(
+                StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(Paths.get(this.output + ".progress"), ("S\t" + localHost
+                + "b.txt\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        REQUESTS.set(0);
+        runner = new BatchRunner(this.fetcher, OutputFormat.JSONL,
+                this.output);
+        assertEquals(1L, run(runner, "a.txt", "old.txt", "b.txt",
+                "a.txt#top"));
+        assertEquals(1, REQUESTS.get());
+        assertEquals(3L, runner.getSkippedCount());
+
+        final List<String> lines = Files.readAllLines(this.output,
+                StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).startsWith("{"));
+        assertTrue(lines.get(2).contains(localHost + "b.txt"));
+        assertTrue(Files.size(this.output) > size);
+    }
+
+    @Test
+    public void testRetryFailed() throws Exception
+    {
+        final BatchRunner runner = new BatchRunner(this.fetcher,
+                OutputFormat.JSONL, this.output);
+        run(runner, "http://localhost:1/");
+        assertEquals(1L, runner.getFailedCount());
+
+        run(runner, "http://localhost:1/");
+        assertEquals(0L, runner.getFailedCount());
+        assertEquals(1L, runner.getSkippedCount());
+
+        runner.setRetryFailed(true);
+        run(runner, "http://localhost:1/");
+        assertEquals(1L, runner.getFailedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadThreads()
+    {
+        new BatchRunner(this.fetcher, OutputFormat.JSONL, this.output)
+                .setThreads(0);
+    }
+
+    private static long run(final BatchRunner runner, final String... urls)
+            throws Exception
+    {
+        final StringBuilder list = new StringBuilder();
+        for (final String url : urls)
+        {
+            final boolean relative = !url.isEmpty() && !url.startsWith("#")
+                    && !url.contains(":");
+            list.append(relative ? localHost + url : url).append('\n');
+        }
+        return runner.run(new StringReader(list.toString()));
+    }
+}
@@ -0,0 +1,98 @@
+package com.codealot.url2text.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProgressLogTest
+{
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.file = Files.createTempFile("url2text", ".progress");
+        Files.delete(this.file);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Test
+    public void testReopen() throws Exception
+    {
+        try (final ProgressLog log = new ProgressLog(this.file))
+        {
+            assertTrue(log.getDone().isEmpty());
+            assertEquals(0L, log.getOutputOffset());
+            log.started("a");
+            log.started("b");
+            log.started("c");
+            log.done("a", 10L);
+            log.failed("b", "Failed\tto\nfetch");
+            assertEquals(Collections.singleton("c"), log.getInFlight());
+        }
+
+        try (final ProgressLog log = new ProgressLog(this.file))
+        {
+            assertEquals(Collections.singleton("a"), log.getDone());
+            assertEquals(Collections.singleton("b"), log.getFailed());
+            assertEquals(Collections.singleton("c"), log.getInFlight());
+            assertEquals(10L, log.getOutputOffset());
+
+            // a retried failure
+            log.started("b");
+            log.done("b", 25L);
+        }
+
+        try (final ProgressLog log = new ProgressLog(this.file))
+        {
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")),
+                    log.getDone());
+            assertTrue(log.getFailed().isEmpty());
+            assertEquals(25L, log.getOutputOffset());
+        }
+        assertEquals("F\tb\tFailed to fetch", Files.readAllLines(this.file,
+                StandardCharsets.UTF_8).get(4));
+    }
+
+    @Test
+    public void testIncompleteLine() throws Exception
+    {
+        try (final ProgressLog log = new ProgressLog(this.file))
+        {
+            log.started("a");
+            log.done("a", 10L);
+        }
+        // as if the process died mid-line
+        Files.write(this.file, "S\tb\nD\tb\t2".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (final ProgressLog log = new ProgressLog(this.file))
+        {
+            assertEquals(Collections.singleton("a"), log.getDone());
+            assertEquals(Collections.singleton("b"), log.getInFlight());
+            assertEquals(10L, log.getOutputOffset());
+            log.done("b", 20L);
+        }
+        try (final ProgressLog log = new ProgressLog(this.file))
+        {
+            assertEquals(2, log.getDone().size());
+            assertEquals(20L, log.getOutputOffset());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.codealot.url2text;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Primitives of the binary format written by
+ * {@link Response#writeBinary(OutputStream)}.
+ * <p>
+ * Integers are zigzag encoded variable length quantities, 7 bits to a byte,
+ * least significant first; so small values of either sign take a byte or two.
+ * Strings are a byte count followed by UTF-8.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+final class BinaryCodec
+{
+    // 'U', '2', 'T', then the format version
+    static final byte[] MAGIC = { 0x55, 0x32, 0x54, 0x03 };
+
+    // earlier versions can still be read: the first has neither the text
+    // fingerprint nor the page structure, the second lacks the page structure
+    static final byte VERSION_1 = 0x01;
+    static final byte VERSION_2 = 0x02;
+
+    // bytes allocated ahead of those read, for a string
+    private static final int READ_CHUNK_SIZE = 64 * 1_024;
+
+    private BinaryCodec()
+    {
+        // static methods only
+    }
+
+    static void writeLong(final OutputStream out, final long value)
+            throws IOException
+    {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0L)
+        {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    static long readLong(final InputStream in) throws IOException
+    {
+        long zigzag = 0L;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = in.read();
+            if (b == -1)
+            {
+                throw new EOFException("Truncated integer.");
+            }
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed integer.");
+    }
+
+    static void writeString(final OutputStream out, final String value)
+            throws IOException
+    {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(final InputStream in) throws IOException
+    {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    static void writeBytes(final OutputStream out, final byte[] bytes)
+            throws IOException
+    {
+        writeLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(final InputStream in) throws IOException
+    {
+        final long length = readLong(in);
+        if (length < 0L || length > Integer.MAX_VALUE)
+        {
+            throw new IOException("Bad length: " + length);
+        }
+        // grow with the bytes actually read, so a corrupt length runs out of
+        // input rather than memory
+        byte[] bytes = new byte[(int) Math.min(length, READ_CHUNK_SIZE)];
+        int offset = 0;
+        while (offset < length)
+        {
+            if (offset == bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes,
+                        (int) Math.min(length, 2L * bytes.length));
+            }
+            final int count = in.read(bytes, offset, bytes.length - offset);
+            if (count == -1)
+            {
+                throw new EOFException("Truncated string.");
+            }
+            offset += count;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,555 @@
+package com.codealot.url2text;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable text held as UTF-8, in exactly sized chunks.
+ * <p>
+ * Mostly Latin text takes about half the memory of a String, and none is lost
+ * to the slack of a growing buffer. Chunks are decoded on demand, so the text
+ * can be read any number of times without ever being held as a String. The
+ * hash code is that of the equivalent String.
+ * <p>
+ * Text beyond a threshold is spilled to a temporary file instead, and read
+ * back through a file channel. Instances can be shared, so are reference
+ * counted; the file is deleted once every holder has called
+ * {@link #release()}.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+final class CompactText
+{
+    static final CompactText EMPTY = new CompactText(
+            Collections.<byte[]> emptyList(), null, 0L, 0L, 0);
+
+    // chars encoded to each chunk, and decoded at a time
+    private static final int CHUNK_CHARS = 8 * 1024;
+
+    // held in memory, unless spilled to the file
+    private final List<byte[]> chunks;
+    private final Path file;
+    private final long length;
+    private final long byteSize;
+    private final int hash;
+
+    private final AtomicInteger holders = new AtomicInteger(1);
+
+    private CompactText(final List<byte[]> chunks, final Path file,
+            final long length, final long byteSize, final int hash)
+    {
+        this.chunks = chunks;
+        this.file = file;
+        this.length = length;
+        this.byteSize = byteSize;
+        this.hash = hash;
+    }
+
+    /**
+     * Reads the Reader to the end, holding it all in memory. The Reader is not
+     * closed.
+     *
+     * @param reader
+     * @param sizeHint
+     *            expected number of chars, used to presize the chunk list; zero
+     *            or less if unknown
+     * @return the text
+     * @throws IOException
+     */
+    static CompactText read(final Reader reader, final long sizeHint)
+            throws IOException
+    {
+        return read(reader, sizeHint, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the Reader to the end. The Reader is not closed.
+     *
+     * @param reader
+     * @param sizeHint
+     *            expected number of chars, used to presize the chunk list; zero
+     *            or less if unknown
+     * @param threshold
+     *            number of bytes of UTF-8 held in memory before the text is
+     *            spilled to a temporary file
+     * @return the text
+     * @throws IOException
+     */
+    static CompactText read(final Reader reader, final long sizeHint,
+            final long threshold) throws IOException
+    {
+        final Builder builder = new Builder(sizeHint, threshold);
+        final char[] buffer = new char[CHUNK_CHARS];
+        int count;
+        try
+        {
+            while ((count = reader.read(buffer)) != -1)
+            {
+                builder.write(buffer, 0, count);
+            }
+        }
+        catch (IOException e)
+        {
+            builder.discard();
+            throw e;
+        }
+        return builder.toText();
+    }
+
+    /**
+     * True if the text is held in a temporary file.
+     *
+     * @return boolean flag
+     */
+    boolean isSpilled()
+    {
+        return this.file != null;
+    }
+
+    /**
+     * Registers another holder of this instance.
+     *
+     * @return this instance
+     */
+    CompactText retain()
+    {
+        this.holders.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Called by each holder when it no longer needs the text. Once all have,
+     * any temporary file is deleted, after which the text cannot be read.
+     */
+    void release()
+    {
+        if (this.holders.decrementAndGet() == 0 && this.file != null)
+        {
+            try
+            {
+                Files.deleteIfExists(this.file);
+            }
+            catch (IOException e)
+            {
+                // nothing to be done
+            }
+        }
+    }
+
+    /**
+     * Returns the number of chars in the text.
+     *
+     * @return length
+     */
+    long length()
+    {
+        return this.length;
+    }
+
+    /**
+     * Returns the number of bytes of UTF-8 held.
+     *
+     * @return byte count
+     */
+    long byteSize()
+    {
+        return this.byteSize;
+    }
+
+    /**
+     * Returns a new Reader over the text. A spilled file is only opened on the
+     * first read.
+     *
+     * @return the reader
+     */
+    Reader newReader()
+    {
+        return (this.file == null) ? new ChunkReader() : new SpilledReader();
+    }
+
+    /**
+     * Appends the text to the buffer.
+     *
+     * @param buffer
+     * @throws IOException
+     *             if a spilled file cannot be read
+     */
+    void appendTo(final StringBuilder buffer) throws IOException
+    {
+        if (this.file == null)
+        {
+            for (final byte[] chunk : this.chunks)
+            {
+                buffer.append(new String(chunk, StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        try (final Reader reader = newReader())
+        {
+            final char[] chars = new char[CHUNK_CHARS];
+            int count;
+            while ((count = reader.read(chars)) != -1)
+            {
+                buffer.append(chars, 0, count);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder((int) Math.min(
+                this.length, Integer.MAX_VALUE));
+        try
+        {
+            appendTo(buffer);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Spilled text unreadable.", e);
+        }
+        return buffer.toString();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass())
+        {
+            return false;
+        }
+        final CompactText test = (CompactText) obj;
+        return this.hash == test.hash && this.length == test.length
+                && this.toString().equals(test.toString());
+    }
+
+    /**
+     * Reader which decodes one chunk at a time.
+     */
+    private class ChunkReader extends Reader
+    {
+        private int next = 0;
+        private String decoded = "";
+        private int position = 0;
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            while (this.position == this.decoded.length())
+            {
+                if (this.next == CompactText.this.chunks.size())
+                {
+                    return -1;
+                }
+                this.decoded = new String(
+                        CompactText.this.chunks.get(this.next++),
+                        StandardCharsets.UTF_8);
+                this.position = 0;
+            }
+            final int count = Math.min(len, this.decoded.length()
+                    - this.position);
+            this.decoded.getChars(this.position, this.position + count, cbuf,
+                    off);
+            this.position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.next = CompactText.this.chunks.size();
+            this.decoded = "";
+            this.position = 0;
+        }
+    }
+
+    /**
+     * Reader which decodes the spilled file, opening it on the first read.
+     */
+    private class SpilledReader extends Reader
+    {
+        private Reader decoder = null;
+        private boolean closed = false;
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            if (this.closed)
+            {
+                return -1;
+            }
+            if (this.decoder == null)
+            {
+                this.decoder = new InputStreamReader(
+                        Channels.newInputStream(FileChannel.open(
+                                CompactText.this.file, StandardOpenOption.READ)),
+                        StandardCharsets.UTF_8);
+            }
+            return this.decoder.read(cbuf, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.closed = true;
+            if (this.decoder != null)
+            {
+                this.decoder.close();
+            }
+        }
+    }
+
+    /**
+     * Writer which encodes the text as it is written, so that it is never held
+     * as chars. Call {@link #toText()} once all has been written, or
+     * {@link #discard()} to abandon it.
+     */
+    static final class Builder extends Writer
+    {
+        private final Sink sink;
+        private final char[] buffer = new char[CHUNK_CHARS];
+        private int used = 0;
+        private long length = 0L;
+        private int hash = 0;
+        private boolean closed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param sizeHint
+         *            expected number of chars, used to presize the chunk list;
+         *            zero or less if unknown
+         * @param threshold
+         *            number of bytes of UTF-8 held in memory before the text
+         *            is spilled to a temporary file
+         */
+        Builder(final long sizeHint, final long threshold)
+        {
+            final int expectedChunks = (sizeHint > 0L) ? (int) Math.min(
+                    sizeHint / CHUNK_CHARS + 1, 1_024) : 4;
+            this.sink = new Sink(new ArrayList<byte[]>(expectedChunks),
+                    threshold);
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            if (this.closed)
+            {
+                throw new IOException("Text already built.");
+            }
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0)
+            {
+                final int count = Math.min(remaining, this.buffer.length
+                        - this.used);
+                for (int i = offset; i < offset + count; i++)
+                {
+                    this.hash = 31 * this.hash + cbuf[i];
+                }
+                System.arraycopy(cbuf, offset, this.buffer, this.used, count);
+                this.used += count;
+                this.length += count;
+                offset += count;
+                remaining -= count;
+                if (this.used == this.buffer.length)
+                {
+                    encode(false);
+                }
+            }
+        }
+
+        /**
+         * Encodes the buffer as a chunk, holding back a trailing high
+         * surrogate unless this is the end, so that no pair is split between
+         * chunks.
+         */
+        private void encode(final boolean end) throws IOException
+        {
+            final int held = (!end && this.used > 0 && Character
+                    .isHighSurrogate(this.buffer[this.used - 1])) ? 1 : 0;
+            final int chunkLength = this.used - held;
+            if (chunkLength > 0)
+            {
+                this.sink.add(new String(this.buffer, 0, chunkLength)
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            if (held > 0)
+            {
+                this.buffer[0] = this.buffer[chunkLength];
+            }
+            this.used = held;
+        }
+
+        @Override
+        public void flush()
+        {
+            // chunks are only encoded once full
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!this.closed)
+            {
+                this.closed = true;
+                encode(true);
+                this.sink.close();
+            }
+        }
+
+        /**
+         * Closes this Writer and returns the text written.
+         *
+         * @return the text
+         * @throws IOException
+         */
+        CompactText toText() throws IOException
+        {
+            try
+            {
+                close();
+            }
+            catch (IOException e)
+            {
+                discard();
+                throw e;
+            }
+            if (this.length == 0L)
+            {
+                this.sink.discard();
+                return EMPTY;
+            }
+            return new CompactText(this.sink.chunks, this.sink.file,
+                    this.length, this.sink.byteSize, this.hash);
+        }
+
+        /**
+         * Abandons the text, deleting any temporary file.
+         */
+        void discard()
+        {
+            this.closed = true;
+            this.sink.discard();
+        }
+    }
+
+    /**
+     * Collects chunks in memory until they exceed the threshold, then writes
+     * them, and all that follow, to a temporary file.
+     */
+    private static class Sink
+    {
+        private final long threshold;
+        private List<byte[]> chunks;
+        private Path file = null;
+        private FileChannel channel = null;
+        private long byteSize = 0L;
+
+        Sink(final List<byte[]> chunks, final long threshold)
+        {
+            this.chunks = chunks;
+            this.threshold = threshold;
+        }
+
+        void add(final byte[] chunk) throws IOException
+        {
+            this.byteSize += chunk.length;
+            if (this.channel == null && this.byteSize > this.threshold)
+            {
+                this.file = Files.createTempFile("url2text", ".txt");
+                this.channel = FileChannel.open(this.file,
+                        StandardOpenOption.WRITE);
+                for (final byte[] held : this.chunks)
+                {
+                    write(held);
+                }
+                this.chunks = null;
+            }
+            if (this.channel == null)
+            {
+                this.chunks.add(chunk);
+            }
+            else
+            {
+                write(chunk);
+            }
+        }
+
+        private void write(final byte[] chunk) throws IOException
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining())
+            {
+                this.channel.write(buffer);
+            }
+        }
+
+        void close() throws IOException
+        {
+            if (this.channel != null)
+            {
+                this.channel.close();
+            }
+        }
+
+        void discard()
+        {
+            try
+            {
+                close();
+                if (this.file != null)
+                {
+                    Files.deleteIfExists(this.file);
+                }
+            }
+            catch (IOException e)
+            {
+                // nothing to be done
+            }
+        }
+    }
+}
@@ -51,6 +51,19 @@ public class Constants
     public static final String HDR_STATUS = "Status";
     public static final String HDR_STATUS_MESSAGE = "Status-Message";
     public static final String HDR_TRANSACTION_METADATA = "Transaction-Metadata";
+    public static final String HDR_TEXT_FINGERPRINT = "Text-Fingerprint";
+    public static final String HDR_DIGEST_ALGORITHM = "Digest-Algorithm";
+    public static final String HDR_DIGEST = "Digest";
+    public static final String HDR_TEXT_CHARS = "Chars";
+    public static final String HDR_TEXT_BYTES = "Bytes";
+    public static final String HDR_MAIN_CONTENT_CHARS = "Main-Content-Chars";
+    public static final String HDR_PAGE_TEXT_CHARS = "Page-Text-Chars";
+    public static final String HDR_EXTRACTION_DURATION = "Extraction-Duration";
+    public static final String HDR_PAGE_STRUCTURE = "Page-Structure";
+    public static final String HDR_CANONICAL_URL = "Canonical-Url";
+    public static final String HDR_ROBOTS = "Robots";
+    public static final String HDR_HEADINGS = "Headings";
+    public static final String HDR_LINKS = "Links";
 
     // Url2Text.class System property keys. Also used as GET params (length
     // irrelevant as not intended to be typed).
@@ -74,6 +87,11 @@ public class Constants
     public static final String KEY_NETWORK_TIMEOUT = "url2text.networktimeout";
     public static final String KEY_JAVASCRIPT_TIMEOUT = "url2text.javascripttimeout";
     public static final String KEY_MAX_CONTENT_LENGTH = "url2text.maxcontentlength";
+    public static final String KEY_STREAM_BINARY_CONTENT = "url2text.streambinarycontent";
+    public static final String KEY_BODY_MEMORY_THRESHOLD = "url2text.bodymemorythreshold";
+    public static final String KEY_TEXT_DIGEST_ALGORITHM = "url2text.textdigestalgorithm";
+    public static final String KEY_MAIN_CONTENT_ONLY = "url2text.maincontentonly";
+    public static final String KEY_INCLUDE_STRUCTURE = "url2text.includestructure";
     // GET only params
     public static final String KEY_REQUEST_URL = "url2text.requesturl";
     public static final String KEY_LAST_MODIFIED = "url2text.lastmodified";
@@ -90,7 +108,9 @@ public class Constants
             KEY_USE_INSECURE_SSL, KEY_REDIRECT_ENABLED, KEY_COOKIES_ENABLED,
             KEY_CLEAR_COOKIES, KEY_CLEAR_EXPIRED_COOKIES, KEY_INCLUDE_HEADERS,
             KEY_INCLUDE_METADATA, KEY_NETWORK_TIMEOUT, KEY_JAVASCRIPT_TIMEOUT,
-            KEY_MAX_CONTENT_LENGTH 
+            KEY_MAX_CONTENT_LENGTH, KEY_STREAM_BINARY_CONTENT,
+            KEY_BODY_MEMORY_THRESHOLD, KEY_TEXT_DIGEST_ALGORITHM,
+            KEY_MAIN_CONTENT_ONLY, KEY_INCLUDE_STRUCTURE
           };
 
     // Default name of property file. Also used as System property key.
@@ -102,7 +122,7 @@ public class Constants
     // Supported output formats
     public enum OutputFormat
     {
-        PLAIN, JSON
+        PLAIN, JSON, JSONL
     };
 
 }
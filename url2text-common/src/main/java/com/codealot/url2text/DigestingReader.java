@@ -0,0 +1,276 @@
+package com.codealot.url2text;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reader which fingerprints the text passing through it: a digest of its UTF-8
+ * encoding, plus counts of its chars and UTF-8 bytes. The results are
+ * available once the end of the text has been read.
+ * <p>
+ * The text is encoded a char at a time into a small buffer, so no copy of it
+ * is made. Unpaired surrogates are encoded as '?', as by
+ * {@link String#getBytes(java.nio.charset.Charset)}. The digest is given in
+ * upper case hex, so a SHA-1 digest matches the id a textStore FileStore
+ * would give the text.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class DigestingReader extends FilterReader
+{
+    private final String algorithm;
+    private final MessageDigest digest;
+
+    // UTF-8 bytes awaiting the digest
+    private final byte[] encoded = new byte[4 * 1024];
+    private int encodedLength = 0;
+
+    // high surrogate awaiting its partner, or 0
+    private char pendingHigh = 0;
+
+    private long charCount = 0L;
+    private long byteCount = 0L;
+    private String result = null;
+
+    /**
+     * Constructor.
+     *
+     * @param source
+     * @param algorithm
+     *            MessageDigest algorithm name, e.g. SHA-1
+     * @throws IllegalArgumentException
+     *             if the algorithm is not available
+     */
+    public DigestingReader(final Reader source, final String algorithm)
+    {
+        super(source);
+        try
+        {
+            this.digest = MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalArgumentException("Unknown digest algorithm: "
+                    + algorithm, e);
+        }
+        this.algorithm = algorithm;
+    }
+
+    public String getAlgorithm()
+    {
+        return this.algorithm;
+    }
+
+    /**
+     * True once the end of the text has been read.
+     *
+     * @return boolean flag
+     */
+    public boolean isComplete()
+    {
+        return this.result != null;
+    }
+
+    /**
+     * Returns the digest, in upper case hex.
+     *
+     * @return the digest, or null if the text has not been read to the end
+     */
+    public String getDigest()
+    {
+        return this.result;
+    }
+
+    /**
+     * Returns the number of chars read so far.
+     *
+     * @return count
+     */
+    public long getCharCount()
+    {
+        return this.charCount;
+    }
+
+    /**
+     * Returns the number of bytes of UTF-8 read so far. A trailing high
+     * surrogate is only counted once its partner is read.
+     *
+     * @return count
+     */
+    public long getByteCount()
+    {
+        return this.byteCount + this.encodedLength;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final int c = super.read();
+        if (c == -1)
+        {
+            complete();
+        }
+        else
+        {
+            this.charCount++;
+            encode((char) c);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len)
+            throws IOException
+    {
+        final int count = super.read(cbuf, off, len);
+        if (count == -1)
+        {
+            complete();
+        }
+        else
+        {
+            this.charCount += count;
+            for (int i = off; i < off + count; i++)
+            {
+                encode(cbuf[i]);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException
+    {
+        // skipped text still has to be digested
+        final char[] buffer = new char[(int) Math.min(n, 1024L)];
+        long skipped = 0L;
+        while (skipped < n)
+        {
+            final int count = read(buffer, 0,
+                    (int) Math.min(n - skipped, buffer.length));
+            if (count == -1)
+            {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException
+    {
+        throw new IOException("mark() not supported.");
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        throw new IOException("reset() not supported.");
+    }
+
+    private void encode(final char c)
+    {
+        if (this.encodedLength > this.encoded.length - 4)
+        {
+            flushEncoded();
+        }
+        if (this.pendingHigh != 0)
+        {
+            final char high = this.pendingHigh;
+            this.pendingHigh = 0;
+            if (Character.isLowSurrogate(c))
+            {
+                final int codePoint = Character.toCodePoint(high, c);
+                put(0xF0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3F));
+                put(0x80 | ((codePoint >> 6) & 0x3F));
+                put(0x80 | (codePoint & 0x3F));
+                return;
+            }
+            put('?');
+        }
+
+        if (c < 0x80)
+        {
+            put(c);
+        }
+        else if (c < 0x800)
+        {
+            put(0xC0 | (c >> 6));
+            put(0x80 | (c & 0x3F));
+        }
+        else if (Character.isHighSurrogate(c))
+        {
+            this.pendingHigh = c;
+        }
+        else if (Character.isLowSurrogate(c))
+        {
+            put('?');
+        }
+        else
+        {
+            put(0xE0 | (c >> 12));
+            put(0x80 | ((c >> 6) & 0x3F));
+            put(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void put(final int b)
+    {
+        this.encoded[this.encodedLength++] = (byte) b;
+    }
+
+    private void flushEncoded()
+    {
+        this.digest.update(this.encoded, 0, this.encodedLength);
+        this.byteCount += this.encodedLength;
+        this.encodedLength = 0;
+    }
+
+    private void complete()
+    {
+        if (this.result != null)
+        {
+            return;
+        }
+        if (this.pendingHigh != 0)
+        {
+            this.pendingHigh = 0;
+            put('?');
+        }
+        flushEncoded();
+
+        final byte[] hash = this.digest.digest();
+        final StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (final byte b : hash)
+        {
+            hex.append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF,
+                    16)));
+            hex.append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+        }
+        this.result = hex.toString();
+    }
+}
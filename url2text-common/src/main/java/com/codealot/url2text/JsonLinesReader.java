@@ -0,0 +1,298 @@
+package com.codealot.url2text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the Responses in JSON Lines input, as written by
+ * {@link JsonLinesWriter}. Blank lines are skipped.
+ * <p>
+ * Each line is parsed by {@link Response#fromJson(Reader, long)}, which is
+ * only allowed to read up to the end of the line, so neither the input nor a
+ * line is ever held in full. Close each Response returned, as its text may
+ * have been spilled to disk.
+ * <p>
+ * As an Iterator cannot throw checked exceptions, a malformed line causes an
+ * IllegalStateException, with the Url2TextException as its cause.
+ * <p>
+ * Not thread safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class JsonLinesReader implements Iterator<Response>, Closeable
+{
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Reader source;
+    private final long textMemoryThreshold;
+
+    // read ahead of the current line, shared by the line readers
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private Response next = null;
+    private boolean finished = false;
+    private long lineNumber = 0L;
+
+    /**
+     * Constructor reading UTF-8 from a stream, which is closed with this
+     * reader.
+     *
+     * @param source
+     */
+    public JsonLinesReader(final InputStream source)
+    {
+        this(new InputStreamReader(source, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Constructor. The source is closed with this reader.
+     *
+     * @param source
+     */
+    public JsonLinesReader(final Reader source)
+    {
+        this(source, Response.DEFAULT_TEXT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Constructor setting the text memory threshold used for each Response.
+     *
+     * @param source
+     *            closed with this reader
+     * @param textMemoryThreshold
+     *            see {@link Response#fromJson(Reader, long)}
+     */
+    public JsonLinesReader(final Reader source,
+            final long textMemoryThreshold)
+    {
+        this.source = source;
+        this.textMemoryThreshold = textMemoryThreshold;
+    }
+
+    /**
+     * Constructor reading UTF-8 from a file.
+     *
+     * @param file
+     * @throws Url2TextException
+     */
+    public JsonLinesReader(final Path file) throws Url2TextException
+    {
+        this(open(file));
+    }
+
+    private static Reader open(final Path file) throws Url2TextException
+    {
+        try
+        {
+            return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error opening " + file, e);
+        }
+    }
+
+    /**
+     * Returns the number of the line last read, counting from 1.
+     *
+     * @return line number
+     */
+    public long getLineNumber()
+    {
+        return this.lineNumber;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (this.next == null && !this.finished)
+        {
+            try
+            {
+                this.next = readNext();
+            }
+            catch (Url2TextException e)
+            {
+                this.finished = true;
+                throw new IllegalStateException("Bad JSON at line "
+                        + this.lineNumber, e);
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public Response next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        final Response result = this.next;
+        this.next = null;
+        return result;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.finished = true;
+        try
+        {
+            if (this.next != null)
+            {
+                this.next.close();
+                this.next = null;
+            }
+        }
+        finally
+        {
+            this.source.close();
+        }
+    }
+
+    private Response readNext() throws Url2TextException
+    {
+        try
+        {
+            // skip blank lines
+            while (true)
+            {
+                if (this.position == this.limit && !fill())
+                {
+                    this.finished = true;
+                    return null;
+                }
+                final char c = this.buffer[this.position];
+                if (!Character.isWhitespace(c))
+                {
+                    break;
+                }
+                if (c == '\n')
+                {
+                    this.lineNumber++;
+                }
+                this.position++;
+            }
+            this.lineNumber++;
+
+            final LineReader line = new LineReader();
+            final Response response = Response.fromJson(line,
+                    this.textMemoryThreshold);
+            line.skipToEnd();
+            return response;
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error reading JSON lines", e);
+        }
+    }
+
+    /**
+     * Refill the buffer, once it has been used up.
+     *
+     * @return false at the end of the input
+     * @throws IOException
+     */
+    private boolean fill() throws IOException
+    {
+        int count;
+        do
+        {
+            count = this.source.read(this.buffer, 0, this.buffer.length);
+        }
+        while (count == 0);
+        this.position = 0;
+        this.limit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    /**
+     * Reader which ends at the next line feed, consuming it. JSON strings
+     * cannot contain a raw line feed, so it always marks the end of a line.
+     * Chars are copied from the shared buffer a block at a time; what follows
+     * the line feed stays there for the next line.
+     */
+    private class LineReader extends Reader
+    {
+        private boolean ended = false;
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            if (this.ended || len == 0)
+            {
+                return this.ended ? -1 : 0;
+            }
+            final char[] buf = JsonLinesReader.this.buffer;
+            if (JsonLinesReader.this.position == JsonLinesReader.this.limit
+                    && !fill())
+            {
+                this.ended = true;
+                return -1;
+            }
+            final int start = JsonLinesReader.this.position;
+            final int end = Math.min(JsonLinesReader.this.limit, start + len);
+            int i = start;
+            while (i < end && buf[i] != '\n')
+            {
+                i++;
+            }
+            final int count = i - start;
+            System.arraycopy(buf, start, cbuf, off, count);
+            if (i < end)
+            {
+                // consume the line feed
+                this.ended = true;
+                i++;
+            }
+            JsonLinesReader.this.position = i;
+            return (count == 0 && this.ended) ? -1 : count;
+        }
+
+        void skipToEnd() throws IOException
+        {
+            final char[] discard = new char[1024];
+            while (read(discard, 0, discard.length) != -1)
+            {
+                // discard the rest of the line
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            // the source belongs to the enclosing reader
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.codealot.url2text;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes Responses in JSON Lines format: each one a compact JSON object on a
+ * line of its own, in the same layout as {@link Response#toJson()}.
+ * <p>
+ * One generator, with its buffer, is reused for every Response, and the text
+ * of each is copied from its Reader in chunks. Output is only flushed when
+ * requested, or on close. Read the output back with {@link JsonLinesReader}.
+ * <p>
+ * Not thread safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class JsonLinesWriter implements Closeable, Flushable
+{
+    private final JsonGenerator generator;
+    private final Closeable owned;
+    private long count = 0L;
+
+    /**
+     * Constructor writing UTF-8 to a stream. Closing this writer does not close
+     * the stream.
+     *
+     * @param destination
+     * @throws Url2TextException
+     */
+    public JsonLinesWriter(final OutputStream destination)
+            throws Url2TextException
+    {
+        this(destination, false);
+    }
+
+    /**
+     * Constructor writing to a Writer. Closing this writer does not close the
+     * destination.
+     *
+     * @param destination
+     * @throws Url2TextException
+     */
+    public JsonLinesWriter(final Writer destination) throws Url2TextException
+    {
+        try
+        {
+            this.generator = Response.JSON_FACTORY.createGenerator(destination);
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error creating JSON generator", e);
+        }
+        this.generator.setRootValueSeparator(null);
+        this.owned = null;
+    }
+
+    /**
+     * Constructor writing UTF-8 to a file, which is closed with this writer.
+     *
+     * @param file
+     * @param append
+     *            if true, lines are added to the end of an existing file
+     * @throws Url2TextException
+     */
+    public JsonLinesWriter(final Path file, final boolean append)
+            throws Url2TextException
+    {
+        this(open(file, append), true);
+    }
+
+    private JsonLinesWriter(final OutputStream destination,
+            final boolean owned) throws Url2TextException
+    {
+        try
+        {
+            this.generator = Response.JSON_FACTORY.createGenerator(destination,
+                    JsonEncoding.UTF8);
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error creating JSON generator", e);
+        }
+        this.generator.setRootValueSeparator(null);
+        this.owned = owned ? destination : null;
+    }
+
+    private static OutputStream open(final Path file, final boolean append)
+            throws Url2TextException
+    {
+        try
+        {
+            return new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND
+                            : StandardOpenOption.TRUNCATE_EXISTING));
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error opening " + file, e);
+        }
+    }
+
+    /**
+     * Writes the response as one line.
+     * <p>
+     * Beware. Unless the text has already been buffered (e.g. by
+     * {@link Response#getText()}), this method consumes the Response's Reader.
+     * The Response is not closed.
+     *
+     * @param response
+     * @throws Url2TextException
+     */
+    public void write(final Response response) throws Url2TextException
+    {
+        try
+        {
+            response.writeJson(this.generator);
+            this.generator.writeRaw('\n');
+            this.count++;
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error emitting JSON", e);
+        }
+    }
+
+    /**
+     * Returns the number of lines written.
+     *
+     * @return count
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        this.generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            this.generator.close();
+        }
+        finally
+        {
+            if (this.owned != null)
+            {
+                this.owned.close();
+            }
+        }
+    }
+}
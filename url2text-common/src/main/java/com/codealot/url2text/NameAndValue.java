@@ -90,7 +90,7 @@ public class NameAndValue implements Serializable, Comparable<NameAndValue>
     @Override
     public int hashCode()
     {
-        return Objects.hash(name, value);
+        return 31 * this.name.hashCode() + this.value.hashCode();
     }
 
     @Override
@@ -108,8 +108,8 @@ public class NameAndValue implements Serializable, Comparable<NameAndValue>
         else
         {
             final NameAndValue test = (NameAndValue) obj;
-            // all content is included in toString(), so this is safe.
-            result = test.toString().equals(this.toString());
+            result = test.name.equals(this.name)
+                    && test.value.equals(this.value);
         }
         return result;
     }
@@ -0,0 +1,335 @@
+package com.codealot.url2text;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact list of names and values, such as response headers or content
+ * metadata, which also serves as a multimap.
+ * <p>
+ * Names are canonicalised on the way in, so the same header name is held once
+ * however many responses carry it. Lookup by name ignores case, and takes
+ * constant time: an index is built on the first lookup after a change.
+ * <p>
+ * Elements are NameAndValue instances, as before, so they can still be
+ * updated in place. Note, though, that renaming an element in place is not
+ * seen by lookups until the list itself next changes.
+ * <p>
+ * Not thread safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class NameAndValues extends AbstractList<NameAndValue> implements
+        RandomAccess
+{
+    // bounds the memory used by names from untrusted content
+    private static final int MAX_CANONICAL_NAMES = 4 * 1024;
+    private static final ConcurrentMap<String, String> CANONICAL_NAMES = new ConcurrentHashMap<>();
+
+    private NameAndValue[] elements;
+    private int size = 0;
+
+    // open addressed: slot to 1 + the index of the first element with a name,
+    // or 0 if empty; then element index to the next with the same name, or -1
+    private int[] table = null;
+    private int[] next = null;
+    private int changes = 0;
+    private int indexedChanges = -1;
+
+    public NameAndValues()
+    {
+        this(8);
+    }
+
+    /**
+     * Constructor presizing the list.
+     *
+     * @param capacity
+     */
+    public NameAndValues(final int capacity)
+    {
+        this.elements = new NameAndValue[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Constructor holding the same elements as the given collection.
+     *
+     * @param elements
+     */
+    public NameAndValues(final Collection<? extends NameAndValue> elements)
+    {
+        this(elements.size());
+        addAll(elements);
+    }
+
+    /**
+     * Returns the canonical instance of the name, where there is one.
+     *
+     * @param name
+     * @return an equal String
+     */
+    static String canonical(final String name)
+    {
+        final String canonical = CANONICAL_NAMES.get(name);
+        if (canonical != null)
+        {
+            return canonical;
+        }
+        if (CANONICAL_NAMES.size() >= MAX_CANONICAL_NAMES)
+        {
+            return name;
+        }
+        final String previous = CANONICAL_NAMES.putIfAbsent(name, name);
+        return (previous == null) ? name : previous;
+    }
+
+    /**
+     * Returns the value of the first element with the name, ignoring case, in
+     * any list. A NameAndValues is searched through its index, and other lists
+     * one element at a time.
+     *
+     * @param list
+     * @param name
+     * @return the value, or null if there is no such element
+     */
+    public static String getFirst(final List<NameAndValue> list,
+            final String name)
+    {
+        if (list instanceof NameAndValues)
+        {
+            return ((NameAndValues) list).getFirst(name);
+        }
+        for (final NameAndValue element : list)
+        {
+            if (element.getName().equalsIgnoreCase(name))
+            {
+                return element.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the first element with the name, ignoring case.
+     *
+     * @param name
+     * @return the value, or null if there is no such element
+     */
+    public String getFirst(final String name)
+    {
+        final int index = indexOfName(name);
+        return (index == -1) ? null : this.elements[index].getValue();
+    }
+
+    /**
+     * Returns the values of every element with the name, ignoring case, in
+     * order.
+     *
+     * @param name
+     * @return the values, possibly none
+     */
+    public List<String> getAll(final String name)
+    {
+        int index = indexOfName(name);
+        if (index == -1)
+        {
+            return Collections.emptyList();
+        }
+        final List<String> values = new ArrayList<>(2);
+        while (index != -1)
+        {
+            values.add(this.elements[index].getValue());
+            index = this.next[index];
+        }
+        return values;
+    }
+
+    /**
+     * True if an element has the name, ignoring case.
+     *
+     * @param name
+     * @return boolean flag
+     */
+    public boolean containsName(final String name)
+    {
+        return indexOfName(name) != -1;
+    }
+
+    @Override
+    public NameAndValue get(final int index)
+    {
+        checkIndex(index, this.size);
+        return this.elements[index];
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public NameAndValue set(final int index, final NameAndValue element)
+    {
+        checkIndex(index, this.size);
+        final NameAndValue previous = this.elements[index];
+        this.elements[index] = canonicalise(element);
+        this.changes++;
+        return previous;
+    }
+
+    @Override
+    public void add(final int index, final NameAndValue element)
+    {
+        checkIndex(index, this.size + 1);
+        if (this.size == this.elements.length)
+        {
+            this.elements = Arrays.copyOf(this.elements, this.size * 2);
+        }
+        System.arraycopy(this.elements, index, this.elements, index + 1,
+                this.size - index);
+        this.elements[index] = canonicalise(element);
+        this.size++;
+        this.changes++;
+        this.modCount++;
+    }
+
+    @Override
+    public NameAndValue remove(final int index)
+    {
+        checkIndex(index, this.size);
+        final NameAndValue previous = this.elements[index];
+        System.arraycopy(this.elements, index + 1, this.elements, index,
+                this.size - index - 1);
+        this.elements[--this.size] = null;
+        this.changes++;
+        this.modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(this.elements, 0, this.size, null);
+        this.size = 0;
+        this.changes++;
+        this.modCount++;
+    }
+
+    private static NameAndValue canonicalise(final NameAndValue element)
+    {
+        Objects.requireNonNull(element, "No NameAndValue supplied.");
+        element.setName(canonical(element.getName()));
+        return element;
+    }
+
+    private static void checkIndex(final int index, final int limit)
+    {
+        if (index < 0 || index >= limit)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+    }
+
+    private int indexOfName(final String name)
+    {
+        if (this.size == 0)
+        {
+            return -1;
+        }
+        if (this.indexedChanges != this.changes)
+        {
+            buildIndex();
+        }
+        final int mask = this.table.length - 1;
+        for (int slot = hash(name) & mask;; slot = (slot + 1) & mask)
+        {
+            final int entry = this.table[slot];
+            if (entry == 0)
+            {
+                return -1;
+            }
+            if (this.elements[entry - 1].getName().equalsIgnoreCase(name))
+            {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void buildIndex()
+    {
+        int capacity = 4;
+        while (capacity < 2 * this.size)
+        {
+            capacity <<= 1;
+        }
+        if (this.table == null || this.table.length != capacity)
+        {
+            this.table = new int[capacity];
+        }
+        else
+        {
+            Arrays.fill(this.table, 0);
+        }
+        if (this.next == null || this.next.length < this.size)
+        {
+            this.next = new int[this.elements.length];
+        }
+
+        // in reverse, so each chain runs in list order
+        final int mask = capacity - 1;
+        for (int i = this.size - 1; i >= 0; i--)
+        {
+            final String name = this.elements[i].getName();
+            int slot = hash(name) & mask;
+            while (this.table[slot] != 0
+                    && !this.elements[this.table[slot] - 1].getName()
+                            .equalsIgnoreCase(name))
+            {
+                slot = (slot + 1) & mask;
+            }
+            this.next[i] = this.table[slot] - 1;
+            this.table[slot] = i + 1;
+        }
+        this.indexedChanges = this.changes;
+    }
+
+    /**
+     * Hash ignoring case, consistent with String.equalsIgnoreCase().
+     *
+     * @param name
+     * @return hash
+     */
+    private static int hash(final String name)
+    {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+        {
+            hash = 31 * hash
+                    + Character.toLowerCase(Character.toUpperCase(name
+                            .charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
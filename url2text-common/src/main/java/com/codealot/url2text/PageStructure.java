@@ -0,0 +1,559 @@
+package com.codealot.url2text;
+
+import static com.codealot.url2text.Constants.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The structure of an HTML page, collected while its text is extracted: the
+ * outgoing links, the headings, the canonical URL and the meta robots
+ * directives. Immutable.
+ * <p>
+ * In JSON, each link is an array of its absolute URL and anchor text, plus
+ * its rel attribute when present, and each heading an array of its level and
+ * text. Empty parts are left out.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class PageStructure
+{
+    private final String canonicalUrl;
+    private final String robots;
+    private final List<Heading> headings;
+    private final List<Link> links;
+
+    /**
+     * @param canonicalUrl
+     *            absolute, or null if the page names none
+     * @param robots
+     *            the content of the robots meta tag(s), or null if none
+     * @param headings
+     *            in document order
+     * @param links
+     *            in document order
+     */
+    public PageStructure(final String canonicalUrl, final String robots,
+            final List<Heading> headings, final List<Link> links)
+    {
+        this.canonicalUrl = canonicalUrl;
+        this.robots = robots;
+        this.headings = Collections.unmodifiableList(new ArrayList<>(
+                Objects.requireNonNull(headings)));
+        this.links = Collections.unmodifiableList(new ArrayList<>(Objects
+                .requireNonNull(links)));
+    }
+
+    /**
+     * @return the canonical URL, or null if the page names none
+     */
+    public String getCanonicalUrl()
+    {
+        return this.canonicalUrl;
+    }
+
+    /**
+     * @return the robots meta directives, e.g. "noindex, nofollow", or null
+     */
+    public String getRobots()
+    {
+        return this.robots;
+    }
+
+    public boolean isNoIndex()
+    {
+        return hasRobotsDirective("noindex");
+    }
+
+    public boolean isNoFollow()
+    {
+        return hasRobotsDirective("nofollow");
+    }
+
+    private boolean hasRobotsDirective(final String directive)
+    {
+        if (this.robots == null)
+        {
+            return false;
+        }
+        for (final String part : this.robots.split(","))
+        {
+            final String value = part.trim().toLowerCase(Locale.ENGLISH);
+            if (value.equals(directive) || value.equals("none"))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Heading> getHeadings()
+    {
+        return this.headings;
+    }
+
+    public List<Link> getLinks()
+    {
+        return this.links;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.canonicalUrl, this.robots, this.headings,
+                this.links);
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass())
+        {
+            return false;
+        }
+        final PageStructure test = (PageStructure) obj;
+        return Objects.equals(this.canonicalUrl, test.canonicalUrl)
+                && Objects.equals(this.robots, test.robots)
+                && this.headings.equals(test.headings)
+                && this.links.equals(test.links);
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        appendTo(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends the plain text form used by {@link Response#toString()}.
+     * 
+     * @param buffer
+     */
+    void appendTo(final StringBuilder buffer)
+    {
+        if (this.canonicalUrl != null)
+        {
+            buffer.append("Canonical = ").append(this.canonicalUrl)
+                    .append('\n');
+        }
+        if (this.robots != null)
+        {
+            buffer.append("Robots = ").append(this.robots).append('\n');
+        }
+        for (final Heading heading : this.headings)
+        {
+            buffer.append(heading).append('\n');
+        }
+        for (final Link link : this.links)
+        {
+            buffer.append(link).append('\n');
+        }
+    }
+
+    /**
+     * Writes this object as one JSON object.
+     * 
+     * @param jsonGenerator
+     * @throws IOException
+     */
+    void writeJson(final JsonGenerator jsonGenerator) throws IOException
+    {
+        jsonGenerator.writeStartObject();
+        if (this.canonicalUrl != null)
+        {
+            jsonGenerator.writeStringField(HDR_CANONICAL_URL,
+                    this.canonicalUrl);
+        }
+        if (this.robots != null)
+        {
+            jsonGenerator.writeStringField(HDR_ROBOTS, this.robots);
+        }
+        if (!this.headings.isEmpty())
+        {
+            jsonGenerator.writeArrayFieldStart(HDR_HEADINGS);
+            for (final Heading heading : this.headings)
+            {
+                jsonGenerator.writeStartArray();
+                jsonGenerator.writeNumber(heading.getLevel());
+                jsonGenerator.writeString(heading.getText());
+                jsonGenerator.writeEndArray();
+            }
+            jsonGenerator.writeEndArray();
+        }
+        if (!this.links.isEmpty())
+        {
+            jsonGenerator.writeArrayFieldStart(HDR_LINKS);
+            for (final Link link : this.links)
+            {
+                jsonGenerator.writeStartArray();
+                jsonGenerator.writeString(link.getUrl());
+                jsonGenerator.writeString(link.getText());
+                if (!link.getRel().isEmpty())
+                {
+                    jsonGenerator.writeString(link.getRel());
+                }
+                jsonGenerator.writeEndArray();
+            }
+            jsonGenerator.writeEndArray();
+        }
+        jsonGenerator.writeEndObject();
+    }
+
+    /**
+     * Reads an object written by {@link #writeJson(JsonGenerator)}.
+     * 
+     * @param parser
+     *            positioned at the start of the object
+     * @return the structure
+     * @throws IOException
+     */
+    static PageStructure readJson(final JsonParser parser) throws IOException
+    {
+        String canonicalUrl = null;
+        String robots = null;
+        final List<Heading> headings = new ArrayList<>();
+        final List<Link> links = new ArrayList<>();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT)
+        {
+            if (token != JsonToken.FIELD_NAME)
+            {
+                throw new IOException("Expected field name but found "
+                        + token);
+            }
+            final String name = parser.getCurrentName();
+            token = parser.nextToken();
+
+            switch (name)
+            {
+            case HDR_CANONICAL_URL:
+                canonicalUrl = parser.getText();
+                break;
+            case HDR_ROBOTS:
+                robots = parser.getText();
+                break;
+            case HDR_HEADINGS:
+                while (parser.nextToken() == JsonToken.START_ARRAY)
+                {
+                    final List<String> parts = readStrings(parser);
+                    headings.add(new Heading(Integer.parseInt(part(parts, 0)),
+                            part(parts, 1)));
+                }
+                break;
+            case HDR_LINKS:
+                while (parser.nextToken() == JsonToken.START_ARRAY)
+                {
+                    final List<String> parts = readStrings(parser);
+                    links.add(new Link(part(parts, 0), part(parts, 1), part(
+                            parts, 2)));
+                }
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        return new PageStructure(canonicalUrl, robots, headings, links);
+    }
+
+    /**
+     * Reads the tree form of an object written by
+     * {@link #writeJson(JsonGenerator)}.
+     * 
+     * @param node
+     * @return the structure
+     */
+    static PageStructure readJson(final JsonNode node)
+    {
+        final JsonNode canonicalUrl = node.get(HDR_CANONICAL_URL);
+        final JsonNode robots = node.get(HDR_ROBOTS);
+        final List<Heading> headings = new ArrayList<>();
+        final List<Link> links = new ArrayList<>();
+
+        final JsonNode headingsNode = node.get(HDR_HEADINGS);
+        if (headingsNode != null)
+        {
+            for (final Iterator<JsonNode> i = headingsNode.elements(); i
+                    .hasNext();)
+            {
+                final JsonNode heading = i.next();
+                headings.add(new Heading(heading.path(0).asInt(), heading
+                        .path(1).asText()));
+            }
+        }
+        final JsonNode linksNode = node.get(HDR_LINKS);
+        if (linksNode != null)
+        {
+            for (final Iterator<JsonNode> i = linksNode.elements(); i
+                    .hasNext();)
+            {
+                final JsonNode link = i.next();
+                links.add(new Link(link.path(0).asText(), link.path(1)
+                        .asText(), link.path(2).asText()));
+            }
+        }
+        return new PageStructure((canonicalUrl == null) ? null
+                : canonicalUrl.textValue(), (robots == null) ? null
+                : robots.textValue(), headings, links);
+    }
+
+    private static List<String> readStrings(final JsonParser parser)
+            throws IOException
+    {
+        final List<String> parts = new ArrayList<>(3);
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+        {
+            parts.add(parser.getText());
+        }
+        return parts;
+    }
+
+    private static String part(final List<String> parts, final int index)
+    {
+        return (index < parts.size()) ? parts.get(index) : "";
+    }
+
+    /**
+     * Writes this object in the binary form of
+     * {@link Response#writeBinary(OutputStream)}.
+     * 
+     * @param out
+     * @throws IOException
+     */
+    void writeBinary(final OutputStream out) throws IOException
+    {
+        writeNullable(out, this.canonicalUrl);
+        writeNullable(out, this.robots);
+        BinaryCodec.writeLong(out, this.headings.size());
+        for (final Heading heading : this.headings)
+        {
+            BinaryCodec.writeLong(out, heading.getLevel());
+            BinaryCodec.writeString(out, heading.getText());
+        }
+        BinaryCodec.writeLong(out, this.links.size());
+        for (final Link link : this.links)
+        {
+            BinaryCodec.writeString(out, link.getUrl());
+            BinaryCodec.writeString(out, link.getText());
+            BinaryCodec.writeString(out, link.getRel());
+        }
+    }
+
+    /**
+     * Reads an object written by {@link #writeBinary(OutputStream)}.
+     * 
+     * @param in
+     * @return the structure
+     * @throws IOException
+     */
+    static PageStructure readBinary(final InputStream in) throws IOException
+    {
+        final String canonicalUrl = readNullable(in);
+        final String robots = readNullable(in);
+        final long headingCount = BinaryCodec.readLong(in);
+        final List<Heading> headings = new ArrayList<>();
+        for (long i = 0; i < headingCount; i++)
+        {
+            headings.add(new Heading((int) BinaryCodec.readLong(in),
+                    BinaryCodec.readString(in)));
+        }
+        final long linkCount = BinaryCodec.readLong(in);
+        final List<Link> links = new ArrayList<>();
+        for (long i = 0; i < linkCount; i++)
+        {
+            links.add(new Link(BinaryCodec.readString(in), BinaryCodec
+                    .readString(in), BinaryCodec.readString(in)));
+        }
+        return new PageStructure(canonicalUrl, robots, headings, links);
+    }
+
+    private static void writeNullable(final OutputStream out,
+            final String value) throws IOException
+    {
+        BinaryCodec.writeLong(out, (value == null) ? 0L : 1L);
+        if (value != null)
+        {
+            BinaryCodec.writeString(out, value);
+        }
+    }
+
+    private static String readNullable(final InputStream in)
+            throws IOException
+    {
+        return (BinaryCodec.readLong(in) == 0L) ? null : BinaryCodec
+                .readString(in);
+    }
+
+    /**
+     * A heading, h1 to h6.
+     */
+    public static final class Heading
+    {
+        private final int level;
+        private final String text;
+
+        public Heading(final int level, final String text)
+        {
+            this.level = level;
+            this.text = Objects.requireNonNull(text);
+        }
+
+        public int getLevel()
+        {
+            return this.level;
+        }
+
+        public String getText()
+        {
+            return this.text;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.level, this.text);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (obj == null || obj.getClass() != this.getClass())
+            {
+                return false;
+            }
+            final Heading test = (Heading) obj;
+            return this.level == test.level && this.text.equals(test.text);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "H" + this.level + " = " + this.text;
+        }
+    }
+
+    /**
+     * An outgoing link.
+     */
+    public static final class Link
+    {
+        private final String url;
+        private final String text;
+        private final String rel;
+
+        /**
+         * @param url
+         *            absolute
+         * @param text
+         *            the anchor text, or empty
+         * @param rel
+         *            the rel attribute, e.g. "nofollow", or empty
+         */
+        public Link(final String url, final String text, final String rel)
+        {
+            this.url = Objects.requireNonNull(url);
+            this.text = (text == null) ? "" : text;
+            this.rel = (rel == null) ? "" : rel;
+        }
+
+        public String getUrl()
+        {
+            return this.url;
+        }
+
+        public String getText()
+        {
+            return this.text;
+        }
+
+        public String getRel()
+        {
+            return this.rel;
+        }
+
+        public boolean isNoFollow()
+        {
+            for (final String part : this.rel.split("\\s+"))
+            {
+                if (part.equalsIgnoreCase("nofollow"))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.url, this.text, this.rel);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (obj == null || obj.getClass() != this.getClass())
+            {
+                return false;
+            }
+            final Link test = (Link) obj;
+            return this.url.equals(test.url) && this.text.equals(test.text)
+                    && this.rel.equals(test.rel);
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder buffer = new StringBuilder("Link = ")
+                    .append(this.url);
+            if (!this.text.isEmpty())
+            {
+                buffer.append(" \"").append(this.text).append('"');
+            }
+            if (!this.rel.isEmpty())
+            {
+                buffer.append(" [").append(this.rel).append(']');
+            }
+            return buffer.toString();
+        }
+    }
+}
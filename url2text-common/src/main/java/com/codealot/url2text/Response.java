@@ -2,13 +2,21 @@ package com.codealot.url2text;
 
 import static com.codealot.url2text.Constants.*;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -17,10 +25,14 @@ import java.util.Objects;
 import org.apache.commons.lang3.time.DateFormatUtils;
 
 import com.codealot.url2text.Constants.OutputFormat;
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -54,6 +66,22 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class Response implements Closeable, AutoCloseable
 {
+    // thread safe, so shared by all instances
+    static final JsonFactory JSON_FACTORY = new JsonFactory().disable(
+            JsonGenerator.Feature.AUTO_CLOSE_TARGET).disable(
+            JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /**
+     * Bytes of (UTF-8) text buffered in memory, once read, before it is
+     * spilled to disk. See {@link #setTextMemoryThreshold(long)} and
+     * {@link #fromJson(Reader, long)}.
+     */
+    public static final long DEFAULT_TEXT_MEMORY_THRESHOLD = 8L * 1024 * 1024;
+
+    // chars of text copied at a time by writeJson(), writeBinary() and
+    // writeTo()
+    private static final int TEXT_CHUNK_SIZE = 8 * 1024;
+
     // transaction metadata
     private String requestPage = STR_NOT_SET;
     private String landingPage = STR_NOT_SET;
@@ -70,16 +98,28 @@ public class Response implements Closeable, AutoCloseable
     private long conversionDuration = 0L;
 
     // optional content
-    private List<NameAndValue> responseHeaders = new ArrayList<>();
-    private List<NameAndValue> contentMetadata = new ArrayList<>();
+    private List<NameAndValue> responseHeaders = new NameAndValues();
+    private List<NameAndValue> contentMetadata = new NameAndValues();
+    private PageStructure pageStructure = null;
 
     // text vars
     private Reader textReader = new StringReader(STR_NOT_SET);
-    private String text = null; // used to make getText(), toString() and
-                                // toJson() repeatable.
+    private CompactText text = null; // used to make getText(), toString()
+                                     // and toJson() repeatable.
+
+    private long textMemoryThreshold = DEFAULT_TEXT_MEMORY_THRESHOLD;
 
-    // operational flag
+    // text fingerprint, available once the text has been read through the
+    // digesting reader
+    private String textDigestAlgorithm = STR_NOT_SET;
+    private String textDigest = STR_NOT_SET;
+    private long textCharCount = LONG_NOT_SET;
+    private long textByteCount = LONG_NOT_SET;
+    private DigestingReader digestingReader = null;
+
+    // operational flags
     private boolean textSupplied = false;
+    private boolean closed = false;
 
     // constructor
     public Response()
@@ -87,6 +127,59 @@ public class Response implements Closeable, AutoCloseable
         // default
     }
 
+    /**
+     * Copy constructor. The text of the original is read in full, so that both
+     * instances can then be read independently of each other.
+     * 
+     * @param original
+     * @throws Url2TextException
+     */
+    public Response(final Response original) throws Url2TextException
+    {
+        Objects.requireNonNull(original, "No Response supplied.");
+        original.getTextFromReader();
+
+        this.requestPage = original.requestPage;
+        this.landingPage = original.landingPage;
+        this.status = original.status;
+        this.statusMessage = original.statusMessage;
+        this.fetchDate = new Date(original.fetchDate.getTime());
+        this.fetchDuration = original.fetchDuration;
+        this.contentTitle = original.contentTitle;
+        this.contentType = original.contentType;
+        this.contentCharset = original.contentCharset;
+        this.contentLength = original.contentLength;
+        this.etag = original.etag;
+        this.lastModified = original.lastModified;
+        this.conversionDuration = original.conversionDuration;
+
+        for (final NameAndValue header : original.responseHeaders)
+        {
+            this.responseHeaders.add(new NameAndValue(header.getName(), header
+                    .getValue()));
+        }
+        for (final NameAndValue metadata : original.contentMetadata)
+        {
+            this.contentMetadata.add(new NameAndValue(metadata.getName(),
+                    metadata.getValue()));
+        }
+        // immutable, so can be shared
+        this.pageStructure = original.pageStructure;
+
+        // immutable, so can be shared
+        this.text = (original.text == null) ? CompactText.EMPTY
+                : original.text.retain();
+        this.textMemoryThreshold = original.textMemoryThreshold;
+
+        original.updateFingerprint();
+        this.textDigestAlgorithm = original.textDigestAlgorithm;
+        this.textDigest = original.textDigest;
+        this.textCharCount = original.textCharCount;
+        this.textByteCount = original.textByteCount;
+        this.textReader = null;
+        this.textSupplied = true;
+    }
+
     /**
      * Constructor to build an instance from the output of {@link #toJson()}.
      * 
@@ -135,8 +228,370 @@ public class Response implements Closeable, AutoCloseable
             this.contentMetadata.add(new NameAndValue(key, value));
         }
 
+        final JsonNode structureNode = rootNode.get(HDR_PAGE_STRUCTURE);
+        if (structureNode != null)
+        {
+            this.pageStructure = PageStructure.readJson(structureNode);
+        }
+
         this.textReader = new StringReader(rootNode.get(HDR_CONVERTED_TEXT)
                 .textValue());
+
+        final JsonNode fingerprintNode = rootNode.get(HDR_TEXT_FINGERPRINT);
+        if (fingerprintNode != null)
+        {
+            this.textDigestAlgorithm = fingerprintNode.get(
+                    HDR_DIGEST_ALGORITHM).textValue();
+            this.textDigest = fingerprintNode.get(HDR_DIGEST).textValue();
+            this.textCharCount = fingerprintNode.get(HDR_TEXT_CHARS).asLong();
+            this.textByteCount = fingerprintNode.get(HDR_TEXT_BYTES).asLong();
+        }
+    }
+
+    /**
+     * Builds an instance from the output of {@link #toJson()}, read from a
+     * stream in UTF-8. See {@link #fromJson(Reader, long)}.
+     * 
+     * @param source
+     *            not closed
+     * @return the response
+     * @throws Url2TextException
+     */
+    public static Response fromJson(final InputStream source)
+            throws Url2TextException
+    {
+        return fromJson(new InputStreamReader(source, StandardCharsets.UTF_8),
+                DEFAULT_TEXT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Builds an instance from the output of {@link #toJson()}. See
+     * {@link #fromJson(Reader, long)}.
+     * 
+     * @param source
+     *            not closed
+     * @return the response
+     * @throws Url2TextException
+     */
+    public static Response fromJson(final Reader source)
+            throws Url2TextException
+    {
+        return fromJson(source, DEFAULT_TEXT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Builds an instance from the output of {@link #toJson()}, without holding
+     * the whole document.
+     * <p>
+     * The JSON is read with a streaming parser. The converted text is decoded
+     * straight from the source into the response's text buffer, as though
+     * {@link #getText()} had been called, so is spilled to a temporary file
+     * once it exceeds the threshold. See
+     * {@link #setTextMemoryThreshold(long)}; {@link #close()} deletes the
+     * file.
+     * 
+     * @param source
+     *            not closed
+     * @param textMemoryThreshold
+     *            number of bytes of (UTF-8) text held in memory before
+     *            spilling
+     * @return the response
+     * @throws Url2TextException
+     */
+    public static Response fromJson(final Reader source,
+            final long textMemoryThreshold) throws Url2TextException
+    {
+        final Response response = new Response();
+        response.setTextMemoryThreshold(textMemoryThreshold);
+        CompactText.Builder text = null;
+        try
+        {
+            JsonParser parser = JSON_FACTORY.createParser(source);
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_OBJECT)
+            {
+                expect(token, JsonToken.FIELD_NAME);
+                final String name = parser.getCurrentName();
+                token = parser.nextToken();
+
+                if (name.equals(HDR_TRANSACTION_METADATA))
+                {
+                    expect(token, JsonToken.START_OBJECT);
+                    response.readTransactionMetadata(parser);
+                }
+                else if (name.equals(HDR_RESPONSE_HEADERS))
+                {
+                    expect(token, JsonToken.START_OBJECT);
+                    readNameAndValues(parser, response.responseHeaders);
+                }
+                else if (name.equals(HDR_CONTENT_METADATA))
+                {
+                    expect(token, JsonToken.START_OBJECT);
+                    readNameAndValues(parser, response.contentMetadata);
+                }
+                else if (name.equals(HDR_PAGE_STRUCTURE))
+                {
+                    expect(token, JsonToken.START_OBJECT);
+                    response.pageStructure = PageStructure.readJson(parser);
+                }
+                else if (name.equals(HDR_TEXT_FINGERPRINT))
+                {
+                    expect(token, JsonToken.START_OBJECT);
+                    response.readFingerprint(parser);
+                }
+                else if (name.equals(HDR_CONVERTED_TEXT)
+                        && token == JsonToken.VALUE_STRING)
+                {
+                    // the parser has not yet read the string, so decode it
+                    // here, then resume parsing after it
+                    text = new CompactText.Builder(response.contentLength,
+                            textMemoryThreshold);
+                    final Reader rest = decodeString(parser, source, text);
+                    response.setText(text.toText());
+                    text = null;
+
+                    parser = JSON_FACTORY.createParser(new JoinedReader(
+                            new StringReader("{\"\":0"), rest));
+                    expect(parser.nextToken(), JsonToken.START_OBJECT);
+                    expect(parser.nextToken(), JsonToken.FIELD_NAME);
+                    parser.nextToken();
+                }
+                else
+                {
+                    // unknown field, or null text
+                    parser.skipChildren();
+                }
+            }
+            return response;
+        }
+        catch (IOException | ParseException e)
+        {
+            if (text != null)
+            {
+                text.discard();
+            }
+            response.releaseText();
+            throw new Url2TextException("Error parsing JSON", e);
+        }
+    }
+
+    /**
+     * Writes this object in a compact binary form, for passing between
+     * processes. It is smaller, and much quicker to write and read, than JSON;
+     * dates and numbers are not formatted, and text is not escaped.
+     * <p>
+     * The layout is a 4 byte signature, the transaction metadata (including
+     * the content title), the response headers and content metadata as counted
+     * lists of names and values, the page structure if any, the text as UTF-8
+     * chunks, each preceded by its length and terminated by an empty chunk,
+     * then the text fingerprint. The last byte of the signature is the format
+     * version, which is bumped whenever the layout changes. See
+     * {@link BinaryCodec}. Read it back with
+     * {@link #readBinary(InputStream)}. Instances can be written one after
+     * another to the same stream.
+     * <p>
+     * Beware. Unless the text has already been buffered (e.g. by
+     * {@link #getText()}), this method consumes the internal Reader, so the
+     * text can only be written once. The destination is flushed, but not
+     * closed.
+     * 
+     * @param destination
+     * @throws Url2TextException
+     */
+    public void writeBinary(final OutputStream destination)
+            throws Url2TextException
+    {
+        try
+        {
+            final OutputStream out = new BufferedOutputStream(destination,
+                    TEXT_CHUNK_SIZE);
+            out.write(BinaryCodec.MAGIC);
+
+            BinaryCodec.writeString(out, this.requestPage);
+            BinaryCodec.writeString(out, this.landingPage);
+            BinaryCodec.writeLong(out, this.status);
+            BinaryCodec.writeString(out, this.statusMessage);
+            BinaryCodec.writeLong(out, this.fetchDate.getTime());
+            BinaryCodec.writeLong(out, this.fetchDuration);
+            BinaryCodec.writeString(out, this.contentTitle);
+            BinaryCodec.writeString(out, this.contentType);
+            BinaryCodec.writeString(out, this.contentCharset);
+            BinaryCodec.writeLong(out, this.contentLength);
+            BinaryCodec.writeString(out, this.etag);
+            BinaryCodec.writeString(out, this.lastModified);
+            BinaryCodec.writeLong(out, this.conversionDuration);
+
+            writeBinaryNameAndValues(out, this.responseHeaders);
+            writeBinaryNameAndValues(out, this.contentMetadata);
+            BinaryCodec.writeLong(out, (this.pageStructure == null) ? 0L
+                    : 1L);
+            if (this.pageStructure != null)
+            {
+                this.pageStructure.writeBinary(out);
+            }
+
+            final Reader reader = getTextReader();
+            if (reader != null)
+            {
+                final char[] buffer = new char[TEXT_CHUNK_SIZE];
+                int held = 0;
+                int count;
+                while ((count = reader.read(buffer, held, buffer.length
+                        - held)) != -1)
+                {
+                    int length = held + count;
+                    // never split a surrogate pair between chunks
+                    held = Character.isHighSurrogate(buffer[length - 1]) ? 1
+                            : 0;
+                    length -= held;
+                    if (length > 0)
+                    {
+                        BinaryCodec.writeString(out, new String(buffer, 0,
+                                length));
+                    }
+                    if (held > 0)
+                    {
+                        buffer[0] = buffer[length];
+                    }
+                }
+                if (held > 0)
+                {
+                    BinaryCodec.writeString(out, new String(buffer, 0, held));
+                }
+            }
+            BinaryCodec.writeLong(out, 0L);
+
+            // the fingerprint, if any, is only known once the text is read
+            updateFingerprint();
+            BinaryCodec.writeString(out, this.textDigestAlgorithm);
+            BinaryCodec.writeString(out, this.textDigest);
+            BinaryCodec.writeLong(out, this.textCharCount);
+            BinaryCodec.writeLong(out, this.textByteCount);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error emitting binary", e);
+        }
+    }
+
+    /**
+     * Reads an instance written by {@link #writeBinary(OutputStream)}. See
+     * {@link #readBinary(InputStream, long)}.
+     * 
+     * @param source
+     *            not closed
+     * @return the response, or null at the end of the stream
+     * @throws Url2TextException
+     */
+    public static Response readBinary(final InputStream source)
+            throws Url2TextException
+    {
+        return readBinary(source, DEFAULT_TEXT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Reads an instance written by {@link #writeBinary(OutputStream)}.
+     * <p>
+     * Nothing beyond the instance is read, so further instances can be read
+     * from the same stream; wrap it in a BufferedInputStream for speed. As with
+     * {@link #fromJson(Reader, long)}, the text is buffered as it is read, and
+     * text beyond the threshold is spilled to a temporary file, which is
+     * deleted by {@link #close()}.
+     * <p>
+     * Instances written in an earlier version of the format can still be
+     * read; fields which that version lacked are left unset.
+     * 
+     * @param source
+     *            not closed
+     * @param textMemoryThreshold
+     *            number of bytes of (UTF-8) text held in memory before
+     *            spilling
+     * @return the response, or null if the stream is already at its end
+     * @throws Url2TextException
+     */
+    public static Response readBinary(final InputStream source,
+            final long textMemoryThreshold) throws Url2TextException
+    {
+        Response response = null;
+        CompactText.Builder text = null;
+        try
+        {
+            final int first = source.read();
+            if (first == -1)
+            {
+                return null;
+            }
+            final byte[] magic = new byte[BinaryCodec.MAGIC.length];
+            magic[0] = (byte) first;
+            for (int i = 1; i < magic.length; i++)
+            {
+                magic[i] = (byte) source.read();
+            }
+            final byte version = magic[magic.length - 1];
+            magic[magic.length - 1] = BinaryCodec.MAGIC[magic.length - 1];
+            if (!Arrays.equals(magic, BinaryCodec.MAGIC)
+                    || version < BinaryCodec.VERSION_1
+                    || version > BinaryCodec.MAGIC[magic.length - 1])
+            {
+                throw new IOException("Not a binary Response.");
+            }
+
+            response = new Response();
+            response.requestPage = BinaryCodec.readString(source);
+            response.landingPage = BinaryCodec.readString(source);
+            response.status = (int) BinaryCodec.readLong(source);
+            response.statusMessage = BinaryCodec.readString(source);
+            response.fetchDate = new Date(BinaryCodec.readLong(source));
+            response.fetchDuration = BinaryCodec.readLong(source);
+            response.contentTitle = BinaryCodec.readString(source);
+            response.contentType = BinaryCodec.readString(source);
+            response.contentCharset = BinaryCodec.readString(source);
+            response.contentLength = BinaryCodec.readLong(source);
+            response.etag = BinaryCodec.readString(source);
+            response.lastModified = BinaryCodec.readString(source);
+            response.conversionDuration = BinaryCodec.readLong(source);
+
+            readBinaryNameAndValues(source, response.responseHeaders);
+            readBinaryNameAndValues(source, response.contentMetadata);
+            if (version > BinaryCodec.VERSION_2
+                    && BinaryCodec.readLong(source) != 0L)
+            {
+                response.pageStructure = PageStructure.readBinary(source);
+            }
+
+            response.setTextMemoryThreshold(textMemoryThreshold);
+            text = new CompactText.Builder(response.contentLength,
+                    textMemoryThreshold);
+            byte[] chunk;
+            while ((chunk = BinaryCodec.readBytes(source)).length > 0)
+            {
+                text.write(new String(chunk, StandardCharsets.UTF_8));
+            }
+            response.setText(text.toText());
+            text = null;
+            if (version > BinaryCodec.VERSION_1)
+            {
+                response.textDigestAlgorithm = BinaryCodec.readString(source);
+                response.textDigest = BinaryCodec.readString(source);
+                response.textCharCount = BinaryCodec.readLong(source);
+                response.textByteCount = BinaryCodec.readLong(source);
+            }
+            return response;
+        }
+        catch (IOException e)
+        {
+            if (text != null)
+            {
+                text.discard();
+            }
+            if (response != null)
+            {
+                response.releaseText();
+            }
+            throw new Url2TextException("Error reading binary", e);
+        }
     }
 
     /**
@@ -156,6 +611,10 @@ public class Response implements Closeable, AutoCloseable
         {
             result = this.toJson();
         }
+        else if (format == OutputFormat.JSONL)
+        {
+            result = this.toJson() + "\n";
+        }
         else
         {
             throw new IllegalArgumentException("Format " + format
@@ -165,7 +624,9 @@ public class Response implements Closeable, AutoCloseable
     }
 
     /**
-     * Closes the text Reader.
+     * Closes the text Reader, and releases the buffered text. If the text was
+     * spilled to disk, and no copy of this instance still holds it, the file
+     * is deleted and the text can no longer be read.
      * 
      * @throws IOException
      */
@@ -176,6 +637,55 @@ public class Response implements Closeable, AutoCloseable
         {
             this.textReader.close();
         }
+        if (this.text != null && !this.closed)
+        {
+            this.text.release();
+        }
+        this.closed = true;
+    }
+
+    /**
+     * Writes this object to the given Writer in the given format. The text is
+     * copied from the Reader in chunks, so is never held in full.
+     * <p>
+     * Beware. Unless the text has already been buffered (e.g. by
+     * {@link #getText()}), this method consumes the internal Reader, so the
+     * text can only be written once. The destination is flushed, but not
+     * closed.
+     * 
+     * @param format
+     * @param destination
+     * @throws Url2TextException
+     */
+    public void asFormat(final OutputFormat format, final Writer destination)
+            throws Url2TextException
+    {
+        if (format == OutputFormat.PLAIN)
+        {
+            this.writeTo(destination);
+        }
+        else if (format == OutputFormat.JSON)
+        {
+            this.writeJson(destination);
+        }
+        else if (format == OutputFormat.JSONL)
+        {
+            this.writeJson(destination);
+            try
+            {
+                destination.write('\n');
+                destination.flush();
+            }
+            catch (IOException e)
+            {
+                throw new Url2TextException("Error emitting JSON", e);
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("Format " + format
+                    + " not supported.");
+        }
     }
 
     @Override
@@ -194,7 +704,7 @@ public class Response implements Closeable, AutoCloseable
                 this.contentLength, this.conversionDuration, this.requestPage,
                 this.landingPage, this.contentType, this.contentCharset,
                 this.etag, this.lastModified, this.responseHeaders,
-                this.contentMetadata, this.text);
+                this.contentMetadata, this.pageStructure, this.text);
     }
 
     @Override
@@ -222,75 +732,434 @@ public class Response implements Closeable, AutoCloseable
      * Renders this object as JSON.
      * <p>
      * Beware. This method consumes the internal Reader, creating a buffer of
-     * unlimited size.
+     * unlimited size. Use {@link #writeJson(Writer)} or
+     * {@link #writeJson(OutputStream)} to avoid buffering the text.
      * 
      * @return
      * @throws Url2TextException
      */
     public String toJson() throws Url2TextException
     {
-        
-        
-        final JsonFactory jFactory = new JsonFactory();
-        final ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        // buffer the text, so it remains available
+        getTextFromReader();
+
+        final StringWriter destination = new StringWriter();
+        writeJson(destination);
+        return destination.toString();
+    }
+
+    /**
+     * Writes this object as JSON to the given stream, in UTF-8. The text is
+     * copied from the Reader in chunks, so is never held in full.
+     * <p>
+     * Beware. Unless the text has already been buffered (e.g. by
+     * {@link #getText()}), this method consumes the internal Reader, so the
+     * text can only be written once. The destination is flushed, but not
+     * closed.
+     * 
+     * @param destination
+     * @throws Url2TextException
+     */
+    public void writeJson(final OutputStream destination)
+            throws Url2TextException
+    {
+        try (final JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(
+                destination, JsonEncoding.UTF8))
+        {
+            writeJson(jsonGenerator);
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error emitting JSON", e);
+        }
+    }
 
-        try (final JsonGenerator jsonGenerator = jFactory
-                .createGenerator(destination);)
+    /**
+     * Writes this object as JSON to the given Writer. The text is copied from
+     * the Reader in chunks, so is never held in full.
+     * <p>
+     * Beware. Unless the text has already been buffered (e.g. by
+     * {@link #getText()}), this method consumes the internal Reader, so the
+     * text can only be written once. The destination is flushed, but not
+     * closed.
+     * 
+     * @param destination
+     * @throws Url2TextException
+     */
+    public void writeJson(final Writer destination) throws Url2TextException
+    {
+        try (final JsonGenerator jsonGenerator = JSON_FACTORY
+                .createGenerator(destination))
         {
-            jsonGenerator.writeStartObject();
+            writeJson(jsonGenerator);
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error emitting JSON", e);
+        }
+    }
 
-            // transaction metadata
-            jsonGenerator.writeFieldName(HDR_TRANSACTION_METADATA);
-            jsonGenerator.writeStartObject();
+    /**
+     * Writes this object as one JSON value. See {@link JsonLinesWriter}.
+     * 
+     * @param jsonGenerator
+     *            neither flushed nor closed
+     * @throws IOException
+     */
+    void writeJson(final JsonGenerator jsonGenerator) throws IOException
+    {
+        jsonGenerator.writeStartObject();
 
-            jsonGenerator.writeStringField(HDR_REQUEST_PAGE, this.requestPage);
-            jsonGenerator.writeStringField(HDR_LANDING_PAGE, this.landingPage);
-            jsonGenerator.writeNumberField(HDR_STATUS, this.status);
-            jsonGenerator.writeStringField(HDR_STATUS_MESSAGE,
-                    this.statusMessage);
-            jsonGenerator.writeStringField(HDR_FETCH_DATE, 
-                    DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT
-                    .format(this.fetchDate));
-            jsonGenerator.writeNumberField(HDR_FETCH_DURATION, this.fetchDuration);
-            jsonGenerator.writeStringField(HDR_CONTENT_TYPE, this.contentType);
-            jsonGenerator.writeStringField(HDR_CONTENT_CHARSET,
-                    this.contentCharset);
-            jsonGenerator.writeNumberField(HDR_CONTENT_LENGTH,
-                    this.contentLength);
-            jsonGenerator.writeStringField(HDR_ETAG, this.etag);
-            jsonGenerator
-                    .writeStringField(HDR_LAST_MODIFIED, this.lastModified);
-            jsonGenerator.writeNumberField(HDR_CONVERSION_DURATION,
-                    this.conversionDuration);
+        // transaction metadata
+        jsonGenerator.writeFieldName(HDR_TRANSACTION_METADATA);
+        jsonGenerator.writeStartObject();
 
+        jsonGenerator.writeStringField(HDR_REQUEST_PAGE, this.requestPage);
+        jsonGenerator.writeStringField(HDR_LANDING_PAGE, this.landingPage);
+        jsonGenerator.writeNumberField(HDR_STATUS, this.status);
+        jsonGenerator.writeStringField(HDR_STATUS_MESSAGE, this.statusMessage);
+        jsonGenerator.writeStringField(HDR_FETCH_DATE,
+                DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT
+                        .format(this.fetchDate));
+        jsonGenerator.writeNumberField(HDR_FETCH_DURATION, this.fetchDuration);
+        jsonGenerator.writeStringField(HDR_CONTENT_TYPE, this.contentType);
+        jsonGenerator.writeStringField(HDR_CONTENT_CHARSET,
+                this.contentCharset);
+        jsonGenerator.writeNumberField(HDR_CONTENT_LENGTH, this.contentLength);
+        jsonGenerator.writeStringField(HDR_ETAG, this.etag);
+        jsonGenerator.writeStringField(HDR_LAST_MODIFIED, this.lastModified);
+        jsonGenerator.writeNumberField(HDR_CONVERSION_DURATION,
+                this.conversionDuration);
+
+        jsonGenerator.writeEndObject();
+
+        // response headers
+        if (!this.responseHeaders.isEmpty())
+        {
+            outputNameAndValueArray(jsonGenerator, HDR_RESPONSE_HEADERS,
+                    this.responseHeaders);
+        }
+
+        // content metadata
+        if (!this.contentMetadata.isEmpty())
+        {
+            outputNameAndValueArray(jsonGenerator, HDR_CONTENT_METADATA,
+                    this.contentMetadata);
+        }
+
+        // page structure
+        if (this.pageStructure != null)
+        {
+            jsonGenerator.writeFieldName(HDR_PAGE_STRUCTURE);
+            this.pageStructure.writeJson(jsonGenerator);
+        }
+
+        // text
+        jsonGenerator.writeFieldName(HDR_CONVERTED_TEXT);
+        outputText(jsonGenerator);
+
+        // only known once the text is read, so follows it
+        updateFingerprint();
+        if (!this.textDigest.equals(STR_NOT_SET))
+        {
+            jsonGenerator.writeFieldName(HDR_TEXT_FINGERPRINT);
+            jsonGenerator.writeStartObject();
+            jsonGenerator.writeStringField(HDR_DIGEST_ALGORITHM,
+                    this.textDigestAlgorithm);
+            jsonGenerator.writeStringField(HDR_DIGEST, this.textDigest);
+            jsonGenerator.writeNumberField(HDR_TEXT_CHARS, this.textCharCount);
+            jsonGenerator.writeNumberField(HDR_TEXT_BYTES, this.textByteCount);
             jsonGenerator.writeEndObject();
+        }
+        jsonGenerator.writeEndObject();
+    }
+
+    /**
+     * Copy the text from the Reader into a JSON string value, a chunk at a
+     * time.
+     * 
+     * @param jsonGenerator
+     * @throws IOException
+     */
+    private void outputText(final JsonGenerator jsonGenerator)
+            throws IOException
+    {
+        final JsonStringEncoder encoder = JsonStringEncoder.getInstance();
 
-            // response headers
-            if (!this.responseHeaders.isEmpty())
+        // the opening quote goes through the generator, so it adds the ':'
+        jsonGenerator.writeRawValue("\"");
+
+        final Reader reader = getTextReader();
+        if (reader != null)
+        {
+            final char[] buffer = new char[TEXT_CHUNK_SIZE];
+            int held = 0;
+            int count;
+            while ((count = reader.read(buffer, held, buffer.length - held)) != -1)
+            {
+                int length = held + count;
+                // never split a surrogate pair between chunks
+                held = Character.isHighSurrogate(buffer[length - 1]) ? 1 : 0;
+                length -= held;
+
+                final char[] quoted = encoder.quoteAsString(new String(buffer,
+                        0, length));
+                jsonGenerator.writeRaw(quoted, 0, quoted.length);
+                if (held > 0)
+                {
+                    buffer[0] = buffer[length];
+                }
+            }
+            if (held > 0)
             {
-                outputNameAndValueArray(jsonGenerator, HDR_RESPONSE_HEADERS,
-                        this.responseHeaders);
+                final char[] quoted = encoder.quoteAsString(new String(buffer,
+                        0, held));
+                jsonGenerator.writeRaw(quoted, 0, quoted.length);
             }
+        }
+        jsonGenerator.writeRaw('"');
+    }
+
+    private static void writeBinaryNameAndValues(final OutputStream out,
+            final List<NameAndValue> list) throws IOException
+    {
+        BinaryCodec.writeLong(out, list.size());
+        for (final NameAndValue nameAndValue : list)
+        {
+            BinaryCodec.writeString(out, nameAndValue.getName());
+            BinaryCodec.writeString(out, nameAndValue.getValue());
+        }
+    }
 
-            // content metadata
-            if (!this.contentMetadata.isEmpty())
+    private static void readBinaryNameAndValues(final InputStream in,
+            final List<NameAndValue> list) throws IOException
+    {
+        final long size = BinaryCodec.readLong(in);
+        for (long i = 0; i < size; i++)
+        {
+            list.add(new NameAndValue(BinaryCodec.readString(in), BinaryCodec
+                    .readString(in)));
+        }
+    }
+
+    /**
+     * Read the fields of the text fingerprint object.
+     * 
+     * @param parser
+     *            positioned at the start of the object
+     * @throws IOException
+     */
+    private void readFingerprint(final JsonParser parser) throws IOException
+    {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT)
+        {
+            expect(token, JsonToken.FIELD_NAME);
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (name)
             {
-                outputNameAndValueArray(jsonGenerator, HDR_CONTENT_METADATA,
-                        this.contentMetadata);
+            case HDR_DIGEST_ALGORITHM:
+                this.textDigestAlgorithm = parser.getText();
+                break;
+            case HDR_DIGEST:
+                this.textDigest = parser.getText();
+                break;
+            case HDR_TEXT_CHARS:
+                this.textCharCount = parser.getValueAsLong();
+                break;
+            case HDR_TEXT_BYTES:
+                this.textByteCount = parser.getValueAsLong();
+                break;
+            default:
+                parser.skipChildren();
             }
+        }
+    }
 
-            // text
-            jsonGenerator.writeStringField(HDR_CONVERTED_TEXT, this.getText());
-            jsonGenerator.writeEndObject();
-            jsonGenerator.close();
+    /**
+     * Read the fields of the transaction metadata object.
+     * 
+     * @param parser
+     *            positioned at the start of the object
+     * @throws IOException
+     * @throws ParseException
+     */
+    private void readTransactionMetadata(final JsonParser parser)
+            throws IOException, ParseException
+    {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT)
+        {
+            expect(token, JsonToken.FIELD_NAME);
+            final String name = parser.getCurrentName();
+            parser.nextToken();
 
-            String result = destination.toString(UTF_8);
-            return result;
+            switch (name)
+            {
+            case HDR_REQUEST_PAGE:
+                this.requestPage = parser.getText();
+                break;
+            case HDR_LANDING_PAGE:
+                this.landingPage = parser.getText();
+                break;
+            case HDR_STATUS:
+                this.status = parser.getValueAsInt();
+                break;
+            case HDR_STATUS_MESSAGE:
+                this.statusMessage = parser.getText();
+                break;
+            case HDR_FETCH_DATE:
+                this.fetchDate = DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT
+                        .parse(parser.getText());
+                break;
+            case HDR_FETCH_DURATION:
+                this.fetchDuration = parser.getValueAsLong();
+                break;
+            case HDR_CONTENT_TYPE:
+                this.contentType = parser.getText();
+                break;
+            case HDR_CONTENT_CHARSET:
+                this.contentCharset = parser.getText();
+                break;
+            case HDR_CONTENT_LENGTH:
+                this.contentLength = parser.getValueAsLong();
+                break;
+            case HDR_ETAG:
+                this.etag = parser.getText();
+                break;
+            case HDR_LAST_MODIFIED:
+                this.lastModified = parser.getText();
+                break;
+            case HDR_CONVERSION_DURATION:
+                this.conversionDuration = parser.getValueAsLong();
+                break;
+            default:
+                parser.skipChildren();
+            }
         }
-        catch (IOException e)
+    }
+
+    /**
+     * Read an object of string fields into a header or metadata list.
+     * 
+     * @param parser
+     *            positioned at the start of the object
+     * @param list
+     * @throws IOException
+     */
+    private static void readNameAndValues(final JsonParser parser,
+            final List<NameAndValue> list) throws IOException
+    {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT)
         {
-            throw new Url2TextException("Error emitting JSON", e);
+            expect(token, JsonToken.FIELD_NAME);
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            list.add(new NameAndValue(name, parser.getText()));
+        }
+    }
+
+    private static void expect(final JsonToken actual,
+            final JsonToken expected) throws IOException
+    {
+        if (actual != expected)
+        {
+            throw new IOException("Expected " + expected + " but found "
+                    + actual);
+        }
+    }
+
+    /**
+     * Decode the JSON string value at which the parser is positioned, but has
+     * not read, into the destination.
+     * 
+     * @param parser
+     *            abandoned, as its input is taken over
+     * @param source
+     *            the parser's source
+     * @param destination
+     * @return a Reader positioned after the closing quote
+     * @throws IOException
+     */
+    private static Reader decodeString(final JsonParser parser,
+            final Reader source, final Writer destination) throws IOException
+    {
+        final StringWriter buffered = new StringWriter();
+        parser.releaseBuffered(buffered);
+        final Reader in = new BufferedReader(new JoinedReader(new StringReader(
+                buffered.toString()), source));
+
+        final char[] chunk = new char[TEXT_CHUNK_SIZE];
+        int length = 0;
+        int c;
+        while ((c = in.read()) != '"')
+        {
+            if (c == -1)
+            {
+                throw new EOFException("Unterminated text string.");
+            }
+            if (c == '\\')
+            {
+                c = in.read();
+                switch (c)
+                {
+                case 'b':
+                    c = '\b';
+                    break;
+                case 'f':
+                    c = '\f';
+                    break;
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                case 't':
+                    c = '\t';
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++)
+                    {
+                        final int h = in.read();
+                        if (h == -1)
+                        {
+                            throw new EOFException("Unterminated text string.");
+                        }
+                        // exactly four hex digits; no sign, no other digits
+                        final int digit = (h < 128) ? Character.digit(h, 16)
+                                : -1;
+                        if (digit == -1)
+                        {
+                            throw new IOException("Bad escape in text string.");
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    c = code;
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    break;
+                case -1:
+                    throw new EOFException("Unterminated text string.");
+                default:
+                    throw new IOException("Bad escape in text string.");
+                }
+            }
+            chunk[length++] = (char) c;
+            if (length == chunk.length)
+            {
+                destination.write(chunk, 0, length);
+                length = 0;
+            }
         }
+        destination.write(chunk, 0, length);
+        return in;
     }
 
     /**
@@ -321,13 +1190,76 @@ public class Response implements Closeable, AutoCloseable
      * Full dump of the response content in plain text format.
      * <p>
      * Beware. This method consumes the internal Reader, creating a buffer of
-     * unlimited size.
+     * unlimited size. Use {@link #writeTo(Writer)} to avoid buffering the
+     * text.
      */
     @Override
     public String toString()
     {
         final StringBuilder buffer = new StringBuilder(350);
 
+        appendSections(buffer);
+        try
+        {
+            this.getTextFromReader();
+            this.text.appendTo(buffer);
+        }
+        catch (Url2TextException | IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        buffer.append('\n');
+
+        return buffer.toString();
+    }
+
+    /**
+     * Writes the same dump as {@link #toString()} to the given Writer. The
+     * text is copied from the Reader in chunks, so is never held in full.
+     * <p>
+     * Beware. Unless the text has already been buffered (e.g. by
+     * {@link #getText()}), this method consumes the internal Reader, so the
+     * text can only be written once. The destination is flushed, but not
+     * closed.
+     * 
+     * @param destination
+     * @throws Url2TextException
+     */
+    public void writeTo(final Writer destination) throws Url2TextException
+    {
+        final StringBuilder buffer = new StringBuilder(350);
+        appendSections(buffer);
+
+        try
+        {
+            destination.append(buffer);
+
+            final Reader reader = getTextReader();
+            if (reader != null)
+            {
+                final char[] chunk = new char[TEXT_CHUNK_SIZE];
+                int count;
+                while ((count = reader.read(chunk)) != -1)
+                {
+                    destination.write(chunk, 0, count);
+                }
+            }
+            destination.write('\n');
+            destination.flush();
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Error emitting text", e);
+        }
+    }
+
+    /**
+     * Append the plain text sections which precede the converted text.
+     * 
+     * @param buffer
+     */
+    private void appendSections(final StringBuilder buffer)
+    {
         buffer.append("################ TRANSACTION METADATA ################");
         buffer.append("\nRequest page     : ").append(this.requestPage);
         buffer.append("\nLanding page     : ").append(this.landingPage);
@@ -367,18 +1299,14 @@ public class Response implements Closeable, AutoCloseable
             }
             buffer.append('\n');
         }
-        buffer.append("################ CONVERTED TEXT ######################\n");
-        try
-        {
-            buffer.append(this.getText());
-        }
-        catch (Url2TextException e)
+
+        if (this.pageStructure != null)
         {
-            throw new RuntimeException(e);
+            buffer.append("################ PAGE STRUCTURE ######################\n");
+            this.pageStructure.appendTo(buffer);
+            buffer.append('\n');
         }
-        buffer.append('\n');
-
-        return buffer.toString();
+        buffer.append("################ CONVERTED TEXT ######################\n");
     }
 
     public String getRequestPage()
@@ -535,10 +1463,22 @@ public class Response implements Closeable, AutoCloseable
 
     public void setResponseHeaders(final List<NameAndValue> responseHeaders)
     {
-        this.responseHeaders = (responseHeaders == null) ? new ArrayList<NameAndValue>()
+        this.responseHeaders = (responseHeaders == null) ? new NameAndValues()
                 : responseHeaders;
     }
 
+    /**
+     * Returns the value of the first response header with the name, ignoring
+     * case. See {@link NameAndValues}.
+     * 
+     * @param name
+     * @return the value, or null if there is no such header
+     */
+    public String getResponseHeader(final String name)
+    {
+        return NameAndValues.getFirst(this.responseHeaders, name);
+    }
+
     public List<NameAndValue> getContentMetadata()
     {
         return this.contentMetadata;
@@ -546,15 +1486,151 @@ public class Response implements Closeable, AutoCloseable
 
     public void setContentMetadata(final List<NameAndValue> conversionMetadata)
     {
-        this.contentMetadata = (conversionMetadata == null) ? new ArrayList<NameAndValue>()
+        this.contentMetadata = (conversionMetadata == null) ? new NameAndValues()
                 : conversionMetadata;
     }
 
+    /**
+     * Returns the value of the first content metadata item with the name,
+     * ignoring case. See {@link NameAndValues}.
+     * 
+     * @param name
+     * @return the value, or null if there is no such item
+     */
+    public String getContentMetadataValue(final String name)
+    {
+        return NameAndValues.getFirst(this.contentMetadata, name);
+    }
+
+    /**
+     * Returns the links, headings, canonical URL and robots directives of an
+     * HTML page, if they were requested.
+     * 
+     * @return the structure, or null
+     */
+    public PageStructure getPageStructure()
+    {
+        return this.pageStructure;
+    }
+
+    public void setPageStructure(final PageStructure pageStructure)
+    {
+        this.pageStructure = pageStructure;
+    }
+
+    /**
+     * Fingerprints the text as it is read: a digest of its UTF-8 encoding,
+     * plus its length in chars and UTF-8 bytes. See {@link DigestingReader}.
+     * <p>
+     * The results are available from {@link #getTextDigest()} and friends,
+     * and are included in the JSON, once the text has been read to the end.
+     * If the text has already been buffered, it is fingerprinted at once;
+     * otherwise call this before any of the text is read.
+     * 
+     * @param algorithm
+     *            MessageDigest algorithm name, e.g. SHA-1
+     * @throws IllegalArgumentException
+     *             if the algorithm is not available
+     * @throws IllegalStateException
+     *             if the text is already being fingerprinted
+     */
+    public void setTextDigestAlgorithm(final String algorithm)
+    {
+        if (this.digestingReader != null
+                || !this.textDigest.equals(STR_NOT_SET))
+        {
+            throw new IllegalStateException("Text already fingerprinted.");
+        }
+        if (this.text == null)
+        {
+            this.digestingReader = new DigestingReader(this.textReader,
+                    algorithm);
+            this.textReader = this.digestingReader;
+        }
+        else
+        {
+            try (final DigestingReader reader = new DigestingReader(
+                    this.text.newReader(), algorithm))
+            {
+                reader.skip(Long.MAX_VALUE);
+                this.digestingReader = reader;
+                updateFingerprint();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Buffered text unreadable.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the digest algorithm used to fingerprint the text.
+     * 
+     * @return the algorithm name, or STR_NOT_SET if the text has not been
+     *         fingerprinted
+     */
+    public String getTextDigestAlgorithm()
+    {
+        updateFingerprint();
+        return this.textDigestAlgorithm;
+    }
+
+    /**
+     * Returns the digest of the text's UTF-8 encoding, in upper case hex. See
+     * {@link #setTextDigestAlgorithm(String)}.
+     * 
+     * @return the digest, or STR_NOT_SET until the text has been read
+     */
+    public String getTextDigest()
+    {
+        updateFingerprint();
+        return this.textDigest;
+    }
+
+    /**
+     * Returns the length of the fingerprinted text in chars.
+     * 
+     * @return count, or LONG_NOT_SET until the text has been read
+     */
+    public long getTextCharCount()
+    {
+        updateFingerprint();
+        return this.textCharCount;
+    }
+
+    /**
+     * Returns the length of the fingerprinted text in UTF-8 bytes.
+     * 
+     * @return count, or LONG_NOT_SET until the text has been read
+     */
+    public long getTextByteCount()
+    {
+        updateFingerprint();
+        return this.textByteCount;
+    }
+
+    /**
+     * Collect the fingerprint, once the digesting reader is complete.
+     */
+    private void updateFingerprint()
+    {
+        if (this.digestingReader != null && this.digestingReader.isComplete())
+        {
+            this.textDigestAlgorithm = this.digestingReader.getAlgorithm();
+            this.textDigest = this.digestingReader.getDigest();
+            this.textCharCount = this.digestingReader.getCharCount();
+            this.textByteCount = this.digestingReader.getByteCount();
+            this.digestingReader = null;
+        }
+    }
+
     /**
      * Consumes the Reader, which is then closed.
      * <p>
      * Beware. This method consumes the internal Reader, creating a buffer of
-     * unlimited size.
+     * unlimited size. The text is kept in a compact form (UTF-8), so a new
+     * String is built on each call; prefer {@link #getTextReader()} once the
+     * text has been buffered.
      * 
      * @return
      * @throws Url2TextException
@@ -565,9 +1641,29 @@ public class Response implements Closeable, AutoCloseable
         {
             this.getTextFromReader();
         }
-        return this.text;
+        return this.text.toString();
     }
 
+    /**
+     * Returns the length of the text, in chars.
+     * <p>
+     * Beware. This method consumes the internal Reader, buffering the text.
+     * 
+     * @return length
+     * @throws Url2TextException
+     */
+    public long getTextLength() throws Url2TextException
+    {
+        this.getTextFromReader();
+        return this.text.length();
+    }
+
+    /**
+     * Returns the internal Reader or, once the text has been buffered (e.g.
+     * by {@link #getText()}), a new Reader over the buffered text.
+     * 
+     * @return
+     */
     public Reader getTextReader()
     {
         if (this.text == null)
@@ -576,8 +1672,70 @@ public class Response implements Closeable, AutoCloseable
         }
         else
         {
-            return new StringReader(this.text);
+            return this.text.newReader();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of (UTF-8) text buffered, whether held in
+     * memory or spilled to disk.
+     * <p>
+     * Beware. This method consumes the internal Reader, buffering the text.
+     * 
+     * @return byte count
+     * @throws Url2TextException
+     */
+    long getBufferedTextSize() throws Url2TextException
+    {
+        this.getTextFromReader();
+        return this.text.byteSize();
+    }
+
+    /**
+     * Returns an iterator over the text in windows of at most {@code size}
+     * chars, each overlapping the one before by up to {@code overlap} chars.
+     * See {@link TextChunker}.
+     * <p>
+     * Beware. Unless the text has already been buffered, this consumes the
+     * internal Reader, as {@link #getTextReader()} does. Only one chunk is
+     * then held in memory, and streamed content is chunked while it is being
+     * converted.
+     * 
+     * @param size
+     *            maximum chunk length in chars
+     * @param overlap
+     *            maximum chars repeated at the start of each chunk
+     * @param boundary
+     *            where chunks may be cut
+     * @return the chunks, which should be closed
+     */
+    public TextChunker getTextChunks(final int size, final int overlap,
+            final TextChunker.Boundary boundary)
+    {
+        return new TextChunker(getTextReader(), size, overlap, boundary);
+    }
+
+    public long getTextMemoryThreshold()
+    {
+        return this.textMemoryThreshold;
+    }
+
+    /**
+     * Sets the number of bytes of text held in memory, once read, before the
+     * text is spilled to a temporary file. Later calls to {@link #getText()}
+     * and {@link #getTextReader()} then read the file, and {@link #close()}
+     * deletes it. Only effective before the text is read.
+     * 
+     * @param threshold
+     */
+    public void setTextMemoryThreshold(final long threshold)
+    {
+        if (threshold < 0L)
+        {
+            throw new IllegalArgumentException(
+                    "Text memory threshold cannot be negative.");
         }
+        this.textMemoryThreshold = threshold;
     }
 
     public void setTextReader(final Reader reader)
@@ -587,28 +1745,56 @@ public class Response implements Closeable, AutoCloseable
         {
             throw new IllegalStateException("Text or Reader already supplied.");
         }
-        this.textReader = reader;
+        if (this.digestingReader != null)
+        {
+            // fingerprinting was requested before the text was supplied
+            this.digestingReader = new DigestingReader(reader,
+                    this.digestingReader.getAlgorithm());
+            this.textReader = this.digestingReader;
+        }
+        else
+        {
+            this.textReader = reader;
+        }
         this.text = null;
         this.textSupplied = true;
     }
 
+    /**
+     * Supplies text already buffered, e.g. by {@link #fromJson(Reader, long)}.
+     */
+    private void setText(final CompactText text)
+    {
+        this.textReader = null;
+        this.text = text;
+        this.textSupplied = true;
+    }
+
+    /**
+     * Releases text buffered by a half built instance, deleting any temporary
+     * file.
+     */
+    private void releaseText()
+    {
+        if (this.text != null)
+        {
+            this.text.release();
+            this.text = null;
+        }
+    }
+
     private void getTextFromReader() throws Url2TextException
     {
         if (this.textReader == null)
         {
             return;
         }
-        final char[] arr = new char[8 * 1024]; // 8K at a time
-        final StringBuilder buf = new StringBuilder();
-        int numChars;
-
         try
         {
-            while ((numChars = textReader.read(arr, 0, arr.length)) > 0)
-            {
-                buf.append(arr, 0, numChars);
-            }
-            this.text = buf.toString();
+            // the content length is only a hint, as the text may well be
+            // shorter
+            this.text = CompactText.read(this.textReader, this.contentLength,
+                    this.textMemoryThreshold);
             this.textReader.close();
             this.textReader = null;
         }
@@ -628,4 +1814,43 @@ public class Response implements Closeable, AutoCloseable
         this.contentTitle = contentTitle == null ? "" : contentTitle;
     }
     
+
+    /**
+     * Reader which reads one Reader, then another.
+     */
+    private static class JoinedReader extends Reader
+    {
+        private final Reader first;
+        private final Reader second;
+        private boolean firstDone = false;
+
+        JoinedReader(final Reader first, final Reader second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            if (!this.firstDone)
+            {
+                final int count = this.first.read(cbuf, off, len);
+                if (count != -1)
+                {
+                    return count;
+                }
+                this.firstDone = true;
+            }
+            return this.second.read(cbuf, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            // the second Reader belongs to the caller
+            this.first.close();
+        }
+    }
 }
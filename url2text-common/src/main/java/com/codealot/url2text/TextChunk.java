@@ -0,0 +1,95 @@
+package com.codealot.url2text;
+
+import java.util.Objects;
+
+/**
+ * One window of text produced by {@link TextChunker}, with its position in
+ * the whole text.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class TextChunk
+{
+    private final int index;
+    private final long offset;
+    private final String text;
+
+    public TextChunk(final int index, final long offset, final String text)
+    {
+        this.index = index;
+        this.offset = offset;
+        this.text = Objects.requireNonNull(text);
+    }
+
+    /**
+     * Returns the position of this chunk in the sequence, starting at zero.
+     *
+     * @return index
+     */
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    /**
+     * Returns the offset, in chars, of the start of this chunk in the whole
+     * text.
+     *
+     * @return offset
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    public String getText()
+    {
+        return this.text;
+    }
+
+    public int getLength()
+    {
+        return this.text.length();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.index, this.offset, this.text);
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass())
+        {
+            return false;
+        }
+        final TextChunk test = (TextChunk) obj;
+        return this.index == test.index && this.offset == test.offset
+                && this.text.equals(test.text);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.index + "@" + this.offset + ": " + this.text;
+    }
+}
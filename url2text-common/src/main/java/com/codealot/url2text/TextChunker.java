@@ -0,0 +1,306 @@
+package com.codealot.url2text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Splits text into windows of at most a given number of chars, each
+ * overlapping the one before, as it is read.
+ * <p>
+ * Only one window is held in memory, and each chunk is returned as soon as
+ * enough text has been read for it, so a streamed conversion can be indexed
+ * while it is still in progress.
+ * <p>
+ * Chunks can be snapped to a {@link Boundary}: a chunk then ends at the last
+ * boundary in its second half, and the overlap starts at the first boundary
+ * within it. Where there is no such boundary, the next finer one is tried,
+ * and finally the text is cut at the exact size. Snapping never splits a
+ * surrogate pair, and chunks keep any whitespace at the boundary.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class TextChunker implements Iterator<TextChunk>, Closeable
+{
+    /**
+     * Where chunks may be cut, from finest to coarsest.
+     */
+    public enum Boundary
+    {
+        NONE, WORD, SENTENCE, PARAGRAPH
+    };
+
+    private static final Boundary[] LEVELS = Boundary.values();
+
+    // ends of sentences, and what may follow them before the whitespace
+    private static final String SENTENCE_ENDS = ".!?\u2026";
+    private static final String CLOSERS = "\"')]\u2019\u201d";
+    // ends of sentences in scripts which don't separate them with spaces
+    private static final String IDEOGRAPHIC_ENDS = "\u3002\uff01\uff1f";
+
+    private final Reader source;
+    private final int size;
+    private final int overlap;
+    private final Boundary boundary;
+
+    // one chunk, plus a char of look-ahead
+    private final char[] window;
+    private int length = 0;
+    // chars at the start of the window already returned
+    private int carried = 0;
+    // offset of the window in the whole text
+    private long offset = 0L;
+    private boolean endOfText = false;
+
+    private int index = 0;
+    private TextChunk next = null;
+    private boolean finished = false;
+
+    /**
+     * Constructor.
+     *
+     * @param source
+     *            the text, closed by {@link #close()}
+     * @param size
+     *            maximum chunk length in chars; must be positive
+     * @param overlap
+     *            maximum number of chars repeated from the end of one chunk at
+     *            the start of the next; must be less than the size
+     * @param boundary
+     *            where chunks may be cut
+     */
+    public TextChunker(final Reader source, final int size, final int overlap,
+            final Boundary boundary)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Chunk size must be positive: " + size);
+        }
+        if (overlap < 0 || overlap >= size)
+        {
+            throw new IllegalArgumentException("Overlap must be at least 0 "
+                    + "and less than the chunk size: " + overlap);
+        }
+        this.source = Objects.requireNonNull(source);
+        this.boundary = Objects.requireNonNull(boundary);
+        this.size = size;
+        this.overlap = overlap;
+        this.window = new char[size + 1];
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (this.next == null && !this.finished)
+        {
+            try
+            {
+                this.next = readNext();
+            }
+            catch (IOException e)
+            {
+                this.finished = true;
+                throw new IllegalStateException("Error reading text after "
+                        + this.offset + " chars", e);
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public TextChunk next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        final TextChunk result = this.next;
+        this.next = null;
+        return result;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.finished = true;
+        this.next = null;
+        this.source.close();
+    }
+
+    private TextChunk readNext() throws IOException
+    {
+        while (!this.endOfText && this.length < this.window.length)
+        {
+            final int count = this.source.read(this.window, this.length,
+                    this.window.length - this.length);
+            if (count == -1)
+            {
+                this.endOfText = true;
+            }
+            else
+            {
+                this.length += count;
+            }
+        }
+        if (this.length == this.carried)
+        {
+            // nothing new since the last chunk
+            this.finished = true;
+            return null;
+        }
+
+        // at the end of the text, whatever is left fits in one chunk
+        final int cut = this.endOfText ? this.length : findCut();
+        final TextChunk chunk = new TextChunk(this.index++, this.offset,
+                new String(this.window, 0, cut));
+        if (this.endOfText)
+        {
+            this.finished = true;
+        }
+        else
+        {
+            final int start = findStart(cut);
+            System.arraycopy(this.window, start, this.window, 0, this.length
+                    - start);
+            this.length -= start;
+            this.offset += start;
+            this.carried = cut - start;
+        }
+        return chunk;
+    }
+
+    /**
+     * Find the end of a full chunk.
+     *
+     * @return number of chars in the chunk
+     */
+    private int findCut()
+    {
+        // don't halve the chunk, and leave something new for the next one
+        final int min = Math.max(this.overlap + 1, (this.size + 1) / 2);
+        for (int level = this.boundary.ordinal(); level > 0; level--)
+        {
+            for (int i = this.size; i >= min; i--)
+            {
+                if (isBoundary(i, LEVELS[level]))
+                {
+                    return i;
+                }
+            }
+        }
+        if (Character.isHighSurrogate(this.window[this.size - 1])
+                && Character.isLowSurrogate(this.window[this.size])
+                && this.size - 1 >= min)
+        {
+            return this.size - 1;
+        }
+        return this.size;
+    }
+
+    /**
+     * Find the start of the next chunk, within the overlap.
+     *
+     * @param cut
+     *            end of the current chunk
+     * @return index in the window
+     */
+    private int findStart(final int cut)
+    {
+        final int from = cut - this.overlap;
+        if (from == cut)
+        {
+            return cut;
+        }
+        for (int level = this.boundary.ordinal(); level > 0; level--)
+        {
+            for (int i = from; i < cut; i++)
+            {
+                if (isBoundary(i, LEVELS[level]))
+                {
+                    return i;
+                }
+            }
+        }
+        return Character.isLowSurrogate(this.window[from]) ? from + 1 : from;
+    }
+
+    /**
+     * True if the window can be cut before index i at the given level.
+     *
+     * @param i
+     *            at least 1 and less than the window length
+     * @param level
+     * @return boolean flag
+     */
+    private boolean isBoundary(final int i, final Boundary level)
+    {
+        if (Character.isWhitespace(this.window[i]))
+        {
+            return false;
+        }
+        if (level == Boundary.SENTENCE
+                && IDEOGRAPHIC_ENDS.indexOf(this.window[i - 1]) >= 0)
+        {
+            return true;
+        }
+
+        // the whitespace before i
+        int j = i - 1;
+        int newlines = 0;
+        while (j >= 0 && Character.isWhitespace(this.window[j]))
+        {
+            if (this.window[j] == '\n')
+            {
+                newlines++;
+            }
+            j--;
+        }
+        if (j == i - 1)
+        {
+            return false;
+        }
+
+        switch (level)
+        {
+        case WORD:
+            return true;
+        case SENTENCE:
+            if (newlines > 0)
+            {
+                return true;
+            }
+            while (j >= 0 && CLOSERS.indexOf(this.window[j]) >= 0)
+            {
+                j--;
+            }
+            return j >= 0 && SENTENCE_ENDS.indexOf(this.window[j]) >= 0;
+        case PARAGRAPH:
+            return newlines > 1;
+        default:
+            return false;
+        }
+    }
+}
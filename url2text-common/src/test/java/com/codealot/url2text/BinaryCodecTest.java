@@ -0,0 +1,90 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class BinaryCodecTest
+{
+    @Test
+    public void testLong() throws IOException
+    {
+        final long[] values = { 0L, 1L, -1L, 63L, -64L, 64L, 300L,
+                Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final long value : values)
+        {
+            BinaryCodec.writeLong(out, value);
+        }
+        final ByteArrayInputStream in = new ByteArrayInputStream(
+                out.toByteArray());
+        for (final long value : values)
+        {
+            assertEquals(value, BinaryCodec.readLong(in));
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testSmallValuesAreShort() throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeLong(out, 63L);
+        BinaryCodec.writeLong(out, -64L);
+        assertEquals(2, out.size());
+        BinaryCodec.writeLong(out, 200L);
+        assertEquals(4, out.size());
+    }
+
+    @Test
+    public void testString() throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeString(out, "caf\u00e9 \ud83d\ude00");
+        BinaryCodec.writeString(out, "");
+        final ByteArrayInputStream in = new ByteArrayInputStream(
+                out.toByteArray());
+        assertEquals("caf\u00e9 \ud83d\ude00", BinaryCodec.readString(in));
+        assertEquals("", BinaryCodec.readString(in));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedString() throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeString(out, "truncated");
+        final byte[] bytes = out.toByteArray();
+        BinaryCodec.readString(new ByteArrayInputStream(bytes, 0,
+                bytes.length - 1));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testCorruptLength() throws IOException
+    {
+        // claims 2GiB, which is not allocated up front
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeLong(out, Integer.MAX_VALUE);
+        out.write(new byte[100]);
+        BinaryCodec.readBytes(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testLongBytes() throws IOException
+    {
+        // spans several allocations
+        final byte[] bytes = new byte[300_000];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) i;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeBytes(out, bytes);
+        assertArrayEquals(bytes, BinaryCodec.readBytes(
+                new ByteArrayInputStream(out.toByteArray())));
+    }
+}
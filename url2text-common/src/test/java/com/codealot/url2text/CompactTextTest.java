@@ -0,0 +1,192 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class CompactTextTest
+{
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        final String text = sample(50_000);
+        final CompactText compact = CompactText.read(new StringReader(text),
+                0L);
+        assertEquals(text, compact.toString());
+        assertEquals(text.length(), compact.length());
+        assertEquals(text.hashCode(), compact.hashCode());
+
+        // repeatable
+        assertEquals(text, read(compact.newReader()));
+        assertEquals(text, read(compact.newReader()));
+
+        final StringBuilder buffer = new StringBuilder("prefix:");
+        compact.appendTo(buffer);
+        assertEquals("prefix:" + text, buffer.toString());
+    }
+
+    @Test
+    public void testLatinIsCompact() throws IOException
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100_000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+        }
+        final CompactText compact = CompactText.read(new StringReader(
+                text.toString()), 100_000L);
+        assertEquals(100_000L, compact.byteSize());
+    }
+
+    @Test
+    public void testSurrogatesAcrossChunks() throws IOException
+    {
+        // a reader returning one char at a time splits every pair
+        final String text = sample(20_000);
+        final Reader trickle = new StringReader(text)
+            {
+                @Override
+                public int read(final char[] cbuf, final int off,
+                        final int len) throws IOException
+                {
+                    return super.read(cbuf, off, Math.min(len, 1));
+                }
+            };
+        final CompactText compact = CompactText.read(trickle, 0L);
+        assertEquals(text, compact.toString());
+        assertEquals(text.hashCode(), compact.hashCode());
+    }
+
+    @Test
+    public void testSpilled() throws IOException
+    {
+        final String text = sample(50_000);
+        final CompactText compact = CompactText.read(new StringReader(text),
+                0L, 1_000L);
+        assertTrue(compact.isSpilled());
+        assertEquals(text, compact.toString());
+        assertEquals(text, read(compact.newReader()));
+        assertEquals(text.hashCode(), compact.hashCode());
+        assertEquals(CompactText.read(new StringReader(text), 0L), compact);
+
+        // the file outlives the first holder, but not the last
+        compact.retain();
+        compact.release();
+        assertEquals(text, read(compact.newReader()));
+        compact.release();
+        try
+        {
+            read(compact.newReader());
+            fail("File not deleted");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNotSpilledWithinThreshold() throws IOException
+    {
+        final CompactText compact = CompactText.read(new StringReader(
+                "0123456789"), 0L, 10L);
+        assertFalse(compact.isSpilled());
+        compact.release();
+        assertEquals("0123456789", compact.toString());
+    }
+
+    @Test
+    public void testEquals() throws IOException
+    {
+        final String text = sample(10_000);
+        final CompactText a = CompactText.read(new StringReader(text), 0L);
+        final CompactText b = CompactText.read(new StringReader(text), 0L);
+        final CompactText c = CompactText.read(new StringReader(text + "!"),
+                0L);
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        assertSame(CompactText.EMPTY, CompactText.read(new StringReader(""),
+                0L));
+        assertEquals("", CompactText.EMPTY.toString());
+        assertEquals(-1, CompactText.EMPTY.newReader().read());
+        assertEquals("".hashCode(), CompactText.EMPTY.hashCode());
+    }
+
+    @Test
+    public void testBuilder() throws IOException
+    {
+        final String text = sample(20_000);
+        final CompactText.Builder builder = new CompactText.Builder(0L,
+                1_000L);
+        for (int i = 0; i < text.length(); i += 333)
+        {
+            builder.write(text, i, Math.min(333, text.length() - i));
+        }
+        final CompactText compact = builder.toText();
+        assertTrue(compact.isSpilled());
+        assertEquals(text, compact.toString());
+        assertEquals(text.hashCode(), compact.hashCode());
+        compact.release();
+    }
+
+    @Test
+    public void testBuilderThresholdInBytes() throws IOException
+    {
+        // 10 chars, but 12 bytes of UTF-8
+        final CompactText.Builder builder = new CompactText.Builder(0L, 11L);
+        builder.write("01234567\u00e9\u00e9");
+        final CompactText compact = builder.toText();
+        assertTrue(compact.isSpilled());
+        assertEquals(12L, compact.byteSize());
+        compact.release();
+    }
+
+    @Test
+    public void testBuilderDiscard() throws IOException
+    {
+        final CompactText.Builder builder = new CompactText.Builder(0L, 0L);
+        builder.write(sample(20_000));
+        builder.discard();
+        builder.discard();
+        try
+        {
+            builder.write("more");
+            fail("Wrote after discard");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    private static String sample(final int length)
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < length; i++)
+        {
+            text.append((i % 97 == 0) ? "😀é" : "x");
+        }
+        return text.toString();
+    }
+
+    private static String read(final Reader reader) throws IOException
+    {
+        final StringBuilder text = new StringBuilder();
+        final char[] buffer = new char[1_000];
+        int count;
+        while ((count = reader.read(buffer)) != -1)
+        {
+            text.append(buffer, 0, count);
+        }
+        return text.toString();
+    }
+}
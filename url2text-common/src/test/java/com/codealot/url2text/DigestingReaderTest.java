@@ -0,0 +1,142 @@
+package com.codealot.url2text;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.security.MessageDigest;
+
+import org.junit.Test;
+
+public class DigestingReaderTest
+{
+    @Test
+    public void testDigest() throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+        {
+            text.append((i % 997 == 0) ? "\u00e9\u20ac\ud83d\ude00" : "a");
+        }
+        final String s = text.toString();
+
+        try (final DigestingReader reader = new DigestingReader(
+                new StringReader(s), "SHA-1"))
+        {
+            assertEquals(s, read(reader));
+            assertTrue(reader.isComplete());
+            assertEquals("SHA-1", reader.getAlgorithm());
+            assertEquals(hex("SHA-1", s.getBytes(UTF_8)), reader.getDigest());
+            assertEquals(s.length(), reader.getCharCount());
+            assertEquals(s.getBytes(UTF_8).length, reader.getByteCount());
+        }
+    }
+
+    @Test
+    public void testSingleChars() throws Exception
+    {
+        final String s = "a\u00e9\ud83d\ude00";
+        try (final DigestingReader reader = new DigestingReader(
+                new StringReader(s), "MD5"))
+        {
+            while (reader.read() != -1)
+            {
+                assertFalse(reader.isComplete());
+            }
+            assertEquals(hex("MD5", s.getBytes(UTF_8)), reader.getDigest());
+            assertEquals(4L, reader.getCharCount());
+            assertEquals(7L, reader.getByteCount());
+        }
+    }
+
+    @Test
+    public void testLoneSurrogates() throws Exception
+    {
+        // unpaired surrogates encode as '?', as String.getBytes() does
+        final String s = "a\ude00b\ud83d";
+        try (final DigestingReader reader = new DigestingReader(
+                new StringReader(s), "SHA-1"))
+        {
+            read(reader);
+            assertEquals(hex("SHA-1", s.getBytes(UTF_8)), reader.getDigest());
+            assertEquals(4L, reader.getByteCount());
+        }
+    }
+
+    @Test
+    public void testIncomplete() throws Exception
+    {
+        try (final DigestingReader reader = new DigestingReader(
+                new StringReader("text"), "SHA-1"))
+        {
+            assertEquals(2, reader.read(new char[2], 0, 2));
+            assertFalse(reader.isComplete());
+            assertNull(reader.getDigest());
+            assertEquals(2L, reader.getCharCount());
+        }
+    }
+
+    @Test
+    public void testSkip() throws Exception
+    {
+        try (final DigestingReader reader = new DigestingReader(
+                new StringReader("text"), "SHA-1"))
+        {
+            assertEquals(4L, reader.skip(10L));
+            assertEquals(-1, reader.read());
+            assertEquals(hex("SHA-1", "text".getBytes(UTF_8)),
+                    reader.getDigest());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        try (final DigestingReader reader = new DigestingReader(
+                new StringReader(""), "SHA-1"))
+        {
+            assertEquals(-1, reader.read());
+            assertEquals("DA39A3EE5E6B4B0D3255BFEF95601890AFD80709",
+                    reader.getDigest());
+            assertEquals(0L, reader.getByteCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownAlgorithm()
+    {
+        new DigestingReader(new StringReader(""), "NO-SUCH-DIGEST");
+    }
+
+    @Test
+    public void testMarkUnsupported()
+    {
+        assertFalse(new DigestingReader(new StringReader(""), "SHA-1")
+                .markSupported());
+    }
+
+    private static String hex(final String algorithm, final byte[] bytes)
+            throws Exception
+    {
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : MessageDigest.getInstance(algorithm).digest(bytes))
+        {
+            hex.append(String.format("%02X", b));
+        }
+        return hex.toString();
+    }
+
+    private static String read(final Reader reader) throws IOException
+    {
+        final StringBuilder text = new StringBuilder();
+        final char[] buffer = new char[333];
+        int count;
+        while ((count = reader.read(buffer, 0, buffer.length)) != -1)
+        {
+            text.append(buffer, 0, count);
+        }
+        return text.toString();
+    }
+}
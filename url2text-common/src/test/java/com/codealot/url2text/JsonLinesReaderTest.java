@@ -0,0 +1,170 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class JsonLinesReaderTest
+{
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        final List<String> texts = new ArrayList<>();
+        final StringWriter destination = new StringWriter();
+        try (final JsonLinesWriter writer = new JsonLinesWriter(destination))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                final StringBuilder text = new StringBuilder();
+                for (int j = 0; j < i * 100; j++)
+                {
+                    text.append((j % 50 == 0) ? "\n\"\ud83d\ude00" : "x");
+                }
+                texts.add(text.toString());
+                final Response response = new Response();
+                response.setStatus(200 + i);
+                response.setTextReader(new StringReader(text.toString()));
+                writer.write(response);
+            }
+        }
+
+        int count = 0;
+        try (final JsonLinesReader reader = new JsonLinesReader(
+                new ByteArrayInputStream(destination.toString().getBytes(
+                        StandardCharsets.UTF_8))))
+        {
+            while (reader.hasNext())
+            {
+                try (final Response response = reader.next())
+                {
+                    assertEquals(200 + count, response.getStatus());
+                    assertEquals(texts.get(count), response.getText());
+                }
+                count++;
+            }
+            assertEquals(100L, reader.getLineNumber());
+        }
+        assertEquals(100, count);
+    }
+
+    @Test
+    public void testBlankLines() throws Exception
+    {
+        final String json;
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader("text"));
+            json = response.toJson();
+        }
+        try (final JsonLinesReader reader = new JsonLinesReader(
+                new StringReader("\n" + json + "\r\n\n  \n" + json)))
+        {
+            assertEquals("text", reader.next().getText());
+            assertEquals(2L, reader.getLineNumber());
+            assertEquals("text", reader.next().getText());
+            assertEquals(5L, reader.getLineNumber());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testBadLine() throws Exception
+    {
+        try (final JsonLinesReader reader = new JsonLinesReader(
+                new StringReader("\n{\"Converted-Text\":\"text\"}\n{oops}\n")))
+        {
+            assertEquals("text", reader.next().getText());
+            try
+            {
+                reader.hasNext();
+                fail("Bad line accepted");
+            }
+            catch (IllegalStateException e)
+            {
+                assertTrue(e.getMessage().endsWith("line 3"));
+                assertTrue(e.getCause() instanceof Url2TextException);
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testReadsInBlocks() throws Exception
+    {
+        final StringWriter destination = new StringWriter();
+        try (final JsonLinesWriter writer = new JsonLinesWriter(destination))
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                final Response response = new Response();
+                response.setTextReader(new StringReader(line(i)));
+                writer.write(response);
+            }
+        }
+        final String json = destination.toString();
+
+        // then a char at a time, which puts every line feed in a block of
+        // its own
+        final AtomicInteger reads = new AtomicInteger();
+        for (final boolean trickle : new boolean[] { false, true })
+        {
+            final Reader source = new StringReader(json)
+                {
+                    @Override
+                    public int read(final char[] cbuf, final int off,
+                            final int len) throws IOException
+                    {
+                        if (!trickle)
+                        {
+                            reads.incrementAndGet();
+                        }
+                        return super.read(cbuf, off, trickle ? Math.min(len,
+                                1) : len);
+                    }
+                };
+            try (final JsonLinesReader reader = new JsonLinesReader(source))
+            {
+                for (int i = 0; i < 50; i++)
+                {
+                    try (final Response response = reader.next())
+                    {
+                        assertEquals(line(i), response.getText());
+                    }
+                }
+                assertFalse(reader.hasNext());
+            }
+        }
+        assertTrue(reads.get() < json.length() / 1_000);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testEmpty() throws Exception
+    {
+        try (final JsonLinesReader reader = new JsonLinesReader(
+                new StringReader("")))
+        {
+            reader.next();
+        }
+    }
+
+    private static String line(final int i)
+    {
+        final StringBuilder text = new StringBuilder("line " + i);
+        for (int j = 0; j < i * 100; j++)
+        {
+            text.append((char) ('a' + j % 26));
+        }
+        return text.toString();
+    }
+}
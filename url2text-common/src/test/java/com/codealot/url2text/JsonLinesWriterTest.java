@@ -0,0 +1,122 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.codealot.url2text.Constants.OutputFormat;
+
+public class JsonLinesWriterTest
+{
+    @Test
+    public void testOneLinePerResponse() throws Exception
+    {
+        final StringWriter destination = new StringWriter();
+        try (final JsonLinesWriter writer = new JsonLinesWriter(destination))
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                try (final Response response = response("line\n" + i))
+                {
+                    writer.write(response);
+                }
+            }
+            assertEquals(3L, writer.getCount());
+        }
+
+        final String[] lines = destination.toString().split("\n", -1);
+        assertEquals(4, lines.length);
+        assertEquals("", lines[3]);
+        for (int i = 0; i < 3; i++)
+        {
+            try (final Response response = response("line\n" + i))
+            {
+                assertEquals(response.toJson(), lines[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception
+    {
+        final String expected;
+        try (final Response response = response("caf\u00e9"))
+        {
+            expected = response.toJson() + "\n";
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final JsonLinesWriter writer = new JsonLinesWriter(bytes);
+                final Response response = response("caf\u00e9"))
+        {
+            writer.write(response);
+            writer.flush();
+            assertEquals(expected,
+                    bytes.toString(StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    @Test
+    public void testFileAppend() throws Exception
+    {
+        final Path file = Files.createTempFile("url2text", ".jsonl");
+        try
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                try (final JsonLinesWriter writer = new JsonLinesWriter(file,
+                        true))
+                {
+                    writer.write(response("text"));
+                }
+            }
+            final List<String> lines = Files.readAllLines(file,
+                    StandardCharsets.UTF_8);
+            assertEquals(2, lines.size());
+
+            try (final JsonLinesWriter writer = new JsonLinesWriter(file,
+                    false))
+            {
+                writer.write(response("text"));
+            }
+            assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8)
+                    .size());
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testAsFormat() throws Url2TextException, IOException
+    {
+        try (final Response response = response("text"))
+        {
+            final String json = response.toJson();
+            assertEquals(json + "\n", response.asFormat(OutputFormat.JSONL));
+
+            final StringWriter writer = new StringWriter();
+            response.asFormat(OutputFormat.JSONL, writer);
+            assertEquals(json + "\n", writer.toString());
+        }
+    }
+
+    private static Response response(final String text)
+    {
+        final Response response = new Response();
+        response.setStatus(200);
+        response.setFetchDate(new Date(0));
+        response.setTextReader(new StringReader(text));
+        return response;
+    }
+}
@@ -49,6 +49,20 @@ public class NameAndValueTest {
         assertNotEquals(nameAndValue, nameAndValue2);
     }
     
+    @Test
+    public void testEqualsFieldByField()
+    {
+        // identical toString(), but different fields
+        final NameAndValue joined = new NameAndValue("a : b", "c");
+        final NameAndValue split = new NameAndValue("a", "b : c");
+        assertEquals(joined.toString(), split.toString());
+        assertNotEquals(joined, split);
+
+        final NameAndValue copy = new NameAndValue("a", "b : c");
+        assertEquals(split, copy);
+        assertEquals(split.hashCode(), copy.hashCode());
+    }
+
     @Test
     public void testCompareTo()
     {
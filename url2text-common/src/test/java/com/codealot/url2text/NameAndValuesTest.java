@@ -0,0 +1,104 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NameAndValuesTest
+{
+    @Test
+    public void testLookupIgnoresCase()
+    {
+        final NameAndValues list = new NameAndValues();
+        list.add(new NameAndValue("Content-Type", "text/html"));
+        list.add(new NameAndValue("Set-Cookie", "a=1"));
+        list.add(new NameAndValue("set-cookie", "b=2"));
+        list.add(new NameAndValue("SET-COOKIE", "c=3"));
+
+        assertEquals("text/html", list.getFirst("content-type"));
+        assertEquals("text/html", list.getFirst("CONTENT-TYPE"));
+        assertEquals("a=1", list.getFirst("Set-Cookie"));
+        assertEquals(Arrays.asList("a=1", "b=2", "c=3"),
+                list.getAll("Set-cookie"));
+        assertTrue(list.containsName("set-COOKIE"));
+        assertFalse(list.containsName("Etag"));
+        assertNull(list.getFirst("Etag"));
+        assertEquals(Collections.emptyList(), list.getAll("Etag"));
+    }
+
+    @Test
+    public void testIndexFollowsChanges()
+    {
+        final NameAndValues list = new NameAndValues(1);
+        for (int i = 0; i < 100; i++)
+        {
+            list.add(new NameAndValue("name" + i, "value" + i));
+        }
+        assertEquals("value50", list.getFirst("NAME50"));
+
+        list.remove(50);
+        assertNull(list.getFirst("name50"));
+        assertEquals("value51", list.getFirst("name51"));
+
+        list.set(0, new NameAndValue("replaced", "new"));
+        assertNull(list.getFirst("name0"));
+        assertEquals("new", list.getFirst("Replaced"));
+
+        list.add(0, new NameAndValue("name99", "first"));
+        assertEquals(Arrays.asList("first", "value99"), list.getAll("name99"));
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertNull(list.getFirst("name99"));
+    }
+
+    @Test
+    public void testNamesAreCanonical()
+    {
+        final String name = new String("X-Canonical-Test");
+        final NameAndValues first = new NameAndValues();
+        first.add(new NameAndValue(name, "1"));
+        final NameAndValues second = new NameAndValues();
+        second.add(new NameAndValue(new String(name), "2"));
+        assertSame(first.get(0).getName(), second.get(0).getName());
+    }
+
+    @Test
+    public void testIsAList()
+    {
+        final List<NameAndValue> plain = new ArrayList<>();
+        plain.add(new NameAndValue("a", "1"));
+        plain.add(new NameAndValue("b", "2"));
+        final NameAndValues list = new NameAndValues(plain);
+        assertEquals(plain, list);
+        assertEquals(list, plain);
+        assertEquals(plain.hashCode(), list.hashCode());
+        assertEquals(plain.toString(), list.toString());
+    }
+
+    @Test
+    public void testGetFirstFromAnyList()
+    {
+        final List<NameAndValue> plain = new ArrayList<>();
+        plain.add(new NameAndValue("Etag", "\"1\""));
+        assertEquals("\"1\"", NameAndValues.getFirst(plain, "ETAG"));
+        assertNull(NameAndValues.getFirst(plain, "Server"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadIndex()
+    {
+        new NameAndValues().get(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullElement()
+    {
+        new NameAndValues().add(null);
+    }
+}
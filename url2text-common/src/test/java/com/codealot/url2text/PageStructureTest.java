@@ -0,0 +1,82 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.codealot.url2text.PageStructure.Heading;
+import com.codealot.url2text.PageStructure.Link;
+
+public class PageStructureTest
+{
+    @Test
+    public void testRobots()
+    {
+        assertFalse(structure(null).isNoIndex());
+        assertFalse(structure(null).isNoFollow());
+
+        final PageStructure structure = structure("NoIndex, follow");
+        assertTrue(structure.isNoIndex());
+        assertFalse(structure.isNoFollow());
+
+        assertTrue(structure("none").isNoIndex());
+        assertTrue(structure("none").isNoFollow());
+    }
+
+    @Test
+    public void testLinkNoFollow()
+    {
+        assertTrue(new Link("http://a/", "a", "external NoFollow")
+                .isNoFollow());
+        assertFalse(new Link("http://a/", "a", null).isNoFollow());
+        assertEquals("", new Link("http://a/", null, null).getText());
+    }
+
+    @Test
+    public void testEquals()
+    {
+        assertEquals(example(), example());
+        assertEquals(example().hashCode(), example().hashCode());
+        assertFalse(example().equals(structure(null)));
+        assertEquals("Canonical = http://example.com/a\n"
+                + "Robots = noindex\n" + "H1 = Title\n"
+                + "Link = http://example.com/b \"Next\" [nofollow]\n"
+                + "Link = http://example.com/c\n", example().toString());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable()
+    {
+        example().getLinks().clear();
+    }
+
+    @Test
+    public void testCopiesLists()
+    {
+        final List<Heading> headings = new ArrayList<>();
+        final PageStructure structure = new PageStructure(null, null,
+                headings, Collections.<Link> emptyList());
+        headings.add(new Heading(1, "later"));
+        assertTrue(structure.getHeadings().isEmpty());
+    }
+
+    static PageStructure example()
+    {
+        return new PageStructure("http://example.com/a", "noindex",
+                Arrays.asList(new Heading(1, "Title")), Arrays.asList(
+                        new Link("http://example.com/b", "Next", "nofollow"),
+                        new Link("http://example.com/c", "", "")));
+    }
+
+    private static PageStructure structure(final String robots)
+    {
+        return new PageStructure(null, robots,
+                Collections.<Heading> emptyList(),
+                Collections.<Link> emptyList());
+    }
+}
@@ -3,8 +3,14 @@ package com.codealot.url2text;
 import static com.codealot.url2text.Constants.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -82,6 +88,116 @@ public class ResponseTest
         }
     }
 
+    @Test
+    public void testWriteJson() throws Exception
+    {
+        // surrogate pairs either side of every chunk boundary, plus escapes
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 8 * 1024 - 1; i++)
+        {
+            text.append('b');
+        }
+        text.append("\ud83d\ude00");
+        for (int i = 0; i < 3 * 8 * 1024; i++)
+        {
+            text.append((i % 1000 == 0) ? "\"\\\n\u0001" : "a");
+            if (i % 8191 == 0)
+            {
+                text.append("\ud83d\ude00");
+            }
+        }
+        final String expected;
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader(text.toString()));
+            response.setFetchDate(new Date(0));
+            response.setResponseHeaders(namesAndValues);
+            expected = response.toJson();
+        }
+
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader(text.toString()));
+            response.setFetchDate(new Date(0));
+            response.setResponseHeaders(namesAndValues);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            response.writeJson(bytes);
+            assertEquals(expected, bytes.toString("UTF-8"));
+        }
+
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader(text.toString()));
+            response.setFetchDate(new Date(0));
+            response.setResponseHeaders(namesAndValues);
+            final StringWriter writer = new StringWriter();
+            response.writeJson(writer);
+            assertEquals(expected, writer.toString());
+        }
+
+        final JsonNode root = mapper.readTree(expected);
+        assertEquals(text.toString(), root.get(HDR_CONVERTED_TEXT).textValue());
+    }
+
+    @Test
+    public void testWriteJsonLeavesSinkOpen() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            final StringWriter writer = new StringWriter();
+            writer.write('[');
+            response.writeJson(writer);
+            writer.write(']');
+            assertTrue(mapper.readTree(writer.toString()).isArray());
+        }
+    }
+
+    @Test
+    public void testWriteTo() throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20_000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+        }
+        final String expected;
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader(text.toString()));
+            response.setFetchDate(new Date(0));
+            response.setContentMetadata(namesAndValues);
+            expected = response.toString();
+        }
+
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader(text.toString()));
+            response.setFetchDate(new Date(0));
+            response.setContentMetadata(namesAndValues);
+            final StringWriter writer = new StringWriter();
+            response.writeTo(writer);
+            assertEquals(expected, writer.toString());
+        }
+    }
+
+    @Test
+    public void testAsFormatWriter() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader("text"));
+            response.getText();
+
+            final StringWriter plain = new StringWriter();
+            response.asFormat(OutputFormat.PLAIN, plain);
+            assertEquals(response.toString(), plain.toString());
+
+            final StringWriter json = new StringWriter();
+            response.asFormat(OutputFormat.JSON, json);
+            assertEquals(response.toJson(), json.toString());
+        }
+    }
+
     @Test
     public void testFromJson() throws Exception
     {
@@ -111,6 +227,501 @@ public class ResponseTest
         }
     }
 
+    @Test
+    public void testFromJsonStreaming() throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20_000; i++)
+        {
+            text.append((i % 1000 == 0) ? "\"\\/\b\f\n\r\t\u0001\ud83d\ude00"
+                    : "a");
+        }
+        final String json;
+        final Response expected = new Response();
+        expected.setStatus(200);
+        expected.setFetchDate(new Date(0));
+        expected.setEtag("etag");
+        expected.setTextReader(new StringReader(text.toString()));
+        expected.setResponseHeaders(namesAndValues);
+        expected.setContentMetadata(namesAndValues);
+        json = expected.toJson();
+
+        try (final Response r2 = Response.fromJson(new StringReader(json)))
+        {
+            assertEquals(expected, r2);
+            assertEquals(text.toString(), r2.getText());
+        }
+        try (final Response r2 = Response.fromJson(new ByteArrayInputStream(
+                json.getBytes("UTF-8"))))
+        {
+            assertEquals(expected, r2);
+            assertEquals(text.toString(), r2.getText());
+        }
+        expected.close();
+    }
+
+    @Test
+    public void testFromJsonFieldOrder() throws Exception
+    {
+        // text first, with fields following it and unknown fields ignored
+        final String json = "{\"" + HDR_CONVERTED_TEXT
+                + "\":\"a\\\"b\\u00e9\",\"Unknown\":[1,{\"x\":2}],\""
+                + HDR_TRANSACTION_METADATA + "\":{\"" + HDR_STATUS
+                + "\":404,\"" + HDR_ETAG + "\":\"etag\"},\""
+                + HDR_RESPONSE_HEADERS + "\":{\"key1\":\"value1\"}} ";
+        try (final Response response = Response.fromJson(new StringReader(
+                json)))
+        {
+            assertEquals("a\"b\u00e9", response.getText());
+            assertEquals(404, response.getStatus());
+            assertEquals("etag", response.getEtag());
+            assertEquals(1, response.getResponseHeaders().size());
+            assertEquals("value1", response.getResponseHeaders().get(0)
+                    .getValue());
+        }
+    }
+
+    @Test
+    public void testFromJsonSpills() throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+        }
+        final String json;
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader(text.toString()));
+            json = response.toJson();
+        }
+
+        final File tmp = new File(System.getProperty("java.io.tmpdir"));
+        final int before = countSpilled(tmp);
+        try (final Response response = Response.fromJson(new StringReader(
+                json), 1_000L))
+        {
+            assertEquals(before + 1, countSpilled(tmp));
+            assertEquals(text.toString(), response.getText());
+        }
+        assertEquals(before, countSpilled(tmp));
+    }
+
+    @Test(expected = Url2TextException.class)
+    public void testFromJsonTruncated() throws Exception
+    {
+        Response.fromJson(new StringReader("{\"" + HDR_CONVERTED_TEXT
+                + "\":\"unterminated"));
+    }
+
+    @Test
+    public void testFromJsonUnicodeEscapes() throws Exception
+    {
+        try (final Response response = Response.fromJson(new StringReader(
+                "{\"" + HDR_CONVERTED_TEXT + "\":\"\\u00E9\\u00e9\"}")))
+        {
+            assertEquals("\u00e9\u00e9", response.getText());
+        }
+
+        // cut short, at the end of the input or of the string
+        for (final String escape : new String[] { "\\u00", "\\u" })
+        {
+            try
+            {
+                Response.fromJson(new StringReader("{\"" + HDR_CONVERTED_TEXT
+                        + "\":\"" + escape));
+                fail("Accepted " + escape);
+            }
+            catch (Url2TextException e)
+            {
+                assertTrue(e.getCause() instanceof EOFException);
+            }
+        }
+
+        // signs and non-ASCII digits are not hex
+        for (final String escape : new String[] { "\\u+0e9", "\\u-0e9",
+                "\\u00g9", "\\u\u0660\u0660\u0661\u0662", "\\u00\"}" })
+        {
+            try
+            {
+                Response.fromJson(new StringReader("{\"" + HDR_CONVERTED_TEXT
+                        + "\":\"" + escape + "\"}"));
+                fail("Accepted " + escape);
+            }
+            catch (Url2TextException e)
+            {
+                assertFalse(e.getCause() instanceof EOFException);
+            }
+        }
+    }
+
+    private static int countSpilled(final File dir)
+    {
+        final String[] names = dir.list(new FilenameFilter()
+            {
+                @Override
+                public boolean accept(final File d, final String name)
+                {
+                    return name.startsWith("url2text") && name.endsWith(".txt");
+                }
+            });
+        return (names == null) ? 0 : names.length;
+    }
+
+    @Test
+    public void testBinary() throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20_000; i++)
+        {
+            text.append((i % 8191 == 0) ? "\"\n\ud83d\ude00" : "a");
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Response expected = new Response();
+        expected.setStatus(200);
+        expected.setFetchDate(new Date(1234L));
+        expected.setContentTitle("title");
+        expected.setResponseHeaders(namesAndValues);
+        expected.setContentMetadata(namesAndValues);
+        expected.setTextReader(new StringReader(text.toString()));
+        expected.getText();
+        expected.writeBinary(bytes);
+        // instances can follow each other
+        expected.writeBinary(bytes);
+
+        final ByteArrayInputStream in = new ByteArrayInputStream(
+                bytes.toByteArray());
+        for (int i = 0; i < 2; i++)
+        {
+            try (final Response r2 = Response.readBinary(in, 1_000L))
+            {
+                assertEquals(expected, r2);
+                assertEquals(text.toString(), r2.getText());
+                assertEquals("title", r2.getContentTitle());
+                assertEquals(1234L, r2.getFetchDate().getTime());
+                assertEquals(LONG_NOT_SET, r2.getContentLength());
+            }
+        }
+        assertNull(Response.readBinary(in));
+        expected.close();
+    }
+
+    @Test
+    public void testBinaryEarlierVersions() throws Exception
+    {
+        for (byte version = BinaryCodec.VERSION_1;
+                version <= BinaryCodec.VERSION_2; version++)
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(new byte[] { 0x55, 0x32, 0x54, version });
+            BinaryCodec.writeString(bytes, "http://example.com/");
+            BinaryCodec.writeString(bytes, "http://example.com/");
+            BinaryCodec.writeLong(bytes, 200L);
+            BinaryCodec.writeString(bytes, "OK");
+            BinaryCodec.writeLong(bytes, 1234L);
+            BinaryCodec.writeLong(bytes, 10L);
+            BinaryCodec.writeString(bytes, "title");
+            BinaryCodec.writeString(bytes, "text/html");
+            BinaryCodec.writeString(bytes, "UTF-8");
+            BinaryCodec.writeLong(bytes, 4L);
+            BinaryCodec.writeString(bytes, STR_NOT_SET);
+            BinaryCodec.writeString(bytes, STR_NOT_SET);
+            BinaryCodec.writeLong(bytes, 5L);
+            BinaryCodec.writeLong(bytes, 0L);
+            BinaryCodec.writeLong(bytes, 0L);
+            BinaryCodec.writeString(bytes, "text");
+            BinaryCodec.writeLong(bytes, 0L);
+            if (version == BinaryCodec.VERSION_2)
+            {
+                BinaryCodec.writeString(bytes, "SHA-1");
+                BinaryCodec.writeString(bytes, "ABCD");
+                BinaryCodec.writeLong(bytes, 4L);
+                BinaryCodec.writeLong(bytes, 4L);
+            }
+            // a second instance must follow on cleanly
+            bytes.write(bytes.toByteArray());
+
+            final ByteArrayInputStream in = new ByteArrayInputStream(
+                    bytes.toByteArray());
+            for (int i = 0; i < 2; i++)
+            {
+                try (final Response response = Response.readBinary(in))
+                {
+                    assertEquals("title", response.getContentTitle());
+                    assertEquals("text", response.getText());
+                    assertNull(response.getPageStructure());
+                    assertEquals((version == BinaryCodec.VERSION_1)
+                            ? STR_NOT_SET : "ABCD", response.getTextDigest());
+                }
+            }
+            assertNull(Response.readBinary(in));
+        }
+    }
+
+    @Test(expected = Url2TextException.class)
+    public void testBinaryBadSignature() throws Exception
+    {
+        Response.readBinary(new ByteArrayInputStream("{\"\"}".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testBinarySmallerThanJson() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setStatus(200);
+            response.setResponseHeaders(namesAndValues);
+            response.setTextReader(new StringReader(
+                    "line one\n\"quoted\"\tline two\n"));
+            response.getText();
+
+            final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            response.writeBinary(binary);
+            final ByteArrayOutputStream json = new ByteArrayOutputStream();
+            response.writeJson(json);
+            assertTrue(binary.size() < json.size());
+        }
+    }
+
+    @Test
+    public void testTextMemoryThreshold() throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+        }
+        final File tmp = new File(System.getProperty("java.io.tmpdir"));
+        final int before = countSpilled(tmp);
+
+        final Response response = new Response();
+        assertEquals(Response.DEFAULT_TEXT_MEMORY_THRESHOLD,
+                response.getTextMemoryThreshold());
+        response.setTextMemoryThreshold(1_000L);
+        response.setTextReader(new StringReader(text.toString()));
+        assertEquals(text.length(), response.getTextLength());
+        assertEquals(before + 1, countSpilled(tmp));
+
+        // repeatable
+        assertEquals(text.toString(), response.getText());
+        assertEquals(text.toString(), response.getText());
+        final StringWriter writer = new StringWriter();
+        response.writeTo(writer);
+        assertTrue(writer.toString().endsWith(text + "\n"));
+
+        // a copy shares the file
+        final Response copy = new Response(response);
+        response.close();
+        response.close();
+        assertEquals(before + 1, countSpilled(tmp));
+        assertEquals(text.toString(), copy.getText());
+        copy.close();
+        assertEquals(before, countSpilled(tmp));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetTextMemoryThresholdNegative() throws IOException
+    {
+        try (final Response response = new Response())
+        {
+            response.setTextMemoryThreshold(-1L);
+        }
+    }
+
+    @Test
+    public void testCopy() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setContentTitle("title");
+            response.setStatus(200);
+            response.setFetchDate(new Date(0));
+            response.setTextReader(new StringReader("text"));
+            response.setResponseHeaders(namesAndValues);
+
+            try (final Response r2 = new Response(response);
+                    final Response r3 = new Response(response))
+            {
+                assertEquals(response, r2);
+                assertEquals("text", r2.getText());
+
+                // copies are independent
+                r2.getResponseHeaders().get(0).setValue("changed");
+                r2.getFetchDate().setTime(1000L);
+                assertEquals(response, r3);
+                assertNotEquals(response, r2);
+
+                // and so are their readers
+                assertEquals('t', r3.getTextReader().read());
+                assertEquals("text", r3.getText());
+            }
+        }
+    }
+
+    @Test
+    public void testFingerprint() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setFetchDate(new Date(0));
+            response.setResponseHeaders(namesAndValues);
+            response.setContentMetadata(namesAndValues);
+            response.setTextReader(new StringReader("text\u00e9"));
+            response.setTextDigestAlgorithm("SHA-1");
+            assertEquals(STR_NOT_SET, response.getTextDigest());
+            assertEquals(LONG_NOT_SET, response.getTextCharCount());
+
+            // the fingerprint follows the text it depends on
+            final String json = response.toJson();
+            assertTrue(json.indexOf("\"" + HDR_TEXT_FINGERPRINT) > json
+                    .indexOf("\"" + HDR_CONVERTED_TEXT));
+            final String digest = response.getTextDigest();
+            assertEquals(40, digest.length());
+            assertEquals("SHA-1", response.getTextDigestAlgorithm());
+            assertEquals(5L, response.getTextCharCount());
+            assertEquals(6L, response.getTextByteCount());
+
+            try (final Response r2 = Response.fromJson(new StringReader(json));
+                    final Response r3 = new Response(json);
+                    final Response r4 = new Response(response))
+            {
+                for (final Response copy : new Response[] { r2, r3, r4 })
+                {
+                    assertEquals("SHA-1", copy.getTextDigestAlgorithm());
+                    assertEquals(digest, copy.getTextDigest());
+                    assertEquals(5L, copy.getTextCharCount());
+                    assertEquals(6L, copy.getTextByteCount());
+                }
+                assertEquals(json, r2.toJson());
+            }
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            response.writeBinary(bytes);
+            try (final Response r5 = Response.readBinary(new ByteArrayInputStream(
+                    bytes.toByteArray())))
+            {
+                assertEquals(digest, r5.getTextDigest());
+                assertEquals(6L, r5.getTextByteCount());
+            }
+        }
+    }
+
+    @Test
+    public void testFingerprintBufferedText() throws Exception
+    {
+        try (final Response before = new Response();
+                final Response after = new Response())
+        {
+            before.setTextDigestAlgorithm("MD5");
+            before.setTextReader(new StringReader("text"));
+            after.setTextReader(new StringReader("text"));
+            assertEquals("text", after.getText());
+            after.setTextDigestAlgorithm("MD5");
+
+            assertEquals(STR_NOT_SET, before.getTextDigest());
+            assertEquals("text", before.getText());
+            assertEquals(after.getTextDigest(), before.getTextDigest());
+            assertEquals(4L, after.getTextCharCount());
+        }
+    }
+
+    @Test
+    public void testNoFingerprint() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader("text"));
+            assertFalse(response.toJson().contains(HDR_TEXT_FINGERPRINT));
+            assertEquals(STR_NOT_SET, response.getTextDigest());
+        }
+    }
+
+    @Test
+    public void testPageStructure() throws Exception
+    {
+        final PageStructure structure = PageStructureTest.example();
+        try (final Response response = new Response())
+        {
+            response.setPageStructure(structure);
+            response.setResponseHeaders(namesAndValues);
+            response.setContentMetadata(namesAndValues);
+            response.setTextReader(new StringReader("text"));
+            final String json = response.toJson();
+
+            final JsonNode node = this.mapper.readTree(json).get(
+                    HDR_PAGE_STRUCTURE);
+            assertEquals("http://example.com/a", node.get(HDR_CANONICAL_URL)
+                    .textValue());
+            assertEquals(1, node.get(HDR_HEADINGS).get(0).get(0).asInt());
+            assertEquals(3, node.get(HDR_LINKS).get(0).size());
+            assertEquals(2, node.get(HDR_LINKS).get(1).size());
+
+            assertEquals(structure, new Response(json).getPageStructure());
+            try (final Response streamed = Response.fromJson(new StringReader(
+                    json)))
+            {
+                assertEquals(structure, streamed.getPageStructure());
+                assertEquals("text", streamed.getText());
+            }
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            response.writeBinary(bytes);
+            try (final Response binary = Response.readBinary(
+                    new ByteArrayInputStream(bytes.toByteArray())))
+            {
+                assertEquals(structure, binary.getPageStructure());
+                assertEquals(response, binary);
+            }
+
+            try (final Response copy = new Response(response))
+            {
+                assertEquals(structure, copy.getPageStructure());
+            }
+            assertTrue(response.toString().contains(
+                    "PAGE STRUCTURE ######################\n"
+                            + "Canonical = http://example.com/a\n"));
+        }
+    }
+
+    @Test
+    public void testNoPageStructure() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setTextReader(new StringReader("text"));
+            assertNull(response.getPageStructure());
+            assertFalse(response.toJson().contains(HDR_PAGE_STRUCTURE));
+            assertFalse(response.toString().contains("PAGE STRUCTURE"));
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            response.writeBinary(bytes);
+            try (final Response binary = Response.readBinary(
+                    new ByteArrayInputStream(bytes.toByteArray())))
+            {
+                assertNull(binary.getPageStructure());
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFingerprintTwice() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setTextDigestAlgorithm("SHA-1");
+            response.setTextDigestAlgorithm("SHA-1");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFingerprintUnknownAlgorithm() throws Exception
+    {
+        try (final Response response = new Response())
+        {
+            response.setTextDigestAlgorithm("NO-SUCH-DIGEST");
+        }
+    }
+
     @Test
     public void testEquals() throws IOException
     {
@@ -410,6 +1021,24 @@ public class ResponseTest
         }
     }
 
+    @Test
+    public void testLookups() throws IOException
+    {
+        try (final Response response = new Response())
+        {
+            assertNull(response.getResponseHeader("key1"));
+            response.getResponseHeaders().add(
+                    new NameAndValue("Content-Type", "text/html"));
+            assertEquals("text/html",
+                    response.getResponseHeader("content-type"));
+
+            // a plain list is searched too
+            response.setContentMetadata(namesAndValues);
+            assertEquals("value1", response.getContentMetadataValue("KEY1"));
+            assertNull(response.getContentMetadataValue("key2"));
+        }
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testSetTextRepeatReader() throws IOException, Url2TextException
     {
@@ -0,0 +1,292 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.*;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.codealot.url2text.TextChunker.Boundary;
+
+public class TextChunkerTest
+{
+    @Test
+    public void testFixedSize() throws IOException
+    {
+        final List<TextChunk> chunks = chunk("0123456789", 4, 0, Boundary.NONE);
+        assertEquals(3, chunks.size());
+        assertEquals(new TextChunk(0, 0L, "0123"), chunks.get(0));
+        assertEquals(new TextChunk(1, 4L, "4567"), chunks.get(1));
+        assertEquals(new TextChunk(2, 8L, "89"), chunks.get(2));
+    }
+
+    @Test
+    public void testOverlap() throws IOException
+    {
+        final List<TextChunk> chunks = chunk("0123456789", 4, 2, Boundary.NONE);
+        assertEquals(4, chunks.size());
+        assertEquals(new TextChunk(0, 0L, "0123"), chunks.get(0));
+        assertEquals(new TextChunk(1, 2L, "2345"), chunks.get(1));
+        assertEquals(new TextChunk(2, 4L, "4567"), chunks.get(2));
+        assertEquals(new TextChunk(3, 6L, "6789"), chunks.get(3));
+    }
+
+    @Test
+    public void testExactFit() throws IOException
+    {
+        assertEquals(1, chunk("0123", 4, 2, Boundary.SENTENCE).size());
+        assertEquals(0, chunk("", 4, 2, Boundary.SENTENCE).size());
+    }
+
+    @Test
+    public void testSentence() throws IOException
+    {
+        final String text = "One two. Three four. Five six.";
+        List<TextChunk> chunks = chunk(text, 24, 0, Boundary.SENTENCE);
+        assertEquals(2, chunks.size());
+        assertEquals("One two. Three four. ", chunks.get(0).getText());
+        assertEquals("Five six.", chunks.get(1).getText());
+
+        // the overlap starts at a word, as it holds no sentence start
+        chunks = chunk(text, 24, 10, Boundary.SENTENCE);
+        assertEquals(2, chunks.size());
+        assertEquals(new TextChunk(1, 15L, "four. Five six."), chunks.get(1));
+    }
+
+    @Test
+    public void testSentenceClosers() throws IOException
+    {
+        final List<TextChunk> chunks = chunk("He said \"Hi.\" Then he left.",
+                20, 0, Boundary.SENTENCE);
+        assertEquals("He said \"Hi.\" ", chunks.get(0).getText());
+    }
+
+    @Test
+    public void testIdeographic() throws IOException
+    {
+        final List<TextChunk> chunks = chunk(
+                "\u4e00\u4e8c\u4e09\u3002\u56db\u4e94\u516d", 5, 0,
+                Boundary.SENTENCE);
+        assertEquals("\u4e00\u4e8c\u4e09\u3002", chunks.get(0).getText());
+    }
+
+    @Test
+    public void testParagraph() throws IOException
+    {
+        final String text = "aaa bbb.\n\nccc ddd. eee.\n\nfff";
+        final List<TextChunk> chunks = chunk(text, 20, 0, Boundary.PARAGRAPH);
+        assertEquals(2, chunks.size());
+        assertEquals("aaa bbb.\n\n", chunks.get(0).getText());
+        assertEquals("ccc ddd. eee.\n\nfff", chunks.get(1).getText());
+
+        // without a paragraph break, falls back to sentences
+        assertEquals("ccc ddd. ", chunk("ccc ddd. eee fff", 10, 0,
+                Boundary.PARAGRAPH).get(0).getText());
+    }
+
+    @Test
+    public void testWord() throws IOException
+    {
+        final List<TextChunk> chunks = chunk("alpha beta gamma", 12, 0,
+                Boundary.WORD);
+        assertEquals("alpha beta ", chunks.get(0).getText());
+        assertEquals("gamma", chunks.get(1).getText());
+
+        // no boundary at all, so a hard cut
+        assertEquals("abcd", chunk("abcdefgh", 4, 0, Boundary.PARAGRAPH)
+                .get(0).getText());
+    }
+
+    @Test
+    public void testSurrogatePairs() throws IOException
+    {
+        final List<TextChunk> chunks = chunk("abc\ud83d\ude00def", 4, 1,
+                Boundary.NONE);
+        assertEquals("abc", chunks.get(0).getText());
+        for (final TextChunk chunk : chunks)
+        {
+            final String s = chunk.getText();
+            assertFalse(Character.isLowSurrogate(s.charAt(0)));
+            assertFalse(Character.isHighSurrogate(s.charAt(s.length() - 1)));
+        }
+    }
+
+    @Test
+    public void testCoverage() throws IOException
+    {
+        final Random random = new Random(42L);
+        final String[] words = { "a", "bb", "ccc", "dddd.", "ee!", "\n\n",
+                "f\n", "\ud83d\ude00", "\u3002" };
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5_000; i++)
+        {
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        final String text = builder.toString();
+
+        for (final Boundary boundary : Boundary.values())
+        {
+            for (final int[] sizes : new int[][] { { 1, 0 }, { 7, 3 },
+                    { 64, 0 }, { 100, 99 }, { 500, 50 } })
+            {
+                final int size = sizes[0];
+                final int overlap = sizes[1];
+                long end = 0L;
+                long offset = -1L;
+                for (final TextChunk chunk : chunk(text, size, overlap,
+                        boundary))
+                {
+                    assertTrue(chunk.getOffset() > offset);
+                    assertTrue(chunk.getOffset() <= end);
+                    assertTrue(end - chunk.getOffset() <= overlap);
+                    assertTrue(chunk.getLength() <= size);
+                    assertEquals(text.substring((int) chunk.getOffset(),
+                            (int) chunk.getOffset() + chunk.getLength()),
+                            chunk.getText());
+                    offset = chunk.getOffset();
+                    end = offset + chunk.getLength();
+                }
+                assertEquals(text.length(), end);
+            }
+        }
+    }
+
+    @Test
+    public void testStreaming() throws IOException
+    {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+        {
+            text.append("word ");
+        }
+        final CountingReader reader = new CountingReader(new StringReader(
+                text.toString()));
+        try (final TextChunker chunker = new TextChunker(reader, 100, 10,
+                Boundary.WORD))
+        {
+            // no more than one chunk is read ahead
+            assertTrue(chunker.hasNext());
+            assertTrue(reader.count <= 101);
+            chunker.next();
+            chunker.next();
+            assertTrue(reader.count <= 300);
+        }
+        assertTrue(reader.closed);
+    }
+
+    @Test
+    public void testResponseChunks() throws Exception
+    {
+        final String text = "One two. Three four. Five six.";
+        try (final Response streamed = new Response();
+                final Response buffered = new Response())
+        {
+            streamed.setTextReader(new StringReader(text));
+            buffered.setTextReader(new StringReader(text));
+            buffered.getText();
+
+            for (final Response response : new Response[] { streamed,
+                    buffered })
+            {
+                final StringBuilder joined = new StringBuilder();
+                try (final TextChunker chunks = response.getTextChunks(24, 0,
+                        Boundary.SENTENCE))
+                {
+                    while (chunks.hasNext())
+                    {
+                        joined.append(chunks.next().getText());
+                    }
+                }
+                assertEquals(text, joined.toString());
+            }
+            // buffered text can be chunked again
+            assertEquals(text, buffered.getText());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSize()
+    {
+        new TextChunker(new StringReader(""), 0, 0, Boundary.NONE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadOverlap()
+    {
+        new TextChunker(new StringReader(""), 4, 4, Boundary.NONE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadError()
+    {
+        final Reader broken = new Reader()
+            {
+                @Override
+                public int read(final char[] cbuf, final int off,
+                        final int len) throws IOException
+                {
+                    throw new IOException("broken");
+                }
+
+                @Override
+                public void close()
+                {
+                    // nothing to close
+                }
+            };
+        new TextChunker(broken, 4, 0, Boundary.NONE).hasNext();
+    }
+
+    private static List<TextChunk> chunk(final String text, final int size,
+            final int overlap, final Boundary boundary) throws IOException
+    {
+        final List<TextChunk> chunks = new ArrayList<>();
+        try (final TextChunker chunker = new TextChunker(new StringReader(
+                text), size, overlap, boundary))
+        {
+            while (chunker.hasNext())
+            {
+                final TextChunk chunk = chunker.next();
+                assertEquals(chunks.size(), chunk.getIndex());
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    private static class CountingReader extends FilterReader
+    {
+        long count = 0L;
+        boolean closed = false;
+
+        CountingReader(final Reader source)
+        {
+            super(source);
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            final int n = super.read(cbuf, off, len);
+            if (n > 0)
+            {
+                this.count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.codealot.url2text;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps request URLs to the page they land on, so the same document reached by
+ * another spelling, or through a redirect, has one key.
+ * <p>
+ * All URLs are first reduced by a {@link UrlCanonicalizer}; an alias is only
+ * held when the canonical request URL and landing page still differ. Aliases
+ * are resolved transitively, so a chain of redirects collapses to its end.
+ * <p>
+ * The index is held in memory, and can be backed by a file of tab-separated
+ * "alias target" lines, which is read when the index is opened and appended
+ * to as aliases are recorded. Later lines override earlier ones.
+ * <p>
+ * Instances are thread-safe. See {@link Url2Text#setAliasIndex(AliasIndex)}.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class AliasIndex implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AliasIndex.class);
+
+    // guards against a cycle in a hand-edited file
+    private static final int MAX_HOPS = 16;
+
+    private final UrlCanonicalizer canonicalizer;
+    private final Map<String, String> aliases = new HashMap<>();
+    private final Path file;
+    private Writer writer = null;
+
+    /**
+     * Default constructor. An in-memory index, using the default
+     * canonicalizer.
+     */
+    public AliasIndex()
+    {
+        this(new UrlCanonicalizer());
+    }
+
+    /**
+     * Constructor for an in-memory index.
+     *
+     * @param canonicalizer
+     */
+    public AliasIndex(final UrlCanonicalizer canonicalizer)
+    {
+        this.canonicalizer = canonicalizer;
+        this.file = null;
+    }
+
+    /**
+     * Constructor for an index backed by a file, using the default
+     * canonicalizer.
+     *
+     * @param file
+     *            created if it does not exist
+     * @throws Url2TextException
+     *             if the file cannot be read
+     */
+    public AliasIndex(final Path file) throws Url2TextException
+    {
+        this(file, new UrlCanonicalizer());
+    }
+
+    /**
+     * Constructor for an index backed by a file.
+     *
+     * @param file
+     *            created if it does not exist
+     * @param canonicalizer
+     * @throws Url2TextException
+     *             if the file cannot be read
+     */
+    public AliasIndex(final Path file, final UrlCanonicalizer canonicalizer)
+            throws Url2TextException
+    {
+        this.canonicalizer = canonicalizer;
+        this.file = file;
+        if (Files.exists(file))
+        {
+            load(file);
+        }
+    }
+
+    public UrlCanonicalizer getCanonicalizer()
+    {
+        return this.canonicalizer;
+    }
+
+    public Path getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * See {@link #resolve(URL)}.
+     *
+     * @param url
+     * @return the key
+     * @throws MalformedURLException
+     */
+    public String resolve(final String url) throws MalformedURLException
+    {
+        return resolve(new URL(url));
+    }
+
+    /**
+     * Return the key for the URL: the canonical form of the landing page it is
+     * known to reach, or else its own canonical form.
+     *
+     * @param url
+     * @return the key
+     */
+    public String resolve(final URL url)
+    {
+        final String canonical = this.canonicalizer.canonicalize(url);
+        synchronized (this)
+        {
+            return follow(canonical);
+        }
+    }
+
+    /**
+     * See {@link #record(URL, URL)}.
+     *
+     * @param requestPage
+     * @param landingPage
+     * @return true if a new alias was recorded
+     * @throws MalformedURLException
+     * @throws Url2TextException
+     */
+    public boolean record(final String requestPage, final String landingPage)
+            throws MalformedURLException, Url2TextException
+    {
+        return record(new URL(requestPage), new URL(landingPage));
+    }
+
+    /**
+     * Record that the request URL lands on the landing page.
+     *
+     * @param requestPage
+     * @param landingPage
+     * @return true if a new alias was recorded, false if the URLs are
+     *         equivalent or the alias was already known
+     * @throws Url2TextException
+     *             if the file cannot be written
+     */
+    public boolean record(final URL requestPage, final URL landingPage)
+            throws Url2TextException
+    {
+        final String alias = this.canonicalizer.canonicalize(requestPage);
+        final String landing = this.canonicalizer.canonicalize(landingPage);
+        synchronized (this)
+        {
+            final String target = follow(landing);
+            if (alias.equals(target) || target.equals(this.aliases.get(alias)))
+            {
+                return false;
+            }
+            this.aliases.put(alias, target);
+            append(alias, target);
+        }
+        LOG.debug("Alias {} -> {}", alias, landing);
+        return true;
+    }
+
+    /**
+     * @return the number of aliases held
+     */
+    public synchronized int size()
+    {
+        return this.aliases.size();
+    }
+
+    /**
+     * Close the file, if any. The index can still be used, and the file is
+     * reopened if another alias is recorded.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (this.writer != null)
+        {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AliasIndex[" + size() + " aliases"
+                + (this.file == null ? "" : ", " + this.file) + "]";
+    }
+
+    private String follow(final String canonical)
+    {
+        String result = canonical;
+        for (int i = 0; i < MAX_HOPS; i++)
+        {
+            final String next = this.aliases.get(result);
+            if (next == null)
+            {
+                break;
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    private void append(final String alias, final String target)
+            throws Url2TextException
+    {
+        if (this.file == null)
+        {
+            return;
+        }
+        try
+        {
+            if (this.writer == null)
+            {
+                this.writer = Files.newBufferedWriter(this.file,
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            // canonical URLs hold no whitespace
+            this.writer.write(alias);
+            this.writer.write('\t');
+            this.writer.write(target);
+            this.writer.write('\n');
+            this.writer.flush();
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Failed to write alias index "
+                    + this.file, e);
+        }
+    }
+
+    private void load(final Path source) throws Url2TextException
+    {
+        try (final BufferedReader reader = Files.newBufferedReader(source,
+                StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                final int tab = line.indexOf('\t');
+                if (tab > 0 && tab < line.length() - 1)
+                {
+                    this.aliases.put(line.substring(0, tab),
+                            line.substring(tab + 1));
+                }
+                else if (!line.isEmpty())
+                {
+                    LOG.warn("Ignoring bad line in alias index {}: {}",
+                            source, line);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Failed to read alias index "
+                    + source, e);
+        }
+        LOG.debug("Loaded {} aliases from {}", this.aliases.size(), source);
+    }
+}
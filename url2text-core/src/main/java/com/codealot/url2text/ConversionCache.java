@@ -0,0 +1,331 @@
+package com.codealot.url2text;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of Tika conversions, keyed by a hash of the raw content.
+ * <p>
+ * Many URLs serve byte-identical documents (mirrored PDFs, the same attachment
+ * linked from many pages). With this cache, such a document is parsed once,
+ * and later fetches of the same bytes, with the same Content-Type, reuse the
+ * extracted text and metadata.
+ * <p>
+ * Text is held as UTF-8. The least recently used conversions are evicted when
+ * the text held exceeds the size limit, in bytes. The hit rate, and the
+ * conversion time saved by hits, are recorded.
+ * <p>
+ * Note that a conversion is read before it is returned, so cannot overlap the
+ * download; the cache is bypassed when
+ * {@link Url2Text#setStreamBinaryContent(boolean)} is enabled. Text is only
+ * buffered up to the size limit, so a conversion too large to cache is
+ * streamed from there on, uncached. See
+ * {@link Url2Text#setConversionCache(ConversionCache)}.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class ConversionCache
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ConversionCache.class);
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;
+
+    // access ordered, so iteration starts with the least recently used
+    private final LinkedHashMap<String, Conversion> conversions = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private long bytes = 0L;
+
+    private long hitCount = 0L;
+    private long missCount = 0L;
+    private long savedMillis = 0L;
+
+    /**
+     * Default constructor. Holds up to 64MiB of text.
+     */
+    public ConversionCache()
+    {
+        this(64L * 1_024 * 1_024);
+    }
+
+    /**
+     * Constructor setting the size limit.
+     *
+     * @param maxBytes
+     *            maximum size of the cached text, in bytes
+     */
+    public ConversionCache(final long maxBytes)
+    {
+        if (maxBytes < 1L)
+        {
+            throw new IllegalArgumentException("Bad cache limit: " + maxBytes
+                    + " bytes");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * Returns the proportion of lookups which were hits, or zero if there have
+     * been none.
+     *
+     * @return rate between 0 and 1
+     */
+    public synchronized double getHitRate()
+    {
+        final long lookups = this.hitCount + this.missCount;
+        return (lookups == 0L) ? 0.0 : (double) this.hitCount / lookups;
+    }
+
+    /**
+     * Returns the conversion time saved by hits, in milliseconds: the sum of
+     * the original conversion times of the conversions reused.
+     *
+     * @return milliseconds
+     */
+    public synchronized long getSavedMillis()
+    {
+        return this.savedMillis;
+    }
+
+    public synchronized int getSize()
+    {
+        return this.conversions.size();
+    }
+
+    /**
+     * Returns the size of the cached text, in bytes.
+     *
+     * @return byte count
+     */
+    public synchronized long getBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     * Empties the cache. Statistics are unaffected.
+     */
+    public synchronized void clear()
+    {
+        this.conversions.clear();
+        this.bytes = 0L;
+    }
+
+    /**
+     * Compute the cache key for some content.
+     *
+     * @param content
+     *            read to the end, but not closed
+     * @param contentType
+     *            raw Content-Type header, as passed to Tika; can be null
+     * @return the key
+     * @throws IOException
+     */
+    static String key(final InputStream content, final String contentType)
+            throws IOException
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        final byte[] buffer = new byte[8 * 1024];
+        int count;
+        while ((count = content.read(buffer)) != -1)
+        {
+            digest.update(buffer, 0, count);
+        }
+
+        final byte[] hash = digest.digest();
+        final StringBuilder key = new StringBuilder(2 * hash.length + 32);
+        for (final byte b : hash)
+        {
+            key.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return key.append(' ').append(contentType).toString();
+    }
+
+    /**
+     * Reads the converted text into the buffer while it fits in the cache.
+     *
+     * @param converted
+     *            not closed
+     * @param text
+     *            the text read
+     * @return true if the text was read to the end; false if it passed the
+     *         size limit, in which case the rest is left unread
+     * @throws IOException
+     */
+    boolean readIfFits(final Reader converted, final StringBuilder text)
+            throws IOException
+    {
+        final char[] buffer = new char[8 * 1_024];
+        long size = 0L;
+        int count;
+        while ((count = converted.read(buffer)) != -1)
+        {
+            text.append(buffer, 0, count);
+            size += utf8Length(buffer, count);
+            if (size > this.maxBytes)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count the bytes of UTF-8 needed for some chars. Each half of a
+     * surrogate pair counts two, making four for the pair.
+     *
+     * @param chars
+     * @param count
+     * @return byte count
+     */
+    private static long utf8Length(final char[] chars, final int count)
+    {
+        long length = 0L;
+        for (int i = 0; i < count; i++)
+        {
+            final char c = chars[i];
+            if (c < 0x80)
+            {
+                length++;
+            }
+            else if (c < 0x800 || Character.isSurrogate(c))
+            {
+                length += 2;
+            }
+            else
+            {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the cached conversion, or null.
+     *
+     * @param key
+     * @return the conversion, or null
+     */
+    synchronized Conversion get(final String key)
+    {
+        final Conversion conversion = this.conversions.get(key);
+        if (conversion == null)
+        {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+        this.savedMillis += conversion.millis;
+        LOG.debug("Conversion cache hit for {}", key);
+        return conversion;
+    }
+
+    /**
+     * Cache a conversion, if it fits. Its metadata must not be changed
+     * afterwards.
+     *
+     * @param key
+     * @param conversion
+     */
+    synchronized void put(final String key, final Conversion conversion)
+    {
+        final long size = conversion.text.length;
+        if (size > this.maxBytes)
+        {
+            LOG.debug("Too large to cache: {}", key);
+            return;
+        }
+        final Conversion previous = this.conversions.put(key, conversion);
+        if (previous != null)
+        {
+            this.bytes -= previous.text.length;
+        }
+        this.bytes += size;
+
+        final Iterator<Map.Entry<String, Conversion>> lru = this.conversions
+                .entrySet().iterator();
+        while (this.bytes > this.maxBytes)
+        {
+            final Conversion eldest = lru.next().getValue();
+            lru.remove();
+            this.bytes -= eldest.text.length;
+        }
+    }
+
+    /**
+     * The text and metadata extracted by Tika, and the time it took.
+     */
+    static final class Conversion
+    {
+        // UTF-8
+        final byte[] text;
+        final Metadata metadata;
+        final long millis;
+
+        Conversion(final String text, final Metadata metadata,
+                final long millis)
+        {
+            this.text = text.getBytes(StandardCharsets.UTF_8);
+            this.metadata = metadata;
+            this.millis = millis;
+        }
+
+        /**
+         * Returns a new Reader over the text.
+         *
+         * @return the reader
+         */
+        Reader newReader()
+        {
+            return new InputStreamReader(new ByteArrayInputStream(this.text),
+                    StandardCharsets.UTF_8);
+        }
+    }
+}
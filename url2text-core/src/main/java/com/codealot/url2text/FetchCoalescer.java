@@ -0,0 +1,297 @@
+package com.codealot.url2text;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent fetches of the same URL into one.
+ * <p>
+ * While a fetch is in flight, any other fetch with the same URL, the same
+ * configuration and the same additional headers waits for it, rather than
+ * fetching and converting the content again. Each caller then gets its own
+ * copy of the result, with its own text reader.
+ * <p>
+ * Share one instance between the Url2Text instances (and threads) whose
+ * fetches are to be coalesced; see
+ * {@link Url2Text#setFetchCoalescer(FetchCoalescer)}. A fetch which nobody
+ * joins is handed back as it is, so its text can still be streamed. Otherwise
+ * the text is read in full before it is handed out, and the shared result is
+ * closed once every caller has its copy.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class FetchCoalescer
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(FetchCoalescer.class);
+
+    private final ConcurrentMap<FetchKey, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Returns the number of fetches actually performed.
+     *
+     * @return count
+     */
+    public long getFetchCount()
+    {
+        return this.fetchCount.get();
+    }
+
+    /**
+     * Returns the number of fetches which waited for another, identical,
+     * fetch instead of being performed.
+     *
+     * @return count
+     */
+    public long getCoalescedCount()
+    {
+        return this.coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of fetches currently in flight.
+     *
+     * @return count
+     */
+    public int getInFlightCount()
+    {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Perform the fetch, unless an identical fetch is already in flight, in
+     * which case wait for its result.
+     *
+     * @param key
+     *            identity of the fetch
+     * @param fetch
+     *            performs the fetch
+     * @return the result, or a copy of it if the fetch was shared
+     * @throws Url2TextException
+     *             if the fetch failed, or the wait was interrupted
+     */
+    Response fetch(final FetchKey key, final Callable<Response> fetch)
+            throws Url2TextException
+    {
+        final Flight flight = new Flight();
+        Flight shared;
+        do
+        {
+            shared = this.inFlight.putIfAbsent(key, flight);
+        }
+        // a flight which cannot be joined has finished, and already been
+        // removed
+        while (shared != null && !shared.join());
+
+        if (shared == null)
+        {
+            this.fetchCount.incrementAndGet();
+            return lead(key, flight, fetch);
+        }
+
+        this.coalescedCount.incrementAndGet();
+        LOG.debug("Waiting for in-flight fetch of {}", key.getUrl());
+        try
+        {
+            return new Response(shared.await());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Url2TextException("Interrupted waiting for fetch.", e);
+        }
+        finally
+        {
+            shared.leave();
+        }
+    }
+
+    /**
+     * Perform the fetch, then share its result with any callers who joined.
+     *
+     * @param key
+     * @param flight
+     *            registered under the key
+     * @param fetch
+     * @return the result, or a copy of it if shared
+     * @throws Url2TextException
+     */
+    private Response lead(final FetchKey key, final Flight flight,
+            final Callable<Response> fetch) throws Url2TextException
+    {
+        final Response response;
+        try
+        {
+            try
+            {
+                response = fetch.call();
+            }
+            finally
+            {
+                this.inFlight.remove(key, flight);
+            }
+        }
+        catch (Throwable t)
+        {
+            flight.land(null, t);
+            flight.leave();
+            throw failure(t);
+        }
+        if (flight.seal())
+        {
+            // nobody joined, so nothing to share
+            return response;
+        }
+
+        try
+        {
+            // the text has to be shared
+            final Response buffered;
+            try
+            {
+                buffered = new Response(response);
+            }
+            catch (Throwable t)
+            {
+                flight.land(null, t);
+                throw failure(t);
+            }
+            finally
+            {
+                close(response);
+            }
+            flight.land(buffered, null);
+            return new Response(buffered);
+        }
+        finally
+        {
+            flight.leave();
+        }
+    }
+
+    /**
+     * Convert the failure of a fetch into the exception to be thrown.
+     *
+     * @param cause
+     * @return the exception
+     */
+    private static Url2TextException failure(final Throwable cause)
+    {
+        if (cause instanceof Error)
+        {
+            throw (Error) cause;
+        }
+        if (cause instanceof Url2TextException)
+        {
+            return (Url2TextException) cause;
+        }
+        return new Url2TextException(cause.getMessage(), cause);
+    }
+
+    private static void close(final Response response)
+    {
+        try
+        {
+            response.close();
+        }
+        catch (IOException e)
+        {
+            LOG.debug("Error closing fetched response", e);
+        }
+    }
+
+    /**
+     * A fetch, with a count of the callers still to copy its result. The last
+     * to leave closes the result. A flight nobody joined is sealed instead, so
+     * that no one can join it late.
+     */
+    private static final class Flight
+    {
+        // starts with the caller performing the fetch
+        private final AtomicInteger users = new AtomicInteger(1);
+        private final CountDownLatch landed = new CountDownLatch(1);
+        private Response result = null;
+        private Throwable failure = null;
+
+        /**
+         * Register another caller, unless every caller has already left, or
+         * the flight was sealed.
+         *
+         * @return true if joined
+         */
+        boolean join()
+        {
+            int count;
+            do
+            {
+                count = this.users.get();
+                if (count == 0)
+                {
+                    return false;
+                }
+            }
+            while (!this.users.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * Called by the caller performing the fetch, once it is complete, to
+         * keep the result to itself if nobody has joined.
+         *
+         * @return true if sealed
+         */
+        boolean seal()
+        {
+            return this.users.compareAndSet(1, 0);
+        }
+
+        void land(final Response result, final Throwable failure)
+        {
+            this.result = result;
+            this.failure = failure;
+            this.landed.countDown();
+        }
+
+        Response await() throws InterruptedException, Url2TextException
+        {
+            this.landed.await();
+            if (this.failure != null)
+            {
+                throw failure(this.failure);
+            }
+            return this.result;
+        }
+
+        void leave()
+        {
+            if (this.users.decrementAndGet() == 0 && this.result != null)
+            {
+                close(this.result);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.codealot.url2text;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Identity of a fetch: the URL (or its key in an {@link AliasIndex}), the
+ * configuration, the additional headers and
+ * the text filter chain. The configuration hash is computed once, but the
+ * configuration itself is compared in full.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+final class FetchKey
+{
+    private final String url;
+    private final Properties config;
+    private final Map<String, String> headers;
+    // not configuration, but changes the text
+    private final TextFilterChain filters;
+    private final int hash;
+
+    FetchKey(final Url2Text config, final String url,
+            final Map<String, String> additionalHeaders)
+    {
+        this.url = url;
+        this.config = config.configAsProperties();
+        this.headers = (additionalHeaders == null) ? Collections
+                .<String, String> emptyMap() : new HashMap<>(additionalHeaders);
+        this.filters = config.getTextFilterChain();
+        this.hash = Objects.hash(this.url, config.hashCode(), this.headers,
+                this.filters);
+    }
+
+    String getUrl()
+    {
+        return this.url;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        boolean result = false;
+        if (this == obj)
+        {
+            result = true;
+        }
+        else if (obj == null || obj.getClass() != this.getClass())
+        {
+            result = false;
+        }
+        else
+        {
+            final FetchKey test = (FetchKey) obj;
+            result = this.hash == test.hash && this.url.equals(test.url)
+                    && this.headers.equals(test.headers)
+                    && this.filters == test.filters
+                    && this.config.equals(test.config);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.url + " " + this.headers;
+    }
+}
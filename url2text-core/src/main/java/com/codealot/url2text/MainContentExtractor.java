@@ -0,0 +1,465 @@
+package com.codealot.url2text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.DomText;
+
+/**
+ * Extracts the main content of a page, e.g. a news article, leaving out
+ * navigation, footers, banners and the like.
+ * <p>
+ * The displayed text is split into blocks at block level elements. Each block
+ * is classified as content or not by its link density (the share of its
+ * words within links) and text density (words per 80 char line), and those of
+ * its neighbours, using the rules of Kohlschuetter et al., "Boilerplate
+ * Detection using Shallow Text Features" (2010). Blocks within navigation,
+ * header, footer, aside, menu and dialog elements are never content, and a
+ * heading is kept with the content which follows it. Forms are not furniture,
+ * as many sites wrap the whole page in one, but the text of their controls
+ * (e.g. buttons) is left out.
+ * <p>
+ * If no block qualifies, e.g. on a very short page, all the text outside such
+ * elements is returned, or failing that all the text. Instances are
+ * stateless, so can be shared.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class MainContentExtractor
+{
+    private static final int LINE_WIDTH = 80;
+
+    // elements whose text is not displayed
+    private static final Set<String> HIDDEN = set("head", "script", "style",
+            "noscript", "template", "iframe", "object", "svg", "canvas");
+
+    // elements which hold page furniture, rather than content
+    private static final Set<String> FURNITURE = set("nav", "header",
+            "footer", "aside", "menu", "dialog");
+
+    // form controls, whose own text is not content
+    private static final Set<String> CONTROLS = set("button", "select",
+            "option", "optgroup", "textarea", "datalist");
+
+    // elements which start a new block of text
+    private static final Set<String> BLOCKS = set("address", "article",
+            "aside", "blockquote", "body", "caption", "dd", "details",
+            "dialog", "div", "dl", "dt", "fieldset", "figcaption", "figure",
+            "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header",
+            "hr", "li", "main", "menu", "nav", "ol", "p", "pre", "section",
+            "summary", "table", "tbody", "td", "tfoot", "th", "thead", "tr",
+            "ul");
+
+    private static final Set<String> HEADINGS = set("h1", "h2", "h3", "h4",
+            "h5", "h6");
+
+    /**
+     * Extract the main content below a node, usually an HtmlPage.
+     * 
+     * @param root
+     * @return the content, and the length of all the text
+     */
+    public Extraction extract(final DomNode root)
+    {
+        return extract(root, null);
+    }
+
+    /**
+     * Extract the main content, while feeding every element, hidden or not,
+     * to the collector, so that the DOM is walked only once.
+     * 
+     * @param root
+     * @param collector
+     *            may be null
+     * @return the content, and the length of all the text
+     */
+    Extraction extract(final DomNode root,
+            final PageStructureCollector collector)
+    {
+        final Walk walk = new Walk(collector);
+        walk.visit(root, false, false, false, false);
+        walk.endBlock();
+        final List<Block> blocks = walk.blocks;
+
+        classify(blocks);
+
+        final StringBuilder all = new StringBuilder();
+        final StringBuilder content = new StringBuilder();
+        final StringBuilder outside = new StringBuilder();
+        int contentBlocks = 0;
+        for (final Block block : blocks)
+        {
+            append(all, block);
+            if (block.content)
+            {
+                append(content, block);
+                contentBlocks++;
+            }
+            if (!block.furniture)
+            {
+                append(outside, block);
+            }
+        }
+        final String text;
+        if (contentBlocks > 0)
+        {
+            text = content.toString();
+        }
+        else if (outside.length() > 0)
+        {
+            text = outside.toString();
+        }
+        else
+        {
+            text = all.toString();
+        }
+        return new Extraction(text, all.length(), blocks.size(),
+                contentBlocks);
+    }
+
+    /**
+     * Apply the density rules, then keep headings with their content.
+     * 
+     * @param blocks
+     */
+    private static void classify(final List<Block> blocks)
+    {
+        for (int i = 0; i < blocks.size(); i++)
+        {
+            final Block block = blocks.get(i);
+            final Block prev = (i > 0) ? blocks.get(i - 1) : null;
+            final Block next = (i + 1 < blocks.size()) ? blocks.get(i + 1)
+                    : null;
+
+            final double prevLinks = (prev == null) ? 0.0 : prev
+                    .linkDensity();
+            final double prevDensity = (prev == null) ? 0.0 : prev
+                    .textDensity();
+            final double nextDensity = (next == null) ? 0.0 : next
+                    .textDensity();
+            final double density = block.textDensity();
+
+            boolean content;
+            if (block.linkDensity() > 0.333333)
+            {
+                content = false;
+            }
+            else if (prevLinks <= 0.555556)
+            {
+                if (density <= 9)
+                {
+                    content = nextDensity > 10 || prevDensity > 4;
+                }
+                else
+                {
+                    content = nextDensity != 0;
+                }
+            }
+            else
+            {
+                content = nextDensity > 11;
+            }
+            block.content = content && !block.furniture;
+        }
+
+        for (int i = blocks.size() - 2; i >= 0; i--)
+        {
+            final Block block = blocks.get(i);
+            if (block.heading && !block.furniture
+                    && block.linkDensity() <= 0.333333
+                    && blocks.get(i + 1).content)
+            {
+                block.content = true;
+            }
+        }
+    }
+
+    private static void append(final StringBuilder text, final Block block)
+    {
+        if (text.length() > 0)
+        {
+            text.append('\n');
+        }
+        text.append(block.text);
+    }
+
+    private static Set<String> set(final String... names)
+    {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    /**
+     * The result of an extraction.
+     */
+    public static final class Extraction
+    {
+        private final String text;
+        private final long pageTextLength;
+        private final int blockCount;
+        private final int contentBlockCount;
+
+        Extraction(final String text, final long pageTextLength,
+                final int blockCount, final int contentBlockCount)
+        {
+            this.text = text;
+            this.pageTextLength = pageTextLength;
+            this.blockCount = blockCount;
+            this.contentBlockCount = contentBlockCount;
+        }
+
+        public String getText()
+        {
+            return this.text;
+        }
+
+        /**
+         * Returns the length of all the displayed text, one block per line.
+         * 
+         * @return chars
+         */
+        public long getPageTextLength()
+        {
+            return this.pageTextLength;
+        }
+
+        public int getBlockCount()
+        {
+            return this.blockCount;
+        }
+
+        /**
+         * Returns the number of blocks classified as content; if zero, the
+         * text is all that outside page furniture or, if there is none, all
+         * the text.
+         * 
+         * @return count
+         */
+        public int getContentBlockCount()
+        {
+            return this.contentBlockCount;
+        }
+    }
+
+    /**
+     * A block of text, with its word counts.
+     */
+    private static final class Block
+    {
+        private final StringBuilder text = new StringBuilder();
+        private boolean furniture;
+        private boolean heading;
+        private boolean content;
+
+        private int words = 0;
+        private int linkedWords = 0;
+
+        // word wrapping, for the text density
+        private int lineLength = 0;
+        private int lineWords = 0;
+        private int wrappedLines = 0;
+        private int wrappedWords = 0;
+
+        void addWord(final int length, final boolean linked)
+        {
+            this.words++;
+            if (linked)
+            {
+                this.linkedWords++;
+            }
+            if (this.lineLength > 0
+                    && this.lineLength + 1 + length > LINE_WIDTH)
+            {
+                this.wrappedLines++;
+                this.wrappedWords += this.lineWords;
+                this.lineLength = length;
+                this.lineWords = 1;
+            }
+            else
+            {
+                this.lineLength += (this.lineLength > 0) ? 1 + length
+                        : length;
+                this.lineWords++;
+            }
+        }
+
+        double linkDensity()
+        {
+            return (this.words == 0) ? 0.0 : (double) this.linkedWords
+                    / this.words;
+        }
+
+        /**
+         * Words per line, leaving out the last line unless it is the only
+         * one.
+         * 
+         * @return density
+         */
+        double textDensity()
+        {
+            return (this.wrappedLines == 0) ? this.words
+                    : (double) this.wrappedWords / this.wrappedLines;
+        }
+    }
+
+    /**
+     * Splits the displayed text into blocks.
+     */
+    private static final class Walk
+    {
+        private final PageStructureCollector collector;
+        private final List<Block> blocks = new ArrayList<>();
+        private Block block = new Block();
+        private int wordLength = 0;
+        private boolean wordLinked = false;
+        private boolean space = false;
+
+        Walk(final PageStructureCollector collector)
+        {
+            this.collector = collector;
+        }
+
+        void visit(final DomNode node, final boolean linked,
+                final boolean furniture, final boolean preformatted,
+                final boolean hidden)
+        {
+            if (node instanceof DomText)
+            {
+                final String data = ((DomText) node).getData();
+                if (!hidden)
+                {
+                    addText(data, linked, furniture, preformatted);
+                }
+                if (this.collector != null)
+                {
+                    this.collector.text(data);
+                }
+                return;
+            }
+
+            boolean isBlock = false;
+            boolean inLink = linked;
+            boolean inFurniture = furniture;
+            boolean inPre = preformatted;
+            boolean inHidden = hidden;
+            String tag = "";
+            DomElement element = null;
+            if (node instanceof DomElement)
+            {
+                element = (DomElement) node;
+                tag = element.getTagName().toLowerCase(Locale.ENGLISH);
+                inHidden = hidden || HIDDEN.contains(tag)
+                        || CONTROLS.contains(tag) || !node.isDisplayed();
+                if (inHidden && this.collector == null)
+                {
+                    return;
+                }
+                if (this.collector != null)
+                {
+                    this.collector.start(element);
+                }
+                if (tag.equals("br") && !inHidden)
+                {
+                    endWord();
+                    this.space = true;
+                }
+                isBlock = !inHidden && BLOCKS.contains(tag);
+                inLink = linked || tag.equals("a");
+                inFurniture = furniture || FURNITURE.contains(tag);
+                inPre = preformatted || tag.equals("pre");
+            }
+
+            if (isBlock)
+            {
+                endBlock();
+                this.block.heading = HEADINGS.contains(tag);
+            }
+            for (final DomNode child : node.getChildren())
+            {
+                visit(child, inLink, inFurniture, inPre, inHidden);
+            }
+            if (isBlock)
+            {
+                endBlock();
+            }
+            if (element != null && this.collector != null)
+            {
+                this.collector.end(element);
+            }
+        }
+
+        void endBlock()
+        {
+            endWord();
+            if (this.block.words > 0)
+            {
+                this.blocks.add(this.block);
+            }
+            this.block = new Block();
+            this.space = false;
+        }
+
+        private void addText(final String text, final boolean linked,
+                final boolean furniture, final boolean preformatted)
+        {
+            for (int i = 0; i < text.length(); i++)
+            {
+                final char c = text.charAt(i);
+                if (Character.isWhitespace(c) || Character.isSpaceChar(c))
+                {
+                    endWord();
+                    if (preformatted)
+                    {
+                        this.block.text.append(c);
+                    }
+                    else
+                    {
+                        this.space = true;
+                    }
+                }
+                else
+                {
+                    if (this.space && this.block.text.length() > 0)
+                    {
+                        this.block.text.append(' ');
+                    }
+                    this.space = false;
+                    if (this.wordLength == 0)
+                    {
+                        this.wordLinked = linked;
+                    }
+                    this.wordLength++;
+                    this.block.furniture |= furniture;
+                    this.block.text.append(c);
+                }
+            }
+        }
+
+        private void endWord()
+        {
+            if (this.wordLength > 0)
+            {
+                this.block.addWord(this.wordLength, this.wordLinked);
+                this.wordLength = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.codealot.url2text;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.codealot.url2text.PageStructure.Heading;
+import com.codealot.url2text.PageStructure.Link;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.DomText;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Collects the {@link PageStructure} of an HTML page from a walk of its DOM.
+ * <p>
+ * Fed element by element by the walk which extracts the text (see
+ * {@link MainContentExtractor}), so that the DOM is only walked once, or by
+ * {@link #walk(DomNode)}. Hrefs are resolved against the page, honouring any
+ * base element; javascript: links are ignored. One use only.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+final class PageStructureCollector
+{
+    private final HtmlPage page;
+
+    private String canonicalUrl = null;
+    private String robots = null;
+    private final List<Heading> headings = new ArrayList<>();
+    private final List<Link> links = new ArrayList<>();
+
+    // the open link and heading, if any, whose text is being gathered
+    private DomElement link = null;
+    private StringBuilder linkText = null;
+    private DomElement heading = null;
+    private StringBuilder headingText = null;
+
+    PageStructureCollector(final HtmlPage page)
+    {
+        this.page = page;
+    }
+
+    /**
+     * Walk the DOM below the node.
+     * 
+     * @param node
+     */
+    void walk(final DomNode node)
+    {
+        if (node instanceof DomText)
+        {
+            text(((DomText) node).getData());
+        }
+        else if (node instanceof DomElement)
+        {
+            final DomElement element = (DomElement) node;
+            start(element);
+            for (final DomNode child : node.getChildren())
+            {
+                walk(child);
+            }
+            end(element);
+        }
+        else
+        {
+            for (final DomNode child : node.getChildren())
+            {
+                walk(child);
+            }
+        }
+    }
+
+    void start(final DomElement element)
+    {
+        final String tag = element.getTagName().toLowerCase(Locale.ENGLISH);
+        switch (tag)
+        {
+        case "a":
+        case "area":
+            if (this.link == null && element.hasAttribute("href"))
+            {
+                this.link = element;
+                this.linkText = new StringBuilder();
+            }
+            break;
+        case "h1":
+        case "h2":
+        case "h3":
+        case "h4":
+        case "h5":
+        case "h6":
+            if (this.heading == null)
+            {
+                this.heading = element;
+                this.headingText = new StringBuilder();
+            }
+            break;
+        case "link":
+            if (this.canonicalUrl == null
+                    && hasToken(element.getAttribute("rel"), "canonical"))
+            {
+                this.canonicalUrl = resolve(element.getAttribute("href"));
+            }
+            break;
+        case "meta":
+            if (element.getAttribute("name").trim()
+                    .equalsIgnoreCase("robots"))
+            {
+                final String content = element.getAttribute("content").trim();
+                if (!content.isEmpty())
+                {
+                    this.robots = (this.robots == null) ? content
+                            : this.robots + ", " + content;
+                }
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    void text(final String data)
+    {
+        if (this.linkText != null)
+        {
+            this.linkText.append(data);
+        }
+        if (this.headingText != null)
+        {
+            this.headingText.append(data);
+        }
+    }
+
+    void end(final DomElement element)
+    {
+        if (element == this.link)
+        {
+            final String url = resolve(element.getAttribute("href"));
+            if (url != null)
+            {
+                this.links.add(new Link(url, collapse(this.linkText), element
+                        .getAttribute("rel").trim()));
+            }
+            this.link = null;
+            this.linkText = null;
+        }
+        else if (element == this.heading)
+        {
+            final String text = collapse(this.headingText);
+            if (!text.isEmpty())
+            {
+                this.headings.add(new Heading(element.getTagName().charAt(1)
+                        - '0', text));
+            }
+            this.heading = null;
+            this.headingText = null;
+        }
+    }
+
+    PageStructure build()
+    {
+        return new PageStructure(this.canonicalUrl, this.robots,
+                this.headings, this.links);
+    }
+
+    /**
+     * Resolve an href against the page.
+     * 
+     * @param href
+     * @return the absolute URL, or null if there is none
+     */
+    private String resolve(final String href)
+    {
+        final String trimmed = href.trim();
+        if (trimmed.isEmpty() || trimmed.regionMatches(true, 0, "javascript:",
+                0, 11))
+        {
+            return null;
+        }
+        try
+        {
+            return this.page.getFullyQualifiedUrl(trimmed).toExternalForm();
+        }
+        catch (MalformedURLException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean hasToken(final String value, final String token)
+    {
+        for (final String part : value.trim().split("\\s+"))
+        {
+            if (part.equalsIgnoreCase(token))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String collapse(final CharSequence text)
+    {
+        return text.toString().replaceAll("[\\s\\u00a0]+", " ").trim();
+    }
+}
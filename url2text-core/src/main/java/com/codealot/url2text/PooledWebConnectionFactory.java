@@ -0,0 +1,199 @@
+package com.codealot.url2text;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+
+/**
+ * WebConnectionFactory whose connections share a long-lived pool of persistent
+ * (keep-alive) HTTP connections.
+ * <p>
+ * By default every fetch gets a new connection pool, so the page and each of
+ * its subresources start from cold: TCP connect and, for https, a TLS
+ * handshake. With this factory, connections opened by one fetch are returned
+ * to the pool and reused by the next fetch, and by subresource requests, to
+ * the same origin.
+ * <p>
+ * One pool is kept for each SSL trust mode (see
+ * {@link Url2Text#setUseInsecureSSL(boolean)}). Call {@link #close()} to
+ * release the pooled connections.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class PooledWebConnectionFactory implements WebConnectionFactory,
+        Closeable
+{
+    // name of HtmlUnit's private connection manager field
+    private static final String CONNECTION_MANAGER_FIELD = "connectionManager_";
+
+    private final int maxPerRoute;
+    private final int maxTotal;
+
+    private PoolingHttpClientConnectionManager securePool;
+    private PoolingHttpClientConnectionManager insecurePool;
+
+    /**
+     * Default constructor. Allows 6 connections per origin (as do browsers)
+     * and 200 in total.
+     */
+    public PooledWebConnectionFactory()
+    {
+        this(6, 200);
+    }
+
+    /**
+     * Constructor setting the pool limits.
+     *
+     * @param maxPerRoute
+     *            maximum concurrent connections to one origin
+     * @param maxTotal
+     *            maximum connections held by each pool
+     */
+    public PooledWebConnectionFactory(final int maxPerRoute, final int maxTotal)
+    {
+        if (maxPerRoute < 1 || maxTotal < maxPerRoute)
+        {
+            throw new IllegalArgumentException("Bad pool limits: "
+                    + maxPerRoute + " per route, " + maxTotal + " total.");
+        }
+        this.maxPerRoute = maxPerRoute;
+        this.maxTotal = maxTotal;
+    }
+
+    @Override
+    public WebConnection createWebConnection(final WebClient webClient,
+            final Url2Text config)
+    {
+        return new PooledWebConnection(webClient, config,
+                getPool(config.hasUseInsecureSSL()));
+    }
+
+    /**
+     * Close pooled connections that have been idle for longer than the given
+     * period.
+     *
+     * @param idle
+     * @param unit
+     */
+    public synchronized void closeIdleConnections(final long idle,
+            final TimeUnit unit)
+    {
+        if (this.securePool != null)
+        {
+            this.securePool.closeIdleConnections(idle, unit);
+        }
+        if (this.insecurePool != null)
+        {
+            this.insecurePool.closeIdleConnections(idle, unit);
+        }
+    }
+
+    /**
+     * Shuts down the pools. Connections created afterwards use new pools.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (this.securePool != null)
+        {
+            this.securePool.shutdown();
+            this.securePool = null;
+        }
+        if (this.insecurePool != null)
+        {
+            this.insecurePool.shutdown();
+            this.insecurePool = null;
+        }
+    }
+
+    private synchronized PoolingHttpClientConnectionManager getPool(
+            final boolean insecure)
+    {
+        if (insecure)
+        {
+            if (this.insecurePool == null)
+            {
+                this.insecurePool = buildPool(true);
+            }
+            return this.insecurePool;
+        }
+        if (this.securePool == null)
+        {
+            this.securePool = buildPool(false);
+        }
+        return this.securePool;
+    }
+
+    private PoolingHttpClientConnectionManager buildPool(final boolean insecure)
+    {
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder
+                .<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https",
+                        Url2TextWebConnection.sslSocketFactory(insecure))
+                .build();
+        final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(
+                registry);
+        pool.setDefaultMaxPerRoute(this.maxPerRoute);
+        pool.setMaxTotal(this.maxTotal);
+        return pool;
+    }
+
+    /**
+     * Connection which borrows from, but never shuts down, a shared pool.
+     */
+    static class PooledWebConnection extends Url2TextWebConnection
+    {
+        PooledWebConnection(final WebClient webClient, final Url2Text config,
+                final PoolingHttpClientConnectionManager pool)
+        {
+            super(webClient, config);
+            // HtmlUnit only builds its own pool when this field is null.
+            setConnectionManager(pool);
+        }
+
+        @Override
+        public synchronized void shutdown()
+        {
+            // detach the shared pool so HtmlUnit does not shut it down
+            setConnectionManager(null);
+            super.shutdown();
+        }
+
+        private void setConnectionManager(
+                final PoolingHttpClientConnectionManager pool)
+        {
+            try
+            {
+                FieldUtils.writeField(this, CONNECTION_MANAGER_FIELD, pool,
+                        true);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
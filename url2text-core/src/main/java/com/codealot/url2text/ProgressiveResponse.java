@@ -0,0 +1,300 @@
+package com.codealot.url2text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fetch in progress, whose transaction metadata and headers are available
+ * before its text.
+ * <p>
+ * The metadata is published as soon as the page has been fetched, as a
+ * Response without text or content metadata; see {@link #getMetadata()}. The
+ * complete Response follows once the text reader is ready; see
+ * {@link #getResponse()}, or use this as a Future. Content converted with
+ * {@link Url2Text#setStreamBinaryContent(boolean)} is then still being
+ * converted while its text is read.
+ * <p>
+ * A document can be dropped on the strength of its metadata by closing this,
+ * which cancels the fetch if it is still running, and closes the Response
+ * unless it has already been taken. See
+ * {@link Url2Text#contentAsTextProgressively(java.net.URL, java.util.Map, java.util.concurrent.Executor)}
+ * .
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class ProgressiveResponse extends FutureTask<Response> implements
+        Closeable
+{
+    private final CountDownLatch metadataLatch = new CountDownLatch(1);
+    private volatile Response metadata = null;
+    private volatile boolean taken = false;
+
+    /**
+     * A fetch which reports its metadata to a ProgressiveResponse.
+     */
+    interface Fetch
+    {
+        Response fetch(ProgressiveResponse progress) throws Url2TextException;
+    }
+
+    ProgressiveResponse(final Fetch fetch)
+    {
+        this(new Task(fetch));
+    }
+
+    private ProgressiveResponse(final Task task)
+    {
+        super(task);
+        task.progress = this;
+    }
+
+    /**
+     * True once the metadata is available, or the fetch has failed.
+     *
+     * @return boolean flag
+     */
+    public boolean isMetadataDone()
+    {
+        return this.metadataLatch.getCount() == 0L;
+    }
+
+    /**
+     * Waits for the transaction metadata and response headers.
+     * <p>
+     * The Response returned has no text, unless the fetch was answered by a
+     * cache or coalesced with another, and is closed along with this.
+     *
+     * @return the metadata
+     * @throws Url2TextException
+     *             if the fetch failed or was cancelled, or the wait was
+     *             interrupted
+     */
+    public Response getMetadata() throws Url2TextException
+    {
+        try
+        {
+            this.metadataLatch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Url2TextException("Interrupted waiting for metadata.", e);
+        }
+        return metadataOrFailure();
+    }
+
+    /**
+     * Waits, for at most the given time, for the transaction metadata and
+     * response headers. See {@link #getMetadata()}.
+     *
+     * @param timeout
+     * @param unit
+     * @return the metadata, or null if the time ran out
+     * @throws Url2TextException
+     *             if the fetch failed or was cancelled, or the wait was
+     *             interrupted
+     */
+    public Response getMetadata(final long timeout, final TimeUnit unit)
+            throws Url2TextException
+    {
+        try
+        {
+            if (!this.metadataLatch.await(timeout, unit))
+            {
+                return null;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Url2TextException("Interrupted waiting for metadata.", e);
+        }
+        return metadataOrFailure();
+    }
+
+    /**
+     * Waits for the complete Response, which then belongs to the caller.
+     *
+     * @return the response
+     * @throws Url2TextException
+     *             if the fetch failed or was cancelled, or the wait was
+     *             interrupted
+     */
+    public Response getResponse() throws Url2TextException
+    {
+        final Response response = result();
+        this.taken = true;
+        return response;
+    }
+
+    /**
+     * Drops the fetch: cancels it if still running, and closes the Response
+     * unless it has been taken by {@link #getResponse()}.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        cancel(true);
+        if (isDone() && !isCancelled() && !this.taken)
+        {
+            try
+            {
+                get().close();
+            }
+            catch (InterruptedException | ExecutionException e)
+            {
+                // failed fetch, so nothing to close
+            }
+        }
+        final Response snapshot = this.metadata;
+        if (snapshot != null)
+        {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Publish the metadata of the fetch. Only the first call has any effect.
+     *
+     * @param snapshot
+     *            a Response with no text, which this then owns
+     */
+    void metadataAvailable(final Response snapshot)
+    {
+        synchronized (this.metadataLatch)
+        {
+            if (this.metadata == null && !isDone())
+            {
+                this.metadata = snapshot;
+                this.metadataLatch.countDown();
+                return;
+            }
+        }
+        closeQuietly(snapshot);
+    }
+
+    @Override
+    protected void set(final Response response)
+    {
+        synchronized (this.metadataLatch)
+        {
+            if (this.metadata == null && !isCancelled())
+            {
+                // e.g. a cached or coalesced response, already buffered, so
+                // copying it is cheap
+                try
+                {
+                    this.metadata = new Response(response);
+                }
+                catch (Url2TextException e)
+                {
+                    // reported by getMetadata()
+                }
+            }
+        }
+        super.set(response);
+        if (isCancelled())
+        {
+            // nobody is left to close it
+            closeQuietly(response);
+        }
+    }
+
+    @Override
+    protected void done()
+    {
+        // releases waiters whether the fetch succeeded, failed or was
+        // cancelled
+        this.metadataLatch.countDown();
+    }
+
+    private Response metadataOrFailure() throws Url2TextException
+    {
+        final Response snapshot = this.metadata;
+        if (snapshot == null)
+        {
+            // the fetch failed or was cancelled before its metadata was known
+            result();
+            throw new Url2TextException("No metadata available.");
+        }
+        return snapshot;
+    }
+
+    private Response result() throws Url2TextException
+    {
+        try
+        {
+            return get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Url2TextException("Interrupted waiting for fetch.", e);
+        }
+        catch (CancellationException e)
+        {
+            throw new Url2TextException("Fetch cancelled.", e);
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            if (cause instanceof Url2TextException)
+            {
+                throw (Url2TextException) cause;
+            }
+            throw new Url2TextException(cause.getMessage(), cause);
+        }
+    }
+
+    private static void closeQuietly(final Response response)
+    {
+        try
+        {
+            response.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to be done
+        }
+    }
+
+    private static final class Task implements Callable<Response>
+    {
+        private final Fetch fetch;
+        private ProgressiveResponse progress;
+
+        Task(final Fetch fetch)
+        {
+            this.fetch = fetch;
+        }
+
+        @Override
+        public Response call() throws Url2TextException
+        {
+            return this.fetch.fetch(this.progress);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.codealot.url2text;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+
+/**
+ * Buffers the response bodies downloaded by Url2Text fetches.
+ * <p>
+ * A body is held in memory while it is no larger than the fetch's threshold
+ * (see {@link Url2Text#setBodyMemoryThreshold(long)}), and while the total of
+ * in-memory bodies across all in-flight fetches stays within the global limit.
+ * Otherwise it is spilled to a temporary file, which is read back through a
+ * FileChannel.
+ * <p>
+ * In-memory bytes are counted against the global limit until the body is
+ * released, which happens when its fetch has finished with it: i.e. when
+ * contentAsText() returns, or when the text reader of the response is closed
+ * if the content was converted by Tika.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public final class ResponseBodies
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ResponseBodies.class);
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    // default allows a quarter of the heap for response bodies
+    private static final AtomicLong GLOBAL_LIMIT = new AtomicLong(Runtime
+            .getRuntime().maxMemory() / 4);
+    private static final AtomicLong IN_MEMORY = new AtomicLong();
+
+    private ResponseBodies()
+    {
+        // static methods only
+    }
+
+    public static long getGlobalMemoryLimit()
+    {
+        return GLOBAL_LIMIT.get();
+    }
+
+    /**
+     * Sets the maximum number of response body bytes held in memory, in total,
+     * by all in-flight fetches in the JVM. Default is a quarter of the maximum
+     * heap size. Bodies which would exceed the limit are spilled to disk.
+     * <p>
+     * Bodies already in memory are unaffected.
+     *
+     * @param limit
+     *            must not be negative
+     */
+    public static void setGlobalMemoryLimit(final long limit)
+    {
+        if (limit < 0L)
+        {
+            throw new IllegalArgumentException(
+                    "Global memory limit cannot be negative: " + limit);
+        }
+        GLOBAL_LIMIT.set(limit);
+        LOG.debug("Global body memory limit: {}", limit);
+    }
+
+    /**
+     * Returns the number of response body bytes currently held in memory by
+     * all fetches in the JVM.
+     *
+     * @return byte count
+     */
+    public static long getInMemoryBytes()
+    {
+        return IN_MEMORY.get();
+    }
+
+    /**
+     * Download the body, spilling it to a temporary file if it grows beyond
+     * the threshold, or if memory cannot be reserved for it.
+     *
+     * @param body
+     *            stream to read, which is closed on return
+     * @param threshold
+     *            maximum size of the body to be held in memory
+     * @param budgeted
+     *            false if the memory used is not to be counted against the
+     *            global limit, as nothing will release it
+     * @return the downloaded content
+     * @throws IOException
+     */
+    static DownloadedContent download(final InputStream body,
+            final long threshold, final boolean budgeted) throws IOException
+    {
+        // an array cannot hold more
+        final long limit = Math.min(threshold, MAX_ARRAY - 1L);
+        try (InputStream in = body)
+        {
+            byte[] buffer = new byte[(int) Math.min(CHUNK_SIZE,
+                    Math.max(limit, 1L))];
+            int size = 0;
+            int count;
+            while ((count = in.read(buffer, size, buffer.length - size)) != -1)
+            {
+                if (size + count > limit
+                        || (budgeted && !reserve(count)))
+                {
+                    if (budgeted)
+                    {
+                        release(size);
+                    }
+                    return spill(buffer, size, count, in);
+                }
+                size += count;
+                if (size == buffer.length)
+                {
+                    buffer = Arrays.copyOf(buffer,
+                            (int) Math.min(2L * buffer.length, limit + 1L));
+                }
+            }
+            return new InMemory(Arrays.copyOf(buffer, size), budgeted);
+        }
+    }
+
+    private static boolean reserve(final long count)
+    {
+        while (true)
+        {
+            final long current = IN_MEMORY.get();
+            if (current + count > GLOBAL_LIMIT.get())
+            {
+                return false;
+            }
+            if (IN_MEMORY.compareAndSet(current, current + count))
+            {
+                return true;
+            }
+        }
+    }
+
+    private static void release(final long count)
+    {
+        IN_MEMORY.addAndGet(-count);
+    }
+
+    private static DownloadedContent spill(final byte[] buffer,
+            final int size, final int count, final InputStream in)
+            throws IOException
+    {
+        final Path file = Files.createTempFile("url2text", ".body");
+        boolean written = false;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE))
+        {
+            writeFully(channel, ByteBuffer.wrap(buffer, 0, size + count));
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(chunk)) != -1)
+            {
+                writeFully(channel, ByteBuffer.wrap(chunk, 0, read));
+            }
+            written = true;
+        }
+        finally
+        {
+            if (!written)
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+        LOG.debug("Response body spilled to {}", file);
+        return new OnDisk(file);
+    }
+
+    private static void writeFully(final FileChannel channel,
+            final ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+        {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Body held in memory, and counted against the global limit until cleaned
+     * up.
+     */
+    @SuppressWarnings("serial")
+    static class InMemory implements DownloadedContent
+    {
+        private final byte[] bytes;
+        private boolean budgeted;
+
+        InMemory(final byte[] bytes, final boolean budgeted)
+        {
+            this.bytes = bytes;
+            this.budgeted = budgeted;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(this.bytes);
+        }
+
+        @Override
+        public synchronized void cleanUp()
+        {
+            if (this.budgeted)
+            {
+                this.budgeted = false;
+                release(this.bytes.length);
+            }
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return this.bytes.length == 0;
+        }
+    }
+
+    /**
+     * Body spilled to a temporary file, which is deleted when cleaned up.
+     */
+    @SuppressWarnings("serial")
+    static class OnDisk implements DownloadedContent
+    {
+        private final transient Path file;
+
+        OnDisk(final Path file)
+        {
+            this.file = file;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return Channels.newInputStream(FileChannel.open(this.file,
+                    StandardOpenOption.READ));
+        }
+
+        @Override
+        public void cleanUp()
+        {
+            try
+            {
+                Files.deleteIfExists(this.file);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Failed to delete {}", this.file, e);
+            }
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return false;
+        }
+    }
+}
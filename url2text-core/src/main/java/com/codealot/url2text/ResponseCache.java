@@ -0,0 +1,287 @@
+package com.codealot.url2text;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process cache of completed responses, keyed by URL, configuration and
+ * additional request headers.
+ * <p>
+ * Entries expire after a fixed time to live, and expired entries are purged
+ * whenever another is stored. The least recently used entries are evicted when
+ * the text held exceeds the size limit. Text is held as UTF-8, so is counted
+ * in bytes, including any spilled to disk. Only successful (2xx) responses are
+ * cached.
+ * <p>
+ * Every hit returns a new copy of the cached response, so each caller gets its
+ * own text reader. Note that the text of a cached response is read in full
+ * when it is stored, and is shared by the copies; see
+ * {@link Response#setTextMemoryThreshold(long)} for spilling large texts to
+ * disk. Responses dropped from the cache are closed.
+ * <p>
+ * Share one instance between Url2Text instances as required; see
+ * {@link Url2Text#setResponseCache(ResponseCache)}.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class ResponseCache
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ResponseCache.class);
+
+    private final long maxBytes;
+    private final long timeToLiveMillis;
+
+    // access ordered, so iteration starts with the least recently used
+    private final LinkedHashMap<FetchKey, Entry> entries = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private long bytes = 0L;
+
+    private long hitCount = 0L;
+    private long missCount = 0L;
+    private long evictionCount = 0L;
+    private long expirationCount = 0L;
+
+    /**
+     * Default constructor. Holds up to 64MiB of text, for 5 minutes.
+     */
+    public ResponseCache()
+    {
+        this(64L * 1_024 * 1_024, 5L, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Constructor setting the limits.
+     *
+     * @param maxBytes
+     *            maximum size of the cached text, in bytes
+     * @param timeToLive
+     *            period for which an entry is valid
+     * @param unit
+     *            unit of the timeToLive
+     */
+    public ResponseCache(final long maxBytes, final long timeToLive,
+            final TimeUnit unit)
+    {
+        if (maxBytes < 1L || timeToLive < 1L)
+        {
+            throw new IllegalArgumentException("Bad cache limits: "
+                    + maxBytes + " bytes, time to live " + timeToLive + " "
+                    + unit);
+        }
+        this.maxBytes = maxBytes;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+    }
+
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * Returns the number of entries evicted to keep within the size limit.
+     *
+     * @return count
+     */
+    public synchronized long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+
+    /**
+     * Returns the number of entries dropped as they had expired.
+     *
+     * @return count
+     */
+    public synchronized long getExpirationCount()
+    {
+        return this.expirationCount;
+    }
+
+    public synchronized int getSize()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the size of the cached text, in bytes.
+     *
+     * @return byte count
+     */
+    public synchronized long getBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     * Empties the cache. Statistics are unaffected.
+     */
+    public synchronized void clear()
+    {
+        for (final Entry entry : this.entries.values())
+        {
+            close(entry.response);
+        }
+        this.entries.clear();
+        this.bytes = 0L;
+    }
+
+    /**
+     * Returns a copy of the cached response, or null if there is no live entry
+     * for the key.
+     *
+     * @param key
+     * @return a new Response, or null
+     * @throws Url2TextException
+     */
+    synchronized Response get(final FetchKey key) throws Url2TextException
+    {
+        final Entry entry = this.entries.get(key);
+        if (entry == null)
+        {
+            this.missCount++;
+            return null;
+        }
+        if (entry.expires <= System.currentTimeMillis())
+        {
+            remove(key, entry);
+            this.expirationCount++;
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+        LOG.debug("Cache hit for {}", key);
+        // copied under the lock, so the text is held before the entry can be
+        // evicted and closed
+        return new Response(entry.response);
+    }
+
+    /**
+     * Cache a copy of the response, if it was successful and fits.
+     *
+     * @param key
+     * @param response
+     *            its text is read in full, but can still be read
+     * @throws Url2TextException
+     */
+    void put(final FetchKey key, final Response response)
+            throws Url2TextException
+    {
+        if (response.getStatus() < 200 || response.getStatus() >= 300)
+        {
+            return;
+        }
+        final Response copy = new Response(response);
+        final long size = copy.getBufferedTextSize();
+        if (size > this.maxBytes)
+        {
+            LOG.debug("Too large to cache: {}", key);
+            close(copy);
+            return;
+        }
+
+        synchronized (this)
+        {
+            final long now = System.currentTimeMillis();
+            final Iterator<Map.Entry<FetchKey, Entry>> all = this.entries
+                    .entrySet().iterator();
+            while (all.hasNext())
+            {
+                final Entry entry = all.next().getValue();
+                if (entry.expires <= now)
+                {
+                    all.remove();
+                    close(entry.response);
+                    this.bytes -= entry.size;
+                    this.expirationCount++;
+                }
+            }
+
+            final Entry previous = this.entries.get(key);
+            if (previous != null)
+            {
+                remove(key, previous);
+            }
+            this.entries.put(key, new Entry(copy, size, now
+                    + this.timeToLiveMillis));
+            this.bytes += size;
+
+            final Iterator<Map.Entry<FetchKey, Entry>> lru = this.entries
+                    .entrySet().iterator();
+            while (this.bytes > this.maxBytes)
+            {
+                final Entry eldest = lru.next().getValue();
+                lru.remove();
+                close(eldest.response);
+                this.bytes -= eldest.size;
+                this.evictionCount++;
+            }
+        }
+    }
+
+    private void remove(final FetchKey key, final Entry entry)
+    {
+        this.entries.remove(key);
+        close(entry.response);
+        this.bytes -= entry.size;
+    }
+
+    /**
+     * Close a response dropped from the cache, releasing its text; copies
+     * already handed out keep their own hold on it.
+     *
+     * @param response
+     */
+    private static void close(final Response response)
+    {
+        try
+        {
+            response.close();
+        }
+        catch (IOException e)
+        {
+            LOG.debug("Error closing cached response", e);
+        }
+    }
+
+    /**
+     * Cached response, with its size and expiry time.
+     */
+    private static final class Entry
+    {
+        final Response response;
+        final long size;
+        final long expires;
+
+        Entry(final Response response, final long size, final long expires)
+        {
+            this.response = response;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+}
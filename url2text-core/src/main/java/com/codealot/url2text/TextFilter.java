@@ -0,0 +1,38 @@
+package com.codealot.url2text;
+
+import java.io.Reader;
+
+/**
+ * A stage in a {@link TextFilterChain}, which post-processes converted text
+ * as it is read.
+ * <p>
+ * Implementations should hold no more than a bounded amount of text, and a
+ * single instance may be applied to many texts at once. See
+ * {@link TextFilters} for the standard filters.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public interface TextFilter
+{
+    /**
+     * Wrap a Reader with this filter.
+     *
+     * @param source
+     *            the text to filter, closed when the result is closed
+     * @return the filtered text
+     */
+    Reader filter(Reader source);
+}
@@ -0,0 +1,210 @@
+package com.codealot.url2text;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An ordered chain of {@link TextFilter}s, applied to converted text as it is
+ * read, with the time spent in, and the chars produced by, each filter.
+ * <p>
+ * The metrics accumulate over every text the chain is applied to, so share
+ * one instance between the Url2Text instances (and threads) to be measured
+ * together; see {@link Url2Text#setTextFilterChain(TextFilterChain)}.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class TextFilterChain
+{
+    private final List<TextFilter> filters;
+
+    // element 0 measures the unfiltered text, element i + 1 filter i. Times
+    // include the time spent reading the text before the filter.
+    private final AtomicLong[] nanos;
+    private final AtomicLong[] chars;
+
+    /**
+     * Constructor.
+     *
+     * @param filters
+     *            applied in order
+     */
+    public TextFilterChain(final TextFilter... filters)
+    {
+        this(Arrays.asList(filters));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param filters
+     *            applied in order
+     */
+    public TextFilterChain(final List<TextFilter> filters)
+    {
+        for (final TextFilter filter : filters)
+        {
+            Objects.requireNonNull(filter, "Null text filter.");
+        }
+        this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+        this.nanos = new AtomicLong[this.filters.size() + 1];
+        this.chars = new AtomicLong[this.filters.size() + 1];
+        for (int i = 0; i < this.nanos.length; i++)
+        {
+            this.nanos[i] = new AtomicLong();
+            this.chars[i] = new AtomicLong();
+        }
+    }
+
+    public List<TextFilter> getFilters()
+    {
+        return this.filters;
+    }
+
+    /**
+     * Wrap a Reader with each filter in turn.
+     *
+     * @param source
+     *            the unfiltered text
+     * @return the filtered text
+     */
+    public Reader apply(final Reader source)
+    {
+        Reader reader = new TimingReader(source, 0);
+        for (int i = 0; i < this.filters.size(); i++)
+        {
+            reader = new TimingReader(this.filters.get(i).filter(reader), i + 1);
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the time spent reading the unfiltered text, e.g. converting it.
+     *
+     * @return nanoseconds
+     */
+    public long getSourceNanos()
+    {
+        return this.nanos[0].get();
+    }
+
+    /**
+     * Returns the number of chars read from the unfiltered text.
+     *
+     * @return count
+     */
+    public long getSourceCharCount()
+    {
+        return this.chars[0].get();
+    }
+
+    /**
+     * Returns the time spent in a filter itself.
+     *
+     * @param index
+     *            of the filter in the chain
+     * @return nanoseconds
+     */
+    public long getNanos(final int index)
+    {
+        return Math.max(0L, this.nanos[index + 1].get()
+                - this.nanos[index].get());
+    }
+
+    /**
+     * Returns the number of chars a filter has produced.
+     *
+     * @param index
+     *            of the filter in the chain
+     * @return count
+     */
+    public long getCharCount(final int index)
+    {
+        return this.chars[index + 1].get();
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder result = new StringBuilder("TextFilterChain[");
+        for (int i = 0; i < this.filters.size(); i++)
+        {
+            if (i > 0)
+            {
+                result.append(", ");
+            }
+            result.append(this.filters.get(i)).append(' ')
+                    .append(getNanos(i) / 1_000_000L).append("ms");
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * Adds the time spent in, and chars returned by, reads to one stage's
+     * totals.
+     */
+    private final class TimingReader extends FilterReader
+    {
+        private final int stage;
+
+        TimingReader(final Reader source, final int stage)
+        {
+            super(source);
+            this.stage = stage;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final long start = System.nanoTime();
+            final int c = super.read();
+            record(start, c == -1 ? 0 : 1);
+            return c;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            final long start = System.nanoTime();
+            final int count = super.read(cbuf, off, len);
+            record(start, Math.max(count, 0));
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            final long start = System.nanoTime();
+            final long count = super.skip(n);
+            record(start, count);
+            return count;
+        }
+
+        private void record(final long start, final long count)
+        {
+            TextFilterChain.this.nanos[this.stage].addAndGet(System.nanoTime()
+                    - start);
+            TextFilterChain.this.chars[this.stage].addAndGet(count);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.codealot.url2text;
+
+import java.io.Reader;
+import java.text.Normalizer;
+import java.util.Objects;
+
+/**
+ * The standard {@link TextFilter}s. Each runs in constant memory, and is
+ * stateless, so can be shared.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public final class TextFilters
+{
+    // text held back by the normalizer while it has no safe place to cut
+    private static final int MAX_UNNORMALIZED = 16 * 1_024;
+
+    private TextFilters()
+    {
+        // static methods only
+    }
+
+    /**
+     * Collapses each run of whitespace to a single space, or to one newline,
+     * or to a blank line if the run holds more than one newline. Whitespace
+     * at the start and end of the text is dropped.
+     *
+     * @return the filter
+     */
+    public static TextFilter collapseWhitespace()
+    {
+        return new TextFilter()
+            {
+                @Override
+                public Reader filter(final Reader source)
+                {
+                    return new CollapsingReader(source);
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "collapseWhitespace";
+                }
+            };
+    }
+
+    /**
+     * Applies a Unicode normalization form, e.g. NFC.
+     *
+     * @param form
+     * @return the filter
+     */
+    public static TextFilter normalize(final Normalizer.Form form)
+    {
+        Objects.requireNonNull(form, "No normalization form supplied.");
+        return new TextFilter()
+            {
+                @Override
+                public Reader filter(final Reader source)
+                {
+                    return new NormalizingReader(source, form);
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "normalize(" + form + ")";
+                }
+            };
+    }
+
+    /**
+     * Removes control characters, other than tab, carriage return and
+     * newline.
+     *
+     * @return the filter
+     */
+    public static TextFilter stripControlChars()
+    {
+        return new TextFilter()
+            {
+                @Override
+                public Reader filter(final Reader source)
+                {
+                    return new StrippingReader(source);
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "stripControlChars";
+                }
+            };
+    }
+
+    /**
+     * Wraps lines longer than the given length, at the last whitespace within
+     * it where there is some, which is then dropped.
+     *
+     * @param length
+     *            maximum line length in chars; must be positive
+     * @return the filter
+     */
+    public static TextFilter maxLineLength(final int length)
+    {
+        if (length < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Line length must be positive: " + length);
+        }
+        return new TextFilter()
+            {
+                @Override
+                public Reader filter(final Reader source)
+                {
+                    return new WrappingReader(source, length);
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "maxLineLength(" + length + ")";
+                }
+            };
+    }
+
+    private static final class CollapsingReader extends TransformingReader
+    {
+        private boolean started = false;
+        private boolean space = false;
+        private int newlines = 0;
+
+        CollapsingReader(final Reader source)
+        {
+            super(source);
+        }
+
+        @Override
+        void transform(final char[] cbuf, final int len, final StringBuilder out)
+        {
+            for (int i = 0; i < len; i++)
+            {
+                final char c = cbuf[i];
+                if (c == '\n')
+                {
+                    this.newlines++;
+                }
+                else if (Character.isWhitespace(c) || Character.isSpaceChar(c))
+                {
+                    this.space = true;
+                }
+                else
+                {
+                    // only written once something follows it
+                    if (this.started)
+                    {
+                        if (this.newlines > 1)
+                        {
+                            out.append("\n\n");
+                        }
+                        else if (this.newlines == 1)
+                        {
+                            out.append('\n');
+                        }
+                        else if (this.space)
+                        {
+                            out.append(' ');
+                        }
+                    }
+                    this.started = true;
+                    this.space = false;
+                    this.newlines = 0;
+                    out.append(c);
+                }
+            }
+        }
+
+        @Override
+        void finish(final StringBuilder out)
+        {
+            // trailing whitespace is dropped
+        }
+    }
+
+    private static final class NormalizingReader extends TransformingReader
+    {
+        private final Normalizer.Form form;
+        private final StringBuilder held = new StringBuilder();
+
+        NormalizingReader(final Reader source, final Normalizer.Form form)
+        {
+            super(source);
+            this.form = form;
+        }
+
+        @Override
+        void transform(final char[] cbuf, final int len, final StringBuilder out)
+        {
+            this.held.append(cbuf, 0, len);
+
+            // hold back the text which may yet combine with what follows
+            int cut = this.held.length() - 1;
+            while (cut > 0 && !isStable(this.held.charAt(cut)))
+            {
+                cut--;
+            }
+            if (cut == 0 && this.held.length() > MAX_UNNORMALIZED)
+            {
+                cut = this.held.length();
+            }
+            if (cut > 0)
+            {
+                out.append(Normalizer.normalize(this.held.subSequence(0, cut),
+                        this.form));
+                this.held.delete(0, cut);
+            }
+        }
+
+        @Override
+        void finish(final StringBuilder out)
+        {
+            out.append(Normalizer.normalize(this.held, this.form));
+            this.held.setLength(0);
+        }
+
+        /**
+         * True if nothing before c can combine with c or anything after it.
+         *
+         * @param c
+         * @return boolean flag
+         */
+        private static boolean isStable(final char c)
+        {
+            if (c < '\u0300')
+            {
+                return true;
+            }
+            if (Character.isSurrogate(c) || (c >= '\u1160' && c <= '\u11ff'))
+            {
+                // possibly a supplementary mark, or Hangul vowel or trailing
+                // consonant
+                return false;
+            }
+            switch (Character.getType(c))
+            {
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+                return false;
+            default:
+                return true;
+            }
+        }
+    }
+
+    private static final class StrippingReader extends TransformingReader
+    {
+        StrippingReader(final Reader source)
+        {
+            super(source);
+        }
+
+        @Override
+        void transform(final char[] cbuf, final int len, final StringBuilder out)
+        {
+            for (int i = 0; i < len; i++)
+            {
+                final char c = cbuf[i];
+                if (c == '\t' || c == '\n' || c == '\r'
+                        || Character.getType(c) != Character.CONTROL)
+                {
+                    out.append(c);
+                }
+            }
+        }
+
+        @Override
+        void finish(final StringBuilder out)
+        {
+            // nothing held
+        }
+    }
+
+    private static final class WrappingReader extends TransformingReader
+    {
+        private final int length;
+        private final StringBuilder line = new StringBuilder();
+
+        WrappingReader(final Reader source, final int length)
+        {
+            super(source);
+            this.length = length;
+        }
+
+        @Override
+        void transform(final char[] cbuf, final int len, final StringBuilder out)
+        {
+            for (int i = 0; i < len; i++)
+            {
+                final char c = cbuf[i];
+                if (c == '\n')
+                {
+                    out.append(this.line).append('\n');
+                    this.line.setLength(0);
+                }
+                else
+                {
+                    this.line.append(c);
+                    if (this.line.length() > this.length)
+                    {
+                        wrap(out);
+                    }
+                }
+            }
+        }
+
+        @Override
+        void finish(final StringBuilder out)
+        {
+            out.append(this.line);
+            this.line.setLength(0);
+        }
+
+        private void wrap(final StringBuilder out)
+        {
+            for (int i = this.length; i > 0; i--)
+            {
+                if (Character.isWhitespace(this.line.charAt(i)))
+                {
+                    out.append(this.line, 0, i).append('\n');
+                    this.line.delete(0, i + 1);
+                    return;
+                }
+            }
+            int cut = this.length;
+            if (cut > 1 && Character.isHighSurrogate(this.line.charAt(cut - 1)))
+            {
+                cut--;
+            }
+            out.append(this.line, 0, cut).append('\n');
+            this.line.delete(0, cut);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.codealot.url2text;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Base for filters which transform text a buffer at a time.
+ * <p>
+ * Subclasses append the transformed text to the output, and carry over any
+ * state they need between buffers; the output is drained before the next
+ * buffer is read.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+abstract class TransformingReader extends Reader
+{
+    private static final int BUFFER_SIZE = 4 * 1_024;
+
+    private final Reader source;
+    private final char[] input = new char[BUFFER_SIZE];
+    private final StringBuilder output = new StringBuilder();
+    private int outputPosition = 0;
+    private boolean endOfText = false;
+
+    TransformingReader(final Reader source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Transform some of the text.
+     *
+     * @param cbuf
+     *            the text
+     * @param len
+     *            number of chars in cbuf
+     * @param out
+     *            transformed text
+     */
+    abstract void transform(char[] cbuf, int len, StringBuilder out);
+
+    /**
+     * Append anything still held, at the end of the text.
+     *
+     * @param out
+     *            transformed text
+     */
+    abstract void finish(StringBuilder out);
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len)
+            throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        while (this.outputPosition == this.output.length())
+        {
+            if (this.endOfText)
+            {
+                return -1;
+            }
+            this.output.setLength(0);
+            this.outputPosition = 0;
+            final int count = this.source.read(this.input, 0,
+                    this.input.length);
+            if (count == -1)
+            {
+                this.endOfText = true;
+                finish(this.output);
+            }
+            else
+            {
+                transform(this.input, count, this.output);
+            }
+        }
+        final int count = Math.min(len, this.output.length()
+                - this.outputPosition);
+        this.output.getChars(this.outputPosition, this.outputPosition + count,
+                cbuf, off);
+        this.outputPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.source.close();
+    }
+}
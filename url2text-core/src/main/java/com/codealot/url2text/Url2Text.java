@@ -2,13 +2,16 @@ package com.codealot.url2text;
 
 import static com.codealot.url2text.Constants.*;
 
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
@@ -17,6 +20,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import org.apache.tika.Tika;
 import org.apache.tika.metadata.HttpHeaders;
@@ -37,6 +42,7 @@ import com.gargoylesoftware.htmlunit.TextPage;
 import com.gargoylesoftware.htmlunit.UnexpectedPage;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebConnection;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
@@ -82,9 +88,17 @@ import com.gargoylesoftware.htmlunit.xml.XmlPage;
  * as properties of the Url2Text class. Headers can also be added to the
  * WebRequest.
  * <p>
- * No transient state is stored in the Url2Text instance, so they can be reused
+ * No per-fetch state is stored in the Url2Text instance, so it can be reused
  * safely.
  * <p>
+ * Apart from its configuration, an instance may hold collaborators: the web
+ * connection factory, fetch coalescer, response cache, conversion cache, text
+ * filter chain, alias index and WARC recorder. They are meant to be shared, so
+ * {@link #clone()} shares them rather than copying them. They are not
+ * configuration, so are excluded from {@link #configAsProperties()}, equals()
+ * and hashCode(). They are transient, so are not serialized: a deserialized
+ * instance has none, and they must be set again.
+ * <p>
  * Configuration can be saved to a Properties file using the
  * {@link #configAsProperties()} method. There is a constructore that accepts
  * Properties for rapid configuration. Also System properties can be given as
@@ -119,7 +133,7 @@ public class Url2Text implements Cloneable, Serializable
 
     // FUTURE add credential support
     
-    // FUTURE add option to capture links, images, and media as well as text
+    // FUTURE add option to capture images and media as well as text
 
     // FUTURE better error reporting when failing on encrypted documents
     
@@ -138,6 +152,7 @@ public class Url2Text implements Cloneable, Serializable
 
     // Number of configurable properties
     private static final int PROPERTY_COUNT = URL2TEXT_PROPERTY_KEYS.length;
+    private static final MainContentExtractor MAIN_CONTENT_EXTRACTOR = new MainContentExtractor();
 
     // HtmlUnit WebClientOptions (not set by the CLI)
     private boolean activeXNative = false;
@@ -163,6 +178,7 @@ public class Url2Text implements Cloneable, Serializable
     // output modifying options
     private boolean includeHeaders = false;
     private boolean includeMetadata = false;
+    private boolean includeStructure = false;
 
     // Transaction timeouts, in seconds.
     private int networkTimeout = 90;
@@ -171,6 +187,32 @@ public class Url2Text implements Cloneable, Serializable
     // Max Content Length
     private long maxContentLength = 1_024 * 1_024;
 
+    // Tika reads binary content while it downloads
+    private boolean streamBinaryContent = false;
+
+    // Response bodies larger than this are spilled to a temporary file
+    private long bodyMemoryThreshold = 512 * 1_024;
+
+    // Digest computed while the text is read; empty means none
+    private String textDigestAlgorithm = "";
+
+    // HTML pages are reduced to their main content
+    private boolean mainContentOnly = false;
+
+    // #########################
+    // ##### COLLABORATORS #####
+    // #########################
+
+    // Not configuration, so excluded from properties, equals() and hashCode().
+    // Shared (not copied) by clone().
+    private transient WebConnectionFactory webConnectionFactory = null;
+    private transient FetchCoalescer fetchCoalescer = null;
+    private transient ResponseCache responseCache = null;
+    private transient AliasIndex aliasIndex = null;
+    private transient WarcRecorder warcRecorder = null;
+    private transient ConversionCache conversionCache = null;
+    private transient TextFilterChain textFilterChain = null;
+
     // ########################
     // ##### CONSTRUCTORS #####
     // ########################
@@ -280,6 +322,17 @@ public class Url2Text implements Cloneable, Serializable
         final String maxContentLength = props.getProperty(
                 KEY_MAX_CONTENT_LENGTH, Long.valueOf(this.maxContentLength)
                         .toString());
+        final String streamBinaryContent = safeGetPropertyBoolean(props,
+                KEY_STREAM_BINARY_CONTENT, this.streamBinaryContent);
+        final String bodyMemoryThreshold = props.getProperty(
+                KEY_BODY_MEMORY_THRESHOLD,
+                Long.valueOf(this.bodyMemoryThreshold).toString());
+        final String textDigestAlgorithm = props.getProperty(
+                KEY_TEXT_DIGEST_ALGORITHM, this.textDigestAlgorithm);
+        final String mainContentOnly = safeGetPropertyBoolean(props,
+                KEY_MAIN_CONTENT_ONLY, this.mainContentOnly);
+        final String includeStructure = safeGetPropertyBoolean(props,
+                KEY_INCLUDE_STRUCTURE, this.includeStructure);
 
         setActiveXNative(Boolean.valueOf(activeXNative));
         setAppletEnabled(Boolean.valueOf(appletEnabled));
@@ -303,6 +356,11 @@ public class Url2Text implements Cloneable, Serializable
         setNetworkTimeout(Integer.valueOf(networkTimeout));
         setJavascriptTimeout(Integer.valueOf(javascriptTimeout));
         setMaxContentLength(Long.valueOf(maxContentLength));
+        setStreamBinaryContent(Boolean.valueOf(streamBinaryContent));
+        setBodyMemoryThreshold(Long.valueOf(bodyMemoryThreshold));
+        setTextDigestAlgorithm(textDigestAlgorithm);
+        setMainContentOnly(Boolean.valueOf(mainContentOnly));
+        setIncludeStructure(Boolean.valueOf(includeStructure));
     }
 
     // ##########################
@@ -358,6 +416,16 @@ public class Url2Text implements Cloneable, Serializable
                 Integer.valueOf(this.javascriptTimeout).toString());
         properties.setProperty(KEY_MAX_CONTENT_LENGTH,
                 Long.valueOf(this.maxContentLength).toString());
+        properties.setProperty(KEY_STREAM_BINARY_CONTENT,
+                Boolean.valueOf(this.streamBinaryContent).toString());
+        properties.setProperty(KEY_BODY_MEMORY_THRESHOLD,
+                Long.valueOf(this.bodyMemoryThreshold).toString());
+        properties.setProperty(KEY_TEXT_DIGEST_ALGORITHM,
+                this.textDigestAlgorithm);
+        properties.setProperty(KEY_MAIN_CONTENT_ONLY,
+                Boolean.valueOf(this.mainContentOnly).toString());
+        properties.setProperty(KEY_INCLUDE_STRUCTURE,
+                Boolean.valueOf(this.includeStructure).toString());
 
         if (properties.size() != PROPERTY_COUNT)
         {
@@ -379,7 +447,10 @@ public class Url2Text implements Cloneable, Serializable
                 this.includeMetadata, this.javascriptEnabled,
                 this.popupBlockerEnabled, this.printContentOnFailingStatus,
                 this.redirectEnabled, this.useInsecureSSL, this.networkTimeout,
-                this.javascriptTimeout, this.maxContentLength);
+                this.javascriptTimeout, this.maxContentLength,
+                this.streamBinaryContent, this.bodyMemoryThreshold,
+                this.textDigestAlgorithm, this.mainContentOnly,
+                this.includeStructure);
     }
 
     @Override
@@ -450,77 +521,173 @@ public class Url2Text implements Cloneable, Serializable
     {
         // check params
         Objects.requireNonNull(requestUrl, "No URL available to be fetched.");
+        return contentAsText(requestUrl, additionalHeaders, null);
+    }
 
-        final WebRequest request = prepareRequest(requestUrl, additionalHeaders);
-        final WebClient client = prepareWebClient();
-
-        // fetch page
-        LOG.debug("Fetching page {}", requestUrl.toExternalForm());
-        final Date fetchDate = new Date();
-        Page page = null;
+    /**
+     * Convenience method, which calls
+     * {@link #contentAsTextProgressively(URL, Map, Executor)}.
+     * 
+     * @param requestUrl
+     * @param additionalHeaders
+     * @param executor
+     * @return the fetch in progress
+     * @throws Url2TextException
+     */
+    public ProgressiveResponse contentAsTextProgressively(
+            final String requestUrl,
+            final Map<String, String> additionalHeaders,
+            final Executor executor) throws Url2TextException
+    {
         try
         {
-            page = client.getPage(request);
+            final URL url = new URL(requestUrl);
+            return contentAsTextProgressively(url, additionalHeaders, executor);
         }
-        catch (FailingHttpStatusCodeException | IOException e)
+        catch (MalformedURLException e)
         {
-            throw new Url2TextException("Failed to fetch page.", e);
+            throw new Url2TextException(e);
         }
+    }
 
-        // grab metadata from the fetch transaction
-        final Response response = buildResponse(requestUrl, fetchDate, page,
-                this.includeHeaders);
+    /**
+     * Fetch the requestUrl content and convert it to text on the executor,
+     * as {@link #contentAsText(URL, Map)} does, but return at once.
+     * <p>
+     * The transaction metadata and response headers of the result are
+     * available as soon as the page has been fetched, so the document can be
+     * kept or dropped before paying for its conversion. See
+     * {@link ProgressiveResponse}.
+     * 
+     * @param requestUrl
+     *            URL to fetch
+     * @param additionalHeaders
+     *            extra request headers
+     * @param executor
+     *            runs the fetch
+     * @return the fetch in progress, which should be closed
+     */
+    public ProgressiveResponse contentAsTextProgressively(
+            final URL requestUrl, final Map<String, String> additionalHeaders,
+            final Executor executor)
+    {
+        Objects.requireNonNull(requestUrl, "No URL available to be fetched.");
+        Objects.requireNonNull(executor, "No executor supplied.");
 
-        // check content length, if present in response
-        if (this.maxContentLength > 0
-                && response.getContentLength() > this.maxContentLength)
+        final ProgressiveResponse result = new ProgressiveResponse(
+                new ProgressiveResponse.Fetch()
+                    {
+                        @Override
+                        public Response fetch(
+                                final ProgressiveResponse progress)
+                                throws Url2TextException
+                        {
+                            return contentAsText(requestUrl,
+                                    additionalHeaders, progress);
+                        }
+                    });
+        executor.execute(result);
+        return result;
+    }
+
+    /**
+     * See {@link #contentAsText(URL, Map)}.
+     * 
+     * @param requestUrl
+     * @param additionalHeaders
+     * @param progress
+     *            told of the metadata, if not null
+     * @return the response
+     * @throws Url2TextException
+     */
+    private Response contentAsText(final URL requestUrl,
+            final Map<String, String> additionalHeaders,
+            final ProgressiveResponse progress) throws Url2TextException
+    {
+        final ResponseCache cache = this.responseCache;
+        final FetchCoalescer coalescer = this.fetchCoalescer;
+        final AliasIndex aliases = this.aliasIndex;
+        if (cache == null && coalescer == null && aliases == null)
         {
-            throw new Url2TextException("Content too long.  Limit is "
-                    + this.maxContentLength + ", actual is "
-                    + response.getContentLength());
+            return fetchAsText(requestUrl, additionalHeaders, progress);
         }
 
-        // discover if content is DocBook
-        final boolean isDocBook = isDocbook(page);
-
-        // retrieve metadata, and/or binary content using Tika
-        if (this.includeMetadata || isDocBook || page instanceof BinaryPage
-                || page instanceof UnexpectedPage)
+        final String keyUrl = (aliases == null) ? requestUrl.toExternalForm()
+                : aliases.resolve(requestUrl);
+        final FetchKey key = new FetchKey(this, keyUrl, additionalHeaders);
+        if (cache != null)
         {
-            invokeTika(response, page);
+            final Response cached = cache.get(key);
+            if (cached != null)
+            {
+                // may have been cached under another spelling
+                cached.setRequestPage(requestUrl.toExternalForm());
+                return cached;
+            }
         }
 
-        // retrieve text content, if not already determined above
-        if (page.isHtmlPage())
+        final Response response;
+        if (coalescer == null)
         {
-            // use HtmlUnit's DOM for JavaScript execution artifacts
-            final HtmlPage source = (HtmlPage) page;
-            response.setContentTitle(source.getTitleText());
-            response.setTextReader(new StringReader(source.asText()));
+            response = fetchAsText(requestUrl, additionalHeaders, progress);
         }
-        else if (page instanceof TextPage)
+        else
         {
-            final TextPage source = (TextPage) page;
-            response.setTextReader(new StringReader(source.getContent()));
+            response = coalescer.fetch(key, new Callable<Response>()
+                {
+                    @Override
+                    public Response call() throws Url2TextException
+                    {
+                        return fetchAsText(requestUrl, additionalHeaders,
+                                progress);
+                    }
+                });
+            // may have been fetched for another spelling
+            response.setRequestPage(requestUrl.toExternalForm());
         }
-        else if (page instanceof XmlPage && !isDocBook)
+
+        FetchKey cacheKey = key;
+        if (aliases != null && recordAlias(aliases, requestUrl, response))
         {
-            // Return the unaltered document (XHtml is dealt with above).
-            response.setTextReader(new StringReader(page.getWebResponse()
-                    .getContentAsString()));
+            cacheKey = new FetchKey(this, aliases.resolve(requestUrl),
+                    additionalHeaders);
         }
-        else if (page instanceof JavaScriptPage)
+        if (cache != null)
         {
-            final JavaScriptPage source = (JavaScriptPage) page;
-            response.setTextReader(new StringReader(source.getContent()));
+            cache.put(cacheKey, response);
         }
+        return response;
+    }
 
-        if (LOG.isDebugEnabled())
+    /**
+     * Record where a successful fetch landed, if not where it was requested.
+     * Error pages are not recorded, since many URLs can lead to the same one.
+     *
+     * @param aliases
+     * @param requestUrl
+     * @param response
+     * @return true if a new alias was recorded
+     * @throws Url2TextException
+     */
+    private static boolean recordAlias(final AliasIndex aliases,
+            final URL requestUrl, final Response response)
+            throws Url2TextException
+    {
+        final String landingPage = response.getLandingPage();
+        if (response.getStatus() < 200 || response.getStatus() >= 300
+                || landingPage == null || STR_NOT_SET.equals(landingPage))
         {
-            LOG.debug(response.toString());
+            return false;
+        }
+        try
+        {
+            return aliases.record(requestUrl, new URL(landingPage));
+        }
+        catch (MalformedURLException e)
+        {
+            LOG.debug("Not an alias: {}", landingPage);
+            return false;
         }
-
-        return response;
     }
 
     public boolean hasActiveXNative()
@@ -759,6 +926,26 @@ public class Url2Text implements Cloneable, Serializable
         LOG.debug("Include metadata: {}", includeMetadata);
     }
 
+    public boolean hasIncludeStructure()
+    {
+        return this.includeStructure;
+    }
+
+    /**
+     * Include the structure of HTML pages in the output: the outgoing links,
+     * the headings, the canonical URL and the meta robots directives. See
+     * {@link Response#getPageStructure()}. They are collected from the DOM
+     * already built for the text, so the page is not parsed again; with
+     * {@link #setMainContentOnly(boolean)}, in the same walk of the DOM.
+     * 
+     * @param includeStructure
+     */
+    public void setIncludeStructure(final boolean includeStructure)
+    {
+        this.includeStructure = includeStructure;
+        LOG.debug("Include structure: {}", includeStructure);
+    }
+
     public int getJavascriptTimeout()
     {
         return this.javascriptTimeout;
@@ -804,10 +991,416 @@ public class Url2Text implements Cloneable, Serializable
         this.maxContentLength = maxLength;
     }
 
+    public boolean hasStreamBinaryContent()
+    {
+        return this.streamBinaryContent;
+    }
+
+    /**
+     * When enabled, content converted by Tika (PDF, office documents, etc.)
+     * is parsed while it is still downloading, rather than after the whole
+     * body has been buffered. Conversion then finishes shortly after the
+     * download, and the body is never held in full. Default is false.
+     * <p>
+     * Note that the fetch duration then covers the response headers only, and
+     * that network errors surface while reading the text.
+     * 
+     * @param streamBinaryContent
+     */
+    public void setStreamBinaryContent(final boolean streamBinaryContent)
+    {
+        this.streamBinaryContent = streamBinaryContent;
+        LOG.debug("Stream binary content: {}", streamBinaryContent);
+    }
+
+    public long getBodyMemoryThreshold()
+    {
+        return this.bodyMemoryThreshold;
+    }
+
+    /**
+     * Sets the size, in bytes, above which a response body is spilled to a
+     * temporary file rather than held in memory. Default is 512KiB. Zero
+     * spills every non-empty body.
+     * <p>
+     * Bodies are also spilled when the JVM-wide limit on in-memory bodies
+     * would be exceeded; see {@link ResponseBodies#setGlobalMemoryLimit(long)}.
+     * 
+     * @param threshold
+     *            must not be negative
+     */
+    public void setBodyMemoryThreshold(final long threshold)
+    {
+        if (threshold < 0L)
+        {
+            throw new IllegalArgumentException(
+                    "Body memory threshold cannot be negative: " + threshold);
+        }
+        this.bodyMemoryThreshold = threshold;
+        LOG.debug("Body memory threshold: {}", threshold);
+    }
+
+    public String getTextDigestAlgorithm()
+    {
+        return this.textDigestAlgorithm;
+    }
+
+    /**
+     * Sets the MessageDigest algorithm (e.g. "SHA-1") used to fingerprint the
+     * converted text as it is read. The digest and the char and UTF-8 byte
+     * counts are then available from the Response, and are included in its
+     * JSON. Default is empty, meaning no fingerprint.
+     * 
+     * @param algorithm
+     *            a MessageDigest algorithm name, or null or empty to disable
+     */
+    public void setTextDigestAlgorithm(final String algorithm)
+    {
+        final String name = algorithm == null ? "" : algorithm.trim();
+        if (!name.isEmpty())
+        {
+            try
+            {
+                MessageDigest.getInstance(name);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalArgumentException(
+                        "Unknown text digest algorithm: " + name, e);
+            }
+        }
+        this.textDigestAlgorithm = name;
+        LOG.debug("Text digest algorithm: {}", name);
+    }
+
+    public boolean hasMainContentOnly()
+    {
+        return this.mainContentOnly;
+    }
+
+    /**
+     * When enabled, the text of an HTML page is reduced to its main content,
+     * leaving out navigation, footers, banners and the like. See
+     * {@link MainContentExtractor}. The content title is unaffected. The
+     * length of the main content and of all the page text, and the time taken
+     * in millis, are added to the content metadata as Main-Content-Chars,
+     * Page-Text-Chars and Extraction-Duration. Default is false.
+     *
+     * @param mainContentOnly
+     */
+    public void setMainContentOnly(final boolean mainContentOnly)
+    {
+        this.mainContentOnly = mainContentOnly;
+        LOG.debug("Main content only: {}", mainContentOnly);
+    }
+
+    public WebConnectionFactory getWebConnectionFactory()
+    {
+        return this.webConnectionFactory;
+    }
+
+    /**
+     * Supply the factory for the HtmlUnit WebConnection used by each fetch;
+     * e.g. a {@link PooledWebConnectionFactory}. Null restores the default,
+     * where each fetch opens its own connections.
+     * <p>
+     * The factory is not part of the configuration, so is not saved by
+     * {@link #configAsProperties()}, nor serialized.
+     * 
+     * @param factory
+     *            can be null
+     */
+    public void setWebConnectionFactory(final WebConnectionFactory factory)
+    {
+        this.webConnectionFactory = factory;
+        LOG.debug("WebConnection factory: {}", factory);
+    }
+
+    public FetchCoalescer getFetchCoalescer()
+    {
+        return this.fetchCoalescer;
+    }
+
+    /**
+     * Supply a FetchCoalescer, so that concurrent fetches of the same URL, with
+     * the same configuration and additional headers, are performed once and
+     * their result shared. Null (the default) disables coalescing.
+     * <p>
+     * The coalescer is not part of the configuration.
+     * 
+     * @param coalescer
+     *            can be null
+     */
+    public void setFetchCoalescer(final FetchCoalescer coalescer)
+    {
+        this.fetchCoalescer = coalescer;
+        LOG.debug("Fetch coalescer: {}", coalescer);
+    }
+
+    public ResponseCache getResponseCache()
+    {
+        return this.responseCache;
+    }
+
+    /**
+     * Supply a ResponseCache, so that repeat fetches of the same URL, with the
+     * same configuration and additional headers, are answered from the cache
+     * while the entry lives. Null (the default) disables caching.
+     * <p>
+     * The cache is not part of the configuration.
+     * 
+     * @param cache
+     *            can be null
+     */
+    public void setResponseCache(final ResponseCache cache)
+    {
+        this.responseCache = cache;
+        LOG.debug("Response cache: {}", cache);
+    }
+
+    public AliasIndex getAliasIndex()
+    {
+        return this.aliasIndex;
+    }
+
+    /**
+     * Supply an AliasIndex, so that the many spellings of a URL (tracking
+     * parameters, default ports, case, fragments, redirects already followed)
+     * share one key in the {@link ResponseCache} and {@link FetchCoalescer}.
+     * Each successful fetch records the page it landed on. Null (the default)
+     * keys fetches by the URL exactly as requested.
+     * <p>
+     * The index is not part of the configuration.
+     * 
+     * @param index
+     *            can be null
+     */
+    public void setAliasIndex(final AliasIndex index)
+    {
+        this.aliasIndex = index;
+        LOG.debug("Alias index: {}", index);
+    }
+
+    public WarcRecorder getWarcRecorder()
+    {
+        return this.warcRecorder;
+    }
+
+    /**
+     * Supply a WarcRecorder, to keep the raw HTTP transactions of each fetch
+     * (including redirects and subresources) in WARC files, so pages can be
+     * converted again from disk. Null (the default) records nothing.
+     * <p>
+     * Recording is done by the connection, so only applies with the default
+     * connection, or a {@link PooledWebConnectionFactory}. While set, binary
+     * content is not streamed. The recorder is not part of the configuration.
+     * 
+     * @param recorder
+     *            can be null
+     */
+    public void setWarcRecorder(final WarcRecorder recorder)
+    {
+        this.warcRecorder = recorder;
+        LOG.debug("WARC recorder: {}", recorder);
+    }
+
+    public ConversionCache getConversionCache()
+    {
+        return this.conversionCache;
+    }
+
+    /**
+     * Supply a ConversionCache, so that content which is byte-for-byte
+     * identical to content already converted by Tika (e.g. the same PDF at
+     * another URL) is not parsed again. Null (the default) disables the cache.
+     * <p>
+     * The cache is not used while binary content is streamed, and is not part
+     * of the configuration.
+     * 
+     * @param cache
+     *            can be null
+     */
+    public void setConversionCache(final ConversionCache cache)
+    {
+        this.conversionCache = cache;
+        LOG.debug("Conversion cache: {}", cache);
+    }
+
+    public TextFilterChain getTextFilterChain()
+    {
+        return this.textFilterChain;
+    }
+
+    /**
+     * Supply a chain of filters to post-process the converted text as it is
+     * read, e.g. to collapse whitespace. Null (the default) leaves the text
+     * as converted.
+     * <p>
+     * The chain is not part of the configuration, but responses cached by a
+     * {@link ResponseCache}, or shared by a {@link FetchCoalescer}, are only
+     * reused by fetches with the same chain.
+     * 
+     * @param chain
+     *            can be null
+     */
+    public void setTextFilterChain(final TextFilterChain chain)
+    {
+        this.textFilterChain = chain;
+        LOG.debug("Text filter chain: {}", chain);
+    }
+
     // ###########################
     // ##### PRIVATE METHODS #####
     // ###########################
 
+    /**
+     * Fetch the requestUrl content and convert it to text. See
+     * {@link #contentAsText(URL, Map)}.
+     * 
+     * @param requestUrl
+     * @param additionalHeaders
+     * @param progress
+     *            told of the metadata, if not null
+     * @return the data generated by the fetch operation
+     * @throws Url2TextException
+     */
+    private Response fetchAsText(final URL requestUrl,
+            final Map<String, String> additionalHeaders,
+            final ProgressiveResponse progress) throws Url2TextException
+    {
+        final WebRequest request = prepareRequest(requestUrl, additionalHeaders);
+        final WebClient client = prepareWebClient();
+
+        // fetch page
+        LOG.debug("Fetching page {}", requestUrl.toExternalForm());
+        final Date fetchDate = new Date();
+        Page page = null;
+        Response response = null;
+        boolean contentHeld = false;
+        boolean complete = false;
+        try
+        {
+            try
+            {
+                page = client.getPage(request);
+            }
+            catch (FailingHttpStatusCodeException | IOException e)
+            {
+                throw new Url2TextException("Failed to fetch page.", e);
+            }
+
+            // grab metadata from the fetch transaction
+            response = buildResponse(requestUrl, fetchDate, page,
+                    this.includeHeaders);
+
+            // check content length, if present in response
+            if (this.maxContentLength > 0
+                    && response.getContentLength() > this.maxContentLength)
+            {
+                throw new Url2TextException("Content too long.  Limit is "
+                        + this.maxContentLength + ", actual is "
+                        + response.getContentLength());
+            }
+
+            // the metadata is complete before any conversion
+            if (progress != null)
+            {
+                progress.metadataAvailable(buildResponse(requestUrl,
+                        fetchDate, page, this.includeHeaders));
+            }
+
+            // discover if content is DocBook
+            final boolean isDocBook = isDocbook(page);
+
+            // retrieve metadata, and/or binary content using Tika
+            if (this.includeMetadata || isDocBook
+                    || page instanceof BinaryPage
+                    || page instanceof UnexpectedPage)
+            {
+                contentHeld = invokeTika(response, page);
+            }
+
+            // retrieve text content, if not already determined above
+            if (page.isHtmlPage())
+            {
+                // use HtmlUnit's DOM for JavaScript execution artifacts
+                final HtmlPage source = (HtmlPage) page;
+                final PageStructureCollector collector = this.includeStructure
+                        ? new PageStructureCollector(source) : null;
+                final String text;
+                if (this.mainContentOnly)
+                {
+                    text = extractMainContent(response, source, collector);
+                }
+                else
+                {
+                    text = source.asText();
+                    if (collector != null)
+                    {
+                        collector.walk(source);
+                    }
+                }
+                if (collector != null)
+                {
+                    response.setPageStructure(collector.build());
+                }
+                response.setTextReader(filterText(new StringReader(text)));
+            }
+            else if (page instanceof TextPage)
+            {
+                final TextPage source = (TextPage) page;
+                response.setTextReader(filterText(new StringReader(source
+                        .getContent())));
+            }
+            else if (page instanceof XmlPage && !isDocBook)
+            {
+                // Return the unaltered document (XHtml is dealt with above).
+                response.setTextReader(filterText(new StringReader(page
+                        .getWebResponse().getContentAsString())));
+            }
+            else if (page instanceof JavaScriptPage)
+            {
+                final JavaScriptPage source = (JavaScriptPage) page;
+                response.setTextReader(filterText(new StringReader(source
+                        .getContent())));
+            }
+
+            if (!this.textDigestAlgorithm.isEmpty())
+            {
+                response.setTextDigestAlgorithm(this.textDigestAlgorithm);
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug(response.toString());
+            }
+
+            complete = true;
+            return response;
+        }
+        finally
+        {
+            if (!complete && response != null)
+            {
+                // closes any text reader, e.g. Tika's
+                try
+                {
+                    response.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.debug("Error closing failed response", e);
+                }
+            }
+            // otherwise the text reader releases any content it still reads
+            // from
+            if (!complete || !contentHeld)
+            {
+                releaseContent(client.getWebConnection());
+            }
+        }
+    }
+
     /**
      * Add the Tika metadata into the response object.
      * 
@@ -817,8 +1410,9 @@ public class Url2Text implements Cloneable, Serializable
     private void addMetadataToResponse(final Metadata tikaMetadata,
             final Response response)
     {
-        final List<NameAndValue> localHeaders = new ArrayList<>();
         final String[] headers = tikaMetadata.names();
+        final List<NameAndValue> localHeaders = new NameAndValues(
+                headers.length);
         for (final String header : headers)
         {
 
@@ -870,13 +1464,20 @@ public class Url2Text implements Cloneable, Serializable
                 .getResponseHeaderValue(HDR_LAST_MODIFIED));
         response.setContentLength(webResponse
                 .getResponseHeaderValue(HDR_CONTENT_LENGTH));
+        if (page.isHtmlPage())
+        {
+            response.setContentTitle(((HtmlPage) page).getTitleText());
+        }
 
         // add headers, if asked for.
         if (includeHeaders)
         {
             // convert HtmlUnit NameValuePair to ours, to avoid dependency.
-            final List<NameAndValue> localHeaders = new ArrayList<>();
-            for (final NameValuePair nvp : webResponse.getResponseHeaders())
+            final List<NameValuePair> headers = webResponse
+                    .getResponseHeaders();
+            final List<NameAndValue> localHeaders = new NameAndValues(
+                    headers.size());
+            for (final NameValuePair nvp : headers)
             {
                 localHeaders
                         .add(new NameAndValue(nvp.getName(), nvp.getValue()));
@@ -978,6 +1579,17 @@ public class Url2Text implements Cloneable, Serializable
         options.setUseInsecureSSL(this.useInsecureSSL);
         options.setTimeout(this.networkTimeout * 1_000);
 
+        // share SSL sessions across fetches, unless a factory is supplied
+        if (this.webConnectionFactory == null)
+        {
+            client.setWebConnection(new Url2TextWebConnection(client, this));
+        }
+        else
+        {
+            client.setWebConnection(this.webConnectionFactory
+                    .createWebConnection(client, this));
+        }
+
         // configure cookies
         final CookieManager cookieManager = client.getCookieManager();
         cookieManager.setCookiesEnabled(this.cookiesEnabled);
@@ -1028,15 +1640,18 @@ public class Url2Text implements Cloneable, Serializable
      * Call Tika to convert to text and/or extract content metadata.
      * <p>
      * The Reader returned by Tika is fed into the response. Note that this
-     * reader is responsible for closing the input stream.
+     * reader is responsible for closing the input stream, and for releasing
+     * the downloaded content.
      * 
      * @param response
      * @param page
+     * @return true if the response reader still reads the downloaded content
      * @throws Url2TextException
      */
-    private void invokeTika(final Response response, final Page page)
+    private boolean invokeTika(final Response response, final Page page)
             throws Url2TextException
     {
+        boolean contentHeld = false;
         try
         {
             final long convertStart = new Date().getTime();
@@ -1044,7 +1659,7 @@ public class Url2Text implements Cloneable, Serializable
             if (response.getContentLength() == 0L)
             {
                 // Content-Length was present, as zero.
-                response.setTextReader(new StringReader(""));
+                response.setTextReader(filterText(new StringReader("")));
             }
             else
             {
@@ -1069,14 +1684,27 @@ public class Url2Text implements Cloneable, Serializable
                 {
                     metadata.add(HttpHeaders.CONTENT_TYPE, contentType);
                 }
-                final Reader reader = tika.parse(page.getWebResponse()
-                        .getContentAsStream(), metadata);
+                final ConversionCache cache = this.conversionCache;
+                if (cache != null && !this.streamBinaryContent)
+                {
+                    // convert in full, unless the same bytes were seen before
+                    contentHeld = convertCached(cache, tika, page,
+                            contentType, metadata, response);
+                }
+                else
+                {
+                    final Reader reader = tika.parse(page.getWebResponse()
+                            .getContentAsStream(), metadata);
 
-                response.setTextReader(reader);
+                    response.setTextReader(filterText(new ReleasingReader(
+                            reader, page.getEnclosingWindow().getWebClient()
+                                    .getWebConnection())));
+                    contentHeld = true;
 
-                if (this.includeMetadata)
-                {
-                    addMetadataToResponse(metadata, response);
+                    if (this.includeMetadata)
+                    {
+                        addMetadataToResponse(metadata, response);
+                    }
                 }
                 // TODO for binary page, if no content title in response, use filename (if known)
 
@@ -1089,6 +1717,140 @@ public class Url2Text implements Cloneable, Serializable
                     "Failed to convert text (content encrypted possibly encrypted)",
                     e);
         }
+        return contentHeld;
+    }
+
+    /**
+     * Look up the conversion of the content in the cache, or convert it and
+     * cache the result. Only text within the cache's size limit is buffered;
+     * if the text passes the limit, the rest is streamed, uncached, and the
+     * text reader then releases the content.
+     * 
+     * @param cache
+     * @param tika
+     * @param page
+     * @param contentType
+     *            raw Content-Type header; can be null
+     * @param metadata
+     *            populated by Tika, if the content is converted
+     * @param response
+     *            given the text, and the metadata if included
+     * @return true if the response reader still reads the downloaded content
+     * @throws IOException
+     */
+    private boolean convertCached(final ConversionCache cache,
+            final Tika tika, final Page page, final String contentType,
+            final Metadata metadata, final Response response)
+            throws IOException
+    {
+        final WebResponse webResponse = page.getWebResponse();
+        final String key;
+        try (InputStream content = webResponse.getContentAsStream())
+        {
+            key = ConversionCache.key(content, contentType);
+        }
+        final ConversionCache.Conversion cached = cache.get(key);
+        if (cached != null)
+        {
+            response.setTextReader(filterText(cached.newReader()));
+            if (this.includeMetadata)
+            {
+                addMetadataToResponse(cached.metadata, response);
+            }
+            return false;
+        }
+
+        final long convertStart = new Date().getTime();
+        final Reader converted = tika.parse(webResponse.getContentAsStream(),
+                metadata);
+        final StringBuilder text = new StringBuilder();
+        boolean contentHeld = false;
+        try
+        {
+            if (cache.readIfFits(converted, text))
+            {
+                final ConversionCache.Conversion conversion = new ConversionCache.Conversion(
+                        text.toString(), metadata, new Date().getTime()
+                                - convertStart);
+                cache.put(key, conversion);
+                response.setTextReader(filterText(conversion.newReader()));
+            }
+            else
+            {
+                LOG.debug("Conversion too large to cache: {}", key);
+                response.setTextReader(filterText(new ReleasingReader(
+                        new PrefixedReader(text.toString(), converted), page
+                                .getEnclosingWindow().getWebClient()
+                                .getWebConnection())));
+                contentHeld = true;
+            }
+        }
+        finally
+        {
+            if (!contentHeld)
+            {
+                converted.close();
+            }
+        }
+        if (this.includeMetadata)
+        {
+            addMetadataToResponse(metadata, response);
+        }
+        return contentHeld;
+    }
+
+    /**
+     * Extracts the main content of the page, recording the size reduction
+     * and the time taken in the content metadata.
+     * 
+     * @param response
+     * @param page
+     * @param collector
+     *            fed by the same walk of the DOM, may be null
+     * @return the text
+     */
+    private String extractMainContent(final Response response,
+            final HtmlPage page, final PageStructureCollector collector)
+    {
+        final long start = System.currentTimeMillis();
+        final MainContentExtractor.Extraction extraction = MAIN_CONTENT_EXTRACTOR
+                .extract(page, collector);
+        final long duration = System.currentTimeMillis() - start;
+
+        final List<NameAndValue> metadata = response.getContentMetadata();
+        metadata.add(new NameAndValue(HDR_MAIN_CONTENT_CHARS, Integer
+                .toString(extraction.getText().length())));
+        metadata.add(new NameAndValue(HDR_PAGE_TEXT_CHARS, Long
+                .toString(extraction.getPageTextLength())));
+        metadata.add(new NameAndValue(HDR_EXTRACTION_DURATION, Long
+                .toString(duration)));
+        return extraction.getText();
+    }
+
+    /**
+     * Apply the text filter chain, if any.
+     * 
+     * @param reader
+     *            the converted text
+     * @return the text to be returned
+     */
+    private Reader filterText(final Reader reader)
+    {
+        final TextFilterChain chain = this.textFilterChain;
+        return (chain == null) ? reader : chain.apply(reader);
+    }
+
+    /**
+     * Release the content downloaded by a fetch, if the connection holds any.
+     * 
+     * @param connection
+     */
+    private static void releaseContent(final WebConnection connection)
+    {
+        if (connection instanceof Url2TextWebConnection)
+        {
+            ((Url2TextWebConnection) connection).releaseContent();
+        }
     }
 
     @Override
@@ -1104,6 +1866,73 @@ public class Url2Text implements Cloneable, Serializable
         }
     }
 
+    /**
+     * Reader which releases the downloaded content once closed.
+     */
+    static class ReleasingReader extends FilterReader
+    {
+        private final WebConnection connection;
+
+        ReleasingReader(final Reader reader, final WebConnection connection)
+        {
+            super(reader);
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                releaseContent(this.connection);
+            }
+        }
+    }
+
+    /**
+     * Reader which reads the text already buffered, then the rest of another
+     * Reader.
+     */
+    static class PrefixedReader extends Reader
+    {
+        private final String prefix;
+        private final Reader rest;
+        private int position = 0;
+
+        PrefixedReader(final String prefix, final Reader rest)
+        {
+            this.prefix = prefix;
+            this.rest = rest;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException
+        {
+            if (this.position < this.prefix.length() && len > 0)
+            {
+                final int count = Math.min(len, this.prefix.length()
+                        - this.position);
+                this.prefix.getChars(this.position, this.position + count,
+                        cbuf, off);
+                this.position += count;
+                return count;
+            }
+            return this.rest.read(cbuf, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.position = this.prefix.length();
+            this.rest.close();
+        }
+    }
+
     /**
      * Class to avoid excess log messages.
      * 
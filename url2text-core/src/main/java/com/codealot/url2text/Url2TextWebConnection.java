@@ -0,0 +1,462 @@
+package com.codealot.url2text;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+import com.gargoylesoftware.htmlunit.HttpWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * HtmlUnit WebConnection used for every Url2Text fetch.
+ * <p>
+ * HtmlUnit builds a new SSLContext for each WebClient, so every fetch pays for
+ * a full TLS handshake. This connection instead uses one of two long-lived SSL
+ * socket factories (secure or insecure), shared by all fetches in the JVM. As
+ * each SSLContext keeps a client session cache, later connections to the same
+ * host resume the earlier session rather than negotiating a new one.
+ * <p>
+ * Optionally, the body of a document which will be converted by Tika is not
+ * downloaded up front, but left streaming from the network. See
+ * {@link Url2Text#setStreamBinaryContent(boolean)}. Other bodies are buffered by
+ * {@link ResponseBodies}, and held until {@link #releaseContent()} is called.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+class Url2TextWebConnection extends HttpWebConnection
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(Url2TextWebConnection.class);
+
+    // name of HtmlUnit's private snapshot of the options last applied
+    private static final String USED_OPTIONS_FIELD = "usedOptions_";
+
+    private final WebClient webClient;
+    private final boolean useInsecureSSL;
+
+    private final long bodyMemoryThreshold;
+
+    // records each transaction, if not null
+    private final WarcRecorder recorder;
+    private final String userAgent;
+
+    // cleared by the first response that is not a redirect
+    private boolean streamNextDocument;
+
+    // bodies downloaded so far, until released
+    private final List<DownloadedContent> downloaded = new ArrayList<>();
+    private boolean released = false;
+
+    /**
+     * Create a connection for the given client.
+     *
+     * @param webClient
+     * @param config
+     *            the settings of the fetch
+     */
+    Url2TextWebConnection(final WebClient webClient, final Url2Text config)
+    {
+        super(webClient);
+        this.webClient = webClient;
+        this.useInsecureSSL = config.hasUseInsecureSSL();
+        this.recorder = config.getWarcRecorder();
+        this.userAgent = webClient.getBrowserVersion().getUserAgent();
+        // a recording needs the whole body
+        this.streamNextDocument = config.hasStreamBinaryContent()
+                && this.recorder == null;
+        this.bodyMemoryThreshold = config.getBodyMemoryThreshold();
+    }
+
+    /**
+     * Returns the long-lived SSLContext for the given trust mode.
+     *
+     * @param useInsecureSSL
+     * @return the shared context
+     */
+    static SSLContext sslContext(final boolean useInsecureSSL)
+    {
+        return useInsecureSSL ? InsecureSSL.CONTEXT : SecureSSL.CONTEXT;
+    }
+
+    /**
+     * Returns the long-lived SSL socket factory for the given trust mode.
+     *
+     * @param useInsecureSSL
+     * @return the shared factory
+     */
+    static SSLConnectionSocketFactory sslSocketFactory(
+            final boolean useInsecureSSL)
+    {
+        return useInsecureSSL ? InsecureSSL.FACTORY : SecureSSL.FACTORY;
+    }
+
+    @Override
+    protected HttpClientBuilder createHttpClient()
+    {
+        final HttpClientBuilder builder = super.createHttpClient();
+        builder.setSSLSocketFactory(sslSocketFactory(this.useInsecureSSL));
+        return builder;
+    }
+
+    /**
+     * Records the transaction, if a {@link WarcRecorder} is set. A failure to
+     * record is logged, and the fetch goes on.
+     */
+    @Override
+    public WebResponse getResponse(final WebRequest request)
+            throws IOException
+    {
+        final WebResponse response = super.getResponse(request);
+        if (this.recorder != null)
+        {
+            try
+            {
+                this.recorder.record(request, response, this.userAgent);
+            }
+            catch (IOException e)
+            {
+                // an archive problem does not fail the fetch
+                LOG.warn("Failed to record {}", request.getUrl(), e);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Release the bodies downloaded so far: temporary files are deleted, and
+     * memory is no longer counted against the global limit. Bodies downloaded
+     * afterwards (e.g. by background JavaScript) are not counted at all.
+     */
+    synchronized void releaseContent()
+    {
+        this.released = true;
+        for (final DownloadedContent content : this.downloaded)
+        {
+            content.cleanUp();
+        }
+        this.downloaded.clear();
+    }
+
+    /**
+     * Leaves the body of the fetched document streaming from the network when
+     * streaming is enabled and the document is bound for Tika. Only the first
+     * response which is not a redirect is considered, so subresources are
+     * always downloaded in full.
+     * <p>
+     * Downloaded bodies are spilled to disk when too large to keep in memory.
+     */
+    @Override
+    protected DownloadedContent downloadResponseBody(final HttpResponse response)
+            throws IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null)
+        {
+            return super.downloadResponseBody(response);
+        }
+        final int status = response.getStatusLine().getStatusCode();
+        if (this.streamNextDocument && (status < 300 || status >= 400))
+        {
+            this.streamNextDocument = false;
+            if (status >= 200 && status < 300 && isConvertedByTika(response))
+            {
+                return keep(new StreamingContent(entity.getContent()));
+            }
+        }
+        return download(entity.getContent());
+    }
+
+    /**
+     * Download a body in full, to be released with the others.
+     *
+     * @param body
+     *            closed on return
+     * @return the downloaded content
+     * @throws IOException
+     */
+    DownloadedContent download(final InputStream body) throws IOException
+    {
+        final boolean budgeted;
+        synchronized (this)
+        {
+            budgeted = !this.released;
+        }
+        return keep(ResponseBodies.download(body, this.bodyMemoryThreshold,
+                budgeted));
+    }
+
+    private synchronized DownloadedContent keep(final DownloadedContent content)
+    {
+        if (!this.released)
+        {
+            this.downloaded.add(content);
+        }
+        else if (content instanceof ResponseBodies.InMemory)
+        {
+            // released while downloading, so stop counting it
+            content.cleanUp();
+        }
+        return content;
+    }
+
+    /**
+     * True if HtmlUnit will present the response as an UnexpectedPage, whose
+     * content is only ever read by Tika. Content which HtmlUnit has to sniff,
+     * or decode, is excluded.
+     *
+     * @param response
+     * @return boolean flag
+     */
+    static boolean isConvertedByTika(final HttpResponse response)
+    {
+        if (response.getFirstHeader("Content-Encoding") != null)
+        {
+            return false;
+        }
+        final Header header = response.getFirstHeader("Content-Type");
+        if (header == null)
+        {
+            return false;
+        }
+        String type = header.getValue().toLowerCase(Locale.ENGLISH);
+        final int semicolon = type.indexOf(';');
+        if (semicolon >= 0)
+        {
+            type = type.substring(0, semicolon);
+        }
+        type = type.trim();
+
+        return !(type.isEmpty() || type.equals("application/octet-stream")
+                || type.startsWith("text/") || type.endsWith("+xml")
+                || type.equals("application/xml")
+                || type.equals("application/javascript")
+                || type.equals("application/x-javascript"));
+    }
+
+    @Override
+    protected synchronized HttpClientBuilder getHttpClientBuilder()
+    {
+        final HttpClientBuilder builder = super.getHttpClientBuilder();
+
+        // HtmlUnit replaces the SSL socket factory whenever the client options
+        // differ from its snapshot (ProxyConfig is compared by reference, so
+        // the first request always differs). Bring the snapshot into line so
+        // the shared factory installed above is kept.
+        try
+        {
+            final WebClientOptions current = this.webClient.getOptions();
+            final WebClientOptions used = (WebClientOptions) FieldUtils
+                    .readField(this, USED_OPTIONS_FIELD, true);
+            used.setUseInsecureSSL(current.isUseInsecureSSL());
+            used.setProxyConfig(current.getProxyConfig());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return builder;
+    }
+
+    /**
+     * Body which is read directly from the network, as it arrives.
+     * <p>
+     * HtmlUnit opens the content several times while building the page (e.g.
+     * to sniff the charset) before Tika reads it. So the bytes read from the
+     * network are kept, up to a small limit, and replayed to each new stream.
+     * Closing a stream only closes the network stream once that stream has
+     * read past the replay limit, or reached the end.
+     */
+    @SuppressWarnings("serial")
+    static class StreamingContent implements DownloadedContent
+    {
+        static final int REPLAY_LIMIT = 8 * 1024;
+
+        private final transient InputStream source;
+        private final byte[] replay = new byte[REPLAY_LIMIT];
+        private long sourcePosition = 0L;
+
+        StreamingContent(final InputStream source)
+        {
+            this.source = source;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new InputStream()
+                {
+                    private long position = 0L;
+                    private boolean finished = false;
+
+                    @Override
+                    public int read() throws IOException
+                    {
+                        final byte[] one = new byte[1];
+                        final int count = read(one, 0, 1);
+                        return (count < 0) ? -1 : (one[0] & 0xff);
+                    }
+
+                    @Override
+                    public int read(final byte[] b, final int off,
+                            final int len) throws IOException
+                    {
+                        final int count = readAt(this.position, b, off, len);
+                        if (count < 0)
+                        {
+                            this.finished = true;
+                        }
+                        else
+                        {
+                            this.position += count;
+                        }
+                        return count;
+                    }
+
+                    @Override
+                    public void close() throws IOException
+                    {
+                        if (this.finished || this.position > REPLAY_LIMIT)
+                        {
+                            StreamingContent.this.source.close();
+                        }
+                    }
+                };
+        }
+
+        private synchronized int readAt(final long position, final byte[] b,
+                final int off, final int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (position < this.sourcePosition)
+            {
+                if (position >= REPLAY_LIMIT)
+                {
+                    throw new IOException(
+                            "Streamed content can only be read once.");
+                }
+                final int count = (int) Math.min(len,
+                        Math.min(REPLAY_LIMIT, this.sourcePosition) - position);
+                System.arraycopy(this.replay, (int) position, b, off, count);
+                return count;
+            }
+            if (position > this.sourcePosition)
+            {
+                throw new IOException("Streamed content read out of order.");
+            }
+            final int count = this.source.read(b, off, len);
+            if (count > 0)
+            {
+                if (this.sourcePosition < REPLAY_LIMIT)
+                {
+                    final int kept = (int) Math.min(count, REPLAY_LIMIT
+                            - this.sourcePosition);
+                    System.arraycopy(b, off, this.replay,
+                            (int) this.sourcePosition, kept);
+                }
+                this.sourcePosition += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void cleanUp()
+        {
+            try
+            {
+                this.source.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to be done
+            }
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Lazy holder for the factory that validates server certificates.
+     */
+    private static final class SecureSSL
+    {
+        static final SSLContext CONTEXT = SSLContexts.createDefault();
+        static final SSLConnectionSocketFactory FACTORY = new SSLConnectionSocketFactory(
+                CONTEXT,
+                SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+    }
+
+    /**
+     * Lazy holder for the factory that trusts any server certificate.
+     */
+    private static final class InsecureSSL
+    {
+        static final SSLContext CONTEXT = buildInsecureContext();
+        static final SSLConnectionSocketFactory FACTORY = new SSLConnectionSocketFactory(
+                CONTEXT, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+
+        private static SSLContext buildInsecureContext()
+        {
+            try
+            {
+                return SSLContexts.custom()
+                        .loadTrustMaterial(null, new TrustStrategy()
+                            {
+                                @Override
+                                public boolean isTrusted(
+                                        final X509Certificate[] chain,
+                                        final String authType)
+                                        throws CertificateException
+                                {
+                                    return true;
+                                }
+                            }).build();
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
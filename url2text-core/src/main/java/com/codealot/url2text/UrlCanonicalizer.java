@@ -0,0 +1,378 @@
+package com.codealot.url2text;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reduces the many spellings of a URL to one, for use as a cache or dedup key.
+ * <p>
+ * For http and https URLs: the scheme and host are lower-cased (and a trailing
+ * dot dropped from the host), a default port is removed, an empty path
+ * becomes "/", dot segments are resolved, percent-escapes are upper-cased
+ * (and decoded where they stand for an unreserved character), characters
+ * which must be escaped are escaped, tracking parameters are dropped from the
+ * query (optionally sorted), and the fragment is removed. Other schemes only
+ * lose their fragment.
+ * <p>
+ * The result is a key, not necessarily a URL to fetch: the server may treat
+ * some parameters differently. Instances are immutable and thread-safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public final class UrlCanonicalizer
+{
+    /**
+     * Query parameters which only track the visitor. A trailing '*' matches
+     * any name with that prefix.
+     */
+    public static final List<String> DEFAULT_IGNORED_PARAMETERS = Collections
+            .unmodifiableList(Arrays.asList("utm_*", "gclid", "dclid",
+                    "fbclid", "msclkid", "yclid", "mc_cid", "mc_eid", "_ga",
+                    "_gl", "igshid"));
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Set<String> ignoredNames = new HashSet<>();
+    private final List<String> ignoredPrefixes = new ArrayList<>();
+    private final boolean sortQuery;
+
+    /**
+     * Default constructor. Drops the {@link #DEFAULT_IGNORED_PARAMETERS} and
+     * keeps the order of the query.
+     */
+    public UrlCanonicalizer()
+    {
+        this(DEFAULT_IGNORED_PARAMETERS, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param ignoredParameters
+     *            names of query parameters to drop, compared ignoring case; a
+     *            trailing '*' matches any name with that prefix
+     * @param sortQuery
+     *            if true, the query parameters are sorted, so their order does
+     *            not matter
+     */
+    public UrlCanonicalizer(final Collection<String> ignoredParameters,
+            final boolean sortQuery)
+    {
+        for (final String name : ignoredParameters)
+        {
+            final String lower = name.toLowerCase(Locale.ENGLISH);
+            if (lower.endsWith("*"))
+            {
+                this.ignoredPrefixes.add(lower.substring(0,
+                        lower.length() - 1));
+            }
+            else
+            {
+                this.ignoredNames.add(lower);
+            }
+        }
+        this.sortQuery = sortQuery;
+    }
+
+    /**
+     * See {@link #canonicalize(URL)}.
+     *
+     * @param url
+     * @return the canonical form
+     * @throws MalformedURLException
+     */
+    public String canonicalize(final String url) throws MalformedURLException
+    {
+        return canonicalize(new URL(url));
+    }
+
+    /**
+     * Return the canonical form of the URL.
+     *
+     * @param url
+     * @return the canonical form
+     */
+    public String canonicalize(final URL url)
+    {
+        final String protocol = url.getProtocol().toLowerCase(Locale.ENGLISH);
+        if (!"http".equals(protocol) && !"https".equals(protocol))
+        {
+            final String external = url.toExternalForm();
+            final int hash = external.indexOf('#');
+            return hash < 0 ? external : external.substring(0, hash);
+        }
+
+        final StringBuilder result = new StringBuilder(url.toExternalForm()
+                .length());
+        result.append(protocol).append("://");
+        if (url.getUserInfo() != null)
+        {
+            result.append(url.getUserInfo()).append('@');
+        }
+        String host = url.getHost().toLowerCase(Locale.ENGLISH);
+        if (host.endsWith("."))
+        {
+            host = host.substring(0, host.length() - 1);
+        }
+        result.append(host);
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort())
+        {
+            result.append(':').append(url.getPort());
+        }
+
+        final String path = url.getPath();
+        result.append(path.isEmpty() ? "/"
+                : removeDotSegments(normalizeEscapes(path)));
+
+        if (url.getQuery() != null)
+        {
+            final String query = canonicalQuery(url.getQuery());
+            if (!query.isEmpty())
+            {
+                result.append('?').append(query);
+            }
+        }
+        return result.toString();
+    }
+
+    public List<String> getIgnoredParameters()
+    {
+        final List<String> result = new ArrayList<>(this.ignoredNames);
+        for (final String prefix : this.ignoredPrefixes)
+        {
+            result.add(prefix + "*");
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    public boolean isSortQuery()
+    {
+        return this.sortQuery;
+    }
+
+    private String canonicalQuery(final String query)
+    {
+        final List<String> parameters = new ArrayList<>();
+        for (final String parameter : query.split("&"))
+        {
+            if (parameter.isEmpty())
+            {
+                continue;
+            }
+            final int equals = parameter.indexOf('=');
+            final String name = (equals < 0) ? parameter : parameter
+                    .substring(0, equals);
+            if (!isIgnored(name.toLowerCase(Locale.ENGLISH)))
+            {
+                parameters.add(normalizeEscapes(parameter));
+            }
+        }
+        if (this.sortQuery)
+        {
+            Collections.sort(parameters);
+        }
+
+        final StringBuilder result = new StringBuilder(query.length());
+        for (final String parameter : parameters)
+        {
+            if (result.length() > 0)
+            {
+                result.append('&');
+            }
+            result.append(parameter);
+        }
+        return result.toString();
+    }
+
+    private boolean isIgnored(final String name)
+    {
+        if (this.ignoredNames.contains(name))
+        {
+            return true;
+        }
+        for (final String prefix : this.ignoredPrefixes)
+        {
+            if (name.startsWith(prefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Upper-case the hex of percent-escapes, decode escaped unreserved
+     * characters, and escape characters which may not appear unescaped (as
+     * UTF-8).
+     *
+     * @param s
+     *            a path or query
+     * @return the normalized form
+     */
+    static String normalizeEscapes(final String s)
+    {
+        StringBuilder result = null;
+        final int length = s.length();
+        for (int i = 0; i < length; i++)
+        {
+            final char c = s.charAt(i);
+            if (c == '%')
+            {
+                final int high = (i + 2 < length) ? hexValue(s.charAt(i + 1))
+                        : -1;
+                final int low = (high < 0) ? -1 : hexValue(s.charAt(i + 2));
+                if (result == null)
+                {
+                    result = new StringBuilder(length + 16).append(s, 0, i);
+                }
+                if (low < 0)
+                {
+                    // a bare '%'
+                    result.append("%25");
+                }
+                else
+                {
+                    final char decoded = (char) (high << 4 | low);
+                    if (isUnreserved(decoded))
+                    {
+                        result.append(decoded);
+                    }
+                    else
+                    {
+                        appendEscape(result, decoded);
+                    }
+                    i += 2;
+                }
+            }
+            else if (mustEscape(c))
+            {
+                if (result == null)
+                {
+                    result = new StringBuilder(length + 16).append(s, 0, i);
+                }
+                final int end = (Character.isHighSurrogate(c)
+                        && i + 1 < length && Character.isLowSurrogate(s
+                        .charAt(i + 1))) ? i + 2 : i + 1;
+                for (final byte b : s.substring(i, end).getBytes(
+                        StandardCharsets.UTF_8))
+                {
+                    appendEscape(result, b & 0xff);
+                }
+                i = end - 1;
+            }
+            else if (result != null)
+            {
+                result.append(c);
+            }
+        }
+        return (result == null) ? s : result.toString();
+    }
+
+    /**
+     * Resolve "." and ".." segments, as RFC 3986 section 5.2.4.
+     *
+     * @param path
+     *            an absolute path
+     * @return the path without dot segments
+     */
+    static String removeDotSegments(final String path)
+    {
+        if (path.indexOf('.') < 0)
+        {
+            return path;
+        }
+        final String[] segments = path.split("/", -1);
+        final List<String> output = new ArrayList<>(segments.length);
+        for (int i = 1; i < segments.length; i++)
+        {
+            final String segment = segments[i];
+            final boolean last = (i == segments.length - 1);
+            if (".".equals(segment))
+            {
+                if (last)
+                {
+                    output.add("");
+                }
+            }
+            else if ("..".equals(segment))
+            {
+                if (!output.isEmpty())
+                {
+                    output.remove(output.size() - 1);
+                }
+                if (last)
+                {
+                    output.add("");
+                }
+            }
+            else
+            {
+                output.add(segment);
+            }
+        }
+
+        final StringBuilder result = new StringBuilder(path.length());
+        for (final String segment : output)
+        {
+            result.append('/').append(segment);
+        }
+        return (result.length() == 0) ? "/" : result.toString();
+    }
+
+    private static boolean isUnreserved(final char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+                || c == '~';
+    }
+
+    private static boolean mustEscape(final char c)
+    {
+        return c <= ' ' || c >= 0x7f || "\"<>\\^`{|}".indexOf(c) >= 0;
+    }
+
+    private static int hexValue(final char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f')
+        {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F')
+        {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static void appendEscape(final StringBuilder result, final int b)
+    {
+        result.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+    }
+}
@@ -0,0 +1,692 @@
+package com.codealot.url2text;
+
+import static com.codealot.url2text.Constants.APP_VERSION;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Records the raw HTTP transactions of fetches to WARC (ISO 28500) files, so
+ * pages can be converted again later from local disk, e.g. with
+ * {@link WarcReplay}, instead of from the network.
+ * <p>
+ * Every request made through the connection is recorded, including redirects
+ * and, when JavaScript or CSS is enabled, subresources. Each transaction is a
+ * request record and a response record, each compressed as its own gzip
+ * member, as is usual for .warc.gz files. Files are written sequentially and
+ * rotated when they exceed the size limit; each starts with a warcinfo
+ * record, and has a CDX index beside it, giving the offset of each response.
+ * <p>
+ * Bodies are recorded as HtmlUnit received them, i.e. after any
+ * Content-Encoding has been removed, so that header is dropped, and the
+ * Content-Length set to match. The request is rebuilt from what HtmlUnit was
+ * asked to send, so headers added by HttpClient itself are absent.
+ * <p>
+ * Recording needs the whole body, so binary content is not streamed (see
+ * {@link Url2Text#setStreamBinaryContent(boolean)}) while a recorder is set.
+ * Instances are thread-safe, and can be shared. See
+ * {@link Url2Text#setWarcRecorder(WarcRecorder)}.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class WarcRecorder implements Closeable
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(WarcRecorder.class);
+
+    /**
+     * 1GiB, the size commonly used by crawlers.
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 1_024L * 1_024 * 1_024;
+
+    static final String WARC_SUFFIX = ".warc.gz";
+    static final String CDX_SUFFIX = ".cdx";
+    static final String CDX_HEADER = " CDX N b a m s k r M S V g";
+
+    private static final String CRLF = "\r\n";
+    private static final char[] BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567"
+            .toCharArray();
+    // headers which describe the transfer, not the recorded body
+    private static final List<String> TRANSFER_HEADERS = Arrays.asList(
+            "content-encoding", "content-length", "transfer-encoding");
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileSize;
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+    private final List<Path> files = new ArrayList<>();
+    private FileChannel channel = null;
+    private CountingOutputStream out = null;
+    private FileChannel cdxChannel = null;
+    private OutputStream cdx = null;
+    private String fileName = null;
+    private String warcinfoId = null;
+    private long recordCount = 0L;
+    private long bytesWritten = 0L;
+    private boolean closed = false;
+
+    /**
+     * Constructor, rotating files at {@link #DEFAULT_MAX_FILE_SIZE}.
+     *
+     * @param directory
+     *            receives the files
+     * @param prefix
+     *            start of each file name
+     */
+    public WarcRecorder(final Path directory, final String prefix)
+    {
+        this(directory, prefix, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            receives the files
+     * @param prefix
+     *            start of each file name, which continues with the time the
+     *            recorder was created and a sequence number
+     * @param maxFileSize
+     *            a file is closed, and another started, once it exceeds this
+     *            size in bytes
+     */
+    public WarcRecorder(final Path directory, final String prefix,
+            final long maxFileSize)
+    {
+        if (maxFileSize < 1L)
+        {
+            throw new IllegalArgumentException("File size must be positive.");
+        }
+        this.directory = directory;
+        this.prefix = prefix + "-" + format("yyyyMMddHHmmss", new Date())
+                + "-";
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Record a transaction.
+     *
+     * @param request
+     * @param response
+     *            its content must be readable more than once
+     * @param userAgent
+     *            as sent with the request
+     * @throws IOException
+     *             if the transaction cannot be recorded, in which case none
+     *             of it is left in the files
+     */
+    void record(final WebRequest request, final WebResponse response,
+            final String userAgent) throws IOException
+    {
+        final Date date = new Date();
+        final URL url = request.getUrl();
+        final byte[] requestBlock = requestBlock(request, userAgent);
+
+        // measure and digest the body, before it is written
+        final MessageDigest digest = sha1();
+        long bodyLength = 0L;
+        try (InputStream in = response.getContentAsStream())
+        {
+            final byte[] buffer = new byte[8 * 1_024];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, count);
+                bodyLength += count;
+            }
+        }
+        final String payloadDigest = "sha1:" + base32(digest.digest());
+        final byte[] responseHead = responseHead(response, bodyLength);
+
+        synchronized (this)
+        {
+            if (this.closed)
+            {
+                throw new IOException("WarcRecorder is closed.");
+            }
+            if (this.out == null)
+            {
+                open(date);
+            }
+            final String responseId = recordId();
+            final long offset = this.out.count;
+            final long cdxOffset = this.cdxChannel.position();
+            try
+            {
+                try (InputStream body = response.getContentAsStream())
+                {
+                    writeRecord("response", url, date, responseId, null,
+                            "application/http; msgtype=response",
+                            payloadDigest, responseHead, body, bodyLength);
+                }
+                final long length = this.out.count - offset;
+                writeRecord("request", url, date, recordId(), responseId,
+                        "application/http; msgtype=request", null,
+                        requestBlock, null, 0L);
+                writeCdx(url, date, response, payloadDigest, length, offset);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                rollBack(offset, cdxOffset);
+                throw e;
+            }
+            this.recordCount++;
+
+            if (this.out.count >= this.maxFileSize)
+            {
+                closeFile();
+            }
+        }
+    }
+
+    /**
+     * @return the files written so far, oldest first
+     */
+    public synchronized List<Path> getFiles()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(this.files));
+    }
+
+    /**
+     * @return the number of transactions recorded
+     */
+    public synchronized long getRecordCount()
+    {
+        return this.recordCount;
+    }
+
+    /**
+     * @return the compressed bytes written, across all files
+     */
+    public synchronized long getBytesWritten()
+    {
+        return this.bytesWritten + (this.out == null ? 0L : this.out.count);
+    }
+
+    public Path getDirectory()
+    {
+        return this.directory;
+    }
+
+    public long getMaxFileSize()
+    {
+        return this.maxFileSize;
+    }
+
+    /**
+     * Close the current file. Later transactions fail to record.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        this.closed = true;
+        closeFile();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WarcRecorder[" + this.directory.resolve(this.prefix + "*")
+                + "]";
+    }
+
+    private void open(final Date date) throws IOException
+    {
+        final String base = this.prefix
+                + String.format("%05d", this.files.size());
+        this.fileName = base + WARC_SUFFIX;
+        final Path file = this.directory.resolve(this.fileName);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.out = new CountingOutputStream(this.channel, 0L);
+        this.files.add(file);
+        this.cdxChannel = FileChannel.open(
+                this.directory.resolve(base + CDX_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.cdx = new BufferedOutputStream(
+                Channels.newOutputStream(this.cdxChannel));
+        this.cdx.write((CDX_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+        this.cdx.flush();
+        LOG.debug("Recording to {}", file);
+
+        final String info = "software: Url2Text/" + APP_VERSION + CRLF
+                + "format: WARC File Format 1.0" + CRLF;
+        this.warcinfoId = null;
+        final String id = recordId();
+        try
+        {
+            writeRecord("warcinfo", null, date, id, null,
+                    "application/warc-fields", null,
+                    info.getBytes(StandardCharsets.UTF_8), null, 0L);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // the next transaction tries again
+            abandon();
+            this.files.remove(file);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(this.directory.resolve(base + CDX_SUFFIX));
+            throw e;
+        }
+        this.warcinfoId = id;
+    }
+
+    private void closeFile() throws IOException
+    {
+        if (this.out != null)
+        {
+            try
+            {
+                this.bytesWritten += this.out.count;
+                this.out.close();
+                this.cdx.close();
+            }
+            finally
+            {
+                abandon();
+            }
+        }
+    }
+
+    /**
+     * Cut a failed transaction from the files, so that a partial gzip member
+     * is not left for the next record to follow. Each record is flushed as it
+     * ends, so nothing from earlier transactions is still buffered. If the
+     * files cannot be cut, they are abandoned and the next transaction starts
+     * another pair.
+     */
+    private void rollBack(final long offset, final long cdxOffset)
+    {
+        try
+        {
+            this.channel.truncate(offset);
+            this.out = new CountingOutputStream(this.channel, offset);
+            this.cdxChannel.truncate(cdxOffset);
+            this.cdx = new BufferedOutputStream(
+                    Channels.newOutputStream(this.cdxChannel));
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Abandoning {} after a failed record", this.fileName, e);
+            this.bytesWritten += offset;
+            abandon();
+        }
+    }
+
+    /**
+     * Drop the current files, without writing anything more to them.
+     */
+    private void abandon()
+    {
+        closeQuietly(this.channel);
+        closeQuietly(this.cdxChannel);
+        this.out = null;
+        this.cdx = null;
+        this.channel = null;
+        this.cdxChannel = null;
+    }
+
+    private static void closeQuietly(final Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Failed to close", e);
+            }
+        }
+    }
+
+    /**
+     * Write one record, as its own gzip member.
+     */
+    private void writeRecord(final String type, final URL url,
+            final Date date, final String id, final String concurrentTo,
+            final String contentType, final String payloadDigest,
+            final byte[] head, final InputStream body, final long bodyLength)
+            throws IOException
+    {
+        final StringBuilder header = new StringBuilder(512);
+        header.append("WARC/1.0").append(CRLF);
+        header.append("WARC-Type: ").append(type).append(CRLF);
+        header.append("WARC-Record-ID: ").append(id).append(CRLF);
+        header.append("WARC-Date: ")
+                .append(format("yyyy-MM-dd'T'HH:mm:ss'Z'", date)).append(CRLF);
+        if (url != null)
+        {
+            header.append("WARC-Target-URI: ").append(url.toExternalForm())
+                    .append(CRLF);
+        }
+        if (this.warcinfoId != null)
+        {
+            header.append("WARC-Warcinfo-ID: ").append(this.warcinfoId)
+                    .append(CRLF);
+        }
+        if (concurrentTo != null)
+        {
+            header.append("WARC-Concurrent-To: ").append(concurrentTo)
+                    .append(CRLF);
+        }
+        if (payloadDigest != null)
+        {
+            header.append("WARC-Payload-Digest: ").append(payloadDigest)
+                    .append(CRLF);
+        }
+        if (type.equals("warcinfo"))
+        {
+            header.append("WARC-Filename: ").append(this.fileName)
+                    .append(CRLF);
+        }
+        header.append("Content-Type: ").append(contentType).append(CRLF);
+        header.append("Content-Length: ").append(head.length + bodyLength)
+                .append(CRLF);
+        header.append(CRLF);
+
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(
+                new FilterOutputStream(this.out)
+                    {
+                        @Override
+                        public void write(final byte[] b, final int off,
+                                final int len) throws IOException
+                        {
+                            this.out.write(b, off, len);
+                        }
+
+                        @Override
+                        public void close() throws IOException
+                        {
+                            // ends the member, but not the file
+                            flush();
+                        }
+                    }, 8 * 1_024))
+        {
+            gzip.write(header.toString().getBytes(StandardCharsets.UTF_8));
+            gzip.write(head);
+            if (body != null)
+            {
+                final byte[] buffer = new byte[8 * 1_024];
+                long remaining = bodyLength;
+                int count;
+                while (remaining > 0L
+                        && (count = body.read(buffer, 0, (int) Math.min(
+                                buffer.length, remaining))) != -1)
+                {
+                    gzip.write(buffer, 0, count);
+                    remaining -= count;
+                }
+                if (remaining > 0L)
+                {
+                    throw new IOException("Body changed while recording.");
+                }
+            }
+            gzip.write((CRLF + CRLF).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void writeCdx(final URL url, final Date date,
+            final WebResponse response, final String payloadDigest,
+            final long length, final long offset) throws IOException
+    {
+        String mime = response.getContentType();
+        if (mime == null || mime.isEmpty())
+        {
+            mime = "-";
+        }
+        final String location = response.getResponseHeaderValue("Location");
+        final String line = cdxField(this.canonicalizer.canonicalize(url))
+                + " " + format("yyyyMMddHHmmss", date) + " "
+                + cdxField(url.toExternalForm()) + " " + cdxField(mime) + " "
+                + response.getStatusCode() + " "
+                + payloadDigest.substring("sha1:".length()) + " "
+                + cdxField(location) + " - " + length + " " + offset + " "
+                + this.fileName + "\n";
+        this.cdx.write(line.getBytes(StandardCharsets.UTF_8));
+        this.cdx.flush();
+    }
+
+    private static String cdxField(final String value)
+    {
+        return (value == null || value.isEmpty()) ? "-" : value.replace(" ",
+                "%20");
+    }
+
+    private static byte[] requestBlock(final WebRequest request,
+            final String userAgent)
+    {
+        final URL url = request.getUrl();
+        final StringBuilder head = new StringBuilder(512);
+        final String file = url.getFile();
+        head.append(request.getHttpMethod()).append(' ')
+                .append(file.isEmpty() ? "/" : file).append(" HTTP/1.1")
+                .append(CRLF);
+        head.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1)
+        {
+            head.append(':').append(url.getPort());
+        }
+        head.append(CRLF);
+        if (userAgent != null)
+        {
+            head.append("User-Agent: ").append(userAgent).append(CRLF);
+        }
+        for (final Map.Entry<String, String> header : request
+                .getAdditionalHeaders().entrySet())
+        {
+            head.append(header.getKey()).append(": ")
+                    .append(header.getValue()).append(CRLF);
+        }
+
+        String body = request.getRequestBody();
+        if (body == null && request.getHttpMethod() == HttpMethod.POST
+                && !request.getRequestParameters().isEmpty())
+        {
+            body = formEncode(request.getRequestParameters(),
+                    request.getCharset());
+        }
+        final byte[] bodyBytes = (body == null) ? new byte[0] : body
+                .getBytes(StandardCharsets.UTF_8);
+        if (bodyBytes.length > 0)
+        {
+            head.append("Content-Length: ").append(bodyBytes.length)
+                    .append(CRLF);
+        }
+        head.append(CRLF);
+
+        final ByteArrayOutputStream block = new ByteArrayOutputStream(
+                head.length() + bodyBytes.length);
+        final byte[] headBytes = head.toString().getBytes(
+                StandardCharsets.UTF_8);
+        block.write(headBytes, 0, headBytes.length);
+        block.write(bodyBytes, 0, bodyBytes.length);
+        return block.toByteArray();
+    }
+
+    private static String formEncode(final List<NameValuePair> parameters,
+            final String charset)
+    {
+        final StringBuilder result = new StringBuilder();
+        try
+        {
+            for (final NameValuePair parameter : parameters)
+            {
+                if (result.length() > 0)
+                {
+                    result.append('&');
+                }
+                result.append(URLEncoder.encode(parameter.getName(), charset))
+                        .append('=')
+                        .append(URLEncoder.encode(parameter.getValue(),
+                                charset));
+            }
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return result.toString();
+    }
+
+    private static byte[] responseHead(final WebResponse response,
+            final long bodyLength)
+    {
+        final StringBuilder head = new StringBuilder(1_024);
+        head.append("HTTP/1.1 ").append(response.getStatusCode());
+        if (response.getStatusMessage() != null)
+        {
+            head.append(' ').append(response.getStatusMessage());
+        }
+        head.append(CRLF);
+        for (final NameValuePair header : response.getResponseHeaders())
+        {
+            if (!TRANSFER_HEADERS.contains(header.getName().toLowerCase(
+                    Locale.ENGLISH)))
+            {
+                head.append(header.getName()).append(": ")
+                        .append(header.getValue()).append(CRLF);
+            }
+        }
+        head.append("Content-Length: ").append(bodyLength).append(CRLF);
+        head.append(CRLF);
+        return head.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String recordId()
+    {
+        return "<urn:uuid:" + UUID.randomUUID() + ">";
+    }
+
+    private static String format(final String pattern, final Date date)
+    {
+        final SimpleDateFormat format = new SimpleDateFormat(pattern,
+                Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
+    private static MessageDigest sha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * RFC 4648 base 32, as used for WARC and CDX digests.
+     *
+     * @param bytes
+     * @return the encoded form
+     */
+    static String base32(final byte[] bytes)
+    {
+        final StringBuilder result = new StringBuilder(
+                (bytes.length * 8 + 4) / 5 + 8);
+        int buffer = 0;
+        int bits = 0;
+        for (final byte b : bytes)
+        {
+            buffer = (buffer << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5)
+            {
+                result.append(BASE32[(buffer >> (bits - 5)) & 0x1f]);
+                bits -= 5;
+            }
+        }
+        if (bits > 0)
+        {
+            result.append(BASE32[(buffer << (5 - bits)) & 0x1f]);
+        }
+        while (result.length() % 8 != 0)
+        {
+            result.append('=');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Counts the bytes written, to give record offsets.
+     */
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        long count;
+
+        CountingOutputStream(final FileChannel channel, final long count)
+        {
+            super(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            this.count = count;
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException
+        {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
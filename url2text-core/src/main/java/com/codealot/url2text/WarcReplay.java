@@ -0,0 +1,391 @@
+package com.codealot.url2text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Serves fetches from WARC files written by a {@link WarcRecorder}, instead of
+ * the network, so pages can be converted again at disk speed, and tests can
+ * run against fixed content.
+ * <p>
+ * The responses are found through the CDX files beside the WARC files, which
+ * are read when the replay is created. Where a URL was recorded more than
+ * once, the latest response is served. A URL which was not recorded gets an
+ * empty 404 response.
+ * <p>
+ * Supply it as the {@link WebConnectionFactory}; instances are thread-safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class WarcReplay implements WebConnectionFactory
+{
+    private static final Logger LOG = LoggerFactory.getLogger(WarcReplay.class);
+
+    // fields of a CDX line, as written by WarcRecorder
+    private static final int CDX_FIELDS = 11;
+    private static final int CDX_URL = 2;
+    private static final int CDX_OFFSET = 9;
+    private static final int CDX_FILE = 10;
+
+    private final Map<String, Location> responses = new HashMap<>();
+
+    /**
+     * Read the CDX files in the directory.
+     *
+     * @param directory
+     *            holds the WARC files and their CDX files
+     * @throws Url2TextException
+     *             if the CDX files cannot be read
+     */
+    public WarcReplay(final Path directory) throws Url2TextException
+    {
+        final List<Path> indexes = new ArrayList<>();
+        try (final DirectoryStream<Path> cdxs = Files.newDirectoryStream(
+                directory, "*" + WarcRecorder.CDX_SUFFIX))
+        {
+            for (final Path cdx : cdxs)
+            {
+                indexes.add(cdx);
+            }
+            // the recorder's file names sort by time
+            Collections.sort(indexes);
+            for (final Path cdx : indexes)
+            {
+                load(directory, cdx);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Failed to read WARC indexes in "
+                    + directory, e);
+        }
+        LOG.debug("{} responses to replay from {}", this.responses.size(),
+                directory);
+    }
+
+    /**
+     * @return the number of URLs which can be replayed
+     */
+    public int size()
+    {
+        return this.responses.size();
+    }
+
+    /**
+     * @param url
+     * @return true if a response was recorded for the URL
+     */
+    public boolean contains(final String url)
+    {
+        return this.responses.containsKey(url.replace(" ", "%20"));
+    }
+
+    @Override
+    public WebConnection createWebConnection(final WebClient webClient,
+            final Url2Text config)
+    {
+        return new ReplayWebConnection(webClient, config, this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WarcReplay[" + this.responses.size() + " responses]";
+    }
+
+    private void load(final Path directory, final Path cdx)
+            throws IOException
+    {
+        try (final BufferedReader reader = Files.newBufferedReader(cdx,
+                StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.startsWith(" CDX"))
+                {
+                    continue;
+                }
+                final String[] fields = line.split(" ");
+                if (fields.length != CDX_FIELDS)
+                {
+                    LOG.warn("Ignoring bad line in {}: {}", cdx, line);
+                    continue;
+                }
+                try
+                {
+                    this.responses.put(fields[CDX_URL], new Location(
+                            directory.resolve(fields[CDX_FILE]),
+                            Long.parseLong(fields[CDX_OFFSET])));
+                }
+                catch (NumberFormatException e)
+                {
+                    LOG.warn("Ignoring bad line in {}: {}", cdx, line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the recorded response for the request.
+     *
+     * @param request
+     * @param connection
+     *            downloads the body
+     * @return the response
+     * @throws IOException
+     */
+    WebResponse replay(final WebRequest request,
+            final Url2TextWebConnection connection) throws IOException
+    {
+        // as written to the CDX
+        final String url = request.getUrl().toExternalForm()
+                .replace(" ", "%20");
+        final Location location = this.responses.get(url);
+        if (location == null)
+        {
+            LOG.debug("Not recorded: {}", url);
+            return new WebResponse(new WebResponseData(new byte[0], 404,
+                    "Not Recorded", Collections.<NameValuePair> emptyList()),
+                    request, 0L);
+        }
+
+        final long start = System.currentTimeMillis();
+        try (final FileChannel channel = FileChannel.open(location.file,
+                StandardOpenOption.READ))
+        {
+            channel.position(location.offset);
+            final InputStream in = new GZIPInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+
+            // WARC header
+            long remaining = -1L;
+            String line = readLine(in);
+            if (line == null || !line.startsWith("WARC/"))
+            {
+                throw new IOException("No WARC record at " + location);
+            }
+            while ((line = readLine(in)) != null && !line.isEmpty())
+            {
+                if (line.toLowerCase(Locale.ENGLISH).startsWith(
+                        "content-length:"))
+                {
+                    remaining = Long.parseLong(line.substring(15).trim());
+                }
+            }
+
+            // HTTP status and headers
+            final ByteArrayOutputStream head = new ByteArrayOutputStream();
+            final String status = readLine(in, head);
+            if (status == null || remaining < 0L)
+            {
+                throw new IOException("Bad WARC record at " + location);
+            }
+            final String[] parts = status.split(" ", 3);
+            final int code = Integer.parseInt(parts[1]);
+            final String message = (parts.length > 2) ? parts[2] : "";
+            final List<NameValuePair> headers = new ArrayList<>();
+            while ((line = readLine(in, head)) != null && !line.isEmpty())
+            {
+                final int colon = line.indexOf(':');
+                if (colon > 0)
+                {
+                    headers.add(new NameValuePair(line.substring(0, colon)
+                            .trim(), line.substring(colon + 1).trim()));
+                }
+            }
+            remaining -= head.size();
+
+            final WebResponseData data = new WebResponseData(
+                    connection.download(new LimitedInputStream(in, remaining)),
+                    code, message, headers);
+            return new WebResponse(data, request, System.currentTimeMillis()
+                    - start);
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+        {
+            throw new IOException("Bad WARC record at " + location, e);
+        }
+    }
+
+    private static String readLine(final InputStream in) throws IOException
+    {
+        return readLine(in, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Read a CRLF terminated line.
+     *
+     * @param in
+     * @param consumed
+     *            receives the bytes read, including the line end
+     * @return the line, without its end, or null at the end of the stream
+     * @throws IOException
+     */
+    private static String readLine(final InputStream in,
+            final ByteArrayOutputStream consumed) throws IOException
+    {
+        final int start = consumed.size();
+        int b;
+        while ((b = in.read()) != -1)
+        {
+            consumed.write(b);
+            if (b == '\n')
+            {
+                final byte[] bytes = consumed.toByteArray();
+                int end = bytes.length - 1;
+                if (end > start && bytes[end - 1] == '\r')
+                {
+                    end--;
+                }
+                return new String(bytes, start, end - start,
+                        StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Where a response record starts.
+     */
+    private static class Location
+    {
+        final Path file;
+        final long offset;
+
+        Location(final Path file, final long offset)
+        {
+            this.file = file;
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.file + "@" + this.offset;
+        }
+    }
+
+    /**
+     * Stream of the next so many bytes.
+     */
+    private static class LimitedInputStream extends FilterInputStream
+    {
+        private long remaining;
+
+        LimitedInputStream(final InputStream in, final long limit)
+        {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (this.remaining <= 0L)
+            {
+                return -1;
+            }
+            final int b = this.in.read();
+            if (b != -1)
+            {
+                this.remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException
+        {
+            if (this.remaining <= 0L)
+            {
+                return -1;
+            }
+            final int count = this.in.read(b, off,
+                    (int) Math.min(len, this.remaining));
+            if (count != -1)
+            {
+                this.remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            final long count = this.in.skip(Math.min(n, this.remaining));
+            this.remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.min(this.in.available(), this.remaining);
+        }
+    }
+
+    /**
+     * Connection which reads from the archive, never the network.
+     */
+    static class ReplayWebConnection extends Url2TextWebConnection
+    {
+        private final WarcReplay replay;
+
+        ReplayWebConnection(final WebClient webClient, final Url2Text config,
+                final WarcReplay replay)
+        {
+            super(webClient, config);
+            this.replay = replay;
+        }
+
+        @Override
+        public WebResponse getResponse(final WebRequest request)
+                throws IOException
+        {
+            return this.replay.replay(request, this);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.codealot.url2text;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+
+/**
+ * Supplies the HtmlUnit WebConnection used by a fetch.
+ * <p>
+ * Url2Text creates a new WebClient for every call to
+ * {@link Url2Text#contentAsText(java.net.URL, java.util.Map)}, then asks its
+ * factory for the connection that will carry the page request and any
+ * subresource requests. Implementations must be safe for concurrent use if the
+ * owning Url2Text instance is.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public interface WebConnectionFactory
+{
+    /**
+     * Create the connection for a single fetch.
+     *
+     * @param webClient
+     *            the client configured for the fetch
+     * @param config
+     *            the settings in force; must not be modified
+     * @return a connection for the client
+     */
+    WebConnection createWebConnection(WebClient webClient, Url2Text config);
+}
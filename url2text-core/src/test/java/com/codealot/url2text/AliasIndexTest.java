@@ -0,0 +1,121 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AliasIndexTest
+{
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.file = Files.createTempFile("url2text", ".aliases");
+        Files.delete(this.file);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Test
+    public void testResolve() throws Exception
+    {
+        final AliasIndex index = new AliasIndex();
+        assertEquals("http://example.com/a",
+                index.resolve("http://Example.com:80/a#x"));
+
+        assertTrue(index.record("http://example.com/old?utm_source=x",
+                "http://example.com/new"));
+        assertEquals("http://example.com/new",
+                index.resolve("HTTP://example.com/old"));
+        assertEquals(1, index.size());
+
+        // already known, or no alias at all
+        assertFalse(index.record("http://example.com/old",
+                "http://example.com/new#top"));
+        assertFalse(index.record("http://example.com/same",
+                "http://example.com/same?"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testChains() throws Exception
+    {
+        final AliasIndex index = new AliasIndex();
+        index.record("http://example.com/a", "http://example.com/b");
+        index.record("http://example.com/b", "http://example.com/c");
+        assertEquals("http://example.com/c",
+                index.resolve("http://example.com/a"));
+
+        // new aliases point at the end of the chain
+        index.record("http://example.com/z", "http://example.com/a");
+        assertEquals("http://example.com/c",
+                index.resolve("http://example.com/z"));
+
+        // no cycles
+        assertFalse(index.record("http://example.com/c",
+                "http://example.com/a"));
+        assertEquals("http://example.com/c",
+                index.resolve("http://example.com/c"));
+    }
+
+    @Test
+    public void testPersistence() throws Exception
+    {
+        try (final AliasIndex index = new AliasIndex(this.file))
+        {
+            index.record("http://example.com/old", "http://example.com/new");
+            index.record("http://example.com/x", "http://example.com/y");
+            index.record("http://example.com/x", "http://example.com/z");
+        }
+        assertEquals(3, Files.readAllLines(this.file, StandardCharsets.UTF_8)
+                .size());
+
+        try (final AliasIndex index = new AliasIndex(this.file))
+        {
+            assertEquals(2, index.size());
+            assertEquals("http://example.com/new",
+                    index.resolve("http://example.com/old"));
+            assertEquals("http://example.com/z",
+                    index.resolve("http://example.com/x"));
+        }
+    }
+
+    @Test
+    public void testBadLines() throws Exception
+    {
+        Files.write(this.file, Arrays.asList("http://example.com/a\t"
+                + "http://example.com/b", "junk", "", "\tnothing"),
+                StandardCharsets.UTF_8);
+        try (final AliasIndex index = new AliasIndex(this.file))
+        {
+            assertEquals(1, index.size());
+            assertEquals("http://example.com/b",
+                    index.resolve("http://example.com/a"));
+        }
+    }
+
+    @Test
+    public void testCanonicalizer() throws Exception
+    {
+        final UrlCanonicalizer sorting = new UrlCanonicalizer(
+                UrlCanonicalizer.DEFAULT_IGNORED_PARAMETERS, true);
+        final AliasIndex index = new AliasIndex(sorting);
+        assertTrue(sorting == index.getCanonicalizer());
+        assertEquals("http://example.com/?a=1&b=2",
+                index.resolve("http://example.com/?b=2&a=1"));
+    }
+}
@@ -0,0 +1,242 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.tika.metadata.Metadata;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class ConversionCacheTest
+{
+    private static final String ODT = "application/vnd.oasis.opendocument.text";
+
+    private static HttpServer server;
+    private static String localHost;
+
+    private Url2Text fetcher;
+    private ConversionCache cache;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        final byte[] odt = Files.readAllBytes(Paths
+                .get("src/test/resources/binary.odt"));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // the same document at two URLs
+        server.createContext("/first.odt", new BytesHandler(odt));
+        server.createContext("/mirror/first.odt", new BytesHandler(odt));
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Url2TextException
+    {
+        this.fetcher = new Url2Text();
+        this.fetcher.setIncludeMetadata(true);
+        this.cache = new ConversionCache();
+    }
+
+    @Test
+    public void testIdenticalContentConvertedOnce() throws Exception
+    {
+        String text = null;
+        int metadataCount = 0;
+        try (final Response response = this.fetcher.contentAsText(localHost
+                + "first.odt", null))
+        {
+            text = response.getText();
+            metadataCount = response.getContentMetadata().size();
+        }
+
+        this.fetcher.setConversionCache(this.cache);
+        for (final String page : new String[] { "first.odt",
+                "mirror/first.odt" })
+        {
+            try (final Response response = this.fetcher.contentAsText(
+                    localHost + page, null))
+            {
+                assertEquals(200, response.getStatus());
+                assertEquals(text, response.getText());
+                assertEquals(metadataCount, response.getContentMetadata()
+                        .size());
+            }
+        }
+        assertEquals(1, this.cache.getMissCount());
+        assertEquals(1, this.cache.getHitCount());
+        assertEquals(0.5, this.cache.getHitRate(), 0.0);
+        assertEquals(1, this.cache.getSize());
+        assertTrue(this.cache.getSavedMillis() >= 0L);
+    }
+
+    @Test
+    public void testBypassedWhenStreaming() throws Exception
+    {
+        this.fetcher.setConversionCache(this.cache);
+        this.fetcher.setStreamBinaryContent(true);
+        try (final Response response = this.fetcher.contentAsText(localHost
+                + "first.odt", null))
+        {
+            assertTrue(response.getText().length() > 0);
+        }
+        assertEquals(0, this.cache.getMissCount());
+        assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void testKey() throws IOException
+    {
+        final String plain = key("content", "text/plain");
+        assertEquals(plain, key("content", "text/plain"));
+        assertNotEquals(plain, key("content!", "text/plain"));
+        assertNotEquals(plain, key("content", "text/html"));
+    }
+
+    @Test
+    public void testEviction()
+    {
+        // room for two conversions of 10 bytes
+        final ConversionCache small = new ConversionCache(20L);
+        small.put("a", conversion("0123456789"));
+        small.put("b", conversion("0123456789"));
+        assertTrue(small.get("a") != null);
+        small.put("c", conversion("0123456789"));
+
+        assertEquals(2, small.getSize());
+        assertEquals(20L, small.getBytes());
+        assertNull(small.get("b"));
+        assertEquals(0.5, small.getHitRate(), 0.0);
+
+        small.put("d", conversion("012345678901234567890"));
+        assertNull(small.get("d"));
+        small.clear();
+        assertEquals(0L, small.getBytes());
+    }
+
+    @Test
+    public void testSizedAsUtf8()
+    {
+        this.cache.put("a", conversion("\u00e9t\u00e9 \ud83d\ude00"));
+        assertEquals(10L, this.cache.getBytes());
+    }
+
+    @Test
+    public void testReadIfFits() throws IOException
+    {
+        final ConversionCache small = new ConversionCache(10L);
+        final StringBuilder text = new StringBuilder();
+        assertTrue(small.readIfFits(new StringReader("0123456789"), text));
+        assertEquals("0123456789", text.toString());
+
+        // five chars, but eleven bytes
+        text.setLength(0);
+        assertFalse(small.readIfFits(new StringReader(
+                "\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9"), text));
+    }
+
+    @Test
+    public void testTooLargeStreamedUncached() throws Exception
+    {
+        String text = null;
+        try (final Response response = this.fetcher.contentAsText(localHost
+                + "first.odt", null))
+        {
+            text = response.getText();
+        }
+
+        final ConversionCache small = new ConversionCache(10L);
+        this.fetcher.setConversionCache(small);
+        try (final Response response = this.fetcher.contentAsText(localHost
+                + "first.odt", null))
+        {
+            assertEquals(text, response.getText());
+        }
+        assertEquals(1, small.getMissCount());
+        assertEquals(0, small.getSize());
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+    }
+
+    @Test
+    public void testSavedMillis()
+    {
+        this.cache.put("a", new ConversionCache.Conversion("text",
+                new Metadata(), 25L));
+        this.cache.get("a");
+        this.cache.get("a");
+        assertEquals(50L, this.cache.getSavedMillis());
+    }
+
+    @Test
+    public void testCacheIsNotConfiguration() throws Exception
+    {
+        final Url2Text cached = new Url2Text();
+        cached.setConversionCache(this.cache);
+        assertEquals(new Url2Text(), cached);
+        assertTrue(this.cache == cached.clone().getConversionCache());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLimit()
+    {
+        new ConversionCache(0L);
+    }
+
+    private static String key(final String content, final String contentType)
+            throws IOException
+    {
+        return ConversionCache.key(new ByteArrayInputStream(content
+                .getBytes(StandardCharsets.UTF_8)), contentType);
+    }
+
+    private static ConversionCache.Conversion conversion(final String text)
+    {
+        return new ConversionCache.Conversion(text, new Metadata(), 1L);
+    }
+
+    static class BytesHandler implements HttpHandler
+    {
+        private final byte[] body;
+
+        BytesHandler(final byte[] body)
+        {
+            this.body = body;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            exchange.getResponseHeaders().add("Content-Type", ODT);
+            exchange.sendResponseHeaders(200, this.body.length);
+            try (OutputStream os = exchange.getResponseBody())
+            {
+                os.write(this.body);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class FetchCoalescerTest
+{
+    private static final int CALLERS = 5;
+
+    private static HttpServer server;
+    private static String localHost;
+
+    // requests reaching the server
+    private static final AtomicInteger REQUESTS = new AtomicInteger();
+    // holds up the server until the callers are queued
+    private static volatile CountDownLatch gate;
+
+    private FetchCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new GatedHandler());
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp()
+    {
+        this.coalescer = new FetchCoalescer();
+        this.executor = Executors.newFixedThreadPool(CALLERS);
+        REQUESTS.set(0);
+        gate = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown()
+    {
+        gate.countDown();
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentFetchesCoalesced() throws Exception
+    {
+        final List<Future<Response>> results = fetchConcurrently("same.txt",
+                null, CALLERS);
+        awaitCoalesced(CALLERS - 1);
+        gate.countDown();
+
+        final List<Response> responses = new ArrayList<>();
+        for (final Future<Response> result : results)
+        {
+            responses.add(result.get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(1, REQUESTS.get());
+        assertEquals(1, this.coalescer.getFetchCount());
+        assertEquals(CALLERS - 1, this.coalescer.getCoalescedCount());
+        assertEquals(0, this.coalescer.getInFlightCount());
+
+        // each caller can read its own copy
+        for (final Response response : responses)
+        {
+            assertEquals(200, response.getStatus());
+            assertEquals("/same.txt", response.getText().trim());
+            response.close();
+        }
+        assertFalse(responses.get(0) == responses.get(1));
+    }
+
+    @Test
+    public void testUnsharedFetchNotCopied() throws Exception
+    {
+        // so that its text can still be streamed
+        final Response fetched = new Response();
+        final Response result = this.coalescer.fetch(new FetchKey(
+                new Url2Text(), localHost + "alone.txt", null),
+                new Callable<Response>()
+                    {
+                        @Override
+                        public Response call()
+                        {
+                            return fetched;
+                        }
+                    });
+        assertSame(fetched, result);
+        assertEquals(0, this.coalescer.getInFlightCount());
+        result.close();
+    }
+
+    @Test
+    public void testSpellingsCoalesced() throws Exception
+    {
+        final Url2Text fetcher = newFetcher();
+        fetcher.setAliasIndex(new AliasIndex());
+        final String[] spellings = { localHost + "spelled.txt",
+                localHost + "spelled.txt?utm_source=feed" };
+        final List<Future<Response>> results = new ArrayList<>();
+        for (final String spelling : spellings)
+        {
+            results.add(this.executor.submit(new Callable<Response>()
+                {
+                    @Override
+                    public Response call() throws Exception
+                    {
+                        return fetcher.contentAsText(spelling, null);
+                    }
+                }));
+        }
+        awaitCoalesced(1);
+        gate.countDown();
+        for (int i = 0; i < spellings.length; i++)
+        {
+            try (final Response response = results.get(i).get(30,
+                    TimeUnit.SECONDS))
+            {
+                // each caller sees the URL it asked for
+                assertEquals(spellings[i], response.getRequestPage());
+                assertEquals("/spelled.txt", response.getText().trim());
+            }
+        }
+        assertEquals(1, REQUESTS.get());
+    }
+
+    @Test
+    public void testDifferentHeadersNotCoalesced() throws Exception
+    {
+        final Url2Text fetcher = newFetcher();
+        final List<Future<Response>> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+        {
+            final Map<String, String> headers = new HashMap<>();
+            headers.put("X-Caller", Integer.toString(i));
+            results.add(submit(fetcher, "headers.txt", headers));
+        }
+        awaitRequests(2);
+        gate.countDown();
+        for (final Future<Response> result : results)
+        {
+            result.get(30, TimeUnit.SECONDS).close();
+        }
+        assertEquals(2, this.coalescer.getFetchCount());
+        assertEquals(0, this.coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void testDifferentConfigNotCoalesced() throws Exception
+    {
+        final Url2Text plain = newFetcher();
+        final Url2Text withHeaders = newFetcher();
+        withHeaders.setIncludeHeaders(true);
+        assertNotEquals(plain, withHeaders);
+
+        final Future<Response> first = submit(plain, "config.txt", null);
+        final Future<Response> second = submit(withHeaders, "config.txt", null);
+        awaitRequests(2);
+        gate.countDown();
+        first.get(30, TimeUnit.SECONDS).close();
+        second.get(30, TimeUnit.SECONDS).close();
+        assertEquals(2, this.coalescer.getFetchCount());
+    }
+
+    @Test
+    public void testFailureShared() throws Exception
+    {
+        final Url2Text fetcher = newFetcher();
+        fetcher.setExceptionOnFailingStatus(true);
+        final List<Future<Response>> results = new ArrayList<>();
+        results.add(submit(fetcher, "missing.html", null));
+        results.add(submit(fetcher, "missing.html", null));
+        awaitCoalesced(1);
+        gate.countDown();
+        final List<Throwable> failures = new ArrayList<>();
+        for (final Future<Response> result : results)
+        {
+            try
+            {
+                result.get(30, TimeUnit.SECONDS).close();
+                fail("Expected failure");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof Url2TextException);
+                failures.add(e.getCause());
+            }
+        }
+        // rethrown as is, not wrapped again for the waiter
+        assertSame(failures.get(0), failures.get(1));
+        assertEquals(1, REQUESTS.get());
+    }
+
+    @Test
+    public void testCoalescerIsNotConfiguration() throws Exception
+    {
+        final Url2Text coalesced = newFetcher();
+        assertEquals(new Url2Text(), coalesced);
+        assertTrue(this.coalescer == coalesced.clone().getFetchCoalescer());
+    }
+
+    private Url2Text newFetcher() throws Url2TextException
+    {
+        final Url2Text fetcher = new Url2Text();
+        fetcher.setFetchCoalescer(this.coalescer);
+        return fetcher;
+    }
+
+    private List<Future<Response>> fetchConcurrently(final String page,
+            final Map<String, String> headers, final int callers)
+            throws Url2TextException
+    {
+        final List<Future<Response>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++)
+        {
+            // separate but equal instances
+            results.add(submit(newFetcher(), page, headers));
+        }
+        return results;
+    }
+
+    private Future<Response> submit(final Url2Text fetcher, final String page,
+            final Map<String, String> headers)
+    {
+        return this.executor.submit(new Callable<Response>()
+            {
+                @Override
+                public Response call() throws Exception
+                {
+                    return fetcher.contentAsText(localHost + page, headers);
+                }
+            });
+    }
+
+    private void awaitCoalesced(final int count) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 30_000L;
+        while (this.coalescer.getCoalescedCount() < count
+                || REQUESTS.get() < 1)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    private static void awaitRequests(final int count)
+            throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 30_000L;
+        while (REQUESTS.get() < count)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    static class GatedHandler implements HttpHandler
+    {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            REQUESTS.incrementAndGet();
+            try
+            {
+                gate.await(30, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            final String path = exchange.getRequestURI().getPath();
+            final byte[] body = path.getBytes(StandardCharsets.UTF_8);
+            final int status = path.endsWith(".html") ? 404 : 200;
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody())
+            {
+                os.write(body);
+            }
+        }
+    }
+}
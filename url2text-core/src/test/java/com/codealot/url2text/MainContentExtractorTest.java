@@ -0,0 +1,146 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codealot.url2text.MainContentExtractor.Extraction;
+import com.gargoylesoftware.htmlunit.StringWebResponse;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HTMLParser;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+public class MainContentExtractorTest
+{
+    private final MainContentExtractor extractor = new MainContentExtractor();
+    private WebClient client;
+
+    @Before
+    public void setUp()
+    {
+        this.client = new WebClient();
+        this.client.getOptions().setJavaScriptEnabled(false);
+        this.client.getOptions().setCssEnabled(false);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.client.closeAllWindows();
+    }
+
+    @Test
+    public void testArticle() throws IOException
+    {
+        final String html = new String(Files.readAllBytes(Paths
+                .get("src/test/resources/article.html")),
+                StandardCharsets.UTF_8);
+        final HtmlPage page = parse(html);
+        final Extraction extraction = this.extractor.extract(page);
+        final String text = extraction.getText();
+
+        assertTrue(text.startsWith("Local river reaches record level\n"
+                + "The river that runs through the town centre"));
+        assertTrue(text.contains("for anyone who needs to leave their home."));
+        assertTrue(text.endsWith("and that further warnings may follow."));
+        assertEquals(4, extraction.getContentBlockCount());
+
+        // furniture, links and hidden text are left out
+        for (final String left : new String[] { "Daily Example", "Sport",
+                "cookies", "Related story", "Most read", "aside", "Privacy",
+                "script text", "color", "Article Title" })
+        {
+            assertFalse(left, text.contains(left));
+        }
+
+        assertTrue(extraction.getPageTextLength() > text.length());
+        assertTrue(extraction.getBlockCount() > 4);
+    }
+
+    @Test
+    public void testWhitespace() throws IOException
+    {
+        final HtmlPage page = parse("<html><body><p>  one \n\t two<br>three"
+                + "</p><pre>a  b\n  c</pre></body></html>");
+        assertEquals("one two three\na  b\n  c", this.extractor.extract(page)
+                .getText());
+    }
+
+    @Test
+    public void testShortPage() throws IOException
+    {
+        // nothing qualifies as content, so all but the furniture is kept
+        final HtmlPage page = parse("<html><body><nav><a href='/'>Home</a>"
+                + "</nav><p>Hello</p><p>World</p></body></html>");
+        final Extraction extraction = this.extractor.extract(page);
+        assertEquals("Hello\nWorld", extraction.getText());
+        assertEquals(0, extraction.getContentBlockCount());
+        assertEquals(3, extraction.getBlockCount());
+        assertEquals("Home\nHello\nWorld".length(),
+                extraction.getPageTextLength());
+    }
+
+    @Test
+    public void testArticleInForm() throws IOException
+    {
+        // as on WebForms sites, the whole page is inside one form
+        final String html = new String(Files.readAllBytes(Paths
+                .get("src/test/resources/article.html")),
+                StandardCharsets.UTF_8);
+        final Extraction plain = this.extractor.extract(parse(html));
+        final Extraction inForm = this.extractor.extract(parse(html.replace(
+                "<body>", "<body><form action='/'>").replace("</body>",
+                "</form></body>")));
+        assertEquals(plain.getText(), inForm.getText());
+        assertEquals(plain.getContentBlockCount(),
+                inForm.getContentBlockCount());
+    }
+
+    @Test
+    public void testControlsLeftOut() throws IOException
+    {
+        final HtmlPage page = parse("<html><body><p>Share this <button>Go"
+                + "</button> story <select><option>One</option></select>"
+                + "now</p></body></html>");
+        final Extraction extraction = this.extractor.extract(page);
+        assertEquals("Share this story now", extraction.getText());
+    }
+
+    @Test
+    public void testAllFurniture() throws IOException
+    {
+        // nothing outside the furniture, so all the text is kept
+        final HtmlPage page = parse("<html><body><header><p>Welcome</p>"
+                + "</header><footer><p>Contact</p></footer></body></html>");
+        assertEquals("Welcome\nContact", this.extractor.extract(page)
+                .getText());
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        final Extraction extraction = this.extractor.extract(parse(
+                "<html><body></body></html>"));
+        assertEquals("", extraction.getText());
+        assertEquals(0L, extraction.getPageTextLength());
+        assertEquals(0, extraction.getBlockCount());
+    }
+
+    private HtmlPage parse(final String html) throws IOException
+    {
+        final StringWebResponse response = new StringWebResponse(html,
+                new URL("http://localhost/"));
+        return HTMLParser.parseHtml(response,
+                this.client.getCurrentWindow());
+    }
+}
@@ -0,0 +1,95 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codealot.url2text.PageStructure.Heading;
+import com.codealot.url2text.PageStructure.Link;
+import com.gargoylesoftware.htmlunit.StringWebResponse;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HTMLParser;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+public class PageStructureCollectorTest
+{
+    private WebClient client;
+
+    @Before
+    public void setUp()
+    {
+        this.client = new WebClient();
+        this.client.getOptions().setJavaScriptEnabled(false);
+        this.client.getOptions().setCssEnabled(true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.client.closeAllWindows();
+    }
+
+    @Test
+    public void testWalk() throws IOException
+    {
+        final HtmlPage page = parse();
+        final PageStructureCollector collector = new PageStructureCollector(
+                page);
+        collector.walk(page);
+        check(collector.build());
+    }
+
+    @Test
+    public void testWithExtraction() throws IOException
+    {
+        // fed by the extractor's walk, hidden links included
+        final HtmlPage page = parse();
+        final PageStructureCollector collector = new PageStructureCollector(
+                page);
+        final String text = new MainContentExtractor().extract(page,
+                collector).getText();
+        check(collector.build());
+        assertTrue(text.contains("Main heading"));
+        assertTrue(!text.contains("Hidden"));
+    }
+
+    private static void check(final PageStructure structure)
+    {
+        assertEquals("http://localhost:8000/canonical.html",
+                structure.getCanonicalUrl());
+        assertEquals("noindex, nofollow", structure.getRobots());
+        assertTrue(structure.isNoIndex());
+        assertTrue(structure.isNoFollow());
+        assertEquals(Arrays.asList(new Heading(1, "Main heading"),
+                new Heading(2, "Part two")), structure.getHeadings());
+        assertEquals(Arrays.asList(new Link(
+                "http://localhost:8000/docs/page.html", "the next page", ""),
+                new Link("http://example.com/", "elsewhere",
+                        "external nofollow"), new Link(
+                        "http://localhost:8000/docs/#part", "Part", ""),
+                new Link("http://localhost:8000/docs/hidden.html", "Hidden",
+                        "")), structure.getLinks());
+        assertTrue(structure.getLinks().get(1).isNoFollow());
+    }
+
+    private HtmlPage parse() throws IOException
+    {
+        final String html = new String(Files.readAllBytes(Paths
+                .get("src/test/resources/structure.html")),
+                StandardCharsets.UTF_8);
+        final StringWebResponse response = new StringWebResponse(html,
+                new URL("http://localhost:8000/structure.html"));
+        return HTMLParser.parseHtml(response,
+                this.client.getCurrentWindow());
+    }
+}
@@ -0,0 +1,165 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class PooledWebConnectionFactoryTest
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(PooledWebConnectionFactoryTest.class);
+
+    private static final int SCRIPT_COUNT = 8;
+    private static final int FETCH_COUNT = 3;
+
+    private static HttpServer server;
+    private static String localHost;
+
+    // client ports seen by the server; one per TCP connection
+    private static final Set<Integer> CONNECTIONS = Collections
+            .synchronizedSet(new HashSet<Integer>());
+
+    private Url2Text fetcher;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        final StringBuilder page = new StringBuilder(
+                "<html><head><title>Pooled</title>");
+        for (int i = 0; i < SCRIPT_COUNT; i++)
+        {
+            page.append("<script src=\"/script").append(i)
+                    .append(".js\"></script>");
+        }
+        page.append("</head><body><p id=\"p\"></p></body></html>");
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/page.html", new FixedHandler(page.toString(),
+                "text/html"));
+        server.createContext("/", new FixedHandler(
+                "var x = (typeof x === 'undefined') ? 1 : x + 1;",
+                "application/javascript"));
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Url2TextException
+    {
+        this.fetcher = new Url2Text();
+        this.fetcher.setJavascriptEnabled(true);
+        CONNECTIONS.clear();
+    }
+
+    @After
+    public void tearDown()
+    {
+        CONNECTIONS.clear();
+    }
+
+    @Test
+    public void testPooledConnectionsAreReused() throws Exception
+    {
+        final long unpooledTime = fetchRepeatedly();
+        final int unpooled = CONNECTIONS.size();
+
+        CONNECTIONS.clear();
+        try (final PooledWebConnectionFactory factory = new PooledWebConnectionFactory())
+        {
+            this.fetcher.setWebConnectionFactory(factory);
+            final long pooledTime = fetchRepeatedly();
+            final int pooled = CONNECTIONS.size();
+
+            LOG.info("{} fetches of a page with {} scripts: unpooled {} "
+                    + "connections in {} ms, pooled {} connections in {} ms",
+                    FETCH_COUNT, SCRIPT_COUNT, unpooled, unpooledTime, pooled,
+                    pooledTime);
+
+            assertTrue(unpooled >= FETCH_COUNT);
+            assertEquals(1, pooled);
+        }
+    }
+
+    @Test
+    public void testFactoryIsNotConfiguration() throws Exception
+    {
+        try (final PooledWebConnectionFactory factory = new PooledWebConnectionFactory())
+        {
+            final Url2Text pooled = new Url2Text();
+            pooled.setWebConnectionFactory(factory);
+            assertEquals(new Url2Text(), pooled);
+            assertTrue(factory == pooled.clone().getWebConnectionFactory());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLimits()
+    {
+        new PooledWebConnectionFactory(4, 2).close();
+    }
+
+    private long fetchRepeatedly() throws Url2TextException, IOException
+    {
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < FETCH_COUNT; i++)
+        {
+            try (final Response response = this.fetcher.contentAsText(
+                    localHost + "page.html", null))
+            {
+                assertEquals(200, response.getStatus());
+                assertEquals("Pooled", response.getContentTitle());
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    static class FixedHandler implements HttpHandler
+    {
+        private final byte[] body;
+        private final String contentType;
+
+        FixedHandler(final String body, final String contentType)
+        {
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            CONNECTIONS.add(exchange.getRemoteAddress().getPort());
+            exchange.getResponseHeaders().add("Content-Type", this.contentType);
+            exchange.sendResponseHeaders(200, this.body.length);
+            try (OutputStream os = exchange.getResponseBody())
+            {
+                os.write(this.body);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.codealot.url2text;
+
+import static com.codealot.url2text.Constants.STR_NOT_SET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class ProgressiveResponseTest
+{
+    private static final String ODT = "application/vnd.oasis.opendocument.text";
+
+    private static HttpServer server;
+    private static String localHost;
+    private static volatile CountDownLatch release;
+
+    private Url2Text fetcher;
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        final byte[] odt = Files.readAllBytes(Paths
+                .get("src/test/resources/binary.odt"));
+        final byte[] html = Files.readAllBytes(Paths
+                .get("src/test/resources/html-4-JS.html"));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/slow.odt", new SlowHandler(odt, ODT));
+        server.createContext("/page.html", new SlowHandler(html, "text/html"));
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Url2TextException
+    {
+        release = new CountDownLatch(1);
+        this.fetcher = new Url2Text();
+        this.fetcher.setIncludeHeaders(true);
+        this.fetcher.setStreamBinaryContent(true);
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testMetadataBeforeText() throws Exception
+    {
+        try (final ProgressiveResponse progress = this.fetcher
+                .contentAsTextProgressively(localHost + "slow.odt", null,
+                        this.executor))
+        {
+            // the body is still held back by the server
+            final Response metadata = progress.getMetadata(10L,
+                    TimeUnit.SECONDS);
+            assertNotNull(metadata);
+            assertTrue(progress.isMetadataDone());
+            assertFalse(progress.isDone());
+            assertEquals(200, metadata.getStatus());
+            assertEquals(ODT, metadata.getContentType());
+            assertEquals(ODT, metadata.getResponseHeader("content-type"));
+            assertEquals(STR_NOT_SET, metadata.getText());
+
+            release.countDown();
+            try (final Response response = progress.getResponse())
+            {
+                assertEquals(200, response.getStatus());
+                assertTrue(response.getText().contains("Test binary doc."));
+            }
+        }
+    }
+
+    @Test
+    public void testDrop() throws Exception
+    {
+        final ProgressiveResponse progress = this.fetcher
+                .contentAsTextProgressively(localHost + "slow.odt", null,
+                        this.executor);
+        assertEquals(200, progress.getMetadata().getStatus());
+        progress.close();
+        release.countDown();
+
+        assertTrue(progress.isCancelled());
+        try
+        {
+            progress.getResponse();
+            fail("Expected Url2TextException");
+        }
+        catch (Url2TextException e)
+        {
+            // dropped
+        }
+        assertEquals(200, progress.getMetadata().getStatus());
+    }
+
+    @Test
+    public void testHtmlTitle() throws Exception
+    {
+        release.countDown();
+        try (final ProgressiveResponse progress = this.fetcher
+                .contentAsTextProgressively(localHost + "page.html", null,
+                        this.executor))
+        {
+            assertEquals("Page Title", progress.getMetadata()
+                    .getContentTitle());
+            try (final Response response = progress.getResponse())
+            {
+                assertEquals("Page Title", response.getContentTitle());
+                assertTrue(response.getText().length() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testCached() throws Exception
+    {
+        release.countDown();
+        this.fetcher.setResponseCache(new ResponseCache());
+        this.fetcher.contentAsText(localHost + "page.html", null).close();
+
+        try (final ProgressiveResponse progress = this.fetcher
+                .contentAsTextProgressively(localHost + "page.html", null,
+                        this.executor))
+        {
+            assertEquals("Page Title", progress.getMetadata()
+                    .getContentTitle());
+            try (final Response response = progress.getResponse())
+            {
+                assertEquals("Page Title", response.getContentTitle());
+            }
+        }
+        assertEquals(1L, this.fetcher.getResponseCache().getHitCount());
+    }
+
+    @Test(expected = Url2TextException.class)
+    public void testFailure() throws Exception
+    {
+        this.fetcher.setNetworkTimeout(5);
+        try (final ProgressiveResponse progress = this.fetcher
+                .contentAsTextProgressively("http://localhost:1/", null,
+                        this.executor))
+        {
+            progress.getMetadata();
+        }
+    }
+
+    /**
+     * Sends the headers and part of the body, then waits for the test to
+     * release the rest.
+     */
+    static class SlowHandler implements HttpHandler
+    {
+        private final byte[] body;
+        private final String contentType;
+
+        SlowHandler(final byte[] body, final String contentType)
+        {
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            exchange.getResponseHeaders().add("Content-Type", this.contentType);
+            exchange.sendResponseHeaders(200, this.body.length);
+            try (OutputStream os = exchange.getResponseBody())
+            {
+                final int half = this.body.length / 2;
+                os.write(this.body, 0, half);
+                os.flush();
+                try
+                {
+                    release.await(30L, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                os.write(this.body, half, this.body.length - half);
+            }
+        }
+    }
+}
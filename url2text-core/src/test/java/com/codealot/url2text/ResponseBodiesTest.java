@@ -0,0 +1,139 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+
+public class ResponseBodiesTest
+{
+    private static final int BODY_SIZE = 100 * 1024;
+
+    private byte[] body;
+    private long globalLimit;
+
+    @Before
+    public void setUp()
+    {
+        this.body = new byte[BODY_SIZE];
+        new Random(42).nextBytes(this.body);
+        this.globalLimit = ResponseBodies.getGlobalMemoryLimit();
+    }
+
+    @After
+    public void tearDown()
+    {
+        ResponseBodies.setGlobalMemoryLimit(this.globalLimit);
+    }
+
+    @Test
+    public void testBelowThresholdInMemory() throws IOException
+    {
+        final DownloadedContent content = download(BODY_SIZE);
+        assertTrue(content instanceof ResponseBodies.InMemory);
+        assertEquals(BODY_SIZE, ResponseBodies.getInMemoryBytes());
+        assertArrayEquals(this.body, read(content));
+
+        content.cleanUp();
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+        // only released once
+        content.cleanUp();
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+    }
+
+    @Test
+    public void testAboveThresholdSpilled() throws IOException
+    {
+        final DownloadedContent content = download(BODY_SIZE - 1);
+        assertTrue(content instanceof ResponseBodies.OnDisk);
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+        assertArrayEquals(this.body, read(content));
+        // can be read more than once
+        assertArrayEquals(this.body, read(content));
+        content.cleanUp();
+    }
+
+    @Test
+    public void testGlobalLimitSpills() throws IOException
+    {
+        ResponseBodies.setGlobalMemoryLimit(BODY_SIZE + BODY_SIZE / 2);
+
+        final DownloadedContent first = download(BODY_SIZE);
+        final DownloadedContent second = download(BODY_SIZE);
+        assertTrue(first instanceof ResponseBodies.InMemory);
+        assertTrue(second instanceof ResponseBodies.OnDisk);
+        assertEquals(BODY_SIZE, ResponseBodies.getInMemoryBytes());
+        assertArrayEquals(this.body, read(second));
+
+        first.cleanUp();
+        second.cleanUp();
+        final DownloadedContent third = download(BODY_SIZE);
+        assertTrue(third instanceof ResponseBodies.InMemory);
+        third.cleanUp();
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+    }
+
+    @Test
+    public void testUnbudgeted() throws IOException
+    {
+        final DownloadedContent content = ResponseBodies.download(
+                new ByteArrayInputStream(this.body), BODY_SIZE, false);
+        assertTrue(content instanceof ResponseBodies.InMemory);
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+        content.cleanUp();
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        final DownloadedContent content = ResponseBodies.download(
+                new ByteArrayInputStream(new byte[0]), 0L, true);
+        assertTrue(content.isEmpty());
+        content.cleanUp();
+    }
+
+    @Test
+    public void testZeroThreshold() throws IOException
+    {
+        final DownloadedContent content = download(0L);
+        assertTrue(content instanceof ResponseBodies.OnDisk);
+        assertFalse(content.isEmpty());
+        assertArrayEquals(this.body, read(content));
+        content.cleanUp();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeGlobalLimit()
+    {
+        ResponseBodies.setGlobalMemoryLimit(-1L);
+    }
+
+    private DownloadedContent download(final long threshold)
+            throws IOException
+    {
+        return ResponseBodies.download(new ByteArrayInputStream(this.body),
+                threshold, true);
+    }
+
+    private static byte[] read(final DownloadedContent content)
+            throws IOException
+    {
+        try (InputStream in = content.getInputStream())
+        {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class ResponseCacheTest
+{
+    private static HttpServer server;
+    private static String localHost;
+
+    // requests reaching the server
+    private static final AtomicInteger REQUESTS = new AtomicInteger();
+
+    private Url2Text fetcher;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new PathHandler());
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Url2TextException
+    {
+        this.fetcher = new Url2Text();
+        REQUESTS.set(0);
+    }
+
+    @Test
+    public void testRepeatFetchCached() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache();
+        this.fetcher.setResponseCache(cache);
+
+        for (int i = 0; i < 3; i++)
+        {
+            try (final Response response = this.fetcher.contentAsText(
+                    localHost + "page.txt", null))
+            {
+                assertEquals(200, response.getStatus());
+                assertEquals("/page.txt", response.getText().trim());
+            }
+        }
+        assertEquals(1, REQUESTS.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getSize());
+
+        // different headers are a different entry
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Accept-Language", "fr");
+        this.fetcher.contentAsText(localHost + "page.txt", headers).close();
+        assertEquals(2, REQUESTS.get());
+
+        // as is a different configuration
+        this.fetcher.setIncludeHeaders(true);
+        this.fetcher.contentAsText(localHost + "page.txt", null).close();
+        assertEquals(3, REQUESTS.get());
+    }
+
+    @Test
+    public void testFailuresNotCached() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache();
+        this.fetcher.setResponseCache(cache);
+        for (int i = 0; i < 2; i++)
+        {
+            try (final Response response = this.fetcher.contentAsText(
+                    localHost + "missing.html", null))
+            {
+                assertEquals(404, response.getStatus());
+            }
+        }
+        assertEquals(2, REQUESTS.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testHitsAreIndependent() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache();
+        final FetchKey key = key("a");
+        cache.put(key, response("text"));
+
+        try (final Response first = cache.get(key);
+                final Response second = cache.get(key))
+        {
+            assertFalse(first == second);
+            assertEquals('t', first.getTextReader().read());
+            assertEquals("text", second.getText());
+            first.setContentTitle("changed");
+            assertEquals("text", cache.get(key).getText());
+            assertFalse("changed".equals(cache.get(key).getContentTitle()));
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        // room for two entries of 10 bytes
+        final ResponseCache cache = new ResponseCache(20L, 1L, TimeUnit.HOURS);
+        cache.put(key("a"), response("0123456789"));
+        cache.put(key("b"), response("0123456789"));
+        assertEquals(20L, cache.getBytes());
+
+        // touch a, so b is least recently used
+        assertTrue(cache.get(key("a")) != null);
+        cache.put(key("c"), response("0123456789"));
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key("b")));
+        assertTrue(cache.get(key("a")) != null);
+        assertTrue(cache.get(key("c")) != null);
+
+        // too large to cache at all
+        cache.put(key("d"), response("012345678901234567890"));
+        assertNull(cache.get(key("d")));
+        assertEquals(20L, cache.getBytes());
+    }
+
+    @Test
+    public void testReplace() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache();
+        cache.put(key("a"), response("first"));
+        cache.put(key("a"), response("second"));
+        assertEquals(1, cache.getSize());
+        assertEquals(6L, cache.getBytes());
+        assertEquals("second", cache.get(key("a")).getText());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache(1_024L, 50L,
+                TimeUnit.MILLISECONDS);
+        cache.put(key("a"), response("text"));
+        assertTrue(cache.get(key("a")) != null);
+        Thread.sleep(100L);
+        assertNull(cache.get(key("a")));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(0L, cache.getBytes());
+    }
+
+    @Test
+    public void testExpiredPurgedOnPut() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache(1_024L, 50L,
+                TimeUnit.MILLISECONDS);
+        cache.put(key("a"), response("text"));
+        Thread.sleep(100L);
+        cache.put(key("b"), response("\u00e9t\u00e9"));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(5L, cache.getBytes());
+    }
+
+    @Test
+    public void testSpilledTextCounted() throws Exception
+    {
+        final ResponseCache small = new ResponseCache(4L, 1L, TimeUnit.HOURS);
+        try (final Response response = response("0123456789"))
+        {
+            response.setTextMemoryThreshold(0L);
+            small.put(key("a"), response);
+        }
+        assertEquals(0, small.getSize());
+
+        final ResponseCache cache = new ResponseCache(10L, 1L, TimeUnit.HOURS);
+        final Response response = response("0123456789");
+        response.setTextMemoryThreshold(0L);
+        cache.put(key("a"), response);
+        response.close();
+        assertEquals(1, cache.getSize());
+        assertEquals(10L, cache.getBytes());
+        try (final Response hit = cache.get(key("a")))
+        {
+            assertEquals("0123456789", hit.getText());
+        }
+        cache.clear();
+    }
+
+    @Test
+    public void testAliasesShareEntries() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache();
+        final AliasIndex aliases = new AliasIndex();
+        this.fetcher.setResponseCache(cache);
+        this.fetcher.setAliasIndex(aliases);
+
+        this.fetcher.contentAsText(localHost + "page.txt?utm_source=x#top",
+                null).close();
+        assertEquals(1, REQUESTS.get());
+
+        // other spellings of the same URL
+        final String upper = localHost.replace("localhost", "LOCALHOST");
+        for (final String url : new String[] { localHost + "page.txt",
+                upper + "./page.txt?", localHost + "a/../page.txt" })
+        {
+            try (final Response response = this.fetcher.contentAsText(url,
+                    null))
+            {
+                assertEquals("/page.txt", response.getText().trim());
+                assertEquals(url, response.getRequestPage());
+            }
+        }
+        assertEquals(1, REQUESTS.get());
+        assertEquals(0, aliases.size());
+
+        // a redirect is fetched once, then answered from the cache
+        this.fetcher.contentAsText(localHost + "old.txt", null).close();
+        assertEquals(3, REQUESTS.get());
+        assertEquals(1, aliases.size());
+        try (final Response response = this.fetcher.contentAsText(localHost
+                + "old.txt", null))
+        {
+            assertEquals("/page.txt", response.getText().trim());
+        }
+        assertEquals(3, REQUESTS.get());
+    }
+
+    @Test
+    public void testCacheIsNotConfiguration() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache();
+        this.fetcher.setResponseCache(cache);
+        assertEquals(new Url2Text(), this.fetcher);
+        assertTrue(cache == this.fetcher.clone().getResponseCache());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLimits()
+    {
+        new ResponseCache(0L, 1L, TimeUnit.MINUTES);
+    }
+
+    private FetchKey key(final String page) throws IOException
+    {
+        return new FetchKey(this.fetcher, localHost + page, null);
+    }
+
+    private static Response response(final String text)
+    {
+        final Response response = new Response();
+        response.setStatus(200);
+        response.setTextReader(new StringReader(text));
+        return response;
+    }
+
+    static class PathHandler implements HttpHandler
+    {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            REQUESTS.incrementAndGet();
+            final String path = exchange.getRequestURI().getPath();
+            if ("/old.txt".equals(path))
+            {
+                exchange.getResponseHeaders().add("Location", "/page.txt");
+                exchange.sendResponseHeaders(301, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] body = path.getBytes(StandardCharsets.UTF_8);
+            final int status = path.endsWith(".html") ? 404 : 200;
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody())
+            {
+                os.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TextFilterChainTest
+{
+    @Test
+    public void testApply() throws IOException
+    {
+        final TextFilterChain chain = new TextFilterChain(
+                TextFilters.stripControlChars(),
+                TextFilters.collapseWhitespace(),
+                TextFilters.normalize(Normalizer.Form.NFC),
+                TextFilters.maxLineLength(8));
+        assertEquals(4, chain.getFilters().size());
+
+        final String text = " cafe\u0301\u0007  au   lait \n\n\n more ";
+        assertEquals("caf\u00e9 au\nlait\n\nmore", TextFiltersTest.filter(
+                new TextFilter()
+                    {
+                        @Override
+                        public Reader filter(final Reader source)
+                        {
+                            return chain.apply(source);
+                        }
+                    }, text));
+
+        // chars in and out of each stage
+        assertEquals(text.length(), chain.getSourceCharCount());
+        assertEquals(27L, chain.getCharCount(0));
+        assertEquals(19L, chain.getCharCount(1));
+        assertEquals(18L, chain.getCharCount(2));
+        assertEquals(18L, chain.getCharCount(3));
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(chain.getNanos(i) >= 0L);
+        }
+        assertTrue(chain.toString().startsWith(
+                "TextFilterChain[stripControlChars "));
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        final TextFilterChain chain = new TextFilterChain();
+        try (final Reader reader = chain.apply(new StringReader("text")))
+        {
+            assertEquals('t', reader.read());
+            assertEquals(3L, reader.skip(10L));
+            assertEquals(-1, reader.read());
+        }
+        assertEquals(4L, chain.getSourceCharCount());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullFilter()
+    {
+        new TextFilterChain(Arrays.asList((TextFilter) null));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFiltersUnmodifiable()
+    {
+        new TextFilterChain().getFilters().add(
+                TextFilters.collapseWhitespace());
+    }
+}
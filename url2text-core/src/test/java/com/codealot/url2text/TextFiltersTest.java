@@ -0,0 +1,89 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.Normalizer;
+
+import org.junit.Test;
+
+public class TextFiltersTest
+{
+    @Test
+    public void testCollapseWhitespace() throws IOException
+    {
+        final TextFilter filter = TextFilters.collapseWhitespace();
+        assertEquals("a b\nc\n\nd", filter(filter,
+                "  a \t b \n c\n\n\n  \n d \n "));
+        assertEquals("", filter(filter, " \n\t "));
+    }
+
+    @Test
+    public void testNormalize() throws IOException
+    {
+        // decomposed e-acute, Hangul jamo, and a lone combining mark
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5_000; i++)
+        {
+            text.append("cafe\u0301 \u1100\u1161\u11a8 \u0301x");
+        }
+        final String expected = Normalizer.normalize(text,
+                Normalizer.Form.NFC);
+        assertEquals(expected, filter(
+                TextFilters.normalize(Normalizer.Form.NFC), text.toString()));
+
+        // no safe place to cut, so held until the limit
+        final StringBuilder marks = new StringBuilder("a");
+        for (int i = 0; i < 20_000; i++)
+        {
+            marks.append('\u0301');
+        }
+        assertEquals(Normalizer.normalize(marks, Normalizer.Form.NFC),
+                filter(TextFilters.normalize(Normalizer.Form.NFC),
+                        marks.toString()));
+    }
+
+    @Test
+    public void testStripControlChars() throws IOException
+    {
+        assertEquals("a\tb\r\nc", filter(TextFilters.stripControlChars(),
+                "\u0000a\tb\u0007\r\n\u001bc\u009f"));
+    }
+
+    @Test
+    public void testMaxLineLength() throws IOException
+    {
+        final TextFilter filter = TextFilters.maxLineLength(10);
+        assertEquals("one two\nthree four\nfive", filter(filter,
+                "one two three four five"));
+        assertEquals("0123456789\n0123\nshort", filter(filter,
+                "01234567890123\nshort"));
+        // a surrogate pair is never split
+        assertEquals("012345678\n\ud83d\ude00", filter(filter,
+                "012345678\ud83d\ude00"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxLineLengthBad()
+    {
+        TextFilters.maxLineLength(0);
+    }
+
+    static String filter(final TextFilter filter, final String text)
+            throws IOException
+    {
+        try (final Reader reader = filter.filter(new StringReader(text)))
+        {
+            final StringBuilder result = new StringBuilder();
+            final char[] buffer = new char[777];
+            int count;
+            while ((count = reader.read(buffer, 0, buffer.length)) != -1)
+            {
+                result.append(buffer, 0, count);
+            }
+            return result.toString();
+        }
+    }
+}
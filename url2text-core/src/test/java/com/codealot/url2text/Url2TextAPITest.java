@@ -141,6 +141,11 @@ public class Url2TextAPITest
         assertEquals(fetcher.getNetworkTimeout(), 90);
         assertEquals(fetcher.getJavascriptTimeout(), 20);
         assertEquals(fetcher.getMaxContentLength(), 1_024 * 1_024);
+        assertEquals(fetcher.hasStreamBinaryContent(), false);
+        assertEquals(fetcher.getBodyMemoryThreshold(), 512 * 1_024);
+        assertEquals(fetcher.getTextDigestAlgorithm(), "");
+        assertEquals(fetcher.hasMainContentOnly(), false);
+        assertEquals(fetcher.hasIncludeStructure(), false);
     }
 
     @Test
@@ -339,4 +344,63 @@ public class Url2TextAPITest
         assertEquals(100, this.fetcher.getMaxContentLength());
     }
 
+    @Test
+    public void testSetStreamBinaryContent()
+    {
+        // check default, then change
+        assertFalse(this.fetcher.hasStreamBinaryContent());
+        this.fetcher.setStreamBinaryContent(true);
+        assertTrue(this.fetcher.hasStreamBinaryContent());
+    }
+
+    @Test
+    public void testSetBodyMemoryThreshold()
+    {
+        // check default, then change
+        assertEquals(512 * 1_024, this.fetcher.getBodyMemoryThreshold());
+        this.fetcher.setBodyMemoryThreshold(0L);
+        assertEquals(0L, this.fetcher.getBodyMemoryThreshold());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetBodyMemoryThresholdNegative()
+    {
+        this.fetcher.setBodyMemoryThreshold(-1L);
+    }
+
+    @Test
+    public void testSetTextDigestAlgorithm()
+    {
+        // check default, then change
+        assertEquals("", this.fetcher.getTextDigestAlgorithm());
+        this.fetcher.setTextDigestAlgorithm("SHA-1");
+        assertEquals("SHA-1", this.fetcher.getTextDigestAlgorithm());
+        this.fetcher.setTextDigestAlgorithm(null);
+        assertEquals("", this.fetcher.getTextDigestAlgorithm());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetTextDigestAlgorithmUnknown()
+    {
+        this.fetcher.setTextDigestAlgorithm("NO-SUCH-DIGEST");
+    }
+
+    @Test
+    public void testSetIncludeStructure()
+    {
+        // check default, then change
+        assertFalse(this.fetcher.hasIncludeStructure());
+        this.fetcher.setIncludeStructure(true);
+        assertTrue(this.fetcher.hasIncludeStructure());
+    }
+
+    @Test
+    public void testSetMainContentOnly()
+    {
+        // check default, then change
+        assertFalse(this.fetcher.hasMainContentOnly());
+        this.fetcher.setMainContentOnly(true);
+        assertTrue(this.fetcher.hasMainContentOnly());
+    }
+
 }
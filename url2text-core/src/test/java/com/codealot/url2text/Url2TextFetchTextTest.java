@@ -1,20 +1,27 @@
 package com.codealot.url2text;
 
 import static com.codealot.url2text.Constants.HDR_CONTENT_METADATA;
+import static com.codealot.url2text.Constants.HDR_EXTRACTION_DURATION;
 import static com.codealot.url2text.Constants.HDR_IF_MODIFIED_SINCE;
 import static com.codealot.url2text.Constants.HDR_IF_NONE_MATCH;
+import static com.codealot.url2text.Constants.HDR_MAIN_CONTENT_CHARS;
+import static com.codealot.url2text.Constants.HDR_PAGE_TEXT_CHARS;
 import static com.codealot.url2text.Constants.HDR_RESPONSE_HEADERS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.HashMap;
 
 import org.junit.AfterClass;
@@ -83,6 +90,8 @@ public class Url2TextFetchTextTest
         server.createContext("/empty.doc", new FileHandler("empty.doc", "text/plain "));    // kludge to avoid Tika being invoked
         server.createContext("/docbook5.xml", new FileHandler("docbook5.xml", "application/xml"));
         server.createContext("/docbook.xml", new FileHandler("docbook.xml", "application/xml"));
+        server.createContext("/structure.html", new FileHandler("structure.html", "text/html"));
+        server.createContext("/article.html", new FileHandler("article.html", "text/html"));
         server.createContext("/binary.odt", new FileHandler("binary.odt", "application/vnd.oasis.opendocument.text "));
         server.setExecutor(null);
         server.start();
@@ -280,4 +289,212 @@ public class Url2TextFetchTextTest
         }
     }
 
+    @Test
+    public void testFetchTextBinaryStreamed() throws Url2TextException,
+            IOException
+    {
+        String buffered = null;
+        try (final Response response = this.fetcher.contentAsText(
+                LOCAL_HOST + "binary.odt", null))
+        {
+            buffered = response.getText();
+        }
+
+        this.fetcher.setStreamBinaryContent(true);
+        try (final Response response = this.fetcher.contentAsText(
+                LOCAL_HOST + "binary.odt", null))
+        {
+            assertEquals(200, response.getStatus());
+            assertEquals(buffered, response.getText());
+        }
+    }
+
+    @Test
+    public void testFetchTextHTMLStreamingEnabled() throws Url2TextException,
+            IOException
+    {
+        // only content bound for Tika is streamed
+        this.fetcher.setStreamBinaryContent(true);
+        try (final Response response = this.fetcher.contentAsText(
+                LOCAL_HOST + "html-4-JS.html", null))
+        {
+            assertEquals(200, response.getStatus());
+            assertEquals(response.getContentTitle(), "Page Title");
+        }
+    }
+
+    @Test
+    public void testFetchTextBinarySpilled() throws Url2TextException,
+            IOException
+    {
+        String buffered = null;
+        try (final Response response = this.fetcher.contentAsText(
+                LOCAL_HOST + "binary.odt", null))
+        {
+            buffered = response.getText();
+        }
+
+        this.fetcher.setBodyMemoryThreshold(0L);
+        try (final Response response = this.fetcher.contentAsText(
+                LOCAL_HOST + "binary.odt", null))
+        {
+            assertEquals(200, response.getStatus());
+            assertEquals(buffered, response.getText());
+        }
+        assertEquals(0L, ResponseBodies.getInMemoryBytes());
+    }
+
+    @Test
+    public void testFailedFetchReleasesContent() throws Exception
+    {
+        // HTML text cannot be supplied twice, so this fetch fails once Tika
+        // holds the content
+        this.fetcher.setIncludeMetadata(true);
+        this.fetcher.setStreamBinaryContent(true);
+        for (final long threshold : new long[] { 1_024L * 1_024, 0L })
+        {
+            this.fetcher.setBodyMemoryThreshold(threshold);
+            final int before = countBodies();
+            try (final Response response = this.fetcher.contentAsText(
+                    LOCAL_HOST + "html-4-JS.html", null))
+            {
+                response.getText();
+            }
+            catch (IllegalStateException e)
+            {
+                // expected
+            }
+            assertEquals(0L, ResponseBodies.getInMemoryBytes());
+            assertEquals(before, countBodies());
+        }
+    }
+
+    private static int countBodies() throws IOException
+    {
+        int count = 0;
+        try (final DirectoryStream<Path> bodies = Files.newDirectoryStream(
+                Paths.get(System.getProperty("java.io.tmpdir")),
+                "url2text*.body"))
+        {
+            for (@SuppressWarnings("unused")
+            final Path body : bodies)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testFetchTextFingerprint() throws Exception
+    {
+        this.fetcher.setTextDigestAlgorithm("SHA-1");
+        for (final boolean stream : new boolean[] { false, true })
+        {
+            this.fetcher.setStreamBinaryContent(stream);
+            for (final String page : new String[] { "plain-text.txt",
+                    "binary.odt" })
+            {
+                try (final Response response = this.fetcher.contentAsText(
+                        LOCAL_HOST + page, null))
+                {
+                    final byte[] utf8 = response.getText().getBytes(
+                            StandardCharsets.UTF_8);
+                    final StringBuilder hex = new StringBuilder();
+                    for (final byte b : MessageDigest.getInstance("SHA-1")
+                            .digest(utf8))
+                    {
+                        hex.append(String.format("%02X", b));
+                    }
+                    assertEquals("SHA-1", response.getTextDigestAlgorithm());
+                    assertEquals(hex.toString(), response.getTextDigest());
+                    assertEquals(response.getText().length(),
+                            response.getTextCharCount());
+                    assertEquals(utf8.length, response.getTextByteCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFetchTextFiltered() throws Exception
+    {
+        final TextFilterChain chain = new TextFilterChain(
+                TextFilters.collapseWhitespace(),
+                TextFilters.maxLineLength(20));
+        this.fetcher.setTextFilterChain(chain);
+        for (final String page : new String[] { "html-4-JS.html",
+                "binary.odt" })
+        {
+            try (final Response response = this.fetcher.contentAsText(
+                    LOCAL_HOST + page, null))
+            {
+                final String text = response.getText();
+                assertFalse(text.contains("  "));
+                for (final String line : text.split("\n"))
+                {
+                    assertTrue(line.length() <= 20);
+                }
+            }
+        }
+        assertTrue(chain.getSourceCharCount() > chain.getCharCount(1));
+    }
+
+    @Test
+    public void testFetchTextStructure() throws Exception
+    {
+        try (final Response response = this.fetcher.contentAsText(LOCAL_HOST
+                + "structure.html", null))
+        {
+            assertNull(response.getPageStructure());
+        }
+
+        this.fetcher.setIncludeStructure(true);
+        for (final boolean mainContentOnly : new boolean[] { false, true })
+        {
+            this.fetcher.setMainContentOnly(mainContentOnly);
+            try (final Response response = this.fetcher.contentAsText(
+                    LOCAL_HOST + "structure.html", null))
+            {
+                final PageStructure structure = response.getPageStructure();
+                assertEquals("http://localhost:8000/canonical.html",
+                        structure.getCanonicalUrl());
+                assertEquals(2, structure.getHeadings().size());
+                assertEquals(4, structure.getLinks().size());
+                assertTrue(response.toJson().contains(
+                        "\"Links\":[[\"http://localhost:8000/docs/page.html\","));
+            }
+        }
+
+        // only HTML pages have a structure
+        try (final Response response = this.fetcher.contentAsText(LOCAL_HOST
+                + "plain-text.txt", null))
+        {
+            assertNull(response.getPageStructure());
+        }
+    }
+
+    @Test
+    public void testFetchTextMainContentOnly() throws Exception
+    {
+        this.fetcher.setMainContentOnly(true);
+        try (final Response response = this.fetcher.contentAsText(LOCAL_HOST
+                + "article.html", null))
+        {
+            assertEquals("Article Title", response.getContentTitle());
+            final String text = response.getText();
+            assertTrue(text.startsWith("Local river reaches record level"));
+            assertFalse(text.contains("Related story"));
+
+            final long contentChars = Long.parseLong(response
+                    .getContentMetadataValue(HDR_MAIN_CONTENT_CHARS));
+            final long pageChars = Long.parseLong(response
+                    .getContentMetadataValue(HDR_PAGE_TEXT_CHARS));
+            assertEquals(text.length(), contentChars);
+            assertTrue(pageChars > contentChars);
+            assertTrue(Long.parseLong(response
+                    .getContentMetadataValue(HDR_EXTRACTION_DURATION)) >= 0L);
+        }
+    }
+
 }
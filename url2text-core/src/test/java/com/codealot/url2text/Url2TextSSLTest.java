@@ -0,0 +1,170 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+@SuppressWarnings("restriction")
+public class Url2TextSSLTest
+{
+    private static final Logger LOG = LoggerFactory
+            .getLogger(Url2TextSSLTest.class);
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private static HttpsServer server;
+    private static String localHost;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        final KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = Files.newInputStream(Paths
+                .get("src/test/resources/localhost.jks")))
+        {
+            keyStore.load(is, PASSWORD);
+        }
+        final KeyManagerFactory kmf = KeyManagerFactory
+                .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext)
+            {
+                @Override
+                public void configure(final HttpsParameters params)
+                {
+                    // TLSv1.2 reuses session ids, so resumption is observable
+                    final SSLParameters sslParams = getSSLContext()
+                            .getDefaultSSLParameters();
+                    sslParams.setProtocols(new String[] { "TLSv1.2" });
+                    params.setSSLParameters(sslParams);
+                }
+            });
+        server.createContext("/", new HttpHandler()
+            {
+                @Override
+                public void handle(final HttpExchange exchange)
+                        throws IOException
+                {
+                    final byte[] body = "secure text"
+                            .getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type",
+                            "text/plain");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = exchange.getResponseBody())
+                    {
+                        os.write(body);
+                    }
+                }
+            });
+        server.start();
+        localHost = "https://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSessionResumedAcrossFetches() throws Exception
+    {
+        final Url2Text fetcher = new Url2Text();
+        fetcher.setUseInsecureSSL(true);
+
+        final long[] durations = new long[5];
+        for (int i = 0; i < durations.length; i++)
+        {
+            final long start = System.nanoTime();
+            try (final Response response = fetcher.contentAsText(localHost,
+                    null))
+            {
+                assertEquals(200, response.getStatus());
+                assertEquals("secure text", response.getText());
+            }
+            durations[i] = (System.nanoTime() - start) / 1_000L;
+        }
+        LOG.info("HTTPS fetch (us): first {}, later {}", durations[0],
+                Arrays.toString(Arrays.copyOfRange(durations, 1,
+                        durations.length)));
+
+        // a full handshake per fetch would leave one session per fetch
+        assertEquals(1, sessionsForPort(Url2TextWebConnection
+                .sslContext(true), server.getAddress().getPort()));
+    }
+
+    @Test
+    public void testSecureProfileRejectsUntrustedCertificate()
+            throws Exception
+    {
+        final Url2Text fetcher = new Url2Text();
+        try (final Response response = fetcher.contentAsText(localHost, null))
+        {
+            fail("Self-signed certificate accepted.");
+        }
+        catch (Url2TextException e)
+        {
+            // expected
+        }
+        assertEquals(0, sessionsForPort(Url2TextWebConnection
+                .sslContext(false), server.getAddress().getPort()));
+    }
+
+    @Test
+    public void testContextsAreShared()
+    {
+        assertTrue(Url2TextWebConnection.sslContext(true) == Url2TextWebConnection
+                .sslContext(true));
+        assertTrue(Url2TextWebConnection.sslContext(false) != Url2TextWebConnection
+                .sslContext(true));
+    }
+
+    private static int sessionsForPort(final SSLContext context,
+            final int port)
+    {
+        final SSLSessionContext sessions = context.getClientSessionContext();
+        int count = 0;
+        for (final byte[] id : Collections.list(sessions.getIds()))
+        {
+            final SSLSession session = sessions.getSession(id);
+            if (session != null && session.getPeerPort() == port)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,108 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class UrlCanonicalizerTest
+{
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+    @Test
+    public void testSchemeHostAndPort() throws MalformedURLException
+    {
+        assertEquals("http://example.com/", canon("HTTP://Example.COM"));
+        assertEquals("http://example.com/", canon("http://example.com.:80/"));
+        assertEquals("https://example.com/a",
+                canon("https://example.com:443/a"));
+        assertEquals("http://example.com:8080/a",
+                canon("http://example.com:8080/a"));
+        assertEquals("https://example.com:80/", canon("https://example.com:80"));
+        assertEquals("http://user@example.com/",
+                canon("http://user@example.com/"));
+    }
+
+    @Test
+    public void testPath() throws MalformedURLException
+    {
+        assertEquals("http://example.com/a/c",
+                canon("http://example.com/a/./b/../c"));
+        assertEquals("http://example.com/", canon("http://example.com/a/.."));
+        assertEquals("http://example.com/", canon("http://example.com/../.."));
+        assertEquals("http://example.com/a/", canon("http://example.com/a/."));
+        assertEquals("http://example.com/a.b/c..d",
+                canon("http://example.com/a.b/c..d"));
+        // case is significant in the path
+        assertEquals("http://example.com/A/b", canon("http://example.com/A/b"));
+    }
+
+    @Test
+    public void testEscapes() throws MalformedURLException
+    {
+        assertEquals("http://example.com/a~b/%2F%C3%A9",
+                canon("http://example.com/a%7eb/%2f%c3%a9"));
+        assertEquals("http://example.com/a%20b/%25zz",
+                canon("http://example.com/a b/%zz"));
+        assertEquals("http://example.com/caf%C3%A9/%F0%9F%98%80",
+                canon("http://example.com/caf\u00e9/\ud83d\ude00"));
+        // escaped dots are dot segments too
+        assertEquals("http://example.com/b", canon("http://example.com/a/%2E%2E/b"));
+        assertEquals("http://example.com/?q=a%2Bb+c",
+                canon("http://example.com/?q=a%2bb+c"));
+    }
+
+    @Test
+    public void testQuery() throws MalformedURLException
+    {
+        assertEquals("http://example.com/p?id=1&b=2",
+                canon("http://example.com/p?utm_source=x&id=1&UTM_Medium=y"
+                        + "&gclid=z&&b=2&fbclid=w"));
+        assertEquals("http://example.com/p",
+                canon("http://example.com/p?utm_campaign=x&_ga=1"));
+        assertEquals("http://example.com/p", canon("http://example.com/p?"));
+        assertEquals("http://example.com/p?utmost=1",
+                canon("http://example.com/p?utmost=1"));
+
+        final UrlCanonicalizer sorting = new UrlCanonicalizer(
+                Arrays.asList("session*", "ref"), true);
+        assertEquals("http://example.com/p?a=1&b=2&utm_source=x",
+                sorting.canonicalize("http://example.com/p?b=2&ref=q"
+                        + "&utm_source=x&sessionid=7&a=1"));
+        assertEquals(Arrays.asList("ref", "session*"),
+                sorting.getIgnoredParameters());
+    }
+
+    @Test
+    public void testFragment() throws MalformedURLException
+    {
+        assertEquals("http://example.com/p?a=1",
+                canon("http://example.com/p?a=1#top"));
+        assertEquals("file:/tmp/a.txt", canon("file:/tmp/a.txt#x"));
+    }
+
+    @Test
+    public void testIdempotent() throws MalformedURLException
+    {
+        for (final String url : new String[] {
+                "HTTP://Example.COM:80/a/./b/../%7ec d?utm_x=1&q=%e9#f",
+                "https://example.com/caf\u00e9?%zz", "http://example.com" })
+        {
+            final String once = canon(url);
+            assertEquals(once, canon(once));
+        }
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void testMalformed() throws MalformedURLException
+    {
+        canon("not a url");
+    }
+
+    private String canon(final String url) throws MalformedURLException
+    {
+        return this.canonicalizer.canonicalize(url);
+    }
+}
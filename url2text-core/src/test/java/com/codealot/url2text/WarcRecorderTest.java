@@ -0,0 +1,328 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class WarcRecorderTest
+{
+    private static final String ODT = "application/vnd.oasis.opendocument.text";
+
+    private static HttpServer server;
+    private static String localHost;
+
+    // requests reaching the server
+    static final AtomicInteger REQUESTS = new AtomicInteger();
+
+    private Path directory;
+    private Url2Text fetcher;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        server = startServer();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * A page, a redirect to it, and a binary document.
+     */
+    static HttpServer startServer() throws IOException
+    {
+        final byte[] html = Files.readAllBytes(Paths
+                .get("src/test/resources/html-4-JS.html"));
+        final byte[] odt = Files.readAllBytes(Paths
+                .get("src/test/resources/binary.odt"));
+        final HttpServer result = HttpServer.create(new InetSocketAddress(
+                "localhost", 0), 0);
+        result.createContext("/", new HttpHandler()
+            {
+                @Override
+                public void handle(final HttpExchange exchange)
+                        throws IOException
+                {
+                    REQUESTS.incrementAndGet();
+                    final String path = exchange.getRequestURI().getPath();
+                    if ("/old.html".equals(path))
+                    {
+                        exchange.getResponseHeaders().add("Location",
+                                "/page.html");
+                        exchange.sendResponseHeaders(301, -1);
+                        exchange.close();
+                        return;
+                    }
+                    final boolean binary = path.endsWith(".odt");
+                    final byte[] body = binary ? odt : html;
+                    exchange.getResponseHeaders().add("Content-Type",
+                            binary ? ODT : "text/html");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = exchange.getResponseBody())
+                    {
+                        os.write(body);
+                    }
+                }
+            });
+        result.start();
+        return result;
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = Files.createTempDirectory("warc-test");
+        this.fetcher = new Url2Text();
+        REQUESTS.set(0);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        deleteAll(this.directory);
+    }
+
+    @Test
+    public void testRecord() throws Exception
+    {
+        try (final WarcRecorder recorder = new WarcRecorder(this.directory,
+                "test"))
+        {
+            this.fetcher.setWarcRecorder(recorder);
+            this.fetcher.contentAsText(localHost + "old.html", null).close();
+
+            // streaming is off while recording
+            this.fetcher.setStreamBinaryContent(true);
+            try (final Response response = this.fetcher.contentAsText(
+                    localHost + "doc.odt", null))
+            {
+                assertTrue(response.getText().contains("Test binary doc."));
+            }
+            assertEquals(3L, recorder.getRecordCount());
+            assertEquals(1, recorder.getFiles().size());
+            assertTrue(recorder.getBytesWritten() > 0L);
+        }
+
+        final Path warc = single("*.warc.gz");
+        assertTrue(warc.getFileName().toString().startsWith("test-"));
+        final String records = new String(gunzip(warc),
+                StandardCharsets.ISO_8859_1);
+        assertEquals(1, count(records, "WARC-Type: warcinfo\r\n"));
+        assertEquals(3, count(records, "WARC-Type: request\r\n"));
+        assertEquals(3, count(records, "WARC-Type: response\r\n"));
+        assertEquals(3, count(records, "WARC-Payload-Digest: sha1:"));
+        assertTrue(records.contains("WARC-Target-URI: " + localHost
+                + "old.html\r\n"));
+        assertTrue(records.contains("HTTP/1.1 301"));
+        assertTrue(records.contains("GET /page.html HTTP/1.1\r\n"));
+        assertTrue(records.toLowerCase().contains("content-type: " + ODT
+                + "\r\n"));
+
+        final List<String> cdx = Files.readAllLines(single("*.cdx"),
+                StandardCharsets.UTF_8);
+        assertEquals(4, cdx.size());
+        assertEquals(WarcRecorder.CDX_HEADER, cdx.get(0));
+        assertTrue(cdx.get(1).contains(" " + localHost + "old.html - 301 "));
+        assertTrue(cdx.get(1).contains(" /page.html - "));
+        assertTrue(cdx.get(3).endsWith(warc.getFileName().toString()));
+    }
+
+    @Test
+    public void testRotation() throws Exception
+    {
+        try (final WarcRecorder recorder = new WarcRecorder(this.directory,
+                "test", 1L))
+        {
+            this.fetcher.setWarcRecorder(recorder);
+            this.fetcher.contentAsText(localHost + "old.html", null).close();
+            assertEquals(2, recorder.getFiles().size());
+            long total = 0L;
+            for (final Path file : recorder.getFiles())
+            {
+                total += Files.size(file);
+                assertTrue(new String(gunzip(file),
+                        StandardCharsets.ISO_8859_1).startsWith(
+                        "WARC/1.0\r\nWARC-Type: warcinfo\r\n"));
+            }
+            assertEquals(total, recorder.getBytesWritten());
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception
+    {
+        // the fetch goes on without its record
+        final WarcRecorder recorder = new WarcRecorder(this.directory, "test");
+        recorder.close();
+        this.fetcher.setWarcRecorder(recorder);
+        try (final Response response = this.fetcher.contentAsText(localHost
+                + "page.html", null))
+        {
+            assertTrue(response.getText().contains("Test"));
+        }
+        assertEquals(0L, recorder.getRecordCount());
+        assertTrue(recorder.getFiles().isEmpty());
+    }
+
+    @Test
+    public void testFailedRecordCut() throws Exception
+    {
+        final WebRequest request = new WebRequest(new URL(localHost
+                + "page.html"));
+        try (final WarcRecorder recorder = new WarcRecorder(this.directory,
+                "test"))
+        {
+            recorder.record(request, response(request, "first", "first"), null);
+            try
+            {
+                // shorter when read to be written, than when measured
+                recorder.record(request, response(request, "second", "sec"), null);
+                fail("Changed body recorded");
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+            recorder.record(request, response(request, "third", "third"), null);
+            assertEquals(2L, recorder.getRecordCount());
+            assertEquals(Files.size(single("*.warc.gz")),
+                    recorder.getBytesWritten());
+        }
+
+        // every member is whole, and the failed transaction is gone
+        final String records = new String(gunzip(single("*.warc.gz")),
+                StandardCharsets.ISO_8859_1);
+        assertEquals(2, count(records, "WARC-Type: response\r\n"));
+        assertEquals(2, count(records, "WARC-Type: request\r\n"));
+        assertTrue(records.contains("first"));
+        assertFalse(records.contains("sec"));
+        assertTrue(records.contains("third"));
+        assertEquals(3, Files.readAllLines(single("*.cdx"),
+                StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testBase32()
+    {
+        assertEquals("", WarcRecorder.base32(new byte[0]));
+        assertEquals("MY======", WarcRecorder.base32("f".getBytes()));
+        assertEquals("MZXW6YTBOI======",
+                WarcRecorder.base32("foobar".getBytes()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSize()
+    {
+        new WarcRecorder(this.directory, "test", 0L);
+    }
+
+    /**
+     * A response whose body is first read as one text, then as another.
+     */
+    private static WebResponse response(final WebRequest request,
+            final String first, final String then)
+    {
+        final WebResponseData data = new WebResponseData(
+                first.getBytes(StandardCharsets.UTF_8), 200, "OK",
+                Collections.singletonList(new NameValuePair("Content-Type",
+                        "text/plain")));
+        return new WebResponse(data, request, 0L)
+            {
+                private int reads = 0;
+
+                @Override
+                public InputStream getContentAsStream() throws IOException
+                {
+                    return new ByteArrayInputStream((this.reads++ == 0
+                            ? first : then).getBytes(StandardCharsets.UTF_8));
+                }
+            };
+    }
+
+    private Path single(final String glob) throws IOException
+    {
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(
+                this.directory, glob))
+        {
+            return files.iterator().next();
+        }
+    }
+
+    static byte[] gunzip(final Path file) throws IOException
+    {
+        try (final InputStream in = new GZIPInputStream(
+                Files.newInputStream(file)))
+        {
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8 * 1_024];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+            {
+                result.write(buffer, 0, count);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    static void deleteAll(final Path directory) throws IOException
+    {
+        try (final DirectoryStream<Path> files = Files
+                .newDirectoryStream(directory))
+        {
+            for (final Path file : files)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static int count(final String s, final String part)
+    {
+        int result = 0;
+        int from = 0;
+        while ((from = s.indexOf(part, from)) != -1)
+        {
+            result++;
+            from += part.length();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package com.codealot.url2text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class WarcReplayTest
+{
+    private static HttpServer server;
+    private static String localHost;
+
+    private Path directory;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        server = WarcRecorderTest.startServer();
+        localHost = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = Files.createTempDirectory("warc-test");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WarcRecorderTest.deleteAll(this.directory);
+    }
+
+    @Test
+    public void testReplay() throws Exception
+    {
+        final Url2Text recording = new Url2Text();
+        recording.setIncludeHeaders(true);
+        final String html;
+        final String odt;
+        // rotated, so the replay reads more than one file
+        try (final WarcRecorder recorder = new WarcRecorder(this.directory,
+                "test", 1L))
+        {
+            recording.setWarcRecorder(recorder);
+            try (final Response response = recording.contentAsText(localHost
+                    + "old.html", null))
+            {
+                html = response.getText();
+            }
+            try (final Response response = recording.contentAsText(localHost
+                    + "doc.odt", null))
+            {
+                odt = response.getText();
+            }
+        }
+
+        WarcRecorderTest.REQUESTS.set(0);
+        final WarcReplay replay = new WarcReplay(this.directory);
+        assertEquals(3, replay.size());
+        assertTrue(replay.contains(localHost + "old.html"));
+        assertFalse(replay.contains(localHost + "other.html"));
+
+        final Url2Text replaying = new Url2Text();
+        replaying.setIncludeHeaders(true);
+        replaying.setWebConnectionFactory(replay);
+        try (final Response response = replaying.contentAsText(localHost
+                + "old.html", null))
+        {
+            assertEquals(200, response.getStatus());
+            assertEquals(localHost + "page.html", response.getLandingPage());
+            assertEquals("Page Title", response.getContentTitle());
+            assertEquals(html, response.getText());
+        }
+        try (final Response response = replaying.contentAsText(localHost
+                + "doc.odt", null))
+        {
+            assertEquals(odt, response.getText());
+        }
+        try (final Response response = replaying.contentAsText(localHost
+                + "other.html", null))
+        {
+            assertEquals(404, response.getStatus());
+        }
+        assertEquals(0, WarcRecorderTest.REQUESTS.get());
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        assertEquals(0, new WarcReplay(this.directory).size());
+    }
+
+    @Test(expected = Url2TextException.class)
+    public void testMissingDirectory() throws Exception
+    {
+        new WarcReplay(this.directory.resolve("missing"));
+    }
+}
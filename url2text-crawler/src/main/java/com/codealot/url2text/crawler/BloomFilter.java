@@ -0,0 +1,330 @@
+package com.codealot.url2text.crawler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Bloom filter of strings, e.g. visited URLs, in a fraction of the memory of
+ * a HashSet: about 1.2 bytes per entry at a 1% false positive rate, or 1.8
+ * bytes at 0.1%, whatever the length of the strings.
+ * <p>
+ * There are no false negatives; an entry which was added is always reported
+ * as present. Entries are hashed with the 128 bit MurmurHash3 of their UTF-8
+ * encoding, and the bit positions derived from the two halves by double
+ * hashing. Up to 2^37 bits (16GiB) are supported.
+ * <p>
+ * Not thread safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public final class BloomFilter
+{
+    // signature of the serialized form
+    private static final int MAGIC = 0x55324246;
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+    private long bitsSet;
+    private long entryCount;
+
+    /**
+     * @param expectedEntries
+     *            the number of distinct entries the filter is sized for
+     * @param falsePositiveRate
+     *            the chance, once full, that an entry which was never added
+     *            is reported as present, e.g. 0.001
+     */
+    public BloomFilter(final long expectedEntries,
+            final double falsePositiveRate)
+    {
+        if (expectedEntries < 1L)
+        {
+            throw new IllegalArgumentException(
+                    "Expected entries must be positive: " + expectedEntries);
+        }
+        if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0))
+        {
+            throw new IllegalArgumentException(
+                    "False positive rate must be between 0 and 1: "
+                            + falsePositiveRate);
+        }
+        final double ln2 = Math.log(2.0);
+        final double bits = Math.ceil(-expectedEntries
+                * Math.log(falsePositiveRate) / (ln2 * ln2));
+        final double wordCount = Math.max(1.0, Math.ceil(bits / 64.0));
+        if (wordCount > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException("Bloom filter too large: "
+                    + (long) bits + " bits.");
+        }
+        this.words = new long[(int) wordCount];
+        this.bitCount = this.words.length * 64L;
+        this.hashCount = (int) Math.max(1L, Math.round((double) this.bitCount
+                / expectedEntries * ln2));
+    }
+
+    private BloomFilter(final long[] words, final int hashCount,
+            final long bitsSet, final long entryCount)
+    {
+        this.words = words;
+        this.bitCount = words.length * 64L;
+        this.hashCount = hashCount;
+        this.bitsSet = bitsSet;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Add an entry.
+     * 
+     * @param entry
+     * @return true if the entry was not already present; false if it was, or
+     *         is a false positive
+     */
+    public boolean add(final CharSequence entry)
+    {
+        final long[] hash = murmur3(entry.toString().getBytes(
+                StandardCharsets.UTF_8));
+        boolean added = false;
+        long combined = hash[0];
+        for (int i = 0; i < this.hashCount; i++)
+        {
+            final long bit = (combined & Long.MAX_VALUE) % this.bitCount;
+            final int word = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+            if ((this.words[word] & mask) == 0L)
+            {
+                this.words[word] |= mask;
+                this.bitsSet++;
+                added = true;
+            }
+            combined += hash[1];
+        }
+        if (added)
+        {
+            this.entryCount++;
+        }
+        return added;
+    }
+
+    /**
+     * @param entry
+     * @return false if the entry was certainly never added
+     */
+    public boolean mightContain(final CharSequence entry)
+    {
+        final long[] hash = murmur3(entry.toString().getBytes(
+                StandardCharsets.UTF_8));
+        long combined = hash[0];
+        for (int i = 0; i < this.hashCount; i++)
+        {
+            final long bit = (combined & Long.MAX_VALUE) % this.bitCount;
+            if ((this.words[(int) (bit >>> 6)] & (1L << bit)) == 0L)
+            {
+                return false;
+            }
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    public long getBitCount()
+    {
+        return this.bitCount;
+    }
+
+    public int getHashCount()
+    {
+        return this.hashCount;
+    }
+
+    /**
+     * Returns the number of entries added, less any that were taken for
+     * duplicates (false positives).
+     * 
+     * @return count
+     */
+    public long getEntryCount()
+    {
+        return this.entryCount;
+    }
+
+    /**
+     * Returns the current false positive rate, estimated from the share of
+     * bits set. It rises as entries are added beyond the expected number.
+     * 
+     * @return rate
+     */
+    public double getFalsePositiveRate()
+    {
+        return Math.pow((double) this.bitsSet / this.bitCount, this.hashCount);
+    }
+
+    /**
+     * Write the filter, so that it can be read back by
+     * {@link #readFrom(InputStream)}, e.g. to resume a crawl. The destination
+     * is flushed, but not closed.
+     * 
+     * @param destination
+     * @throws IOException
+     */
+    public void writeTo(final OutputStream destination) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(destination);
+        out.writeInt(MAGIC);
+        out.writeInt(this.words.length);
+        out.writeInt(this.hashCount);
+        out.writeLong(this.bitsSet);
+        out.writeLong(this.entryCount);
+        for (final long word : this.words)
+        {
+            out.writeLong(word);
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a filter written by {@link #writeTo(OutputStream)}. Wrap the
+     * source in a BufferedInputStream for speed.
+     * 
+     * @param source
+     *            not closed
+     * @return the filter
+     * @throws IOException
+     */
+    public static BloomFilter readFrom(final InputStream source)
+            throws IOException
+    {
+        final DataInputStream in = new DataInputStream(source);
+        if (in.readInt() != MAGIC)
+        {
+            throw new IOException("Not a Bloom filter.");
+        }
+        final int wordCount = in.readInt();
+        final int hashCount = in.readInt();
+        if (wordCount < 1 || hashCount < 1)
+        {
+            throw new IOException("Corrupt Bloom filter.");
+        }
+        final long bitsSet = in.readLong();
+        final long entryCount = in.readLong();
+        final long[] words = new long[wordCount];
+        for (int i = 0; i < wordCount; i++)
+        {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words, hashCount, bitsSet, entryCount);
+    }
+
+    /**
+     * MurmurHash3, x64 128 bit variant, seed zero.
+     * 
+     * @param data
+     * @return the two 64 bit halves
+     */
+    static long[] murmur3(final byte[] data)
+    {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        final int length = data.length;
+        final int blocks = length / 16;
+        long h1 = 0L;
+        long h2 = 0L;
+
+        for (int i = 0; i < blocks; i++)
+        {
+            long k1 = getLong(data, i * 16);
+            long k2 = getLong(data, i * 16 + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        final int tail = blocks * 16;
+        long k1 = 0L;
+        long k2 = 0L;
+        for (int i = (length & 15) - 1; i >= 8; i--)
+        {
+            k2 ^= (data[tail + i] & 0xffL) << ((i - 8) * 8);
+        }
+        if ((length & 15) > 8)
+        {
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+        }
+        for (int i = Math.min(length & 15, 8) - 1; i >= 0; i--)
+        {
+            k1 ^= (data[tail + i] & 0xffL) << (i * 8);
+        }
+        if ((length & 15) > 0)
+        {
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] { h1, h2 };
+    }
+
+    private static long getLong(final byte[] data, final int offset)
+    {
+        long value = 0L;
+        for (int i = 7; i >= 0; i--)
+        {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static long fmix(final long value)
+    {
+        long k = value;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,46 @@
+package com.codealot.url2text.crawler;
+
+import com.codealot.url2text.Response;
+import com.codealot.url2text.Url2TextException;
+
+/**
+ * Receives the pages of a crawl, in breadth-first order.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public interface CrawlListener
+{
+    /**
+     * Called for each page fetched. The response is closed once this returns,
+     * so its text must be read, or the response copied, here.
+     * 
+     * @param response
+     * @param depth
+     *            links from the seed; zero for a seed
+     * @throws Url2TextException
+     *             to stop the crawl
+     */
+    void fetched(Response response, int depth) throws Url2TextException;
+
+    /**
+     * Called for each page which could not be fetched. The crawl goes on.
+     * 
+     * @param url
+     * @param depth
+     * @param e
+     */
+    void failed(String url, int depth, Url2TextException e);
+}
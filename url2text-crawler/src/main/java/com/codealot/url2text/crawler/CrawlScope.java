@@ -0,0 +1,123 @@
+package com.codealot.url2text.crawler;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The limits of a crawl: how many links deep to follow from the seeds, and
+ * which domains to stay within. Only http and https URLs are ever in scope.
+ * Immutable.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public final class CrawlScope
+{
+    private final int maxDepth;
+    private final Set<String> domains;
+
+    /**
+     * @param maxDepth
+     *            the most links to follow from a seed; zero fetches the seeds
+     *            only
+     * @param domains
+     *            hosts to stay within, including their subdomains, e.g.
+     *            "example.com" also admits "www.example.com"; empty admits
+     *            every host
+     */
+    public CrawlScope(final int maxDepth, final Collection<String> domains)
+    {
+        if (maxDepth < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Max depth cannot be negative: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        final Set<String> names = new TreeSet<>();
+        for (final String domain : domains)
+        {
+            final String name = domain.trim().toLowerCase(Locale.ENGLISH);
+            if (name.isEmpty())
+            {
+                throw new IllegalArgumentException("Empty domain.");
+            }
+            names.add(name.startsWith(".") ? name.substring(1) : name);
+        }
+        this.domains = Collections.unmodifiableSet(names);
+    }
+
+    public int getMaxDepth()
+    {
+        return this.maxDepth;
+    }
+
+    public Set<String> getDomains()
+    {
+        return this.domains;
+    }
+
+    /**
+     * @param depth
+     * @return true if a page this many links from a seed is to be fetched
+     */
+    public boolean isInDepth(final int depth)
+    {
+        return depth <= this.maxDepth;
+    }
+
+    /**
+     * @param url
+     * @return true if the URL's scheme and host are in scope
+     */
+    public boolean isInScope(final URL url)
+    {
+        final String protocol = url.getProtocol();
+        if (!protocol.equals("http") && !protocol.equals("https"))
+        {
+            return false;
+        }
+        if (this.domains.isEmpty())
+        {
+            return true;
+        }
+        String host = url.getHost().toLowerCase(Locale.ENGLISH);
+        if (host.endsWith("."))
+        {
+            host = host.substring(0, host.length() - 1);
+        }
+        // the host, then each of its parent domains
+        while (!this.domains.contains(host))
+        {
+            final int dot = host.indexOf('.');
+            if (dot == -1)
+            {
+                return false;
+            }
+            host = host.substring(dot + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CrawlScope[depth " + this.maxDepth + ", domains "
+                + (this.domains.isEmpty() ? "any" : this.domains) + "]";
+    }
+}
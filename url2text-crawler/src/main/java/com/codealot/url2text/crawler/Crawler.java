@@ -0,0 +1,409 @@
+package com.codealot.url2text.crawler;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codealot.url2text.PageStructure;
+import com.codealot.url2text.PageStructure.Link;
+import com.codealot.url2text.Response;
+import com.codealot.url2text.Url2Text;
+import com.codealot.url2text.Url2TextException;
+import com.codealot.url2text.UrlCanonicalizer;
+
+/**
+ * A breadth-first crawler on top of {@link Url2Text}.
+ * <p>
+ * Links are taken from the {@link PageStructure} collected while each page is
+ * converted, so pages are never parsed twice. The URLs still to fetch are
+ * queued on disk (see {@link DiskFrontier}), and those already queued or
+ * fetched are recorded in a {@link BloomFilter}, so a crawl of hundreds of
+ * millions of URLs needs a few hundred MiB of heap at most. The price is that
+ * a small share of URLs (the false positive rate) are taken for visited, and
+ * never fetched.
+ * <p>
+ * URLs are compared by their canonical form (see {@link UrlCanonicalizer}),
+ * so tracking parameters, default ports, case and fragments do not lead to
+ * the same page being fetched twice. Meta robots and rel nofollow
+ * directives are obeyed by default. Responses are handed to a
+ * {@link CrawlListener}.
+ * <p>
+ * Not thread safe; one crawl at a time.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public class Crawler
+{
+    public static final long DEFAULT_EXPECTED_URLS = 10_000_000L;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+    public static final int DEFAULT_MAX_DEPTH = 2;
+
+    // SLF4J logger instance
+    private static final Logger LOG = LoggerFactory.getLogger(Crawler.class);
+
+    private final Url2Text fetcher;
+    private final Path workDirectory;
+
+    // configuration
+    private CrawlScope scope = null;
+    private long maxPages = 0L;
+    private long expectedUrls = DEFAULT_EXPECTED_URLS;
+    private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+    private boolean obeyNoFollow = true;
+    private UrlCanonicalizer canonicalizer;
+
+    // state of the last crawl
+    private BloomFilter visited = null;
+    private long fetchCount = 0L;
+    private long failureCount = 0L;
+    private long queuedCount = 0L;
+    private long duplicateCount = 0L;
+    private long outOfScopeCount = 0L;
+
+    /**
+     * @param fetcher
+     *            copied, with page structure enabled, so not altered
+     * @param workDirectory
+     *            where the frontier is kept during a crawl
+     */
+    public Crawler(final Url2Text fetcher, final Path workDirectory)
+    {
+        this.fetcher = Objects.requireNonNull(fetcher, "No Url2Text supplied.")
+                .clone();
+        this.fetcher.setIncludeStructure(true);
+        this.canonicalizer = (this.fetcher.getAliasIndex() == null)
+                ? new UrlCanonicalizer()
+                : this.fetcher.getAliasIndex().getCanonicalizer();
+        this.workDirectory = Objects.requireNonNull(workDirectory,
+                "No work directory supplied.");
+    }
+
+    /**
+     * Crawl from the seeds, breadth first, until the frontier is exhausted or
+     * the page limit is reached.
+     * 
+     * @param seeds
+     *            URLs at depth zero
+     * @param listener
+     * @return the number of pages fetched
+     * @throws Url2TextException
+     *             if the frontier fails, or the listener stops the crawl
+     */
+    public long crawl(final Collection<String> seeds,
+            final CrawlListener listener) throws Url2TextException
+    {
+        Objects.requireNonNull(listener, "No CrawlListener supplied.");
+        final CrawlScope crawlScope = (this.scope == null) ? seedScope(seeds)
+                : this.scope;
+        LOG.debug("Crawling {} seeds, {}", seeds.size(), crawlScope);
+
+        this.visited = new BloomFilter(this.expectedUrls,
+                this.falsePositiveRate);
+        this.fetchCount = 0L;
+        this.failureCount = 0L;
+        this.queuedCount = 0L;
+        this.duplicateCount = 0L;
+        this.outOfScopeCount = 0L;
+
+        try (final DiskFrontier frontier = new DiskFrontier(
+                this.workDirectory))
+        {
+            for (final String seed : seeds)
+            {
+                enqueue(frontier, crawlScope, seed, 0);
+            }
+
+            DiskFrontier.Entry entry;
+            while ((this.maxPages == 0L || this.fetchCount < this.maxPages)
+                    && (entry = frontier.poll()) != null)
+            {
+                final Response response;
+                try
+                {
+                    response = this.fetcher.contentAsText(entry.getUrl(),
+                            null);
+                }
+                catch (Url2TextException e)
+                {
+                    this.failureCount++;
+                    LOG.debug("Failed to fetch {}", entry.getUrl(), e);
+                    listener.failed(entry.getUrl(), entry.getDepth(), e);
+                    continue;
+                }
+
+                try (final Response page = response)
+                {
+                    this.fetchCount++;
+                    // a redirect's target is visited too
+                    try
+                    {
+                        this.visited.add(this.canonicalizer
+                                .canonicalize(page.getLandingPage()));
+                    }
+                    catch (MalformedURLException e)
+                    {
+                        LOG.debug("Bad landing page {}", page.getLandingPage());
+                    }
+                    listener.fetched(page, entry.getDepth());
+
+                    final PageStructure structure = page.getPageStructure();
+                    if (structure != null
+                            && crawlScope.isInDepth(entry.getDepth() + 1)
+                            && !(this.obeyNoFollow && structure.isNoFollow()))
+                    {
+                        for (final Link link : structure.getLinks())
+                        {
+                            if (!(this.obeyNoFollow && link.isNoFollow()))
+                            {
+                                enqueue(frontier, crawlScope, link.getUrl(),
+                                        entry.getDepth() + 1);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new Url2TextException("Crawl frontier failed.", e);
+        }
+        LOG.debug("Crawl done: {} fetched, {} failed, {} queued.",
+                this.fetchCount, this.failureCount, this.queuedCount);
+        return this.fetchCount;
+    }
+
+    /**
+     * Queue the URL, unless it is out of scope or already visited.
+     * 
+     * @throws IOException
+     */
+    private void enqueue(final DiskFrontier frontier,
+            final CrawlScope crawlScope, final String url, final int depth)
+            throws IOException
+    {
+        final URL parsed;
+        try
+        {
+            parsed = new URL(url);
+        }
+        catch (MalformedURLException e)
+        {
+            this.outOfScopeCount++;
+            return;
+        }
+        // fetched as found, less the fragment
+        final int hash = url.indexOf('#');
+        final String target = (hash == -1) ? url : url.substring(0, hash);
+        if (!crawlScope.isInScope(parsed)
+                || target.length() > DiskFrontier.MAX_URL_LENGTH)
+        {
+            this.outOfScopeCount++;
+        }
+        else if (this.visited.add(this.canonicalizer.canonicalize(parsed)))
+        {
+            frontier.add(target, depth);
+            this.queuedCount++;
+        }
+        else
+        {
+            this.duplicateCount++;
+        }
+    }
+
+    /**
+     * The default scope: the seeds' hosts, to the default depth.
+     */
+    private static CrawlScope seedScope(final Collection<String> seeds)
+            throws Url2TextException
+    {
+        final List<String> hosts = new ArrayList<>();
+        for (final String seed : seeds)
+        {
+            try
+            {
+                hosts.add(new URL(seed).getHost());
+            }
+            catch (MalformedURLException e)
+            {
+                throw new Url2TextException("Bad seed URL: " + seed, e);
+            }
+        }
+        return new CrawlScope(DEFAULT_MAX_DEPTH, hosts);
+    }
+
+    public CrawlScope getScope()
+    {
+        return this.scope;
+    }
+
+    /**
+     * Sets the depth and domains of the crawl. By default, the crawl stays
+     * within the seeds' hosts (and their subdomains), to a depth of
+     * {@value #DEFAULT_MAX_DEPTH}.
+     * 
+     * @param scope
+     *            null for the default
+     */
+    public void setScope(final CrawlScope scope)
+    {
+        this.scope = scope;
+    }
+
+    public long getMaxPages()
+    {
+        return this.maxPages;
+    }
+
+    /**
+     * Sets the most pages fetched by a crawl; zero, the default, is no limit.
+     * 
+     * @param maxPages
+     */
+    public void setMaxPages(final long maxPages)
+    {
+        if (maxPages < 0L)
+        {
+            throw new IllegalArgumentException(
+                    "Max pages cannot be negative: " + maxPages);
+        }
+        this.maxPages = maxPages;
+    }
+
+    public long getExpectedUrls()
+    {
+        return this.expectedUrls;
+    }
+
+    public double getFalsePositiveRate()
+    {
+        return this.falsePositiveRate;
+    }
+
+    /**
+     * Sizes the visited index. It takes about 1.8 bytes per expected URL at
+     * the default false positive rate of 0.1%, so 10 million URLs (the
+     * default) take 18MiB, and 300 million 540MiB. Beyond the expected number,
+     * the false positive rate rises, and more URLs are skipped.
+     * 
+     * @param expectedUrls
+     * @param falsePositiveRate
+     */
+    public void setVisitedIndexSize(final long expectedUrls,
+            final double falsePositiveRate)
+    {
+        // fail now, rather than at the start of a crawl
+        new BloomFilter(1L, falsePositiveRate);
+        if (expectedUrls < 1L)
+        {
+            throw new IllegalArgumentException(
+                    "Expected URLs must be positive: " + expectedUrls);
+        }
+        this.expectedUrls = expectedUrls;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public boolean hasObeyNoFollow()
+    {
+        return this.obeyNoFollow;
+    }
+
+    /**
+     * When enabled, the default, links are not followed from pages with a
+     * nofollow robots meta tag, nor when marked rel="nofollow".
+     * 
+     * @param obeyNoFollow
+     */
+    public void setObeyNoFollow(final boolean obeyNoFollow)
+    {
+        this.obeyNoFollow = obeyNoFollow;
+    }
+
+    /**
+     * Returns the canonicalizer which reduces URLs to their visited index key.
+     * 
+     * @return the canonicalizer
+     */
+    public UrlCanonicalizer getCanonicalizer()
+    {
+        return this.canonicalizer;
+    }
+
+    /**
+     * Sets how URLs are reduced to their visited index key. By default, the
+     * canonicalizer of the fetcher's alias index, if any, or else the
+     * {@link UrlCanonicalizer} defaults.
+     * 
+     * @param canonicalizer
+     */
+    public void setCanonicalizer(final UrlCanonicalizer canonicalizer)
+    {
+        this.canonicalizer = Objects.requireNonNull(canonicalizer,
+                "No UrlCanonicalizer supplied.");
+    }
+
+    /**
+     * Returns the visited index of the current or last crawl, e.g. to check
+     * its false positive rate, or to save it.
+     * 
+     * @return the index, or null before the first crawl
+     */
+    public BloomFilter getVisited()
+    {
+        return this.visited;
+    }
+
+    public long getFetchCount()
+    {
+        return this.fetchCount;
+    }
+
+    public long getFailureCount()
+    {
+        return this.failureCount;
+    }
+
+    /**
+     * @return URLs added to the frontier, seeds included
+     */
+    public long getQueuedCount()
+    {
+        return this.queuedCount;
+    }
+
+    /**
+     * @return URLs not queued as already visited (or false positives)
+     */
+    public long getDuplicateCount()
+    {
+        return this.duplicateCount;
+    }
+
+    /**
+     * @return URLs not queued as malformed, or outside the domains
+     */
+    public long getOutOfScopeCount()
+    {
+        return this.outOfScopeCount;
+    }
+}
@@ -0,0 +1,300 @@
+package com.codealot.url2text.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * A first in, first out queue of URLs to crawl, with their depths, held on
+ * disk, so that the frontier of a large crawl takes next to no heap.
+ * <p>
+ * Entries are appended to segment files of a fixed number of entries, and
+ * read back a segment at a time; a segment is deleted once it has been read.
+ * Only the buffers of the segment being written and the one being read are
+ * held in memory. The files live in a private directory, which is deleted on
+ * {@link #close()}.
+ * <p>
+ * Not thread safe.
+ *
+ * @author jacobsp
+ *         <p>
+ *         Copyright (C) 2014 Codealot Limited.
+ *         <p>
+ *         Licensed under the Apache License, Version 2.0 (the "License"); you
+ *         may not use this file except in compliance with the License. You may
+ *         obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *         <p>
+ *         Unless required by applicable law or agreed to in writing, software
+ *         distributed under the License is distributed on an "AS IS" BASIS,
+ *         WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *         implied. See the License for the specific language governing
+ *         permissions and limitations under the License.
+ */
+public final class DiskFrontier implements Closeable
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    // longest URL held; longer ones are not worth crawling
+    public static final int MAX_URL_LENGTH = 8 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // entries in each written segment not yet being read, oldest first
+    private final Deque<Integer> segmentEntries = new ArrayDeque<>();
+    private long readSegment = 0L;
+    private long writeSegment = 0L;
+
+    private DataOutputStream writer = null;
+    private int written = 0;
+    private DataInputStream reader = null;
+    private int unread = 0;
+
+    private long size = 0L;
+    private boolean closed = false;
+
+    /**
+     * See {@link #DiskFrontier(Path, int)}.
+     * 
+     * @param parent
+     * @throws IOException
+     */
+    public DiskFrontier(final Path parent) throws IOException
+    {
+        this(parent, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param parent
+     *            the directory in which to create the frontier's own
+     *            directory; created if need be
+     * @param segmentSize
+     *            entries per segment file
+     * @throws IOException
+     */
+    public DiskFrontier(final Path parent, final int segmentSize)
+            throws IOException
+    {
+        if (segmentSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Segment size must be positive: " + segmentSize);
+        }
+        Files.createDirectories(Objects.requireNonNull(parent));
+        this.directory = Files.createTempDirectory(parent, "frontier");
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Append an entry.
+     * 
+     * @param url
+     * @param depth
+     * @throws IOException
+     */
+    public void add(final String url, final int depth) throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IllegalStateException("Frontier is closed.");
+        }
+        if (url.length() > MAX_URL_LENGTH)
+        {
+            throw new IllegalArgumentException("URL too long: "
+                    + url.length() + " chars.");
+        }
+        if (this.writer == null)
+        {
+            this.writer = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(segment(this.writeSegment)),
+                    BUFFER_SIZE));
+        }
+        this.writer.writeUTF(url);
+        this.writer.writeInt(depth);
+        this.size++;
+        if (++this.written == this.segmentSize)
+        {
+            rollSegment();
+        }
+    }
+
+    /**
+     * Remove the oldest entry.
+     * 
+     * @return the entry, or null if the frontier is empty
+     * @throws IOException
+     */
+    public Entry poll() throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IllegalStateException("Frontier is closed.");
+        }
+        if (this.size == 0L)
+        {
+            return null;
+        }
+        if (this.unread == 0)
+        {
+            nextSegment();
+        }
+        final String url = this.reader.readUTF();
+        final int depth = this.reader.readInt();
+        this.unread--;
+        this.size--;
+        return new Entry(url, depth);
+    }
+
+    public long size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0L;
+    }
+
+    /**
+     * Deletes the frontier's files, and any entries left in them.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        this.closed = true;
+        try
+        {
+            if (this.writer != null)
+            {
+                this.writer.close();
+            }
+            if (this.reader != null)
+            {
+                this.reader.close();
+            }
+        }
+        finally
+        {
+            try (final DirectoryStream<Path> files = Files
+                    .newDirectoryStream(this.directory))
+            {
+                for (final Path file : files)
+                {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(this.directory);
+        }
+    }
+
+    /**
+     * Close the segment being written, so it can be read.
+     * 
+     * @throws IOException
+     */
+    private void rollSegment() throws IOException
+    {
+        this.writer.close();
+        this.writer = null;
+        this.segmentEntries.addLast(this.written);
+        this.written = 0;
+        this.writeSegment++;
+    }
+
+    /**
+     * Delete the segment just read, and open the next.
+     * 
+     * @throws IOException
+     */
+    private void nextSegment() throws IOException
+    {
+        if (this.reader != null)
+        {
+            this.reader.close();
+            this.reader = null;
+            Files.delete(segment(this.readSegment));
+            this.readSegment++;
+        }
+        if (this.segmentEntries.isEmpty())
+        {
+            // caught up with the writer
+            rollSegment();
+        }
+        this.unread = this.segmentEntries.removeFirst();
+        this.reader = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(segment(this.readSegment)), BUFFER_SIZE));
+    }
+
+    private Path segment(final long index)
+    {
+        return this.directory.resolve(index + ".seg");
+    }
+
+    /**
+     * A URL to crawl, and its distance in links from a seed.
+     */
+    public static final class Entry
+    {
+        private final String url;
+        private final int depth;
+
+        public Entry(final String url, final int depth)
+        {
+            this.url = Objects.requireNonNull(url);
+            this.depth = depth;
+        }
+
+        public String getUrl()
+        {
+            return this.url;
+        }
+
+        public int getDepth()
+        {
+            return this.depth;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.url, this.depth);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (obj == null || obj.getClass() != this.getClass())
+            {
+                return false;
+            }
+            final Entry test = (Entry) obj;
+            return this.depth == test.depth && this.url.equals(test.url);
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.depth + " " + this.url;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.codealot.url2text.crawler;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BloomFilterTest
+{
+    @Test
+    public void testNoFalseNegatives()
+    {
+        final BloomFilter filter = new BloomFilter(100_000L, 0.01);
+        int added = 0;
+        for (int i = 0; i < 100_000; i++)
+        {
+            // false unless new, though a few new ones collide
+            if (filter.add("http://example.com/page/" + i))
+            {
+                added++;
+            }
+        }
+        assertTrue(added > 99_000);
+        for (int i = 0; i < 100_000; i++)
+        {
+            assertTrue(filter.mightContain("http://example.com/page/" + i));
+            assertFalse(filter.add("http://example.com/page/" + i));
+        }
+        assertEquals(added, filter.getEntryCount());
+    }
+
+    @Test
+    public void testFalsePositiveRate()
+    {
+        final BloomFilter filter = new BloomFilter(100_000L, 0.01);
+        for (int i = 0; i < 100_000; i++)
+        {
+            filter.add("http://example.com/page/" + i);
+        }
+        int positives = 0;
+        for (int i = 0; i < 100_000; i++)
+        {
+            if (filter.mightContain("http://example.org/other/" + i))
+            {
+                positives++;
+            }
+        }
+        assertTrue(positives < 1_500);
+        assertEquals(0.01, filter.getFalsePositiveRate(), 0.003);
+    }
+
+    @Test
+    public void testSizing()
+    {
+        // about 9.6 bits and 7 hashes per entry at 1%
+        final BloomFilter filter = new BloomFilter(1_000_000L, 0.01);
+        assertEquals(9_585_088L, filter.getBitCount());
+        assertEquals(7, filter.getHashCount());
+        assertEquals(0.0, filter.getFalsePositiveRate(), 0.0);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException
+    {
+        final BloomFilter filter = new BloomFilter(1_000L, 0.001);
+        filter.add("one");
+        filter.add("two");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(bytes);
+
+        final BloomFilter read = BloomFilter.readFrom(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        assertTrue(read.mightContain("one"));
+        assertTrue(read.mightContain("two"));
+        assertFalse(read.mightContain("three"));
+        assertEquals(2L, read.getEntryCount());
+        assertEquals(filter.getBitCount(), read.getBitCount());
+        assertEquals(filter.getHashCount(), read.getHashCount());
+        assertEquals(filter.getFalsePositiveRate(),
+                read.getFalsePositiveRate(), 0.0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadBadSignature() throws IOException
+    {
+        BloomFilter.readFrom(new ByteArrayInputStream(new byte[32]));
+    }
+
+    @Test
+    public void testMurmur3()
+    {
+        assertArrayEquals(new long[] { 0L, 0L }, BloomFilter.murmur3(new byte[0]));
+        assertArrayEquals(new long[] { 0xe34bbc7bbc071b6cL,
+                0x7a433ca9c49a9347L }, BloomFilter.murmur3(
+                "The quick brown fox jumps over the lazy dog"
+                        .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadEntries()
+    {
+        new BloomFilter(0L, 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadRate()
+    {
+        new BloomFilter(10L, 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge()
+    {
+        new BloomFilter(Long.MAX_VALUE / 2, 0.01);
+    }
+}
@@ -0,0 +1,51 @@
+package com.codealot.url2text.crawler;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class CrawlScopeTest
+{
+    @Test
+    public void testDomains() throws MalformedURLException
+    {
+        final CrawlScope scope = new CrawlScope(2, Arrays.asList(
+                "Example.com", ".example.org"));
+        assertTrue(scope.isInScope(new URL("http://example.com/")));
+        assertTrue(scope.isInScope(new URL("https://www.EXAMPLE.com./a")));
+        assertTrue(scope.isInScope(new URL("http://a.b.example.org/")));
+        assertFalse(scope.isInScope(new URL("http://notexample.com/")));
+        assertFalse(scope.isInScope(new URL("http://example.com.evil.net/")));
+        assertFalse(scope.isInScope(new URL("ftp://example.com/")));
+        assertEquals("CrawlScope[depth 2, domains [example.com, example.org]]",
+                scope.toString());
+    }
+
+    @Test
+    public void testAnyDomain() throws MalformedURLException
+    {
+        final CrawlScope scope = new CrawlScope(0,
+                Collections.<String> emptyList());
+        assertTrue(scope.isInScope(new URL("http://anywhere.net/")));
+        assertFalse(scope.isInScope(new URL("file:///etc/hosts")));
+        assertTrue(scope.isInDepth(0));
+        assertFalse(scope.isInDepth(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDepth()
+    {
+        new CrawlScope(-1, Collections.<String> emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyDomain()
+    {
+        new CrawlScope(1, Arrays.asList(" "));
+    }
+}
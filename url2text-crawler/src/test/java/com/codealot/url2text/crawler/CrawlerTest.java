@@ -0,0 +1,214 @@
+package com.codealot.url2text.crawler;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codealot.url2text.Response;
+import com.codealot.url2text.Url2Text;
+import com.codealot.url2text.Url2TextException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class CrawlerTest
+{
+    private static final Map<String, String> PAGES = new HashMap<>();
+
+    private static HttpServer server;
+    private static String localHost;
+
+    private Path workDirectory;
+    private Crawler crawler;
+    private Recorder recorder;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        page("/", "<a href='a.html'>A</a> <a href='b.html#top'>B</a>"
+                + " <a href='http://example.org/'>Out</a>"
+                + " <a href='missing.html'>Missing</a>");
+        page("/a.html", "<a href='/'>Home</a> <a href='c.html'>C</a>"
+                + " <a href='b.html?utm_source=feed'>B</a>"
+                + " <a href='secret.html' rel='nofollow'>Secret</a>");
+        page("/b.html", "<meta name='robots' content='nofollow'>"
+                + "<a href='hidden.html'>Hidden</a>");
+        page("/c.html", "<a href='d.html'>D</a>");
+        page("/d.html", "Too deep");
+        page("/secret.html", "Not followed");
+        page("/hidden.html", "Not followed");
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+            {
+                @Override
+                public void handle(final HttpExchange exchange)
+                        throws IOException
+                {
+                    final String body = PAGES.get(exchange.getRequestURI()
+                            .getPath());
+                    final byte[] bytes = (body == null) ? new byte[0] : body
+                            .getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type",
+                            "text/html; charset=UTF-8");
+                    exchange.sendResponseHeaders((body == null) ? 404 : 200,
+                            (bytes.length == 0) ? -1 : bytes.length);
+                    try (OutputStream os = exchange.getResponseBody())
+                    {
+                        os.write(bytes);
+                    }
+                }
+            });
+        server.start();
+        localHost = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private static void page(final String path, final String body)
+    {
+        PAGES.put(path, "<html><head><title>" + path + "</title></head><body>"
+                + body + "</body></html>");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.workDirectory = Files.createTempDirectory("crawler-test");
+        this.crawler = new Crawler(new Url2Text(), this.workDirectory);
+        this.crawler.setVisitedIndexSize(1_000L, 0.0001);
+        this.recorder = new Recorder();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(this.workDirectory);
+    }
+
+    @Test
+    public void testBreadthFirst() throws Exception
+    {
+        final long fetched = this.crawler.crawl(
+                Arrays.asList(localHost + "/"), this.recorder);
+
+        // missing.html is a 404, which is still a page
+        assertEquals(Arrays.asList("0 /", "1 /a.html", "1 /b.html",
+                "1 /missing.html", "2 /c.html"), this.recorder.pages);
+        assertEquals(5L, fetched);
+        assertEquals(5L, this.crawler.getQueuedCount());
+        assertEquals(1L, this.crawler.getOutOfScopeCount());
+        // a.html links back to / and, with a tracking parameter, to b.html
+        assertEquals(2L, this.crawler.getDuplicateCount());
+        assertEquals(0L, this.crawler.getFailureCount());
+        assertTrue(this.crawler.getVisited().mightContain(
+                localHost + "/c.html"));
+    }
+
+    @Test
+    public void testScopeAndLimits() throws Exception
+    {
+        this.crawler.setScope(new CrawlScope(3,
+                Collections.<String> emptyList()));
+        this.crawler.setObeyNoFollow(false);
+        this.crawler.setMaxPages(4L);
+        this.crawler.crawl(Arrays.asList(localHost + "/"), this.recorder);
+        assertEquals(4, this.recorder.pages.size());
+        // example.org was queued, being in scope
+        assertEquals(0L, this.crawler.getOutOfScopeCount());
+    }
+
+    @Test
+    public void testNoFollowIgnored() throws Exception
+    {
+        this.crawler.setObeyNoFollow(false);
+        this.crawler.setScope(new CrawlScope(2, Arrays.asList("localhost")));
+        this.crawler.crawl(Arrays.asList(localHost + "/"), this.recorder);
+        assertTrue(this.recorder.pages.contains("2 /secret.html"));
+        assertTrue(this.recorder.pages.contains("2 /hidden.html"));
+        assertFalse(this.recorder.pages.contains("3 /d.html"));
+    }
+
+    @Test
+    public void testFailure() throws Exception
+    {
+        this.crawler.setScope(new CrawlScope(0,
+                Collections.<String> emptyList()));
+        this.crawler.crawl(Arrays.asList("http://localhost:1/"),
+                this.recorder);
+        assertEquals(Arrays.asList("http://localhost:1/"),
+                this.recorder.failures);
+        assertEquals(1L, this.crawler.getFailureCount());
+    }
+
+    @Test(expected = Url2TextException.class)
+    public void testListenerStops() throws Exception
+    {
+        this.crawler.crawl(Arrays.asList(localHost + "/"), new Recorder()
+            {
+                @Override
+                public void fetched(final Response response, final int depth)
+                        throws Url2TextException
+                {
+                    throw new Url2TextException("Stop.");
+                }
+            });
+    }
+
+    @Test
+    public void testFetcherNotAltered() throws Exception
+    {
+        final Url2Text fetcher = new Url2Text();
+        new Crawler(fetcher, this.workDirectory);
+        assertFalse(fetcher.hasIncludeStructure());
+    }
+
+    @Test(expected = Url2TextException.class)
+    public void testBadSeed() throws Exception
+    {
+        this.crawler.crawl(Arrays.asList("not a url"), this.recorder);
+    }
+
+    private static class Recorder implements CrawlListener
+    {
+        final List<String> pages = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+
+        @Override
+        public void fetched(final Response response, final int depth)
+                throws Url2TextException
+        {
+            this.pages.add(depth + " "
+                    + response.getRequestPage().substring(localHost.length()));
+        }
+
+        @Override
+        public void failed(final String url, final int depth,
+                final Url2TextException e)
+        {
+            this.failures.add(url);
+        }
+    }
+}
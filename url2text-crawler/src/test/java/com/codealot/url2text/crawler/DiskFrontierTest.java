@@ -0,0 +1,116 @@
+package com.codealot.url2text.crawler;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskFrontierTest
+{
+    private Path parent;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.parent = Files.createTempDirectory("frontier-test");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(this.parent);
+    }
+
+    @Test
+    public void testFifo() throws IOException
+    {
+        try (final DiskFrontier frontier = new DiskFrontier(this.parent, 7))
+        {
+            assertTrue(frontier.isEmpty());
+            assertNull(frontier.poll());
+
+            int next = 0;
+            for (int i = 0; i < 100; i++)
+            {
+                frontier.add("http://example.com/" + i, i % 5);
+                // interleave reads with writes, across segments
+                if (i % 3 == 0)
+                {
+                    assertEquals(new DiskFrontier.Entry("http://example.com/"
+                            + next, next % 5), frontier.poll());
+                    next++;
+                }
+            }
+            assertEquals(100 - next, frontier.size());
+            while (!frontier.isEmpty())
+            {
+                assertEquals("http://example.com/" + next, frontier.poll()
+                        .getUrl());
+                next++;
+            }
+            assertEquals(100, next);
+            assertNull(frontier.poll());
+
+            // segments are deleted once read
+            assertTrue(fileCount(this.parent) == 1);
+        }
+        assertEquals(0, fileCount(this.parent));
+    }
+
+    @Test
+    public void testCloseDiscardsEntries() throws IOException
+    {
+        final DiskFrontier frontier = new DiskFrontier(this.parent, 2);
+        for (int i = 0; i < 5; i++)
+        {
+            frontier.add("http://example.com/\u00e9" + i, 0);
+        }
+        assertEquals("http://example.com/\u00e90", frontier.poll().getUrl());
+        frontier.close();
+        frontier.close();
+        assertEquals(0, fileCount(this.parent));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws IOException
+    {
+        final DiskFrontier frontier = new DiskFrontier(this.parent);
+        frontier.close();
+        frontier.add("http://example.com/", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUrlTooLong() throws IOException
+    {
+        final StringBuilder url = new StringBuilder("http://example.com/");
+        while (url.length() <= DiskFrontier.MAX_URL_LENGTH)
+        {
+            url.append('a');
+        }
+        try (final DiskFrontier frontier = new DiskFrontier(this.parent))
+        {
+            frontier.add(url.toString(), 0);
+        }
+    }
+
+    private static int fileCount(final Path directory) throws IOException
+    {
+        int count = 0;
+        try (final DirectoryStream<Path> files = Files
+                .newDirectoryStream(directory))
+        {
+            for (@SuppressWarnings("unused")
+            final Path file : files)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}